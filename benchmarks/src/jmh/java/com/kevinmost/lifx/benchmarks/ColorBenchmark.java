@@ -0,0 +1,80 @@
+package com.kevinmost.lifx.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.kevinmost.lifx.model.LifxColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LifxColor#rgb(int, int, int)}, and parsing and formatting color strings through {@link LifxColor}'s type
+ * adapter. The "repeated" cases cycle through fewer colors than the parse cache holds, the way a fleet repeats the
+ * same few colors; the "distinct" cases cycle through many more, so every parse misses
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColorBenchmark {
+
+  private static final int REPEATED = 64;
+  private static final int DISTINCT = 1 << 14;
+
+  private TypeAdapter<LifxColor> adapter;
+  private String[] repeatedStrings;
+  private String[] distinctStrings;
+  private int next;
+
+  @Setup public void setup() {
+    final Gson gson = Fixtures.gson();
+    adapter = gson.getAdapter(LifxColor.class);
+    repeatedStrings = colorStrings(REPEATED);
+    distinctStrings = colorStrings(DISTINCT);
+  }
+
+  @Benchmark public LifxColor rgb() {
+    final int i = next++;
+    return LifxColor.rgb(i & 0xff, (i >>> 8) & 0xff, (i >>> 3) & 0xff);
+  }
+
+  @Benchmark public LifxColor parseRepeated() throws IOException {
+    return adapter.fromJson(repeatedStrings[next++ & (REPEATED - 1)]);
+  }
+
+  @Benchmark public LifxColor parseDistinct() throws IOException {
+    return adapter.fromJson(distinctStrings[next++ & (DISTINCT - 1)]);
+  }
+
+  /**
+   * Formatting a color that has never been formatted before
+   */
+  @Benchmark public String formatFresh() {
+    final int i = next++;
+    return adapter.toJson(LifxColor.hsv((i % 3600) / 10.0, 1.0, 0.5).withKelvin(3500));
+  }
+
+  /**
+   * Formatting the same color instance again, as happens when the same operations are sent repeatedly
+   */
+  @Benchmark public String formatRepeated() {
+    return adapter.toJson(LifxColor.RED);
+  }
+
+  /**
+   * JSON string literals, as they appear in a response body
+   */
+  private static String[] colorStrings(int count) {
+    final String[] strings = new String[count];
+    for (int i = 0; i < count; i++) {
+      strings[i] = "\"" + LifxColor.hsv(i * 360.0 / count, (i % 100) / 100.0, 1.0).withKelvin(2500 + i % 6500) + "\"";
+    }
+    return strings;
+  }
+}
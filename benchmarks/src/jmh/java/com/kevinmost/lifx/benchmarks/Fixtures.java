@@ -0,0 +1,127 @@
+package com.kevinmost.lifx.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.kevinmost.internal.AutoValueTypeAdapterFactory;
+import com.kevinmost.internal.InterningTypeAdapterFactory;
+import com.kevinmost.internal.Util;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.LifxGroup;
+import com.kevinmost.lifx.model.LifxLocation;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.model.Operation;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payloads shaped like the LiFX API's responses, and a {@link Gson} set up the same way as the client's
+ */
+final class Fixtures {
+
+  private Fixtures() { throw new UnsupportedOperationException("No instances"); }
+
+  @NotNull static Gson gson() {
+    return new GsonBuilder()
+        .registerTypeAdapterFactory(new AutoValueTypeAdapterFactory())
+        // As the client does, so that decoding benchmarks pay for interning too
+        .registerTypeAdapterFactory(
+            new InterningTypeAdapterFactory(LifxGroup.class, LifxLocation.class, LifxColor.class, String.class))
+        .create();
+  }
+
+  /**
+   * Reads from bytes, the way the client reads a response body
+   */
+  @NotNull static JsonReader reader(@NotNull Gson gson, @NotNull byte[] json) {
+    return gson.newJsonReader(new InputStreamReader(new ByteArrayInputStream(json), Util.UTF_8));
+  }
+
+  @NotNull static byte[] listLightsResponse(int lightCount) {
+    final StringBuilder sb = new StringBuilder(lightCount * 700).append('[');
+    for (int i = 0; i < lightCount; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(light(i));
+    }
+    return sb.append(']').toString().getBytes(Util.UTF_8);
+  }
+
+  @NotNull static byte[] setLightsResponse(@NotNull List<Operation> operations, int lightsPerOperation) {
+    final Gson gson = gson();
+    final StringBuilder sb = new StringBuilder().append('[');
+    for (int i = 0; i < operations.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append("{\"operation\":").append(gson.toJson(operations.get(i), Operation.class)).append(",\"results\":[");
+      for (int j = 0; j < lightsPerOperation; j++) {
+        if (j > 0) {
+          sb.append(',');
+        }
+        sb.append(String.format(Locale.US, "{\"id\":\"%s\",\"label\":\"Light %d\",\"status\":\"ok\"}",
+            lightId(i * lightsPerOperation + j), j));
+      }
+      sb.append("]}");
+    }
+    return sb.append(']').toString().getBytes(Util.UTF_8);
+  }
+
+  /**
+   * One operation per light, each setting a different color, the way an effect frame would
+   */
+  @NotNull static List<Operation> operations(int count) {
+    final List<Operation> operations = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      operations.add(Operation.forSelector(Selector.unsafe("id:" + lightId(i)))
+          .powerState(PowerState.ON)
+          .color(LifxColor.hsv(i * 360.0 / count, 1.0, null))
+          .brightness(0.75)
+          .duration(1, TimeUnit.SECONDS)
+          .build()
+      );
+    }
+    return operations;
+  }
+
+  @NotNull private static String lightId(int i) {
+    return String.format(Locale.US, "d073d5%06x", i);
+  }
+
+  @NotNull private static String light(int i) {
+    return String.format(Locale.US, "{"
+            + "\"id\":\"%s\","
+            + "\"uuid\":\"8fa5f072-af97-44ed-ae54-%012x\","
+            + "\"label\":\"Light %d\","
+            + "\"connected\":true,"
+            + "\"power\":\"%s\","
+            + "\"color\":{\"hue\":%.13f,\"saturation\":%.13f,\"kelvin\":3500},"
+            + "\"brightness\":%.13f,"
+            + "\"group\":{\"id\":\"1c8de82b81f445e7cfaafae49b25%04x\",\"name\":\"Group %d\"},"
+            + "\"location\":{\"id\":\"1d6fe8ef0fde4c6d77b0012dc736662c\",\"name\":\"Home\"},"
+            + "\"last_seen\":\"2016-11-02T08:53:02.867+00:00\","
+            + "\"seconds_since_seen\":0.002869418,"
+            + "\"product\":{\"name\":\"LIFX+ A19\",\"identifier\":\"lifx_plus_a19\",\"company\":\"LIFX\","
+            + "\"capabilities\":{\"has_color\":true,\"has_variable_color_temp\":true,\"has_ir\":true,"
+            + "\"has_multizone\":false}}"
+            + "}",
+        lightId(i),
+        i,
+        i,
+        i % 3 == 0 ? "off" : "on",
+        (i * 37) % 360 + 0.5,
+        (i % 100) / 100.0,
+        (i % 10) / 10.0 + 0.05,
+        i % 20,
+        i % 20
+    );
+  }
+}
@@ -0,0 +1,54 @@
+package com.kevinmost.lifx.benchmarks;
+
+import com.google.gson.Gson;
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.LightField;
+import com.kevinmost.lifx.model.LightProjection;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import com.kevinmost.lifx.request.ProjectedListLightsRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a {@code GET /v1/lights/:selector} response body through {@link ListLightsRequest}, the same way the client
+ * does once the body arrives: in full, and projected down to the few fields an inventory scan needs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListLightsBenchmark {
+
+  @Param({"10", "1000", "10000"})
+  public int lightCount;
+
+  private Gson gson;
+  private ListLightsRequest request;
+  private ProjectedListLightsRequest projected;
+  private byte[] body;
+
+  @Setup public void setup() {
+    gson = Fixtures.gson();
+    request = LifxRequests.listLights();
+    projected = request.project(LightField.CONNECTED, LightField.POWER);
+    body = Fixtures.listLightsResponse(lightCount);
+  }
+
+  @Benchmark public List<Light> decode() throws IOException {
+    return request.unmarshal(Fixtures.reader(gson, body), gson);
+  }
+
+  @Benchmark public List<LightProjection> decodeProjected() throws IOException {
+    return projected.unmarshal(Fixtures.reader(gson, body), gson);
+  }
+}
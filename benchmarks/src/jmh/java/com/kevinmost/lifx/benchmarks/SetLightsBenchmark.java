@@ -0,0 +1,65 @@
+package com.kevinmost.lifx.benchmarks;
+
+import com.google.gson.Gson;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.Scene;
+import com.kevinmost.lifx.request.SetLightsRequest;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import okhttp3.HttpUrl;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Both ends of a full {@code PUT /v1/lights/states}: building the request and writing its body for
+ * {@link SetLightsRequest#MAX_OPERATIONS} operations (from scratch, and from a {@link Scene} compiled up front), and
+ * decoding the {@link OperationResult}s that come back
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SetLightsBenchmark {
+
+  private static final HttpUrl BASE_URL = HttpUrl.parse("https://api.lifx.com/");
+
+  private Gson gson;
+  private SetLightsRequest request;
+  private SetLightsRequest compiled;
+  private byte[] responseBody;
+
+  @Setup public void setup() {
+    gson = Fixtures.gson();
+    final List<Operation> operations = Fixtures.operations(SetLightsRequest.MAX_OPERATIONS);
+    request = LifxRequests.setLights().plus(operations);
+    compiled = Scene.compile(operations).requests().get(0);
+    responseBody = Fixtures.setLightsResponse(operations, 1);
+  }
+
+  @Benchmark public Buffer buildRequest() throws IOException {
+    final Buffer sink = new Buffer();
+    //noinspection ConstantConditions
+    request.buildRequest(BASE_URL, gson).body().writeTo(sink);
+    return sink;
+  }
+
+  @Benchmark public Buffer buildCompiledRequest() throws IOException {
+    final Buffer sink = new Buffer();
+    //noinspection ConstantConditions
+    compiled.buildRequest(BASE_URL, gson).body().writeTo(sink);
+    return sink;
+  }
+
+  @Benchmark public List<OperationResult> decodeResults() throws IOException {
+    return request.unmarshal(Fixtures.reader(gson, responseBody), gson);
+  }
+}
@@ -0,0 +1,52 @@
+package com.kevinmost.internal;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves every value of the given types that its {@link Gson} decodes to one canonical instance per distinct value,
+ * through a {@link WeakInterner} of its own. Values that show up over and over again in a response (the groups and
+ * locations of thousands of lights, say) then take up memory once, and compare by reference
+ * <p>
+ * Has to be registered on the {@link com.google.gson.GsonBuilder}, ahead of the
+ * {@link com.google.gson.annotations.JsonAdapter}s it wraps; each factory is one interning scope
+ */
+public final class InterningTypeAdapterFactory implements TypeAdapterFactory {
+
+  // Made up front, since Gson may create more than one adapter for a type when threads race to look it up
+  @NotNull private final Map<Class<?>, WeakInterner<?>> interners = new HashMap<>();
+
+  public InterningTypeAdapterFactory(@NotNull Class<?>... types) {
+    for (final Class<?> type : types) {
+      interners.put(type, new WeakInterner<>());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+    final WeakInterner<T> interner = (WeakInterner<T>) interners.get(typeToken.getRawType());
+    if (interner == null) {
+      return null;
+    }
+    final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, typeToken);
+    return new TypeAdapter<T>() {
+      @Override public T read(JsonReader in) throws IOException {
+        final T value = delegate.read(in);
+        return value == null ? null : interner.intern(value);
+      }
+
+      @Override public void write(JsonWriter out, T value) throws IOException {
+        delegate.write(out, value);
+      }
+    };
+  }
+}
@@ -8,17 +8,21 @@ import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.Map;
 
 public final class JsonUtil {
 
-  @NotNull private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf8");
+  @NotNull public static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf8");
 
   private JsonUtil() { throw new UnsupportedOperationException("No instances"); }
 
@@ -130,4 +134,42 @@ public final class JsonUtil {
   public static boolean notNull(@Nullable JsonElement json) {
     return json != null && !json.isJsonNull();
   }
+
+  /**
+   * Reads the next value as a string, or returns null (consuming the token) if it is a JSON null
+   */
+  @Nullable public static String nextNullableString(@NotNull JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  /**
+   * Reads the next value as a double, or returns null (consuming the token) if it is a JSON null. Numbers that the API
+   * sends as strings are accepted too
+   */
+  @Nullable public static Double nextNullableDouble(@NotNull JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextDouble();
+  }
+
+  @Nullable public static Integer nextNullableInt(@NotNull JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextInt();
+  }
+
+  @NotNull public static <T> T required(@Nullable T value, @NotNull String field, @NotNull Class<?> type) {
+    if (value == null) {
+      throw new JsonSyntaxException(type.getSimpleName() + " is missing required field \"" + field + "\"");
+    }
+    return value;
+  }
 }
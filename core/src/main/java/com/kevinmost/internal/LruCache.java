@@ -0,0 +1,37 @@
+package com.kevinmost.internal;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small synchronized map that evicts its least recently used entry once it's full. Meant for caching values that
+ * are cheap to recompute but come up over and over, so a cache miss is never a problem
+ */
+public final class LruCache<K, V> {
+
+  @NotNull private final LinkedHashMap<K, V> map;
+
+  public LruCache(final int maxSize) {
+    Util.assertRange("maxSize", maxSize, 1, Integer.MAX_VALUE);
+    map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  @Nullable public synchronized V get(@NotNull K key) {
+    return map.get(key);
+  }
+
+  public synchronized void put(@NotNull K key, @NotNull V value) {
+    map.put(key, value);
+  }
+
+  public synchronized int size() {
+    return map.size();
+  }
+}
@@ -0,0 +1,31 @@
+package com.kevinmost.internal;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Lets a model's {@link com.google.gson.annotations.JsonAdapter} hand its streaming {@link TypeAdapter} the
+ * {@link Gson} instance it's being created for, so it can look up the adapters of the types nested inside it once
+ * instead of on every value
+ */
+public abstract class ModelTypeAdapterFactory<M> implements TypeAdapterFactory {
+
+  @NotNull private final Class<M> modelType;
+
+  protected ModelTypeAdapterFactory(@NotNull Class<M> modelType) {
+    this.modelType = modelType;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override public final <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+    if (!modelType.isAssignableFrom(typeToken.getRawType())) {
+      return null;
+    }
+    return (TypeAdapter<T>) create(gson).nullSafe();
+  }
+
+  @NotNull protected abstract TypeAdapter<M> create(@NotNull Gson gson);
+}
@@ -0,0 +1,25 @@
+package com.kevinmost.internal;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A single daemon thread for the client's timers (rate-limit queue draining, cache refreshes, and so on). Anything run
+ * on it must be quick and must never block; network calls are handed off to OkHttp's dispatcher
+ */
+public final class Scheduler {
+
+  @NotNull public static final ScheduledExecutorService INSTANCE =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override public Thread newThread(@NotNull Runnable runnable) {
+          final Thread thread = new Thread(runnable, "LifxScheduler");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private Scheduler() { throw new UnsupportedOperationException("No instances"); }
+}
@@ -6,11 +6,26 @@ import org.jetbrains.annotations.Nullable;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Util {
 
+  @NotNull public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final double TWO_TO_THE_52 = 4503599627370496.0;
+  private static final double SPLITTER = 134217729.0; // 2^27 + 1
+
+  /**
+   * The scales {@link #round(double, int)} can multiply by exactly. It stops at 10^15 because anything of magnitude 1
+   * or more scaled further than that is past 2^52, where the fast path has no fraction left to round; more places
+   * always go through {@link BigDecimal}
+   */
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+  };
+
   private Util() { throw new UnsupportedOperationException("No instances"); }
 
   public static void sleep(long millis) {
@@ -88,11 +103,53 @@ public class Util {
     if (in == null) {
       return null;
     }
+    return round(in.doubleValue(), places);
+  }
+
+  /**
+   * Rounds half-even to the given number of decimal places, giving exactly the same result as going through
+   * {@link BigDecimal#setScale(int, RoundingMode)} without allocating. The value is scaled up in double arithmetic,
+   * with the rounding error of that multiplication recovered exactly (Dekker's two-product), so the nearest integer
+   * to the exact scaled value is known for certain unless it sits right on a tie. Only those values, and ones too
+   * large to scale, take the slow path through {@link BigDecimal}
+   */
+  public static double round(double in, int places) {
+    if (places >= 0 && places < POWERS_OF_TEN.length) {
+      final double scale = POWERS_OF_TEN[places];
+      final double scaled = in * scale;
+      if (Math.abs(scaled) < TWO_TO_THE_52) {
+        // in * scale == scaled + error exactly, and scaled - rounded is exact
+        final double error = productError(in, scale, scaled);
+        double rounded = Math.rint(scaled);
+        final double offset = (scaled - rounded) + error;
+        if (Math.abs(offset) > 0.5) {
+          rounded += Math.signum(offset);
+        } else if (Math.abs(offset) == 0.5 && error != 0) {
+          rounded = Double.NaN; // too close to a tie to call
+        }
+        if (!Double.isNaN(rounded)) {
+          return rounded == 0 ? 0.0 : rounded / scale;
+        }
+      }
+    }
     return new BigDecimal(in)
         .setScale(places, RoundingMode.HALF_EVEN)
         .doubleValue();
   }
 
+  /**
+   * @return the exact difference between {@code a * b} and its floating-point result {@code product}
+   */
+  private static double productError(double a, double b, double product) {
+    final double aSplit = SPLITTER * a;
+    final double aHigh = aSplit - (aSplit - a);
+    final double aLow = a - aHigh;
+    final double bSplit = SPLITTER * b;
+    final double bHigh = bSplit - (bSplit - b);
+    final double bLow = b - bHigh;
+    return ((aHigh * bHigh - product) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+  }
+
   @NotNull public static String joinToString(@NotNull Iterable<String> strings, @NotNull String join) {
     final StringBuilder sb = new StringBuilder();
     for (final String string : strings) {
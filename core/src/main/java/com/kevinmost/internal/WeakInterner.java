@@ -0,0 +1,86 @@
+package com.kevinmost.internal;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hands out one canonical instance of each distinct (by {@link Object#equals(Object)}) value, like {@link
+ * String#intern()}. Only weakly reachable from here, so canonical instances nobody else holds on to are collected.
+ * <p>
+ * Lock-free to read, since every response decoded on OkHttp's dispatcher threads interns through the same instance
+ */
+public final class WeakInterner<T> {
+
+  @NotNull private final ConcurrentMap<Ref<T>, Ref<T>> map = new ConcurrentHashMap<>();
+  @NotNull private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+
+  /**
+   * @return the canonical instance equal to {@code value}, which becomes that instance if there wasn't one yet
+   */
+  @NotNull public T intern(@NotNull T value) {
+    purge();
+    final Ref<T> existing = map.get(new Ref<>(value, null));
+    final T canonical = existing == null ? null : existing.get();
+    if (canonical != null) {
+      return canonical;
+    }
+    final Ref<T> ref = new Ref<>(value, collected);
+    for (; ; ) {
+      final Ref<T> raced = map.putIfAbsent(ref, ref);
+      if (raced == null) {
+        return value;
+      }
+      final T racedValue = raced.get();
+      if (racedValue != null) {
+        return racedValue;
+      }
+      map.remove(raced, raced); // collected since, so this value takes its place
+    }
+  }
+
+  public int size() {
+    purge();
+    return map.size();
+  }
+
+  private void purge() {
+    Reference<? extends T> ref;
+    while ((ref = collected.poll()) != null) {
+      map.remove(ref);
+    }
+  }
+
+  /**
+   * Equal to another ref while both still have equal values; once collected, only to itself, so that it can still be
+   * removed
+   */
+  private static final class Ref<T> extends WeakReference<T> {
+    private final int hashCode;
+
+    Ref(@NotNull T value, @Nullable ReferenceQueue<T> queue) {
+      super(value, queue);
+      hashCode = value.hashCode();
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof Ref)) {
+        return false;
+      }
+      final Object value = get();
+      return value != null && value.equals(((Ref<?>) o).get());
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.kevinmost.lifx;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Timestamps and byte counts for one call, for {@link LifxMetrics}. Rides along as the OkHttp {@link Request}'s tag so
+ * the client's interceptor can find it; only created when the client has metrics turned on
+ */
+final class CallTrace {
+
+  final long startNanos;
+  long networkStartNanos;
+  long networkEndNanos;
+  long bytesOut;
+  long bytesIn;
+
+  CallTrace() {
+    this(System.nanoTime());
+  }
+
+  private CallTrace(long startNanos) {
+    this.startNanos = startNanos;
+  }
+
+  /**
+   * A trace for one of several attempts at the same request that may be in flight at once, like a listing and its
+   * hedge. It times its own network round trip and counts its own bytes, but its queue and total times still start
+   * when the request did
+   */
+  @NotNull CallTrace forAttempt() {
+    return new CallTrace(startNanos);
+  }
+
+  @NotNull Request attachTo(@NotNull Request request) {
+    return request.newBuilder().tag(this).build();
+  }
+
+  @Nullable static CallTrace of(@NotNull Request request) {
+    final Object tag = request.tag();
+    return tag instanceof CallTrace ? (CallTrace) tag : null;
+  }
+
+  /**
+   * Sends {@code request} down the interceptor chain, timing it and counting the bytes of both bodies
+   */
+  @NotNull Response proceed(@NotNull Interceptor.Chain chain, @NotNull Request request) throws IOException {
+    final RequestBody body = request.body();
+    final Request counted = body == null ? request : request.newBuilder()
+        .method(request.method(), new CountingRequestBody(body))
+        .build();
+    networkStartNanos = System.nanoTime();
+    final Response response = chain.proceed(counted);
+    networkEndNanos = System.nanoTime();
+    final ResponseBody responseBody = response.body();
+    return responseBody == null
+        ? response
+        : response.newBuilder().body(new CountingResponseBody(responseBody)).build();
+  }
+
+  @NotNull RequestMetrics finish(
+      @NotNull LifxRequest<?> request,
+      @NotNull LifxResult<?> result,
+      int rateLimitRemaining
+  ) {
+    final long endNanos = System.nanoTime();
+    final long sentNanos = networkStartNanos == 0 ? endNanos : networkStartNanos;
+    final long receivedNanos = networkEndNanos == 0 ? endNanos : networkEndNanos;
+    return RequestMetrics.create(
+        request,
+        result,
+        false,
+        false,
+        sentNanos - startNanos,
+        receivedNanos - sentNanos,
+        endNanos - receivedNanos,
+        endNanos - startNanos,
+        bytesOut,
+        bytesIn,
+        rateLimitRemaining
+    );
+  }
+
+  private final class CountingRequestBody extends RequestBody {
+    @NotNull private final RequestBody delegate;
+
+    CountingRequestBody(@NotNull RequestBody delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override public MediaType contentType() {
+      return delegate.contentType();
+    }
+
+    @Override public long contentLength() throws IOException {
+      return delegate.contentLength();
+    }
+
+    @Override public void writeTo(BufferedSink sink) throws IOException {
+      final BufferedSink counting = Okio.buffer(new ForwardingSink(sink) {
+        @Override public void write(Buffer source, long byteCount) throws IOException {
+          super.write(source, byteCount);
+          bytesOut += byteCount;
+        }
+      });
+      delegate.writeTo(counting);
+      counting.emit();
+    }
+  }
+
+  private final class CountingResponseBody extends ResponseBody {
+    @NotNull private final ResponseBody delegate;
+    @NotNull private final BufferedSource source;
+
+    CountingResponseBody(@NotNull ResponseBody delegate) {
+      this.delegate = delegate;
+      this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+        @Override public long read(Buffer sink, long byteCount) throws IOException {
+          final long read = super.read(sink, byteCount);
+          if (read > 0) {
+            bytesIn += read;
+          }
+          return read;
+        }
+      });
+    }
+
+    @Override public MediaType contentType() {
+      return delegate.contentType();
+    }
+
+    @Override public long contentLength() {
+      return delegate.contentLength();
+    }
+
+    @Override public BufferedSource source() {
+      return source;
+    }
+  }
+}
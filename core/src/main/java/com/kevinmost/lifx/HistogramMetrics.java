@@ -0,0 +1,146 @@
+package com.kevinmost.lifx;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LifxMetrics} that keeps {@link LatencyHistogram}s of each phase of a request, plus outcome and byte counts,
+ * per request type. Cheap enough to leave on in production; {@link #toString()} gives a readable report
+ */
+public final class HistogramMetrics implements LifxMetrics {
+
+  @NotNull private final ConcurrentMap<Class<?>, Stats> stats = new ConcurrentHashMap<>();
+
+  @Override public void onRequest(@NotNull RequestMetrics metrics) {
+    Stats stats = this.stats.get(metrics.requestType());
+    if (stats == null) {
+      final Stats created = new Stats();
+      stats = this.stats.putIfAbsent(metrics.requestType(), created);
+      if (stats == null) {
+        stats = created;
+      }
+    }
+    stats.record(metrics);
+  }
+
+  /**
+   * @return null if no request of this type has completed yet
+   */
+  @Nullable public Stats stats(@NotNull Class<? extends LifxRequest<?>> requestType) {
+    return stats.get(requestType);
+  }
+
+  public void reset() {
+    for (final Stats stats : this.stats.values()) {
+      stats.reset();
+    }
+  }
+
+  @Override public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    for (final Map.Entry<Class<?>, Stats> entry : stats.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append('\n');
+      }
+      sb.append(entry.getKey().getSimpleName()).append(": ").append(entry.getValue());
+    }
+    return sb.toString();
+  }
+
+  public static final class Stats {
+    @NotNull public final LatencyHistogram total = new LatencyHistogram();
+    @NotNull public final LatencyHistogram queue = new LatencyHistogram();
+    @NotNull public final LatencyHistogram network = new LatencyHistogram();
+    @NotNull public final LatencyHistogram decode = new LatencyHistogram();
+
+    @NotNull private final AtomicLong successes = new AtomicLong();
+    @NotNull private final AtomicLong failures = new AtomicLong();
+    @NotNull private final AtomicLong networkErrors = new AtomicLong();
+    @NotNull private final AtomicLong cacheHits = new AtomicLong();
+    @NotNull private final AtomicLong deduplicated = new AtomicLong();
+    @NotNull private final AtomicLong bytesOut = new AtomicLong();
+    @NotNull private final AtomicLong bytesIn = new AtomicLong();
+
+    Stats() {}
+
+    void record(@NotNull RequestMetrics metrics) {
+      total.record(metrics.totalNanos());
+      if (metrics.cached()) {
+        cacheHits.incrementAndGet();
+      } else if (metrics.deduplicated()) {
+        deduplicated.incrementAndGet();
+      } else {
+        queue.record(metrics.queueNanos());
+        network.record(metrics.networkNanos());
+        decode.record(metrics.decodeNanos());
+      }
+      final LifxResult<?> result = metrics.result();
+      if (result.isSuccess()) {
+        successes.incrementAndGet();
+      } else if (result.isFailure()) {
+        failures.incrementAndGet();
+      } else {
+        networkErrors.incrementAndGet();
+      }
+      bytesOut.addAndGet(metrics.bytesOut());
+      bytesIn.addAndGet(metrics.bytesIn());
+    }
+
+    public long successes() {
+      return successes.get();
+    }
+
+    public long failures() {
+      return failures.get();
+    }
+
+    public long networkErrors() {
+      return networkErrors.get();
+    }
+
+    public long cacheHits() {
+      return cacheHits.get();
+    }
+
+    public long deduplicated() {
+      return deduplicated.get();
+    }
+
+    public long bytesOut() {
+      return bytesOut.get();
+    }
+
+    public long bytesIn() {
+      return bytesIn.get();
+    }
+
+    void reset() {
+      total.reset();
+      queue.reset();
+      network.reset();
+      decode.reset();
+      successes.set(0);
+      failures.set(0);
+      networkErrors.set(0);
+      cacheHits.set(0);
+      deduplicated.set(0);
+      bytesOut.set(0);
+      bytesIn.set(0);
+    }
+
+    @Override public String toString() {
+      return String.format(Locale.US,
+          "ok=%d failed=%d networkErrors=%d cached=%d deduplicated=%d bytesOut=%d bytesIn=%d"
+              + "\n  total   %s\n  queue   %s\n  network %s\n  decode  %s",
+          successes(), failures(), networkErrors(), cacheHits(), deduplicated(), bytesOut(), bytesIn(),
+          total, queue, network, decode
+      );
+    }
+  }
+}
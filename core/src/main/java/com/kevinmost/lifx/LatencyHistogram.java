@@ -0,0 +1,116 @@
+package com.kevinmost.lifx;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of nanosecond durations. Each power of two is split into 32 linear buckets, so percentiles are
+ * within about 3% of the true value, while recording is a couple of atomic increments into a fixed ~15KB table
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  @NotNull private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  @NotNull private final AtomicLong count = new AtomicLong();
+  @NotNull private final AtomicLong totalNanos = new AtomicLong();
+  @NotNull private final AtomicLong maxNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(index(nanos));
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    long max;
+    while (nanos > (max = maxNanos.get())) {
+      if (maxNanos.compareAndSet(max, nanos)) {
+        break;
+      }
+    }
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  public long maxNanos() {
+    return maxNanos.get();
+  }
+
+  public long meanNanos() {
+    final long count = count();
+    return count == 0 ? 0 : totalNanos.get() / count;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return an upper bound on the given percentile, accurate to the width of its bucket; 0 if nothing was recorded
+   */
+  public long percentileNanos(double percentile) {
+    final long count = count();
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBound(i), maxNanos());
+      }
+    }
+    return maxNanos();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+
+  /**
+   * e.g. {@code n=1200 mean=12.31ms p50=10.75ms p99=48.50ms p99.9=96.99ms max=103.25ms}
+   */
+  @Override public String toString() {
+    return String.format(Locale.US, "n=%d mean=%.2fms p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+        count(),
+        millis(meanNanos()),
+        millis(percentileNanos(50)),
+        millis(percentileNanos(99)),
+        millis(percentileNanos(99.9)),
+        millis(maxNanos())
+    );
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long upperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
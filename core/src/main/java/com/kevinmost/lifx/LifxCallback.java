@@ -0,0 +1,12 @@
+package com.kevinmost.lifx;
+
+import org.jetbrains.annotations.NotNull;
+
+public interface LifxCallback<T> {
+  /**
+   * Invoked on one of the {@link okhttp3.OkHttpClient}'s dispatcher threads once the request has completed, with the
+   * same {@link LifxResult} that a blocking {@link LifxRequest.Adapter#execute(LifxClient)} would have returned. Always
+   * invoked exactly once, unless the request's {@link java.util.concurrent.Future} is cancelled first
+   */
+  void onResult(@NotNull LifxResult<T> result);
+}
@@ -3,23 +3,57 @@ package com.kevinmost.lifx;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.kevinmost.internal.Util.assertRange;
 
 
 public interface LifxClient {
 
+  /**
+   * How much of this client's access-token rate limit is currently left
+   */
+  @NotNull RateLimit rateLimit();
+
   class Builder {
     @NotNull final String accessToken;
     @NotNull OkHttpClient client = new OkHttpClient();
     @NotNull HttpUrl baseURL = HttpUrl.parse("https://api.lifx.com");
+    boolean throttleToRateLimit = true;
+    long lightCacheTtlNanos = 0;
+    @Nullable LifxMetrics metrics = null;
+    @Nullable RetryPolicy retryPolicy = null;
+    boolean deduplicateListings = false;
+    boolean warmUp = false;
 
     public Builder(@NotNull String accessToken) {
       this.accessToken = accessToken;
     }
 
     public Builder(@NotNull Builder copy) {
-      this.accessToken = copy.accessToken;
+      this(copy.accessToken, copy);
+    }
+
+    /**
+     * A copy of {@code copy} for another access token
+     */
+    Builder(@NotNull String accessToken, @NotNull Builder copy) {
+      this.accessToken = accessToken;
       baseURL(copy.baseURL);
       client(copy.client);
+      throttleToRateLimit(copy.throttleToRateLimit);
+      this.lightCacheTtlNanos = copy.lightCacheTtlNanos;
+      metrics(copy.metrics);
+      retryPolicy(copy.retryPolicy);
+      deduplicateListings(copy.deduplicateListings);
+      warmUp(copy.warmUp);
     }
 
     @NotNull public Builder baseURL(@NotNull HttpUrl baseURL) {
@@ -32,8 +66,102 @@ public interface LifxClient {
       return this;
     }
 
+    /**
+     * Whether requests should be queued until the access token has rate-limit budget for them (the default), rather
+     * than sent right away and left to fail with a 429
+     */
+    @NotNull public Builder throttleToRateLimit(boolean throttleToRateLimit) {
+      this.throttleToRateLimit = throttleToRateLimit;
+      return this;
+    }
+
+    /**
+     * Serves {@link com.kevinmost.lifx.request.ListLightsRequest}s for {@code all}, {@code id:}, {@code label:},
+     * {@code group:}, {@code group_id:}, {@code location:}, and {@code location_id:} selectors from a listing of every
+     * light that is at most {@code ttl} old. The listing is refreshed in the background for as long as it keeps being
+     * read, and is dropped whenever a {@link com.kevinmost.lifx.request.SetLightsRequest} succeeds
+     */
+    @NotNull public Builder cacheLights(long ttl, @NotNull TimeUnit unit) {
+      assertRange("ttl", ttl, 1, Long.MAX_VALUE);
+      this.lightCacheTtlNanos = unit.toNanos(ttl);
+      return this;
+    }
+
+    /**
+     * Reports the timings, sizes, and outcome of every request to {@code metrics}, e.g. a {@link HistogramMetrics}.
+     * Off by default, in which case requests aren't instrumented at all
+     */
+    @NotNull public Builder metrics(@Nullable LifxMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Retries transient failures (and optionally hedges listings) under {@code retryPolicy}. Off by default, in which
+     * case every failure is handed straight back
+     */
+    @NotNull public Builder retryPolicy(@Nullable RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    /**
+     * Whether a {@link com.kevinmost.lifx.request.ListLightsRequest} should wait for an identical one (same selector)
+     * that is already in flight and share its result, rather than make its own call. Off by default. A listing whose
+     * result was shared gets an unmodifiable list, since the others got the same one
+     */
+    @NotNull public Builder deduplicateListings(boolean deduplicateListings) {
+      this.deduplicateListings = deduplicateListings;
+      return this;
+    }
+
+    /**
+     * Whether building a client should block until it's warmed up (off by default): connected to the
+     * {@link #baseURL(HttpUrl) API}, with every model's JSON adapter created, and with the code that encodes and
+     * decodes requests already loaded and run a number of times, so that its first requests skip most of the cold-start
+     * cost. Warming up makes no calls with the access token
+     */
+    @NotNull public Builder warmUp(boolean warmUp) {
+      this.warmUp = warmUp;
+      return this;
+    }
+
     @NotNull public final LifxClient build() {
-      return new LifxClientImpl(this);
+      return create(this, null);
+    }
+
+    /**
+     * Builds a client that is already {@link #warmUp(boolean) warmed up}, whether or not this builder warms up the
+     * clients it builds
+     */
+    @NotNull public final LifxClient buildWarm() {
+      return new Builder(this).warmUp(true).build();
+    }
+
+    /**
+     * Builds a client that spreads its requests across this builder's access token and {@code moreAccessTokens}, for
+     * more throughput than one token's rate limit allows. Every token must have access to the same lights, and gets a
+     * client configured like this one.
+     * <p>
+     * Requests for a given selector stick to one token, so that they're sent in order, and only move to another token
+     * while theirs has no rate-limit budget left and nothing queued. A
+     * {@link com.kevinmost.lifx.request.SetLightsRequest} goes by the selector of its first operation.
+     * {@link LifxClient#rateLimit()} reports the tokens' combined budget, and the tokens share one light cache
+     */
+    @NotNull public final LifxClient buildSharded(@NotNull String... moreAccessTokens) {
+      final Set<String> accessTokens = new LinkedHashSet<>();
+      accessTokens.add(accessToken);
+      for (final String moreAccessToken : moreAccessTokens) {
+        if (!accessTokens.add(moreAccessToken)) {
+          throw new IllegalArgumentException("Every access token must be distinct");
+        }
+      }
+      final List<LifxClientImpl> shards = new ArrayList<>(accessTokens.size());
+      for (final String shardAccessToken : accessTokens) {
+        // Every token sees the same lights, so they all share the first one's light cache and listings in flight
+        shards.add(create(new Builder(shardAccessToken, this), shards.isEmpty() ? null : shards.get(0)));
+      }
+      return new ShardedLifxClient(Collections.unmodifiableList(shards));
     }
 
     /**
@@ -43,5 +171,13 @@ public interface LifxClient {
     @NotNull public synchronized final void buildAsDefault() {
       LifxClientImpl.DEFAULT = build();
     }
+
+    @NotNull private static LifxClientImpl create(@NotNull Builder builder, @Nullable LifxClientImpl sharesWith) {
+      final LifxClientImpl client = new LifxClientImpl(builder, sharesWith);
+      if (builder.warmUp) {
+        WarmUp.run(client);
+      }
+      return client;
+    }
   }
 }
@@ -2,17 +2,45 @@ package com.kevinmost.lifx;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 import com.kevinmost.internal.AutoValueTypeAdapterFactory;
+import com.kevinmost.internal.InterningTypeAdapterFactory;
+import com.kevinmost.internal.JsonUtil;
+import com.kevinmost.internal.Util;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.LifxError;
+import com.kevinmost.lifx.model.LifxGroup;
+import com.kevinmost.lifx.model.LifxLocation;
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import com.kevinmost.lifx.request.SetLightsRequest;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-final class LifxClientImpl implements LifxClient {
+final class LifxClientImpl implements LifxClient, RequestExecutor {
 
   @Nullable static LifxClient DEFAULT = null;
 
@@ -20,24 +48,528 @@ final class LifxClientImpl implements LifxClient {
 
   @NotNull final HttpUrl baseURL;
   @NotNull final OkHttpClient client;
+  /**
+   * Signs every call with the access token, and keeps the rate limiter and metrics up to date with its responses
+   */
+  @NotNull final Interceptor authInterceptor;
 
   @NotNull final Gson gson;
 
+  @NotNull final RateLimiter rateLimiter;
+  final boolean throttleToRateLimit;
+
+  @Nullable final LightCache lightCache;
+
+  @Nullable final LifxMetrics metrics;
+
+  @Nullable final RetryPolicy retryPolicy;
+
+  final boolean deduplicateListings;
+  /**
+   * The listing currently in flight for each selector, for later identical listings to wait on instead of sending
+   */
+  @NotNull private final ConcurrentMap<String, SharedListing> listingsInFlight;
+
   LifxClientImpl(@NotNull Builder builder) {
+    this(builder, null);
+  }
+
+  /**
+   * @param sharesWith another client for the same lights, whose light cache and listings in flight this one should use
+   *     rather than keep its own, so that a change made through either is seen by both. The shared cache is refreshed
+   *     through {@code sharesWith}
+   */
+  LifxClientImpl(@NotNull Builder builder, @Nullable LifxClientImpl sharesWith) {
     accessToken = builder.accessToken;
     baseURL = builder.baseURL;
+    rateLimiter = RateLimiter.forAccessToken(baseURL, accessToken);
+    throttleToRateLimit = builder.throttleToRateLimit;
+    if (sharesWith != null) {
+      lightCache = sharesWith.lightCache;
+      listingsInFlight = sharesWith.listingsInFlight;
+    } else {
+      lightCache = builder.lightCacheTtlNanos > 0
+          ? new LightCache(this, builder.lightCacheTtlNanos, TimeUnit.NANOSECONDS)
+          : null;
+      listingsInFlight = new ConcurrentHashMap<>();
+    }
+    metrics = builder.metrics;
+    retryPolicy = builder.retryPolicy;
+    deduplicateListings = builder.deduplicateListings;
+    authInterceptor = new Interceptor() {
+      @Override public Response intercept(Chain chain) throws IOException {
+        final Request request = chain.request().newBuilder()
+            .addHeader("Authorization", "Bearer " + accessToken)
+            .build();
+        final CallTrace trace = CallTrace.of(request);
+        final Response response = trace == null ? chain.proceed(request) : trace.proceed(chain, request);
+        rateLimiter.update(response);
+        return response;
+      }
+    };
     client = builder.client.newBuilder()
-        .addInterceptor(new Interceptor() {
-          @Override public Response intercept(Chain chain) throws IOException {
-            return chain.proceed(chain.request().newBuilder()
-                .addHeader("Authorization", "Bearer " + accessToken)
-                .build()
-            );
-          }
-        })
+        .addInterceptor(authInterceptor)
         .build();
-    gson = new GsonBuilder()
+    gson = newGson();
+  }
+
+  /**
+   * @return a new Gson, set up the way every client's is. Each has interners of its own
+   */
+  @NotNull static Gson newGson() {
+    return new GsonBuilder()
         .registerTypeAdapterFactory(new AutoValueTypeAdapterFactory())
+        // Every light of a listing repeats a handful of groups, locations and colors, and labels repeat from one
+        // listing to the next; share one instance of each for as long as this client's lights hold on to it
+        .registerTypeAdapterFactory(
+            new InterningTypeAdapterFactory(LifxGroup.class, LifxLocation.class, LifxColor.class, String.class))
         .create();
   }
+
+  @NotNull @Override public RateLimit rateLimit() {
+    return rateLimiter.snapshot();
+  }
+
+  @NotNull @Override public <T> LifxResult<T> execute(@NotNull LifxRequest.Adapter<T> request) {
+    if (lightCache != null && request instanceof ListLightsRequest) {
+      final long startNanos = System.nanoTime();
+      final LifxResult<T> cached = fromCache(request);
+      if (cached != null) {
+        reportUnsent(request, cached, false, startNanos);
+        return cached;
+      }
+    }
+    if (deduplicateListings && request instanceof ListLightsRequest) {
+      return callShared(request);
+    }
+    return call(request);
+  }
+
+  @NotNull @Override public <T> Future<LifxResult<T>> enqueue(
+      @NotNull LifxRequest.Adapter<T> request,
+      @Nullable LifxCallback<T> callback
+  ) {
+    final PendingResult<T> pending = new PendingResult<>(callback);
+    if (lightCache != null && request instanceof ListLightsRequest) {
+      enqueueFromCache(request, pending, System.nanoTime());
+    } else {
+      sendShared(request, pending, System.nanoTime());
+    }
+    return pending;
+  }
+
+  /**
+   * Sends a request over the network, skipping the light cache
+   */
+  @NotNull
+  <T> PendingResult<T> send(@NotNull LifxRequest.Adapter<T> request, @Nullable LifxCallback<T> callback) {
+    final PendingResult<T> pending = new PendingResult<>(callback);
+    send(request, pending);
+    return pending;
+  }
+
+  @Nullable private <T> LifxResult<T> fromCache(@NotNull LifxRequest.Adapter<T> request) {
+    //noinspection ConstantConditions
+    LightCache.Snapshot snapshot = lightCache.fresh();
+    if (snapshot == null) {
+      final CountDownLatch refreshed = new CountDownLatch(1);
+      final AtomicReference<LightCache.Snapshot> holder = new AtomicReference<>();
+      lightCache.refresh(new LightCache.Listener() {
+        @Override public void onRefreshed(@Nullable LightCache.Snapshot snapshot) {
+          holder.set(snapshot);
+          refreshed.countDown();
+        }
+      });
+      try {
+        if (!refreshed.await(lightCache.refreshWaitNanos(), TimeUnit.NANOSECONDS)) {
+          return null; // make this listing's own call instead
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new LifxResult.NetworkError<>(request, new InterruptedIOException("Interrupted while refreshing"));
+      }
+      snapshot = holder.get();
+    }
+    return snapshot == null ? null : cachedResult(request, snapshot);
+  }
+
+  private <T> void enqueueFromCache(
+      @NotNull final LifxRequest.Adapter<T> request,
+      @NotNull final PendingResult<T> pending,
+      final long startNanos
+  ) {
+    //noinspection ConstantConditions
+    final LightCache.Snapshot snapshot = lightCache.fresh();
+    if (snapshot != null) {
+      final LifxResult<T> cached = cachedResult(request, snapshot);
+      if (cached != null) {
+        pending.complete(cached);
+        reportUnsent(request, cached, false, startNanos);
+      } else {
+        sendShared(request, pending, startNanos);
+      }
+      return;
+    }
+    lightCache.refresh(new LightCache.Listener() {
+      @Override public void onRefreshed(@Nullable LightCache.Snapshot snapshot) {
+        final LifxResult<T> cached = snapshot == null ? null : cachedResult(request, snapshot);
+        if (cached != null) {
+          pending.complete(cached);
+          reportUnsent(request, cached, false, startNanos);
+        } else {
+          sendShared(request, pending, startNanos);
+        }
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  private <T> LifxResult<T> cachedResult(
+      @NotNull LifxRequest.Adapter<T> request,
+      @NotNull LightCache.Snapshot snapshot
+  ) {
+    final ListLightsRequest listLights = (ListLightsRequest) request;
+    final List<Light> lights = snapshot.select(listLights.selector());
+    if (lights == null) {
+      return null;
+    }
+    return (LifxResult<T>) new LifxResult.Success<>(listLights, 200, lights);
+  }
+
+  /**
+   * Makes a blocking listing, or waits for an identical one that is already in flight and shares its result
+   */
+  @SuppressWarnings("unchecked")
+  @NotNull private <T> LifxResult<T> callShared(@NotNull LifxRequest.Adapter<T> request) {
+    final long startNanos = System.nanoTime();
+    final ListLightsRequest listing = (ListLightsRequest) request;
+    final String key = listing.selector().toString();
+    final SharedListing shared = new SharedListing();
+    SharedListing existing;
+    while ((existing = listingsInFlight.putIfAbsent(key, shared)) != null) {
+      if (!existing.join()) {
+        continue; // it already handed out its result, and so has left the map too
+      }
+      try {
+        existing.flight.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new LifxResult.NetworkError<>(request, new InterruptedIOException("Interrupted while waiting"));
+      } catch (ExecutionException e) {
+        throw (RuntimeException) e.getCause(); // PendingResult only ever fails with a RuntimeException
+      }
+      //noinspection ConstantConditions
+      final LifxResult<T> result = (LifxResult<T>) share(listing, existing.flight.result());
+      reportUnsent(request, result, true, startNanos);
+      return result;
+    }
+    final LifxResult<List<Light>> result;
+    try {
+      result = call(listing);
+    } catch (RuntimeException e) {
+      listingsInFlight.remove(key, shared);
+      shared.close();
+      shared.flight.fail(e);
+      throw e;
+    }
+    listingsInFlight.remove(key, shared);
+    final boolean joined = shared.close();
+    shared.flight.complete(result);
+    return (LifxResult<T>) (joined ? share(listing, result) : result);
+  }
+
+  /**
+   * Sends a request over the network, unless it is a listing and an identical one is already in flight, in which case
+   * {@code pending} is completed with that one's result instead. Cancelling {@code pending} never cancels a listing
+   * that others are waiting on
+   */
+  private <T> void sendShared(
+      @NotNull LifxRequest.Adapter<T> request,
+      @NotNull final PendingResult<T> pending,
+      final long startNanos
+  ) {
+    if (!deduplicateListings || !(request instanceof ListLightsRequest)) {
+      send(request, pending);
+      return;
+    }
+    final ListLightsRequest listing = (ListLightsRequest) request;
+    final String key = listing.selector().toString();
+    final SharedListing shared = new SharedListing();
+    SharedListing existing;
+    while ((existing = listingsInFlight.putIfAbsent(key, shared)) != null) {
+      if (existing.join()) {
+        final SharedListing joined = existing;
+        joined.flight.whenDone(new Runnable() {
+          @Override public void run() {
+            final LifxResult<T> result = sharedResult(listing, joined.flight, true);
+            reportUnsent(listing, result, true, startNanos);
+            pending.complete(result);
+          }
+        });
+        return;
+      }
+    }
+    shared.flight.whenDone(new Runnable() {
+      @Override public void run() {
+        listingsInFlight.remove(key, shared);
+        pending.complete(LifxClientImpl.<T>sharedResult(listing, shared.flight, shared.close()));
+      }
+    });
+    send(listing, shared.flight);
+  }
+
+  /**
+   * What one of the requests that got {@code flight}'s result is completed with
+   *
+   * @param share whether anyone else got the same result, so that it has to be {@link #share(ListLightsRequest,
+   *     LifxResult) shared}
+   */
+  @SuppressWarnings("unchecked")
+  @NotNull private static <T> LifxResult<T> sharedResult(
+      @NotNull ListLightsRequest listing,
+      @NotNull PendingResult<List<Light>> flight,
+      boolean share
+  ) {
+    final LifxResult<List<Light>> result = flight.result();
+    return (LifxResult<T>) (result == null
+        // The blocking listing it waited on threw; the callback can only be told with a result
+        ? new LifxResult.NetworkError<>(listing, new IOException("The shared listing failed", flight.exception()))
+        : share ? share(listing, result) : result);
+  }
+
+  /**
+   * Re-addresses a shared listing's result to one of the requests that got it. Every one of them gets a view of the
+   * same decoded list, so none of them can change it under the others
+   */
+  @NotNull private static LifxResult<List<Light>> share(
+      @NotNull ListLightsRequest request,
+      @NotNull LifxResult<List<Light>> result
+  ) {
+    if (result.isSuccess()) {
+      final List<Light> lights = Collections.unmodifiableList(result.asSuccess().get());
+      return new LifxResult.Success<>(request, result.asSuccess().httpCode, lights);
+    }
+    if (result.isFailure()) {
+      return new LifxResult.Failure<>(request, result.asFailure().httpCode, result.asFailure().get());
+    }
+    return new LifxResult.NetworkError<>(request, result.asNetworkError().get());
+  }
+
+  @NotNull private <T> LifxResult<T> call(@NotNull LifxRequest.Adapter<T> request) {
+    final CallTrace trace = metrics == null ? null : new CallTrace();
+    if (retryPolicy != null && retryPolicy.hedges() && request instanceof ListLightsRequest) {
+      return awaitHedged(request, trace);
+    }
+    if (retryPolicy != null) {
+      retryPolicy.deposit();
+    }
+    LifxResult<T> result;
+    for (int attempt = 1; ; attempt++) {
+      final Call call = newCall(request, trace);
+      if (throttleToRateLimit) {
+        try {
+          rateLimiter.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return new LifxResult.NetworkError<>(request, new InterruptedIOException("Interrupted while rate-limited"));
+        }
+      }
+      Response response = null;
+      IOException error = null;
+      try {
+        response = call.execute();
+      } catch (IOException e) {
+        error = e;
+      }
+      if (retryPolicy != null && (response == null || RetryPolicy.isRetryable(response.code()))) {
+        final long delayNanos = retryPolicy.delayNanos(attempt, response);
+        if (delayNanos >= 0 && retryPolicy.withdraw()) {
+          if (response != null) {
+            response.close();
+          }
+          try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new LifxResult.NetworkError<>(request, new InterruptedIOException("Interrupted while backing off"));
+          }
+          continue;
+        }
+      }
+      //noinspection ConstantConditions
+      result = response != null ? toResult(request, response) : new LifxResult.NetworkError<T>(request, error);
+      break;
+    }
+    report(request, result, trace);
+    return result;
+  }
+
+  /**
+   * Hedging needs two calls in flight at once, so blocking listings go through the async path and wait for it
+   */
+  @NotNull private <T> LifxResult<T> awaitHedged(@NotNull LifxRequest.Adapter<T> request, @Nullable CallTrace trace) {
+    final PendingResult<T> pending = new PendingResult<>(null);
+    //noinspection ConstantConditions
+    new RetryingCall<>(this, retryPolicy, request, pending, trace).start();
+    try {
+      return pending.get();
+    } catch (InterruptedException e) {
+      pending.cancel(true);
+      Thread.currentThread().interrupt();
+      return new LifxResult.NetworkError<>(request, new InterruptedIOException("Interrupted while waiting"));
+    } catch (ExecutionException e) {
+      throw (RuntimeException) e.getCause(); // PendingResult only ever fails with a RuntimeException
+    }
+  }
+
+  private <T> void send(@NotNull final LifxRequest.Adapter<T> request, @NotNull final PendingResult<T> pending) {
+    final CallTrace trace = metrics == null ? null : new CallTrace();
+    if (retryPolicy != null) {
+      new RetryingCall<>(this, retryPolicy, request, pending, trace).start();
+      return;
+    }
+    final Call call = newCall(request, trace);
+    pending.attach(call);
+    dispatch(call, new Callback() {
+      @Override public void onFailure(Call call, IOException e) {
+        final LifxResult<T> result = new LifxResult.NetworkError<>(request, e);
+        pending.complete(result);
+        report(request, result, trace);
+      }
+
+      @Override public void onResponse(Call call, Response response) {
+        final LifxResult<T> result = toResult(request, response);
+        pending.complete(result);
+        report(request, result, trace);
+      }
+    });
+  }
+
+  @NotNull Call newCall(@NotNull LifxRequest<?> request, @Nullable CallTrace trace) {
+    return client.newCall(build(request, trace));
+  }
+
+  /**
+   * Enqueues a call on OkHttp's dispatcher, once the rate limit allows if the client is throttling
+   */
+  void dispatch(@NotNull final Call call, @NotNull final Callback callback) {
+    if (throttleToRateLimit) {
+      rateLimiter.submit(call, new Runnable() {
+        @Override public void run() {
+          call.enqueue(callback);
+        }
+      });
+    } else {
+      call.enqueue(callback);
+    }
+  }
+
+  @NotNull private Request build(@NotNull LifxRequest<?> request, @Nullable CallTrace trace) {
+    final Request built = request.buildRequest(baseURL, gson);
+    return trace == null ? built : trace.attachTo(built);
+  }
+
+  void report(@NotNull LifxRequest<?> request, @NotNull LifxResult<?> result, @Nullable CallTrace trace) {
+    if (metrics != null && trace != null) {
+      metrics.onRequest(trace.finish(request, result, rateLimiter.snapshot().remaining()));
+    }
+  }
+
+  /**
+   * Reports a request that was answered without being sent: from the light cache, or by sharing an identical listing
+   * that was already in flight
+   */
+  private void reportUnsent(
+      @NotNull LifxRequest<?> request,
+      @NotNull LifxResult<?> result,
+      boolean deduplicated,
+      long startNanos
+  ) {
+    if (metrics != null) {
+      final int remaining = rateLimiter.snapshot().remaining();
+      metrics.onRequest(RequestMetrics.create(
+          request, result, !deduplicated, deduplicated, 0, 0, 0, System.nanoTime() - startNanos, 0, 0, remaining
+      ));
+    }
+  }
+
+  /**
+   * Maps a raw response onto a {@link LifxResult}. Shared by the blocking and the async paths, so both always agree on
+   * what counts as a {@link LifxResult.Success}, {@link LifxResult.Failure}, or {@link LifxResult.NetworkError}.
+   * <p>
+   * Successful bodies are decoded as they stream in; only error bodies are read fully and parsed into a tree. A body
+   * that can't be decoded is a {@link LifxResult.NetworkError} just like one that can't be read, so this never throws
+   * and every caller, callback, and metrics listener hears about it
+   */
+  @NotNull <T> LifxResult<T> toResult(@NotNull LifxRequest.Adapter<T> request, @NotNull Response response) {
+    final ResponseBody body = response.body();
+    try {
+      final int httpCode = response.code();
+      if (200 <= httpCode && httpCode < 300) {
+        final T value = request.unmarshal(gson.newJsonReader(body.charStream()), gson);
+        if (request instanceof SetLightsRequest) {
+          if (lightCache != null) {
+            lightCache.invalidate();
+          }
+          // Listings already in flight may predate the change, so later ones mustn't join them
+          listingsInFlight.clear();
+        }
+        return new LifxResult.Success<>(request, httpCode, value);
+      }
+      return new LifxResult.Failure<>(request, httpCode, parseErrors(body.string()));
+    } catch (IOException e) {
+      return new LifxResult.NetworkError<>(request, e);
+    } catch (RuntimeException e) {
+      return new LifxResult.NetworkError<>(request, new IOException("Couldn't decode the response", e));
+    } finally {
+      body.close();
+    }
+  }
+
+  @NotNull private List<LifxError> parseErrors(@NotNull String rawJSON) {
+    final JsonElement json;
+    try {
+      json = gson.fromJson(rawJSON, JsonElement.class);
+    } catch (JsonParseException e) {
+      return Collections.emptyList(); // e.g. an HTML error page from a proxy in front of the API
+    }
+    if (json == null || !json.isJsonObject()) {
+      return Collections.emptyList();
+    }
+    final JsonObject root = json.getAsJsonObject();
+    return root.has("errors")
+        ? Util.assertNotNull(JsonUtil.fromJSON(gson, root.get("errors"), new TypeToken<List<LifxError>>() {}))
+        : Collections.<LifxError>emptyList();
+  }
+
+  /**
+   * A listing in flight that identical ones can wait on rather than make their own call
+   */
+  private static final class SharedListing {
+    @NotNull final PendingResult<List<Light>> flight = new PendingResult<>(null);
+    private int joined;
+    private boolean closed;
+
+    /**
+     * @return false if it's too late to share this listing's result, since it has already been handed out
+     */
+    synchronized boolean join() {
+      if (closed) {
+        return false;
+      }
+      joined++;
+      return true;
+    }
+
+    /**
+     * Stops anyone else from joining, once this listing has left {@link #listingsInFlight}
+     *
+     * @return whether anyone joined, so that the result has to be shared with them
+     */
+    synchronized boolean close() {
+      closed = true;
+      return joined > 0;
+    }
+  }
 }
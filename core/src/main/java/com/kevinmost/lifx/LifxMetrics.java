@@ -0,0 +1,15 @@
+package com.kevinmost.lifx;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Hears about every request a {@link LifxClient} completes, whether it succeeded, failed, or never got a response. See
+ * {@link HistogramMetrics} for a ready-made implementation
+ */
+public interface LifxMetrics {
+  /**
+   * Invoked on whichever thread completed the request (the caller's for blocking requests, one of the
+   * {@link okhttp3.OkHttpClient}'s dispatcher threads otherwise), so implementations should be quick and thread-safe
+   */
+  void onRequest(@NotNull RequestMetrics metrics);
+}
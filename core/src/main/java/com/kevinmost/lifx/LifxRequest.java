@@ -2,68 +2,85 @@ package com.kevinmost.lifx;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
-import com.kevinmost.internal.JsonUtil;
-import com.kevinmost.internal.Util;
-import com.kevinmost.lifx.model.LifxError;
+import com.google.gson.stream.JsonReader;
 import okhttp3.HttpUrl;
 import okhttp3.Request;
-import okhttp3.Response;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.Future;
 
 public interface LifxRequest<T> {
   @NotNull Request buildRequest(@NotNull HttpUrl baseURL, @NotNull Gson gson);
   @NotNull T unmarshal(@NotNull JsonElement json, @NotNull Gson gson);
 
   abstract class Adapter<T> implements LifxRequest<T> {
+    /**
+     * Decodes a successful response straight off of the response body's stream. Requests with large responses should
+     * override this to read with their model's {@link com.google.gson.TypeAdapter}; by default the body is parsed into
+     * a tree and handed to {@link #unmarshal(JsonElement, Gson)}
+     */
+    @NotNull public T unmarshal(@NotNull JsonReader reader, @NotNull Gson gson) throws IOException {
+      return unmarshal(gson.getAdapter(JsonElement.class).read(reader), gson);
+    }
+
     @NotNull public final LifxResult<T> execute() {
+      return execute(defaultClient(".execute()"));
+    }
+
+    @NotNull public final LifxResult<T> execute(@NotNull LifxClient client) {
+      return ((RequestExecutor) client).execute(this);
+    }
+
+    @NotNull public final Future<LifxResult<T>> executeAsync() {
+      return executeAsync(defaultClient(".executeAsync()"), null);
+    }
+
+    @NotNull public final Future<LifxResult<T>> executeAsync(@NotNull LifxCallback<T> callback) {
+      return executeAsync(defaultClient(".executeAsync()"), callback);
+    }
+
+    @NotNull public final Future<LifxResult<T>> executeAsync(@NotNull LifxClient client) {
+      return executeAsync(client, null);
+    }
+
+    /**
+     * Enqueues this request on the client's {@link okhttp3.Dispatcher} instead of blocking the calling thread for the
+     * whole round trip. The returned {@link Future} and the (optional) callback both receive the same
+     * {@link LifxResult} that {@link #execute(LifxClient)} would have returned
+     */
+    @NotNull
+    public final Future<LifxResult<T>> executeAsync(@NotNull LifxClient client, @Nullable LifxCallback<T> callback) {
+      return ((RequestExecutor) client).enqueue(this, callback);
+    }
+
+    /**
+     * Runs {@code listener} once {@code future}, as returned from {@link #executeAsync(LifxClient, LifxCallback)}, is
+     * done for any reason: with a result, with an exception, or cancelled. It runs after the callback, if there is one,
+     * even if the callback throws
+     */
+    public static void whenDone(@NotNull Future<? extends LifxResult<?>> future, @NotNull Runnable listener) {
+      ((PendingResult<?>) future).whenDone(listener);
+    }
+
+    /**
+     * @return a new Gson, set up the way every {@link LifxClient}'s is, for requests that serialize their bodies ahead
+     * of time, before there's a client to ask for its own
+     */
+    @NotNull protected static Gson newGson() {
+      return LifxClientImpl.newGson();
+    }
+
+    @NotNull protected static LifxClient defaultClient(@NotNull String methodName) {
       final LifxClient defaultInstance = LifxClientImpl.DEFAULT;
       if (defaultInstance == null) {
         throw new IllegalStateException(
-            "Cannot call .execute() with the default LifxClient instance before calling LifxClient.Builder.buildAsDefault()"
+            "Cannot call " + methodName
+                + " with the default LifxClient instance before calling LifxClient.Builder.buildAsDefault()"
         );
       }
-      return execute(defaultInstance);
-    }
-
-    @NotNull public final LifxResult<T> execute(@NotNull LifxClient client) {
-      LifxClientImpl clientImpl = (LifxClientImpl) client;
-      final Response response;
-      try {
-        response = clientImpl.client.newCall(buildRequest(clientImpl.baseURL, clientImpl.gson)).execute();
-      } catch (IOException e) {
-        return new LifxResult.NetworkError<>(this, e);
-      }
-      final JsonElement json;
-      {
-        final String rawJSON;
-        try {
-          rawJSON = response.body().string();
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-        json = clientImpl.gson.fromJson(rawJSON, JsonElement.class);
-      }
-      final int httpCode = response.code();
-      if (200 <= httpCode && httpCode < 300) {
-        final T value = unmarshal(json, clientImpl.gson);
-        return new LifxResult.Success<>(this, httpCode, value);
-      }
-      final List<LifxError> errors;
-      if (json.isJsonObject()) {
-        final JsonObject root = json.getAsJsonObject();
-        errors = root.has("errors")
-            ? Util.assertNotNull(JsonUtil.fromJSON(clientImpl.gson, root.get("errors"), new TypeToken<List<LifxError>>() {}))
-            : Collections.<LifxError>emptyList();
-      } else {
-        errors = Collections.emptyList();
-      }
-      return new LifxResult.Failure<>(this, httpCode, errors);
+      return defaultInstance;
     }
   }
 }
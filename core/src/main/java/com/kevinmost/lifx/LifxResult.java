@@ -81,6 +81,9 @@ public abstract class LifxResult<T> {
     }
   }
 
+  /**
+   * The request never got a usable response: it couldn't be sent, or its response couldn't be read or decoded
+   */
   public static final class NetworkError<T> extends LifxResult<T> {
     @NotNull private final IOException e;
 
@@ -0,0 +1,210 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.internal.Scheduler;
+import com.kevinmost.lifx.model.FleetIndex;
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.LifxRequests;
+import okhttp3.OkHttpClient;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the most recent listing of every light on the account and answers {@link
+ * com.kevinmost.lifx.request.ListLightsRequest}s for any of the common selector kinds from it.
+ * <p>
+ * A listing is only ever served while it is younger than the TTL. As long as the cache keeps being read, it is
+ * refreshed in the background shortly before it expires; if it goes unread from one refresh to the next, the listing is
+ * evicted instead and the background refreshes stop until the next read
+ */
+final class LightCache {
+
+  /**
+   * How long a reader waits on a refresh when the HTTP client has no timeouts of its own
+   */
+  private static final long UNBOUNDED_REFRESH_WAIT_SECONDS = 60;
+
+  interface Listener {
+    /**
+     * @param snapshot the new listing, or null if refreshing it failed
+     */
+    void onRefreshed(@Nullable Snapshot snapshot);
+  }
+
+  @NotNull private final LifxClientImpl client;
+  private final long ttlNanos;
+
+  @Nullable private volatile Snapshot snapshot;
+  private volatile boolean readSinceRefresh;
+
+  @Nullable private List<Listener> refreshListeners; // non-null while a refresh is in flight
+  private long generation; // bumped by every invalidate()
+  private boolean sweepScheduled;
+
+  LightCache(@NotNull LifxClientImpl client, long ttl, @NotNull TimeUnit unit) {
+    this.client = client;
+    this.ttlNanos = unit.toNanos(ttl);
+  }
+
+  /**
+   * @return the current listing, if there is one that is still within its TTL
+   */
+  @Nullable Snapshot fresh() {
+    readSinceRefresh = true;
+    final Snapshot snapshot = this.snapshot;
+    return snapshot != null && System.nanoTime() - snapshot.fetchedAtNanos < ttlNanos ? snapshot : null;
+  }
+
+  /**
+   * Fetches a new listing of every light. If a refresh is already in flight, the listener waits for that one instead of
+   * starting another. Every listener hears back exactly once, however the refresh ends
+   */
+  void refresh(@NotNull Listener listener) {
+    final long startedGeneration;
+    synchronized (this) {
+      if (refreshListeners != null) {
+        refreshListeners.add(listener);
+        return;
+      }
+      refreshListeners = new ArrayList<>();
+      refreshListeners.add(listener);
+      startedGeneration = generation;
+    }
+    final PendingResult<List<Light>> pending;
+    try {
+      pending = client.send(LifxRequests.listLights(), null);
+    } catch (RuntimeException e) {
+      finishRefresh(null, startedGeneration);
+      throw e;
+    }
+    // Not the callback: this also runs if the result is cancelled or fails
+    pending.whenDone(new Runnable() {
+      @Override public void run() {
+        final LifxResult<List<Light>> result = pending.result();
+        Snapshot refreshed = null;
+        try {
+          if (result != null && result.isSuccess()) {
+            refreshed = new Snapshot(result.unwrap(), System.nanoTime());
+          }
+        } finally {
+          finishRefresh(refreshed, startedGeneration);
+        }
+      }
+    });
+  }
+
+  private void finishRefresh(@Nullable Snapshot refreshed, long startedGeneration) {
+    final List<Listener> listeners;
+    synchronized (this) {
+      if (generation != startedGeneration) {
+        refreshed = null; // invalidated while in flight, so it may predate the change
+      }
+      if (refreshed != null) {
+        snapshot = refreshed;
+        readSinceRefresh = false;
+        scheduleSweep();
+      }
+      listeners = refreshListeners;
+      refreshListeners = null;
+    }
+    //noinspection ConstantConditions
+    for (final Listener listener : listeners) {
+      listener.onRefreshed(refreshed);
+    }
+  }
+
+  /**
+   * How long a reader should block on a refresh before making its own call instead: as long as the HTTP client would
+   * take to give up on it
+   */
+  long refreshWaitNanos() {
+    final OkHttpClient http = client.client;
+    final int connect = http.connectTimeoutMillis();
+    final int read = http.readTimeoutMillis();
+    final int write = http.writeTimeoutMillis();
+    if (connect == 0 || read == 0 || write == 0) {
+      return TimeUnit.SECONDS.toNanos(UNBOUNDED_REFRESH_WAIT_SECONDS);
+    }
+    return TimeUnit.MILLISECONDS.toNanos((long) connect + read + write);
+  }
+
+  /**
+   * Drops the current listing, e.g. because a {@link com.kevinmost.lifx.request.SetLightsRequest} has just changed the
+   * state of some lights. A refresh that is already in flight is dropped too once it lands
+   */
+  synchronized void invalidate() {
+    generation++;
+    snapshot = null;
+  }
+
+  private void scheduleSweep() {
+    scheduleSweep(refreshAfterNanos());
+  }
+
+  private void scheduleSweep(long delayNanos) {
+    if (sweepScheduled) {
+      return;
+    }
+    sweepScheduled = true;
+    Scheduler.INSTANCE.schedule(new Runnable() {
+      @Override public void run() {
+        sweep();
+      }
+    }, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void sweep() {
+    synchronized (this) {
+      sweepScheduled = false;
+      final Snapshot snapshot = this.snapshot;
+      if (snapshot == null) {
+        return;
+      }
+      final long age = System.nanoTime() - snapshot.fetchedAtNanos;
+      if (age < refreshAfterNanos()) {
+        // The listing was replaced since this sweep was scheduled
+        scheduleSweep(refreshAfterNanos() - age);
+        return;
+      }
+      if (!readSinceRefresh) {
+        this.snapshot = null;
+        return;
+      }
+    }
+    refresh(new Listener() {
+      @Override public void onRefreshed(@Nullable Snapshot snapshot) {
+        // Nobody is waiting on background refreshes; a failed one just leaves the old listing to expire
+      }
+    });
+  }
+
+  /**
+   * Background refreshes start a little before the listing expires, so that readers of a busy cache never have to wait
+   * on one
+   */
+  private long refreshAfterNanos() {
+    return ttlNanos / 4 * 3;
+  }
+
+  static final class Snapshot {
+    @NotNull final FleetIndex index;
+    final long fetchedAtNanos;
+
+    Snapshot(@NotNull List<Light> lights, long fetchedAtNanos) {
+      this.index = FleetIndex.of(lights);
+      this.fetchedAtNanos = fetchedAtNanos;
+    }
+
+    /**
+     * @return the lights that the selector covers, or null if the selector is one that can't be answered locally (or
+     * covers no lights we know about, in which case the API should get the final say)
+     */
+    @Nullable List<Light> select(@NotNull Selector selector) {
+      return index.resolve(selector);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.internal.Scheduler;
+import com.kevinmost.lifx.model.FleetIndex;
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.LifxRequests;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * Polls a {@link com.kevinmost.lifx.request.ListLightsRequest} in the background and tells its {@link Listener}s which
+ * lights were added, removed, or changed since the previous poll. Lights are matched up by {@link Light#id()} and
+ * compared with {@link Light#equals(Object)}, so a light that was merely seen again doesn't count as changed.
+ * <p>
+ * The polling interval adapts to the fleet: every poll that finds a change drops it straight back to the minimum, and
+ * every poll that doesn't stretches it by half, up to the maximum. A failed poll, including one whose response couldn't
+ * be decoded, counts as one that found nothing. A 404, which is how the API answers a selector that no longer matches
+ * any light, is a poll that found no lights, so the last ones are reported removed.
+ * <p>
+ * Polls go through the client like any other listing, so they are rate-limited, retried, deduplicated, and served
+ * from the light cache according to how the client was built. Listeners are called on OkHttp's dispatcher threads, one
+ * poll at a time, and must not block. An exception thrown from a listener goes to the thread's
+ * {@link Thread.UncaughtExceptionHandler}, and doesn't stop the other listeners or the polling
+ */
+public final class LightWatcher {
+
+  public interface Listener {
+    /**
+     * Also called for every light found by the first poll
+     */
+    void onAdded(@NotNull Light light);
+
+    void onRemoved(@NotNull Light light);
+
+    void onChanged(@NotNull Light previous, @NotNull Light current);
+  }
+
+  private static final double BACKOFF = 1.5;
+
+  @NotNull private final LifxClient client;
+  @NotNull private final Selector selector;
+  private final long minIntervalNanos;
+  private final long maxIntervalNanos;
+
+  @NotNull private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  @Nullable private Map<String, Light> lights; // by id; null until the first poll succeeds
+  @Nullable private volatile FleetIndex index;
+  private long intervalNanos;
+  @Nullable private ScheduledFuture<?> nextPoll;
+  private boolean running;
+  /**
+   * Whether a poll is scheduled or in flight, which then schedules the next one itself. Set as soon as one is
+   * scheduled, so that a {@link #start()} can never start a second chain of polls alongside it
+   */
+  private boolean polling;
+
+  private LightWatcher(@NotNull Builder builder) {
+    client = builder.client;
+    selector = builder.selector;
+    minIntervalNanos = builder.minIntervalNanos;
+    maxIntervalNanos = builder.maxIntervalNanos;
+    intervalNanos = minIntervalNanos;
+  }
+
+  public void addListener(@NotNull Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(@NotNull Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Polls right away, and then keeps polling until {@link #stop()}ped. Does nothing if already running
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    intervalNanos = minIntervalNanos;
+    if (!polling) {
+      schedule(0); // otherwise the poll still pending from before the last stop() carries on
+    }
+  }
+
+  /**
+   * Stops polling. The result of a poll that is already in flight is thrown away. The last known state is kept, so
+   * after a restart only what changed in between is reported
+   */
+  public synchronized void stop() {
+    running = false;
+    if (nextPoll != null) {
+      if (nextPoll.cancel(false)) {
+        polling = false;
+      } // otherwise it has already fired, and its poll() sees that the watcher stopped
+      nextPoll = null;
+    }
+  }
+
+  /**
+   * @return the lights found by the most recent successful poll, or null if there hasn't been one yet
+   */
+  @Nullable public FleetIndex index() {
+    return index;
+  }
+
+  /**
+   * @return how long until the next poll, as currently adapted to the fleet
+   */
+  public synchronized long interval(@NotNull TimeUnit unit) {
+    return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void schedule(long delayNanos) {
+    polling = true;
+    nextPoll = Scheduler.INSTANCE.schedule(new Runnable() {
+      @Override public void run() {
+        poll();
+      }
+    }, delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void poll() {
+    synchronized (this) {
+      if (!running) {
+        polling = false;
+        return;
+      }
+    }
+    final Future<LifxResult<List<Light>>> future;
+    try {
+      future = LifxRequests.listLights(selector).executeAsync(client);
+    } catch (RuntimeException e) {
+      onPolled(false);
+      throw e;
+    }
+    LifxRequest.Adapter.whenDone(future, new Runnable() {
+      @Override public void run() {
+        // Null if the poll was cancelled or failed outright; either way it counts as a failed poll
+        final LifxResult<List<Light>> result = ((PendingResult<List<Light>>) future).result();
+        boolean changed = false;
+        try {
+          if (result != null && result.isSuccess()) {
+            changed = diff(result.unwrap());
+          } else if (result != null && result.isFailure() && result.asFailure().httpCode == 404) {
+            // How the API answers a selector that matches no lights
+            changed = diff(Collections.<Light>emptyList());
+          }
+        } finally {
+          onPolled(changed);
+        }
+      }
+    });
+  }
+
+  /**
+   * Schedules the next poll, however the last one went
+   */
+  private synchronized void onPolled(boolean changed) {
+    polling = false;
+    intervalNanos = changed
+        ? minIntervalNanos
+        : Math.min(maxIntervalNanos, (long) (intervalNanos * BACKOFF));
+    if (running) {
+      schedule(intervalNanos);
+    }
+  }
+
+  /**
+   * @return whether anything was added, removed, or changed. Always false once the watcher is stopped, since then
+   * the poll is thrown away rather than absorbed into the last known state without being reported
+   */
+  private synchronized boolean diff(@NotNull List<Light> current) {
+    if (!running) {
+      return false;
+    }
+    final Map<String, Light> previous = lights;
+    final Map<String, Light> next = new LinkedHashMap<>(current.size() * 2);
+    for (final Light light : current) {
+      next.put(light.id(), light);
+    }
+    lights = next;
+    index = FleetIndex.of(current);
+    boolean changed = false;
+    for (final Light light : next.values()) {
+      final Light before = previous == null ? null : previous.remove(light.id());
+      if (before == null) {
+        changed = true;
+        for (final Listener listener : listeners) {
+          try {
+            listener.onAdded(light);
+          } catch (RuntimeException e) {
+            uncaught(e);
+          }
+        }
+      } else if (!before.equals(light)) {
+        changed = true;
+        for (final Listener listener : listeners) {
+          try {
+            listener.onChanged(before, light);
+          } catch (RuntimeException e) {
+            uncaught(e);
+          }
+        }
+      }
+    }
+    if (previous != null) {
+      for (final Light light : previous.values()) {
+        changed = true;
+        for (final Listener listener : listeners) {
+          try {
+            listener.onRemoved(light);
+          } catch (RuntimeException e) {
+            uncaught(e);
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Hands a listener's exception to the thread's handler without unwinding the poll, so that the other listeners are
+   * still told and the watcher keeps polling
+   */
+  private static void uncaught(@NotNull RuntimeException e) {
+    final Thread thread = Thread.currentThread();
+    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+  }
+
+  public static final class Builder {
+    @NotNull private final LifxClient client;
+    @NotNull private Selector selector = Selector.ALL;
+    private long minIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+    private long maxIntervalNanos = TimeUnit.SECONDS.toNanos(60);
+
+    public Builder(@NotNull LifxClient client) {
+      this.client = client;
+    }
+
+    /**
+     * Which lights to watch. Defaults to {@link Selector#ALL}
+     */
+    @NotNull public Builder selector(@NotNull Selector selector) {
+      this.selector = selector;
+      return this;
+    }
+
+    /**
+     * How often to poll while the fleet is busy, and while it is idle. Defaults to 1s and 60s
+     */
+    @NotNull public Builder interval(long min, long max, @NotNull TimeUnit unit) {
+      assertRange("min", (double) min, 1, max);
+      this.minIntervalNanos = unit.toNanos(min);
+      this.maxIntervalNanos = unit.toNanos(max);
+      return this;
+    }
+
+    @NotNull public LightWatcher build() {
+      return new LightWatcher(this);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package com.kevinmost.lifx;
+
+import okhttp3.Call;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The {@link Future} handed back from {@link LifxRequest.Adapter#executeAsync(LifxClient)}. It is completed from the
+ * OkHttp callback, so no thread is held while the request is in flight
+ */
+final class PendingResult<T> implements Future<LifxResult<T>> {
+
+  @NotNull private final CountDownLatch done = new CountDownLatch(1);
+  @Nullable private final LifxCallback<T> callback;
+
+  @NotNull private final List<Call> calls = new ArrayList<>(1);
+  @Nullable private List<Runnable> listeners;
+  private volatile boolean cancelled;
+
+  @Nullable private LifxResult<T> result;
+  @Nullable private RuntimeException exception;
+
+  PendingResult(@Nullable LifxCallback<T> callback) {
+    this.callback = callback;
+  }
+
+  /**
+   * Ties a call to this result, so cancelling the result cancels the call. A retried or hedged request attaches one
+   * call per attempt
+   */
+  void attach(@NotNull Call call) {
+    synchronized (calls) {
+      calls.add(call);
+    }
+    if (cancelled) {
+      call.cancel();
+    }
+  }
+
+  void complete(@NotNull LifxResult<T> result) {
+    final List<Runnable> listeners;
+    synchronized (this) {
+      if (isDone()) {
+        return;
+      }
+      this.result = result;
+      done.countDown();
+      listeners = this.listeners;
+    }
+    try {
+      if (callback != null) {
+        callback.onResult(result);
+      }
+    } finally {
+      runAll(listeners); // even if the callback threw, so nothing waiting on this is left hanging
+    }
+  }
+
+  /**
+   * Fails this without telling the callback, which has no way to take an exception; only for results that are waited on
+   * with {@link #get()} or {@link #whenDone(Runnable)}. Everything a callback waits on is completed with a
+   * {@link LifxResult}, even when its response couldn't be decoded
+   */
+  void fail(@NotNull RuntimeException exception) {
+    final List<Runnable> listeners;
+    synchronized (this) {
+      if (isDone()) {
+        return;
+      }
+      this.exception = exception;
+      done.countDown();
+      listeners = this.listeners;
+    }
+    runAll(listeners);
+  }
+
+  /**
+   * Runs {@code listener} once this is completed or failed, or right away if it already has been
+   */
+  void whenDone(@NotNull Runnable listener) {
+    synchronized (this) {
+      if (!isDone()) {
+        if (listeners == null) {
+          listeners = new ArrayList<>(2);
+        }
+        listeners.add(listener);
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  /**
+   * What this was completed with, or null if it failed, was cancelled, or isn't done
+   */
+  @Nullable synchronized LifxResult<T> result() {
+    return result;
+  }
+
+  /**
+   * What this failed with, or null if it was completed or isn't done
+   */
+  @Nullable synchronized RuntimeException exception() {
+    return exception;
+  }
+
+  private static void runAll(@Nullable List<Runnable> listeners) {
+    if (listeners != null) {
+      for (final Runnable listener : listeners) {
+        listener.run();
+      }
+    }
+  }
+
+  /**
+   * Finishes this as cancelled, so that neither its callback nor {@link #get()} ever see a result, and cancels its
+   * calls. Listeners still run, since this is now done
+   */
+  @Override public boolean cancel(boolean mayInterruptIfRunning) {
+    final List<Runnable> listeners;
+    synchronized (this) {
+      if (isDone()) {
+        return false;
+      }
+      cancelled = true;
+      done.countDown();
+      listeners = this.listeners;
+    }
+    synchronized (calls) {
+      for (final Call call : calls) {
+        call.cancel();
+      }
+    }
+    runAll(listeners);
+    return true;
+  }
+
+  @Override public boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  @Override public LifxResult<T> get() throws InterruptedException, ExecutionException {
+    done.await();
+    return unwrap();
+  }
+
+  @Override public LifxResult<T> get(long timeout, @NotNull TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    if (!done.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+    return unwrap();
+  }
+
+  @NotNull private synchronized LifxResult<T> unwrap() throws ExecutionException {
+    if (cancelled) {
+      throw new CancellationException();
+    }
+    if (exception != null) {
+      throw new ExecutionException(exception);
+    }
+    //noinspection ConstantConditions
+    return result;
+  }
+}
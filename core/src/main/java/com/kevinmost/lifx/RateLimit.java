@@ -0,0 +1,38 @@
+package com.kevinmost.lifx;
+
+import com.google.auto.value.AutoValue;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A snapshot of how much of an access token's rate limit is left, as tracked from the {@code X-RateLimit-*} headers on
+ * every response
+ */
+@AutoValue
+public abstract class RateLimit {
+
+  @NotNull static RateLimit create(int limit, int remaining, long resetAtMillis, int queued) {
+    return new AutoValue_RateLimit(limit, remaining, resetAtMillis, queued);
+  }
+
+  /**
+   * How many requests the token may make per rate-limit window
+   */
+  public abstract int limit();
+
+  /**
+   * How many more requests can be sent right now without being queued
+   */
+  public abstract int remaining();
+
+  /**
+   * When the API said the current window resets, in epoch millis; 0 if no response has said so yet
+   */
+  public abstract long resetAtMillis();
+
+  /**
+   * How many requests are currently waiting for budget
+   */
+  public abstract int queued();
+
+  RateLimit() {} // AutoValue instances only
+}
@@ -0,0 +1,255 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.internal.Scheduler;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket for a single access token. The bucket refills continuously at the token's rate limit, so a burst gets
+ * smoothed out to the allowed rate instead of being sent all at once and then failing with a 429; the
+ * {@code X-RateLimit-*} headers on every response keep it honest about what the API thinks is left.
+ * <p>
+ * Requests that arrive while the bucket is empty are queued in order and sent from the shared {@link Scheduler} thread
+ * as budget frees up, so waiting for budget doesn't hold a thread per request. A call that is cancelled while it waits
+ * is let through without spending any budget, since OkHttp fails it without sending it
+ */
+final class RateLimiter {
+
+  /**
+   * The LiFX API's documented limit, used until a response tells us otherwise
+   */
+  private static final int DEFAULT_LIMIT = 120;
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+  /**
+   * Held weakly, since only clients need their bucket kept; once every client of a token is gone, so is its bucket
+   */
+  @NotNull private static final ConcurrentMap<String, WeakReference<RateLimiter>> BY_ACCESS_TOKEN =
+      new ConcurrentHashMap<>();
+
+  /**
+   * The LiFX rate limit is per access token, so every client built with the same token for the same API shares one
+   * bucket
+   */
+  @NotNull static RateLimiter forAccessToken(@NotNull HttpUrl baseURL, @NotNull String accessToken) {
+    purge();
+    final String key = baseURL + " " + accessToken;
+    final RateLimiter created = new RateLimiter();
+    final WeakReference<RateLimiter> ref = new WeakReference<>(created);
+    for (; ; ) {
+      final WeakReference<RateLimiter> raced = BY_ACCESS_TOKEN.putIfAbsent(key, ref);
+      if (raced == null) {
+        return created;
+      }
+      final RateLimiter existing = raced.get();
+      if (existing != null) {
+        return existing;
+      }
+      BY_ACCESS_TOKEN.remove(key, raced); // its clients are all gone, so start over with a fresh bucket
+    }
+  }
+
+  private static void purge() {
+    for (final Map.Entry<String, WeakReference<RateLimiter>> entry : BY_ACCESS_TOKEN.entrySet()) {
+      if (entry.getValue().get() == null) {
+        BY_ACCESS_TOKEN.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  @NotNull private final Queue<Waiting> waiting = new ArrayDeque<>();
+  private boolean drainScheduled;
+
+  private int limit = DEFAULT_LIMIT;
+  private double tokens = DEFAULT_LIMIT;
+  private long lastRefillNanos = System.nanoTime();
+  private long blockedUntilNanos = lastRefillNanos;
+  private long resetAtMillis;
+
+  private RateLimiter() {}
+
+  /**
+   * Runs {@code dispatch} as soon as there's budget for it: right away on the calling thread if the bucket has a token
+   * and nothing is queued ahead of it, otherwise later on the scheduler thread
+   */
+  void submit(@NotNull Runnable dispatch) {
+    submit(null, dispatch);
+  }
+
+  /**
+   * Like {@link #submit(Runnable)}, for a {@code dispatch} that sends {@code call}. If the call has been cancelled by
+   * the time it's its turn, it is dispatched without spending budget, since it won't be sent
+   */
+  void submit(@Nullable Call call, @NotNull Runnable dispatch) {
+    final Waiting submitted = new Waiting(call, dispatch);
+    synchronized (this) {
+      if (!waiting.isEmpty() || !(submitted.isCancelled() || tryTake())) {
+        waiting.add(submitted);
+        scheduleDrain();
+        return;
+      }
+    }
+    dispatch.run();
+  }
+
+  /**
+   * Blocks the calling thread until there's budget for one request
+   */
+  void acquire() throws InterruptedException {
+    final CountDownLatch permit = new CountDownLatch(1);
+    submit(new Runnable() {
+      @Override public void run() {
+        permit.countDown();
+      }
+    });
+    permit.await();
+  }
+
+  /**
+   * Reconciles the bucket with the {@code X-RateLimit-*} headers of a response. A 429 empties the bucket until the API
+   * says the window resets
+   */
+  void update(@NotNull Response response) {
+    final Integer limit = parseInt(response.header("X-RateLimit-Limit"));
+    final Integer remaining = parseInt(response.header("X-RateLimit-Remaining"));
+    final Long reset = parseLong(response.header("X-RateLimit-Reset"));
+    final Long retryAfter = parseLong(response.header("Retry-After"));
+    synchronized (this) {
+      refill();
+      final long nowMillis = System.currentTimeMillis();
+      if (limit != null && limit > 0) {
+        this.limit = limit;
+        tokens = Math.min(tokens, limit);
+      }
+      if (reset != null) {
+        // The API sends epoch seconds, but be lenient about a relative number of seconds too
+        resetAtMillis = reset > 1000000000L
+            ? TimeUnit.SECONDS.toMillis(reset)
+            : nowMillis + TimeUnit.SECONDS.toMillis(reset);
+      }
+      if (remaining != null) {
+        tokens = Math.min(tokens, remaining);
+      }
+      final boolean exhausted = response.code() == 429 || (remaining != null && remaining <= 0);
+      if (exhausted) {
+        tokens = 0;
+        final long waitMillis = retryAfter != null
+            ? TimeUnit.SECONDS.toMillis(retryAfter)
+            : resetAtMillis > nowMillis
+                ? resetAtMillis - nowMillis
+                : TimeUnit.NANOSECONDS.toMillis((long) nanosPerToken());
+        blockedUntilNanos = Math.max(blockedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis));
+      }
+      if (!waiting.isEmpty()) {
+        scheduleDrain();
+      }
+    }
+  }
+
+  @NotNull synchronized RateLimit snapshot() {
+    refill();
+    final int remaining = System.nanoTime() < blockedUntilNanos ? 0 : (int) tokens;
+    return RateLimit.create(limit, remaining, resetAtMillis, waiting.size());
+  }
+
+  private void drain() {
+    final List<Waiting> ready = new ArrayList<>();
+    synchronized (this) {
+      drainScheduled = false;
+      while (!waiting.isEmpty() && (waiting.peek().isCancelled() || tryTake())) {
+        ready.add(waiting.poll());
+      }
+      if (!waiting.isEmpty()) {
+        scheduleDrain();
+      }
+    }
+    for (final Waiting next : ready) {
+      next.dispatch.run();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (drainScheduled) {
+      return;
+    }
+    drainScheduled = true;
+    Scheduler.INSTANCE.schedule(new Runnable() {
+      @Override public void run() {
+        drain();
+      }
+    }, nanosUntilNextToken(), TimeUnit.NANOSECONDS);
+  }
+
+  private boolean tryTake() {
+    refill();
+    if (System.nanoTime() < blockedUntilNanos || tokens < 1) {
+      return false;
+    }
+    tokens--;
+    return true;
+  }
+
+  private long nanosUntilNextToken() {
+    final long now = System.nanoTime();
+    final long untilUnblocked = Math.max(0, blockedUntilNanos - now);
+    final long untilRefilled = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerToken());
+    return Math.max(untilUnblocked, untilRefilled);
+  }
+
+  private void refill() {
+    final long now = System.nanoTime();
+    final long from = Math.max(lastRefillNanos, blockedUntilNanos);
+    if (now > from) {
+      tokens = Math.min(limit, tokens + (now - from) / nanosPerToken());
+    }
+    lastRefillNanos = Math.max(lastRefillNanos, now);
+  }
+
+  private double nanosPerToken() {
+    return (double) WINDOW_NANOS / limit;
+  }
+
+  @Nullable private static Integer parseInt(@Nullable String header) {
+    final Long value = parseLong(header);
+    return value == null ? null : (int) Math.min(Integer.MAX_VALUE, value);
+  }
+
+  @Nullable private static Long parseLong(@Nullable String header) {
+    if (header == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(header.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static final class Waiting {
+    @Nullable private final Call call;
+    @NotNull final Runnable dispatch;
+
+    Waiting(@Nullable Call call, @NotNull Runnable dispatch) {
+      this.call = call;
+      this.dispatch = dispatch;
+    }
+
+    boolean isCancelled() {
+      return call != null && call.isCanceled();
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package com.kevinmost.lifx;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.Future;
+
+/**
+ * What a {@link LifxClient} does with the requests that are executed against it; every client implements it
+ */
+interface RequestExecutor {
+  @NotNull <T> LifxResult<T> execute(@NotNull LifxRequest.Adapter<T> request);
+
+  @NotNull
+  <T> Future<LifxResult<T>> enqueue(@NotNull LifxRequest.Adapter<T> request, @Nullable LifxCallback<T> callback);
+}
@@ -0,0 +1,156 @@
+package com.kevinmost.lifx;
+
+import com.google.auto.value.AutoValue;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import com.kevinmost.lifx.request.SetLightsRequest;
+import com.kevinmost.lifx.request.model.Operation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What one request cost, as reported to {@link LifxMetrics}. All durations are in nanoseconds
+ */
+@AutoValue
+public abstract class RequestMetrics {
+
+  @NotNull static RequestMetrics create(
+      @NotNull LifxRequest<?> request,
+      @NotNull LifxResult<?> result,
+      boolean cached,
+      boolean deduplicated,
+      long queueNanos,
+      long networkNanos,
+      long decodeNanos,
+      long totalNanos,
+      long bytesOut,
+      long bytesIn,
+      int rateLimitRemaining
+  ) {
+    return new AutoValue_RequestMetrics(
+        request.getClass(),
+        selectorKind(request),
+        operationCount(request),
+        result,
+        cached,
+        deduplicated,
+        queueNanos,
+        networkNanos,
+        decodeNanos,
+        totalNanos,
+        bytesOut,
+        bytesIn,
+        rateLimitRemaining
+    );
+  }
+
+  @NotNull public abstract Class<?> requestType();
+
+  /**
+   * The kind of selector the request targeted ({@code all}, {@code id}, {@code group}, ...), or {@code mixed} for a
+   * {@link SetLightsRequest} whose operations use different kinds; null for requests without a selector
+   */
+  @Nullable public abstract String selectorKind();
+
+  /**
+   * How many {@link Operation}s a {@link SetLightsRequest} carried; 0 for other requests
+   */
+  public abstract int operationCount();
+
+  @NotNull public abstract LifxResult<?> result();
+
+  /**
+   * Whether the request was answered from the client's light cache without going to the network
+   */
+  public abstract boolean cached();
+
+  /**
+   * Whether the request was a listing that waited for an identical one already in flight and shared its result,
+   * rather than going to the network itself
+   */
+  public abstract boolean deduplicated();
+
+  /**
+   * From being handed to the client until the request went out, including any wait for rate-limit budget or for a
+   * free {@link okhttp3.Dispatcher} slot
+   */
+  public abstract long queueNanos();
+
+  /**
+   * From the request going out until the response headers came back
+   */
+  public abstract long networkNanos();
+
+  /**
+   * Reading and decoding the response body. Since bodies are decoded as they stream in, this includes the time spent
+   * waiting on the body's bytes
+   */
+  public abstract long decodeNanos();
+
+  public abstract long totalNanos();
+
+  /**
+   * Request body bytes sent, or 0 for requests without a body
+   */
+  public abstract long bytesOut();
+
+  /**
+   * Response body bytes read, after any transparent decompression
+   */
+  public abstract long bytesIn();
+
+  /**
+   * How much rate-limit budget the access token had left once the request completed
+   */
+  public abstract int rateLimitRemaining();
+
+  /**
+   * The HTTP status code, or 0 if no response was received
+   */
+  public final int httpCode() {
+    final LifxResult<?> result = result();
+    if (result.isSuccess()) {
+      return result.asSuccess().httpCode;
+    }
+    return result.isFailure() ? result.asFailure().httpCode : 0;
+  }
+
+  /**
+   * How many {@link com.kevinmost.lifx.model.LifxError}s the API responded with
+   */
+  public final int errorCount() {
+    final LifxResult<?> result = result();
+    return result.isFailure() ? result.asFailure().get().size() : 0;
+  }
+
+  @Nullable private static String selectorKind(@NotNull LifxRequest<?> request) {
+    if (request instanceof ListLightsRequest) {
+      return selectorKind(((ListLightsRequest) request).selector());
+    }
+    if (request instanceof SetLightsRequest) {
+      String kind = null;
+      for (final Operation operation : ((SetLightsRequest) request).operations()) {
+        final String operationKind = selectorKind(operation.selector());
+        if (kind == null) {
+          kind = operationKind;
+        } else if (!kind.equals(operationKind)) {
+          return "mixed";
+        }
+      }
+      return kind;
+    }
+    return null;
+  }
+
+  @NotNull private static String selectorKind(@NotNull Selector selector) {
+    final String string = selector.toString();
+    final int colon = string.indexOf(':');
+    return colon < 0 ? string : string.substring(0, colon);
+  }
+
+  private static int operationCount(@NotNull LifxRequest<?> request) {
+    return request instanceof SetLightsRequest ? ((SetLightsRequest) request).operations().size() : 0;
+  }
+
+  RequestMetrics() {} // AutoValue instances only
+}
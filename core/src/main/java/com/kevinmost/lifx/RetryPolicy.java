@@ -0,0 +1,212 @@
+package com.kevinmost.lifx;
+
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * How a {@link LifxClient} retries requests that fail transiently: with a {@link LifxResult.NetworkError}, a 429, or a
+ * 500/502/503/504. Retries back off exponentially with full jitter, and never sooner than the API asked for through
+ * {@code Retry-After} or {@code X-RateLimit-Reset}.
+ * <p>
+ * Retries are paid for out of a budget that every request made with this policy tops up by a fraction of a retry, so
+ * during an outage the client sends at most that fraction more traffic than it would have without retries. Share one
+ * policy between clients to share the budget.
+ * <p>
+ * {@link com.kevinmost.lifx.request.ListLightsRequest}s can also be hedged: if the first attempt hasn't answered by
+ * the time most recent listings had, a second one is sent and whichever answers first wins. Hedges come out of the
+ * same budget
+ */
+public final class RetryPolicy {
+
+  /**
+   * How many listings to time before hedging kicks in, so the hedge delay isn't a guess
+   */
+  private static final int MIN_HEDGE_SAMPLES = 20;
+
+  /**
+   * How many listings each of the two latency windows holds, so that the hedge delay follows the API's latency as it
+   * drifts rather than averaging over every listing ever made
+   */
+  static final int HEDGE_WINDOW_SAMPLES = 500;
+
+  final int maxAttempts;
+  private final long baseDelayNanos;
+  private final long maxDelayNanos;
+  private final double budgetRatio;
+  private final double budgetBurst;
+  private final double hedgePercentile;
+
+  // Listings are recorded into the current window; once it's full it becomes the previous one, and the old previous
+  // window is emptied to take its place
+  @NotNull private LatencyHistogram listLatency = new LatencyHistogram();
+  @NotNull private LatencyHistogram previousListLatency = new LatencyHistogram();
+
+  private double budget;
+
+  private RetryPolicy(@NotNull Builder builder) {
+    maxAttempts = builder.maxAttempts;
+    baseDelayNanos = builder.baseDelayNanos;
+    maxDelayNanos = builder.maxDelayNanos;
+    budgetRatio = builder.budgetRatio;
+    budgetBurst = builder.budgetBurst;
+    hedgePercentile = builder.hedgePercentile;
+    budget = budgetBurst;
+  }
+
+  static boolean isRetryable(int httpCode) {
+    return httpCode == 429 || httpCode == 500 || httpCode == 502 || httpCode == 503 || httpCode == 504;
+  }
+
+  /**
+   * Tops up the retry budget; called once per request, not per attempt
+   */
+  synchronized void deposit() {
+    budget = Math.min(budgetBurst, budget + budgetRatio);
+  }
+
+  /**
+   * @return whether there was budget for another attempt, which has now been spent
+   */
+  synchronized boolean withdraw() {
+    if (budget < 1) {
+      return false;
+    }
+    budget--;
+    return true;
+  }
+
+  /**
+   * How long to wait before the attempt after {@code attempt} (1-based), or -1 to give up instead: when attempts have
+   * run out, or when the API asked for a longer wait than the maximum backoff. Doesn't touch the budget
+   *
+   * @param response the failed attempt's response, or null if it failed without one
+   */
+  long delayNanos(int attempt, @Nullable Response response) {
+    if (attempt >= maxAttempts) {
+      return -1;
+    }
+    final long ceiling = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt - 1, 30));
+    final long jittered = (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+    final long askedFor = response == null ? 0 : askedForNanos(response);
+    if (askedFor > maxDelayNanos) {
+      return -1;
+    }
+    return Math.max(jittered, askedFor);
+  }
+
+  /**
+   * How long after the first attempt of a listing to send a hedge, or -1 if hedging is off or still warming up. Only
+   * the most recent listings count: those in the current window once it has enough of them, otherwise the previous
+   * window's
+   */
+  synchronized long hedgeDelayNanos() {
+    if (hedgePercentile <= 0) {
+      return -1;
+    }
+    final LatencyHistogram recent = listLatency.count() >= MIN_HEDGE_SAMPLES ? listLatency : previousListLatency;
+    return recent.count() < MIN_HEDGE_SAMPLES ? -1 : recent.percentileNanos(hedgePercentile);
+  }
+
+  boolean hedges() {
+    return hedgePercentile > 0;
+  }
+
+  synchronized void recordListLatency(long nanos) {
+    if (listLatency.count() >= HEDGE_WINDOW_SAMPLES) {
+      final LatencyHistogram full = listLatency;
+      listLatency = previousListLatency;
+      listLatency.reset();
+      previousListLatency = full;
+    }
+    listLatency.record(nanos);
+  }
+
+  private static long askedForNanos(@NotNull Response response) {
+    final Long retryAfter = parseLong(response.header("Retry-After"));
+    if (retryAfter != null) {
+      return TimeUnit.SECONDS.toNanos(retryAfter);
+    }
+    final Long remaining = parseLong(response.header("X-RateLimit-Remaining"));
+    final Long reset = parseLong(response.header("X-RateLimit-Reset"));
+    if (response.code() == 429 || (remaining != null && remaining <= 0)) {
+      if (reset != null) {
+        // Epoch seconds, as with RateLimiter
+        final long untilReset = TimeUnit.SECONDS.toMillis(reset) - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, untilReset));
+      }
+    }
+    return 0;
+  }
+
+  @Nullable private static Long parseLong(@Nullable String header) {
+    if (header == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(header.trim());
+    } catch (NumberFormatException e) {
+      return null; // e.g. an HTTP-date Retry-After, which the API doesn't send
+    }
+  }
+
+  public static final class Builder {
+    private int maxAttempts = 3;
+    private long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private long maxDelayNanos = TimeUnit.SECONDS.toNanos(10);
+    private double budgetRatio = 0.1;
+    private double budgetBurst = 10;
+    private double hedgePercentile = 0;
+
+    /**
+     * How many times a request may be sent in total, counting the first attempt but not hedges. Defaults to 3
+     */
+    @NotNull public Builder maxAttempts(int maxAttempts) {
+      assertRange("maxAttempts", maxAttempts, 1, Integer.MAX_VALUE);
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Retry {@code n} waits a random time of up to {@code base * 2^(n-1)}, capped at {@code max}. If the API asks for
+     * a longer wait than {@code max}, the failure is returned instead. Defaults to 100ms and 10s
+     */
+    @NotNull public Builder backoff(long base, long max, @NotNull TimeUnit unit) {
+      assertRange("base", (double) base, 1, max);
+      this.baseDelayNanos = unit.toNanos(base);
+      this.maxDelayNanos = unit.toNanos(max);
+      return this;
+    }
+
+    /**
+     * Each request earns {@code ratio} of a retry, and up to {@code burst} retries can be saved up. Defaults to 0.1
+     * and 10: after an outage starts, at most 10 retries plus one for every 10 requests
+     */
+    @NotNull public Builder retryBudget(double ratio, int burst) {
+      assertRange("ratio", ratio, 0, 1);
+      assertRange("burst", burst, 0, Integer.MAX_VALUE);
+      this.budgetRatio = ratio;
+      this.budgetBurst = burst;
+      return this;
+    }
+
+    /**
+     * Hedges a {@link com.kevinmost.lifx.request.ListLightsRequest} once it has been in flight for longer than
+     * {@code percentile} percent of recent listings (no more than the last 500 or so), e.g. 95. Off by default
+     */
+    @NotNull public Builder hedgeListLights(double percentile) {
+      assertRange("percentile", percentile, 1, 100);
+      this.hedgePercentile = percentile;
+      return this;
+    }
+
+    @NotNull public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.internal.Scheduler;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One asynchronous request sent under a {@link RetryPolicy}: its first attempt, any retries, and at most one hedge.
+ * The first attempt to come back with a final answer completes the {@link PendingResult}; a transient failure is only
+ * retried once no other attempt is still in flight to answer instead
+ */
+final class RetryingCall<T> {
+
+  @NotNull private final LifxClientImpl client;
+  @NotNull private final RetryPolicy policy;
+  @NotNull private final LifxRequest.Adapter<T> request;
+  @NotNull private final PendingResult<T> pending;
+  @Nullable private final CallTrace trace; // only for when the request started; each attempt traces itself
+
+  @NotNull private final List<Call> calls = new ArrayList<>(2);
+  private int attempts;
+  private int inFlight;
+  private boolean hedged;
+  private boolean finished;
+
+  RetryingCall(
+      @NotNull LifxClientImpl client,
+      @NotNull RetryPolicy policy,
+      @NotNull LifxRequest.Adapter<T> request,
+      @NotNull PendingResult<T> pending,
+      @Nullable CallTrace trace
+  ) {
+    this.client = client;
+    this.policy = policy;
+    this.request = request;
+    this.pending = pending;
+    this.trace = trace;
+  }
+
+  void start() {
+    policy.deposit();
+    send(false);
+    final long hedgeDelayNanos = request instanceof ListLightsRequest ? policy.hedgeDelayNanos() : -1;
+    if (hedgeDelayNanos >= 0) {
+      Scheduler.INSTANCE.schedule(new Runnable() {
+        @Override public void run() {
+          hedge();
+        }
+      }, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void hedge() {
+    synchronized (this) {
+      if (pending.isDone() || hedged || inFlight == 0 || !policy.withdraw()) {
+        return;
+      }
+      hedged = true;
+    }
+    send(true);
+  }
+
+  private void send(boolean hedge) {
+    final int attempt;
+    synchronized (this) {
+      if (!hedge) {
+        attempts++;
+      }
+      attempt = attempts;
+      inFlight++;
+    }
+    final CallTrace attemptTrace = trace == null ? null : trace.forAttempt();
+    final Call call = client.newCall(request, attemptTrace);
+    synchronized (this) {
+      calls.add(call);
+    }
+    pending.attach(call);
+    final long startNanos = System.nanoTime();
+    client.dispatch(call, new Callback() {
+      @Override public void onFailure(Call call, IOException e) {
+        failed(attempt, attemptTrace, null, e);
+      }
+
+      @Override public void onResponse(Call call, Response response) {
+        if (RetryPolicy.isRetryable(response.code())) {
+          failed(attempt, attemptTrace, response, null);
+          return;
+        }
+        final LifxResult<T> result;
+        try {
+          result = client.toResult(request, response);
+        } finally {
+          // Only once the body has been read: a listing whose body trickles in is still worth hedging
+          synchronized (RetryingCall.this) {
+            inFlight--;
+          }
+        }
+        if (result.isSuccess() && request instanceof ListLightsRequest) {
+          policy.recordListLatency(System.nanoTime() - startNanos);
+        }
+        finish(result, attemptTrace);
+      }
+    });
+  }
+
+  /**
+   * An attempt failed transiently, with either a retryable response or an exception
+   */
+  private void failed(
+      int attempt,
+      @Nullable CallTrace attemptTrace,
+      @Nullable Response response,
+      @Nullable IOException e
+  ) {
+    final boolean othersInFlight;
+    synchronized (this) {
+      othersInFlight = --inFlight > 0;
+    }
+    if (pending.isDone() || othersInFlight) {
+      if (response != null) {
+        response.close();
+      }
+      return;
+    }
+    final long delayNanos = policy.delayNanos(attempt, response);
+    if (delayNanos >= 0 && !pending.isCancelled() && policy.withdraw()) {
+      if (response != null) {
+        response.close();
+      }
+      Scheduler.INSTANCE.schedule(new Runnable() {
+        @Override public void run() {
+          if (!pending.isDone()) {
+            send(false);
+          }
+        }
+      }, delayNanos, TimeUnit.NANOSECONDS);
+      return;
+    }
+    //noinspection ConstantConditions
+    finish(response != null
+        ? client.toResult(request, response)
+        : new LifxResult.NetworkError<T>(request, e),
+        attemptTrace
+    );
+  }
+
+  /**
+   * @param attemptTrace the trace of the attempt that answered, which is what gets reported
+   */
+  private void finish(@NotNull LifxResult<T> result, @Nullable CallTrace attemptTrace) {
+    final Call[] losers;
+    synchronized (this) {
+      if (finished) {
+        return; // the other attempt of a hedged pair already answered
+      }
+      finished = true;
+      losers = hedged ? calls.toArray(new Call[calls.size()]) : new Call[0];
+    }
+    pending.complete(result);
+    for (final Call call : losers) {
+      call.cancel(); // a no-op for the call that just answered
+    }
+    client.report(request, result, attemptTrace);
+  }
+}
@@ -0,0 +1,175 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import com.kevinmost.lifx.request.ProjectedListLightsRequest;
+import com.kevinmost.lifx.request.SetLightsRequest;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads requests across several access tokens that all have access to the same lights, one {@link LifxClientImpl}
+ * (and so one rate limit) per token.
+ * <p>
+ * Every selector has a home token, so requests for the same lights go out in order on the same token. A request only
+ * leaves its home token while that token has no budget left and no requests queued for budget, for whichever token has
+ * the most; requests without a selector always go to the token with the most budget left. Either way, a selector is
+ * pinned to the token its requests went to for as long as any of them are queued or in flight, so that requests for
+ * the same lights never run on two tokens at once, not even while failing over or once the home token has budget
+ * again.
+ * <p>
+ * A {@link SetLightsRequest} is routed by the selector of its first operation only. Its other operations may target
+ * lights whose own home is another token, so a batch is only ordered with respect to requests for its first selector;
+ * callers that need every light's changes kept in order should lead each batch with the same selector, e.g.
+ * {@link Selector#ALL} for batches that cover the whole fleet.
+ * <p>
+ * The shards share one light cache and one set of listings in flight (see
+ * {@link LifxClientImpl#LifxClientImpl(LifxClient.Builder, LifxClientImpl)}), so a change made on any token invalidates
+ * what every token would have served
+ */
+final class ShardedLifxClient implements LifxClient, RequestExecutor {
+
+  @NotNull private final List<LifxClientImpl> shards;
+  /**
+   * The token each selector with requests queued or in flight is pinned to. Guarded by itself
+   */
+  @NotNull private final Map<Selector, Pin> pins = new HashMap<>();
+
+  ShardedLifxClient(@NotNull List<LifxClientImpl> shards) {
+    this.shards = shards;
+  }
+
+  /**
+   * The combined rate limit of every token
+   */
+  @NotNull @Override public RateLimit rateLimit() {
+    int limit = 0;
+    int remaining = 0;
+    long resetAtMillis = 0;
+    int queued = 0;
+    for (final LifxClientImpl shard : shards) {
+      final RateLimit rateLimit = shard.rateLimit();
+      limit += rateLimit.limit();
+      remaining += rateLimit.remaining();
+      resetAtMillis = Math.max(resetAtMillis, rateLimit.resetAtMillis());
+      queued += rateLimit.queued();
+    }
+    return RateLimit.create(limit, remaining, resetAtMillis, queued);
+  }
+
+  @NotNull @Override public <T> LifxResult<T> execute(@NotNull LifxRequest.Adapter<T> request) {
+    final Selector selector = selectorOf(request);
+    if (selector == null) {
+      return shardFor(null).execute(request);
+    }
+    final LifxClientImpl shard = pin(selector);
+    try {
+      return shard.execute(request);
+    } finally {
+      unpin(selector);
+    }
+  }
+
+  @NotNull @Override public <T> Future<LifxResult<T>> enqueue(
+      @NotNull LifxRequest.Adapter<T> request,
+      @Nullable LifxCallback<T> callback
+  ) {
+    final Selector selector = selectorOf(request);
+    if (selector == null) {
+      return shardFor(null).enqueue(request, callback);
+    }
+    final Future<LifxResult<T>> future;
+    try {
+      future = pin(selector).enqueue(request, callback);
+    } catch (RuntimeException e) {
+      unpin(selector);
+      throw e;
+    }
+    ((PendingResult<T>) future).whenDone(new Runnable() {
+      @Override public void run() {
+        unpin(selector);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * @return the token that {@code selector} is pinned to, pinning it first if it has nothing queued or in flight. Each
+   * call must be followed by an {@link #unpin} once its request is done
+   */
+  @NotNull private LifxClientImpl pin(@NotNull Selector selector) {
+    synchronized (pins) {
+      Pin pin = pins.get(selector);
+      if (pin == null) {
+        pins.put(selector, pin = new Pin(shardFor(selector)));
+      }
+      pin.requests++;
+      return pin.shard;
+    }
+  }
+
+  private void unpin(@NotNull Selector selector) {
+    synchronized (pins) {
+      final Pin pin = pins.get(selector);
+      if (pin != null && --pin.requests == 0) {
+        pins.remove(selector);
+      }
+    }
+  }
+
+  @NotNull private LifxClientImpl shardFor(@Nullable Selector selector) {
+    LifxClientImpl best = null;
+    int bestRemaining = -1;
+    if (selector != null) {
+      best = shards.get((selector.hashCode() & Integer.MAX_VALUE) % shards.size());
+      final RateLimit home = best.rateLimit();
+      bestRemaining = home.remaining();
+      if (bestRemaining > 0 || home.queued() > 0) {
+        // Moving on while earlier requests are still queued on the home token would let this one overtake them
+        return best;
+      }
+    }
+    for (final LifxClientImpl shard : shards) {
+      final int remaining = shard.rateLimit().remaining();
+      if (remaining > bestRemaining) {
+        best = shard;
+        bestRemaining = remaining;
+      }
+    }
+    //noinspection ConstantConditions
+    return best;
+  }
+
+  private static final class Pin {
+    @NotNull final LifxClientImpl shard;
+    int requests;
+
+    Pin(@NotNull LifxClientImpl shard) {
+      this.shard = shard;
+    }
+  }
+
+  /**
+   * The selector that a request is routed by. A {@link SetLightsRequest} is routed by its first operation, so a batch
+   * that always leads with the same selector always lands on the same token; see the class docs for what that means
+   * for its other operations
+   */
+  @Nullable private static Selector selectorOf(@NotNull LifxRequest<?> request) {
+    if (request instanceof ListLightsRequest) {
+      return ((ListLightsRequest) request).selector();
+    }
+    if (request instanceof ProjectedListLightsRequest) {
+      return ((ProjectedListLightsRequest) request).selector();
+    }
+    if (request instanceof SetLightsRequest) {
+      final SetLightsRequest setLights = (SetLightsRequest) request;
+      return setLights.operations().isEmpty() ? null : setLights.operations().get(0).selector();
+    }
+    return null;
+  }
+}
@@ -0,0 +1,157 @@
+package com.kevinmost.lifx;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.LifxError;
+import com.kevinmost.lifx.model.LifxGroup;
+import com.kevinmost.lifx.model.LifxLocation;
+import com.kevinmost.lifx.model.LifxProduct;
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.LightField;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import com.kevinmost.lifx.request.SetLightsRequest;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Does what it can of what makes a client's first requests slower than the rest, before it's handed out: connects to
+ * the API, creates the {@link com.google.gson.TypeAdapter} of every model, and runs listings and set-lights requests
+ * made up of synthetic lights through the same encoding and decoding as real ones. That loads and initializes every
+ * class involved and gives the JIT a profile of the hot paths to start compiling from, but a short warm-up can't
+ * guarantee that any of it has actually been compiled by the time the client is handed out
+ */
+final class WarmUp {
+
+  private static final int PASSES = 20;
+  private static final long PRECONNECT_TIMEOUT_SECONDS = 5;
+  private static final int LIGHTS_PER_PASS = 50;
+
+  /**
+   * A light as the API lists it: %1$d is its index, %2$d its hue. Its product is one of the {@link
+   * LifxProduct.Defaults} exactly, so that decoding it doesn't register anything with
+   * {@link com.kevinmost.lifx.model.LifxProducts}
+   */
+  @NotNull private static final String LIGHT_FORMAT = "{\"id\":\"warmup%1$d\","
+      + "\"uuid\":\"00000000-0000-0000-0000-%1$012d\",\"label\":\"Warm-up %1$d\",\"connected\":true,\"power\":\"on\","
+      + "\"color\":{\"hue\":%2$d,\"saturation\":0.5,\"kelvin\":3500},\"infrared\":null,\"brightness\":0.5,"
+      + "\"group\":{\"id\":\"warmup_group\",\"name\":\"Warm-up\"},"
+      + "\"location\":{\"id\":\"warmup_location\",\"name\":\"Warm-up\"},"
+      + "\"last_seen\":\"2016-01-01T00:00:00.000+00:00\",\"seconds_since_seen\":0,"
+      + "\"product\":{\"name\":\"LIFX Color 1000\",\"identifier\":\"lifx_color_a19\",\"company\":\"LIFX\","
+      + "\"capabilities\":{\"has_color\":true,\"has_variable_color_temp\":true,\"has_ir\":false,"
+      + "\"has_multizone\":false}}}";
+
+  /**
+   * Blocks until {@code client} is warmed up. Nothing here is sent with the client's access token or counts against its
+   * rate limit, and a failure to connect is ignored; the first real request just connects on its own
+   */
+  static void run(@NotNull LifxClientImpl client) {
+    preconnect(client);
+    resolveAdapters(client.gson);
+    final String listing = listing();
+    for (int pass = 0; pass < PASSES; pass++) {
+      try {
+        exercise(client, listing);
+      } catch (IOException e) {
+        throw new IllegalStateException("Couldn't decode the warm-up listing", e);
+      }
+    }
+  }
+
+  /**
+   * Leaves a connection to the API, TLS handshake and all, in the client's connection pool. The HEAD goes through the
+   * caller's own interceptors, but not the client's, so it carries no access token and doesn't touch the rate limit
+   */
+  private static void preconnect(@NotNull LifxClientImpl client) {
+    final OkHttpClient.Builder unauthenticated = client.client.newBuilder() // shares the connection pool
+        // A slow or unreachable API shouldn't hold up building the client for the full timeouts of real requests
+        .connectTimeout(PRECONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        .readTimeout(PRECONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        .writeTimeout(PRECONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    unauthenticated.interceptors().remove(client.authInterceptor);
+    try {
+      final Response response = unauthenticated.build()
+          .newCall(new Request.Builder().url(client.baseURL).head().build())
+          .execute();
+      response.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  private static void resolveAdapters(@NotNull Gson gson) {
+    gson.getAdapter(JsonElement.class);
+    gson.getAdapter(Light.class);
+    gson.getAdapter(LifxColor.class);
+    gson.getAdapter(LifxGroup.class);
+    gson.getAdapter(LifxLocation.class);
+    gson.getAdapter(LifxProduct.class);
+    gson.getAdapter(PowerState.class);
+    gson.getAdapter(Date.class);
+    gson.getAdapter(Operation.class);
+    gson.getAdapter(OperationResult.class);
+    gson.getAdapter(new TypeToken<List<Light>>() {});
+    gson.getAdapter(new TypeToken<List<OperationResult>>() {});
+    gson.getAdapter(new TypeToken<List<LifxError>>() {});
+  }
+
+  private static void exercise(@NotNull LifxClientImpl client, @NotNull String listing) throws IOException {
+    final Gson gson = client.gson;
+    final ListLightsRequest listLights = LifxRequests.listLights();
+    final List<Light> lights = listLights.unmarshal(gson.newJsonReader(new StringReader(listing)), gson);
+    // Encoding the lights again goes through the AutoValue classes' adapters too
+    listLights.unmarshal(gson.newJsonReader(new StringReader(gson.toJson(lights))), gson);
+    listLights.project(LightField.POWER, LightField.COLOR)
+        .unmarshal(gson.newJsonReader(new StringReader(listing)), gson);
+
+    final List<Operation> operations = new ArrayList<>(lights.size());
+    final StringBuilder results = new StringBuilder("[");
+    for (final Light light : lights) {
+      final Operation operation = Operation.forEntity(light)
+          .powerState(PowerState.ON)
+          .color(light.color())
+          .duration(1, TimeUnit.SECONDS)
+          .build();
+      operations.add(operation);
+      results.append(results.length() > 1 ? "," : "")
+          .append("{\"operation\":").append(gson.toJson(operation, Operation.class))
+          .append(",\"results\":[{\"id\":\"").append(light.id())
+          .append("\",\"label\":\"").append(light.label()).append("\",\"status\":\"ok\"}]}");
+    }
+    results.append(']');
+    for (final SetLightsRequest chunk : LifxRequests.setLights().plus(operations).chunked()) {
+      final RequestBody body = chunk.buildRequest(client.baseURL, gson).body();
+      if (body != null) {
+        body.writeTo(new Buffer());
+      }
+    }
+    LifxRequests.setLights().unmarshal(gson.newJsonReader(new StringReader(results.toString())), gson);
+  }
+
+  @NotNull private static String listing() {
+    final StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < LIGHTS_PER_PASS; i++) {
+      json.append(i > 0 ? "," : "").append(String.format(Locale.US, LIGHT_FORMAT, i, i * 360 / LIGHTS_PER_PASS));
+    }
+    return json.append(']').toString();
+  }
+
+  private WarmUp() { throw new UnsupportedOperationException("No instances"); }
+}
@@ -0,0 +1,19 @@
+package com.kevinmost.lifx.effects;
+
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.Light;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An animation, as a function of time and light. Played by an {@link EffectsEngine}, which calls it once per light per
+ * frame on its render thread, so it should be cheap and must not block. See {@link Effects} for some stock ones
+ */
+public interface Effect {
+  /**
+   * @param elapsedMillis how long the effect has been playing
+   * @param index the light's position among the lights the effect is playing on, from 0 until {@code count}
+   * @return the color (including brightness) the light should be at this point, or null to leave it as it is
+   */
+  @Nullable LifxColor render(long elapsedMillis, int index, int count, @NotNull Light light);
+}
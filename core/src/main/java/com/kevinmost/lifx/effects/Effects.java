@@ -0,0 +1,90 @@
+package com.kevinmost.lifx.effects;
+
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.Light;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * Stock {@link Effect}s
+ */
+public final class Effects {
+
+  /**
+   * One lit light runs along the others, taking {@code period} for a full lap
+   */
+  @NotNull public static Effect chase(
+      @NotNull final LifxColor lit,
+      @NotNull final LifxColor unlit,
+      long period,
+      @NotNull TimeUnit unit
+  ) {
+    final long periodMillis = periodMillis(period, unit);
+    return new Effect() {
+      @NotNull @Override public LifxColor render(long elapsedMillis, int index, int count, @NotNull Light light) {
+        final long position = (elapsedMillis % periodMillis) * count / periodMillis;
+        return position == index ? lit : unlit;
+      }
+    };
+  }
+
+  /**
+   * A rainbow spread across the lights, rotating once every {@code period}
+   */
+  @NotNull public static Effect gradient(
+      final double saturation,
+      final double brightness,
+      long period,
+      @NotNull TimeUnit unit
+  ) {
+    assertRange("saturation", saturation, 0, 1);
+    assertRange("brightness", brightness, 0, 1);
+    final long periodMillis = periodMillis(period, unit);
+    return new Effect() {
+      @NotNull @Override public LifxColor render(long elapsedMillis, int index, int count, @NotNull Light light) {
+        final double turns = (double) index / count + (double) (elapsedMillis % periodMillis) / periodMillis;
+        return LifxColor.hsv(360 * (turns - Math.floor(turns)), saturation, brightness);
+      }
+    };
+  }
+
+  /**
+   * Every light flashes {@code on} for the first half of each {@code period} and {@code off} for the second
+   */
+  @NotNull public static Effect strobe(
+      @NotNull final LifxColor on,
+      @NotNull final LifxColor off,
+      long period,
+      @NotNull TimeUnit unit
+  ) {
+    final long periodMillis = periodMillis(period, unit);
+    return new Effect() {
+      @NotNull @Override public LifxColor render(long elapsedMillis, int index, int count, @NotNull Light light) {
+        return elapsedMillis % periodMillis < periodMillis / 2 ? on : off;
+      }
+    };
+  }
+
+  /**
+   * Holds {@code color}; useful as a backdrop under effects played later on some of the same lights
+   */
+  @NotNull public static Effect solid(@NotNull final LifxColor color) {
+    return new Effect() {
+      @Nullable @Override public LifxColor render(long elapsedMillis, int index, int count, @NotNull Light light) {
+        return color;
+      }
+    };
+  }
+
+  private static long periodMillis(long period, @NotNull TimeUnit unit) {
+    final long periodMillis = unit.toMillis(period);
+    assertRange("period", (double) periodMillis, 1, Long.MAX_VALUE);
+    return periodMillis;
+  }
+
+  private Effects() { throw new UnsupportedOperationException("No instances"); }
+}
@@ -0,0 +1,274 @@
+package com.kevinmost.lifx.effects;
+
+import com.kevinmost.lifx.LifxCallback;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.LifxResult;
+import com.kevinmost.lifx.RateLimit;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.SetLightsRequest;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * Plays {@link Effect}s on lights through the cloud API. One render thread draws a frame of every playing effect at a
+ * time; where effects overlap on a light, the one played last wins. Only lights whose color differs from what was last
+ * sent to them make it into the frame, which goes out as {@link SetLightsRequest}s of up to
+ * {@link SetLightsRequest#MAX_OPERATIONS} lights each. Every light is told to fade to its new color over exactly one
+ * frame, so the bulbs interpolate smoothly between frames however far apart they are.
+ * <p>
+ * Frames are rendered at the target rate for as long as the client's {@link RateLimit} can sustain it, and further
+ * apart when a frame takes more requests than that allows. A frame is also skipped while the previous one is still in
+ * flight, so a slow or throttled API never builds up a backlog of stale frames. An effect that throws loses that
+ * frame, and the exception goes to the render thread's {@link Thread.UncaughtExceptionHandler}
+ */
+public final class EffectsEngine {
+
+  /**
+   * The share of the rate limit that frames may use up, leaving the rest for everything else on the same token
+   */
+  private static final double RATE_LIMIT_SHARE = 0.9;
+
+  @NotNull private final LifxClient client;
+  private final long minFrameNanos;
+
+  @NotNull private final ScheduledExecutorService renderThread =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override public Thread newThread(@NotNull Runnable runnable) {
+          final Thread thread = new Thread(runnable, "LifxEffects");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  @NotNull private final List<Playback> playbacks = new CopyOnWriteArrayList<>();
+  @NotNull private final ConcurrentMap<Selector, LifxColor> lastSent = new ConcurrentHashMap<>();
+  @NotNull private final List<Future<?>> requestsInFlight = new ArrayList<>(); // only touched by the render thread
+
+  private volatile long frameNanos;
+  private boolean rendering;
+
+  private EffectsEngine(@NotNull Builder builder) {
+    client = builder.client;
+    minFrameNanos = (long) (TimeUnit.SECONDS.toNanos(1) / builder.targetFps);
+    frameNanos = minFrameNanos;
+  }
+
+  /**
+   * Starts playing {@code effect} on {@code lights}, from the next frame on
+   */
+  @NotNull public Playback play(@NotNull Effect effect, @NotNull Collection<Light> lights) {
+    final Playback playback = new Playback(this, effect, lights);
+    playbacks.add(playback);
+    synchronized (this) {
+      if (!rendering && !renderThread.isShutdown()) {
+        rendering = true;
+        renderThread.execute(new Runnable() {
+          @Override public void run() {
+            renderFrame();
+          }
+        });
+      }
+    }
+    return playback;
+  }
+
+  /**
+   * Stops every effect. Lights are left as the last frame sent them
+   */
+  public void stopAll() {
+    playbacks.clear();
+  }
+
+  /**
+   * Stops every effect and the render thread for good
+   */
+  public void shutdown() {
+    stopAll();
+    renderThread.shutdownNow();
+  }
+
+  /**
+   * @return the frame rate the engine is currently rendering at, which is the target unless the rate limit can't
+   * sustain it
+   */
+  public double fps() {
+    return (double) TimeUnit.SECONDS.toNanos(1) / frameNanos;
+  }
+
+  private void renderFrame() {
+    final long startNanos = System.nanoTime();
+    synchronized (this) {
+      if (playbacks.isEmpty()) {
+        rendering = false; // until the next play()
+        return;
+      }
+    }
+    try {
+      if (!previousFrameInFlight()) {
+        final Map<Selector, LifxColor> frame = new LinkedHashMap<>();
+        for (final Playback playback : playbacks) {
+          playback.render(startNanos, frame);
+        }
+        final Iterator<Map.Entry<Selector, LifxColor>> entries = frame.entrySet().iterator();
+        while (entries.hasNext()) {
+          final Map.Entry<Selector, LifxColor> entry = entries.next();
+          if (entry.getValue().equals(lastSent.get(entry.getKey()))) {
+            entries.remove();
+          }
+        }
+        frameNanos = frameNanosFor(frame.size());
+        send(frame);
+      }
+    } catch (RuntimeException e) {
+      // Most likely an effect that threw. Drop the frame rather than the whole render loop
+      final Thread thread = Thread.currentThread();
+      thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    } finally {
+      scheduleNextFrame(startNanos);
+    }
+  }
+
+  private void scheduleNextFrame(long frameStartNanos) {
+    try {
+      renderThread.schedule(new Runnable() {
+        @Override public void run() {
+          renderFrame();
+        }
+      }, Math.max(0, frameNanos - (System.nanoTime() - frameStartNanos)), TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      // shut down mid-frame
+      synchronized (this) {
+        rendering = false;
+      }
+    }
+  }
+
+  private boolean previousFrameInFlight() {
+    final Iterator<Future<?>> requests = requestsInFlight.iterator();
+    while (requests.hasNext()) {
+      if (requests.next().isDone()) {
+        requests.remove();
+      }
+    }
+    return !requestsInFlight.isEmpty();
+  }
+
+  /**
+   * How long a frame that changes this many lights should last: the target frame length, or as long as it takes the
+   * rate limit to refill by the number of requests the frame needs, whichever is longer
+   */
+  private long frameNanosFor(int changedLights) {
+    final int requests = (changedLights + SetLightsRequest.MAX_OPERATIONS - 1) / SetLightsRequest.MAX_OPERATIONS;
+    final RateLimit rateLimit = client.rateLimit();
+    final double requestsPerSecond = Math.max(1, rateLimit.limit()) / 60.0 * RATE_LIMIT_SHARE;
+    final long rateLimitedNanos = (long) (requests * TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    return Math.max(minFrameNanos, rateLimitedNanos);
+  }
+
+  /**
+   * @param changed the new color of every light that the frame changes
+   */
+  private void send(@NotNull Map<Selector, LifxColor> changed) {
+    if (changed.isEmpty()) {
+      return;
+    }
+    final List<Operation> operations = new ArrayList<>(changed.size());
+    for (final Map.Entry<Selector, LifxColor> entry : changed.entrySet()) {
+      operations.add(Operation.forSelector(entry.getKey())
+          .color(entry.getValue())
+          .duration(frameNanos, TimeUnit.NANOSECONDS)
+          .build());
+      lastSent.put(entry.getKey(), entry.getValue());
+    }
+    for (final SetLightsRequest chunk : LifxRequests.setLights().plus(operations).chunked()) {
+      requestsInFlight.add(chunk.executeAsync(client, new LifxCallback<List<OperationResult>>() {
+        @Override public void onResult(@NotNull LifxResult<List<OperationResult>> result) {
+          if (!result.isSuccess()) {
+            // Send these lights again next frame, unless a later frame has already moved them on
+            for (final Operation operation : chunk.operations()) {
+              //noinspection ConstantConditions
+              lastSent.remove(operation.selector(), operation.color());
+            }
+          }
+        }
+      }));
+    }
+  }
+
+  public static final class Playback {
+    @NotNull private final EffectsEngine engine;
+    @NotNull private final Effect effect;
+    @NotNull private final List<Light> lights;
+    private final long startNanos = System.nanoTime();
+
+    private Playback(@NotNull EffectsEngine engine, @NotNull Effect effect, @NotNull Collection<Light> lights) {
+      this.engine = engine;
+      this.effect = effect;
+      this.lights = Collections.unmodifiableList(new ArrayList<>(lights));
+    }
+
+    /**
+     * Stops this effect. Its lights are left as the last frame sent them, unless another effect is playing on them
+     */
+    public void stop() {
+      engine.playbacks.remove(this);
+    }
+
+    private void render(long frameNanos, @NotNull Map<Selector, LifxColor> frame) {
+      final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(frameNanos - startNanos);
+      final int count = lights.size();
+      for (int i = 0; i < count; i++) {
+        final Light light = lights.get(i);
+        final LifxColor color = effect.render(elapsedMillis, i, count, light);
+        if (color != null) {
+          frame.put(light.selector(), color);
+        }
+      }
+    }
+  }
+
+  public static final class Builder {
+    @NotNull private final LifxClient client;
+    private double targetFps = 10;
+
+    public Builder(@NotNull LifxClient client) {
+      this.client = client;
+    }
+
+    /**
+     * The frame rate to render at when the rate limit allows it. Defaults to 10
+     */
+    @NotNull public Builder targetFps(double targetFps) {
+      assertRange("targetFps", targetFps, 0.01, 100);
+      this.targetFps = targetFps;
+      return this;
+    }
+
+    @NotNull public EffectsEngine build() {
+      return new EffectsEngine(this);
+    }
+  }
+}
@@ -0,0 +1,478 @@
+package com.kevinmost.lifx.lan;
+
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import com.kevinmost.lifx.request.model.SetLightResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * Drives lights directly over the LIFX LAN protocol (UDP on the local network) instead of going through the cloud
+ * API, so a change takes a local round trip rather than an internet one and isn't subject to the API's rate limit.
+ * <p>
+ * Lights are found with {@link #discover()}, and can then be controlled with the same {@link Operation}s that a
+ * {@link com.kevinmost.lifx.request.SetLightsRequest} takes. Over the LAN, operations can only target {@code all},
+ * {@code id:} and {@code label:} selectors. Every message that changes a light asks for an acknowledgement and is
+ * retried until one arrives or the attempts run out.
+ * <p>
+ * A client holds a single UDP socket, and its methods are synchronized; it should be {@link #close() closed} when it's
+ * no longer needed
+ */
+public final class LanClient implements Closeable {
+
+  /**
+   * Sequence numbers are a single byte and wrap at 256, so a client never has more than this many messages awaiting
+   * replies at once. Keeping it well under 256 means a sequence number only comes around again several rounds later,
+   * so a late reply to its last use is long past by the time it's reused. Replies also have to match the target and
+   * type of reply an exchange is waiting for
+   */
+  private static final int MAX_IN_FLIGHT = 32;
+
+  private static final String STATUS_OK = "ok";
+  private static final String STATUS_TIMED_OUT = "timed_out";
+
+  @NotNull private final DatagramSocket socket;
+  @NotNull private final InetSocketAddress broadcastAddress;
+  private final long timeoutNanos;
+  private final int maxAttempts;
+
+  private final int source;
+  private int sequence;
+
+  @NotNull private final byte[] receiveBuffer = new byte[1024];
+  @Nullable private InetSocketAddress lastSender;
+  @NotNull private final Map<String, Device> devices = new LinkedHashMap<>();
+
+  private LanClient(@NotNull Builder builder) throws IOException {
+    socket = new DatagramSocket();
+    socket.setBroadcast(true);
+    broadcastAddress = new InetSocketAddress(builder.broadcastAddress, builder.port);
+    timeoutNanos = builder.timeoutNanos;
+    maxAttempts = builder.maxAttempts;
+    // Replies carry the source back, and a source of 0 would make every device reply by broadcast
+    int source = 0;
+    final SecureRandom random = new SecureRandom();
+    while (source == 0) {
+      source = random.nextInt();
+    }
+    this.source = source;
+  }
+
+  /**
+   * Broadcasts for the lights on the local network and asks each one that answers for its current state. The lights
+   * found are remembered for later {@link #apply(Collection) operations}
+   */
+  @NotNull public synchronized List<LanLight> discover() throws IOException {
+    final Map<Long, InetSocketAddress> found = new LinkedHashMap<>();
+    final byte[] getService = LanProtocol.encode(LanProtocol.GET_SERVICE, source, 0, nextSequence(), false, true,
+        new byte[0]);
+    for (int attempt = 0; attempt < maxAttempts; attempt++) {
+      socket.send(new DatagramPacket(getService, getService.length, broadcastAddress));
+      final long deadline = System.nanoTime() + timeoutNanos;
+      LanProtocol.Message message;
+      while ((message = receive(deadline)) != null) {
+        if (message.type != LanProtocol.STATE_SERVICE || found.containsKey(message.target)) {
+          continue;
+        }
+        final int port = message.servicePort();
+        if (port > 0) {
+          //noinspection ConstantConditions
+          found.put(message.target, new InetSocketAddress(lastSender.getAddress(), port));
+        }
+      }
+    }
+
+    final List<Exchange> gets = new ArrayList<>();
+    for (final Map.Entry<Long, InetSocketAddress> entry : found.entrySet()) {
+      gets.add(new Exchange(entry.getKey(), entry.getValue(), LanProtocol.LIGHT_GET, LanProtocol.LIGHT_STATE,
+          new byte[0]));
+    }
+    exchange(gets);
+
+    devices.clear();
+    final List<LanLight> lights = new ArrayList<>();
+    for (final Exchange get : gets) {
+      final LanProtocol.State state = get.reply == null ? null : get.reply.state();
+      if (state == null) {
+        continue;
+      }
+      final Device device = new Device(get.target, get.address, state);
+      devices.put(device.serial, device);
+      lights.add(device.toLight());
+    }
+    return lights;
+  }
+
+  /**
+   * @return the lights found by the last {@link #discover()}, with the state they were last known to be in
+   */
+  @NotNull public synchronized List<LanLight> lights() {
+    final List<LanLight> lights = new ArrayList<>();
+    for (final Device device : devices.values()) {
+      lights.add(device.toLight());
+    }
+    return lights;
+  }
+
+  /**
+   * Asks a light for its current state
+   *
+   * @return the light's new state, or null if it didn't answer
+   */
+  @Nullable public synchronized LanLight refresh(@NotNull LanLight light) throws IOException {
+    final Device device = devices.get(light.id());
+    final Exchange get = device != null
+        ? new Exchange(device.target, device.address, LanProtocol.LIGHT_GET, LanProtocol.LIGHT_STATE, new byte[0])
+        : new Exchange(LanProtocol.target(light.id()), light.address(), LanProtocol.LIGHT_GET, LanProtocol.LIGHT_STATE,
+            new byte[0]);
+    exchange(Arrays.asList(get));
+    final LanProtocol.State state = get.reply == null ? null : get.reply.state();
+    if (state == null) {
+      return null;
+    }
+    final Device refreshed = new Device(get.target, get.address, state);
+    devices.put(refreshed.serial, refreshed);
+    return refreshed.toLight();
+  }
+
+  @NotNull public List<OperationResult> apply(@NotNull Operation... operations) throws IOException {
+    return apply(Arrays.asList(operations));
+  }
+
+  /**
+   * Applies each operation to the discovered lights that its selector covers, sending to every light at once and
+   * waiting for the acknowledgements. A light is sent its messages one at a time, in the order of the operations, so
+   * that the last operation to cover it is the one it ends up in. {@link #discover()} is run first if no lights have
+   * been discovered yet.
+   * <p>
+   * Each light in the results has a status of {@code "ok"} if it acknowledged everything it was sent, or
+   * {@code "timed_out"} if it didn't within the configured attempts
+   *
+   * @throws IllegalArgumentException if an operation's selector is one that can't be resolved over the LAN
+   */
+  @NotNull public synchronized List<OperationResult> apply(@NotNull Collection<Operation> operations)
+      throws IOException {
+    if (devices.isEmpty()) {
+      discover();
+    }
+    final List<Map<Device, List<Exchange>>> plan = new ArrayList<>();
+    final Map<Device, LanProtocol.Hsbk> plannedColors = new HashMap<>();
+    final List<Exchange> all = new ArrayList<>();
+    for (final Operation operation : operations) {
+      final Map<Device, List<Exchange>> perDevice = new LinkedHashMap<>();
+      for (final Device device : select(operation.selector())) {
+        // Build on any earlier operation in this batch that targets the same light
+        final LanProtocol.Hsbk base = plannedColors.containsKey(device) ? plannedColors.get(device) : device.color;
+        final LanProtocol.Hsbk color = base.with(operation.color(), operation.brightness());
+        plannedColors.put(device, color);
+        final List<Exchange> exchanges = device.exchangesFor(operation, color);
+        perDevice.put(device, exchanges);
+        all.addAll(exchanges);
+      }
+      plan.add(perDevice);
+    }
+
+    exchange(all);
+
+    final List<OperationResult> results = new ArrayList<>();
+    int index = 0;
+    for (final Operation operation : operations) {
+      final List<SetLightResult> lightResults = new ArrayList<>();
+      for (final Map.Entry<Device, List<Exchange>> perDevice : plan.get(index++).entrySet()) {
+        final Device device = perDevice.getKey();
+        boolean acknowledged = true;
+        for (final Exchange exchange : perDevice.getValue()) {
+          acknowledged &= exchange.reply != null;
+        }
+        if (acknowledged) {
+          device.applied(operation);
+        }
+        final String status = acknowledged ? STATUS_OK : STATUS_TIMED_OUT;
+        lightResults.add(SetLightResult.create(device.serial, device.label, status));
+      }
+      results.add(OperationResult.create(operation, lightResults));
+    }
+    return results;
+  }
+
+  @Override public synchronized void close() {
+    socket.close();
+  }
+
+  @NotNull private List<Device> select(@NotNull Selector selector) {
+    final String raw = selector.toString();
+    if (raw.equals(Selector.ALL.toString())) {
+      return new ArrayList<>(devices.values());
+    }
+    final int colon = raw.indexOf(':');
+    final String kind = colon < 0 ? raw : raw.substring(0, colon);
+    final String value = raw.substring(colon + 1);
+    final List<Device> selected = new ArrayList<>();
+    switch (kind) {
+      case "id":
+        final Device device = devices.get(value);
+        if (device != null) {
+          selected.add(device);
+        }
+        break;
+      case "label":
+        for (final Device candidate : devices.values()) {
+          if (candidate.label.equals(value)) {
+            selected.add(candidate);
+          }
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Selector can't be resolved over the LAN: " + raw);
+    }
+    return selected;
+  }
+
+  /**
+   * Sends every exchange's request and collects the replies. Different devices are sent to at once, but each device's
+   * exchanges go one at a time, in order, each waiting for its reply: a device applies messages in the order they
+   * arrive, and a retried message would otherwise land after the ones sent behind it. Unanswered exchanges are left
+   * with a null {@link Exchange#reply}
+   */
+  private void exchange(@NotNull List<Exchange> exchanges) throws IOException {
+    final Map<Long, Deque<Exchange>> byTarget = new LinkedHashMap<>();
+    for (final Exchange exchange : exchanges) {
+      Deque<Exchange> queue = byTarget.get(exchange.target);
+      if (queue == null) {
+        byTarget.put(exchange.target, queue = new ArrayDeque<>());
+      }
+      queue.addLast(exchange);
+    }
+    while (!byTarget.isEmpty()) {
+      final List<Exchange> round = new ArrayList<>();
+      final Iterator<Deque<Exchange>> queues = byTarget.values().iterator();
+      while (queues.hasNext() && round.size() < MAX_IN_FLIGHT) {
+        final Deque<Exchange> queue = queues.next();
+        round.add(queue.removeFirst());
+        if (queue.isEmpty()) {
+          queues.remove();
+        }
+      }
+      exchangeRound(round);
+    }
+  }
+
+  /**
+   * Sends {@code exchanges}, at most one per device, and collects the replies, resending whatever hasn't been answered
+   * after each timeout until the attempts run out
+   */
+  private void exchangeRound(@NotNull List<Exchange> exchanges) throws IOException {
+    final Map<Integer, Exchange> outstanding = new LinkedHashMap<>();
+    for (final Exchange exchange : exchanges) {
+      exchange.sequence = nextSequence();
+      outstanding.put(exchange.sequence, exchange);
+    }
+    for (int attempt = 0; attempt < maxAttempts && !outstanding.isEmpty(); attempt++) {
+      for (final Exchange exchange : outstanding.values()) {
+        final byte[] data = exchange.encode(source);
+        socket.send(new DatagramPacket(data, data.length, exchange.address));
+      }
+      final long deadline = System.nanoTime() + timeoutNanos;
+      LanProtocol.Message message;
+      while (!outstanding.isEmpty() && (message = receive(deadline)) != null) {
+        final Exchange exchange = outstanding.get(message.sequence);
+        if (exchange != null && exchange.target == message.target && exchange.replyType == message.type) {
+          exchange.reply = message;
+          outstanding.remove(message.sequence);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the next message addressed to this client, or null once the deadline has passed
+   */
+  @Nullable private LanProtocol.Message receive(long deadlineNanos) throws IOException {
+    final DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+    while (true) {
+      final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+      if (remainingMillis <= 0) {
+        return null;
+      }
+      socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, remainingMillis));
+      try {
+        socket.receive(packet);
+      } catch (SocketTimeoutException e) {
+        return null;
+      }
+      final LanProtocol.Message message = LanProtocol.decode(packet.getData(), packet.getLength());
+      if (message != null && message.source == source) {
+        lastSender = (InetSocketAddress) packet.getSocketAddress();
+        return message;
+      }
+    }
+  }
+
+  private int nextSequence() {
+    sequence = (sequence + 1) & 0xff;
+    return sequence;
+  }
+
+  /**
+   * One request to one device, and the reply it's waiting for
+   */
+  private static final class Exchange {
+    final long target;
+    @NotNull final InetSocketAddress address;
+    final int type;
+    final int replyType;
+    @NotNull final byte[] payload;
+
+    int sequence;
+    @Nullable LanProtocol.Message reply;
+
+    Exchange(long target, @NotNull InetSocketAddress address, int type, int replyType, @NotNull byte[] payload) {
+      this.target = target;
+      this.address = address;
+      this.type = type;
+      this.replyType = replyType;
+      this.payload = payload;
+    }
+
+    @NotNull byte[] encode(int source) {
+      final boolean ack = replyType == LanProtocol.ACKNOWLEDGEMENT;
+      return LanProtocol.encode(type, source, target, sequence, ack, !ack, payload);
+    }
+  }
+
+  /**
+   * What we know about a discovered light. Its state is kept up to date as operations are acknowledged, since the
+   * devices only accept complete colors and an operation may only set part of one
+   */
+  private static final class Device {
+    final long target;
+    @NotNull final String serial;
+    @NotNull final InetSocketAddress address;
+    @NotNull final String label;
+    @NotNull LanProtocol.Hsbk color;
+    boolean on;
+
+    Device(long target, @NotNull InetSocketAddress address, @NotNull LanProtocol.State state) {
+      this.target = target;
+      this.serial = LanProtocol.serial(target);
+      this.address = address;
+      this.label = state.label;
+      this.color = state.color;
+      this.on = state.on;
+    }
+
+    /**
+     * @param color the complete color to send, if the operation sets any part of one
+     */
+    @NotNull List<Exchange> exchangesFor(@NotNull Operation operation, @NotNull LanProtocol.Hsbk color) {
+      final Long duration = operation.durationIn(TimeUnit.MILLISECONDS);
+      final long durationMillis = duration == null ? 0 : duration;
+      final List<Exchange> exchanges = new ArrayList<>();
+      if (operation.color() != null || operation.brightness() != null) {
+        exchanges.add(setter(LanProtocol.LIGHT_SET_COLOR, LanProtocol.setColor(color, durationMillis)));
+      }
+      final PowerState powerState = operation.powerState();
+      if (powerState != null) {
+        exchanges.add(setter(LanProtocol.LIGHT_SET_POWER,
+            LanProtocol.setPower(powerState == PowerState.ON, durationMillis)));
+      }
+      final Double infraredBrightness = operation.infraredBrightness();
+      if (infraredBrightness != null) {
+        exchanges.add(setter(LanProtocol.LIGHT_SET_INFRARED, LanProtocol.setInfrared(infraredBrightness)));
+      }
+      return exchanges;
+    }
+
+    void applied(@NotNull Operation operation) {
+      color = color.with(operation.color(), operation.brightness());
+      final PowerState powerState = operation.powerState();
+      if (powerState != null) {
+        on = powerState == PowerState.ON;
+      }
+    }
+
+    @NotNull LanLight toLight() {
+      return LanLight.create(serial, address, label, on ? PowerState.ON : PowerState.OFF, color.toColor());
+    }
+
+    @NotNull private Exchange setter(int type, @NotNull byte[] payload) {
+      return new Exchange(target, address, type, LanProtocol.ACKNOWLEDGEMENT, payload);
+    }
+  }
+
+  public static final class Builder {
+    @NotNull InetAddress broadcastAddress;
+    int port = LanProtocol.DEFAULT_PORT;
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(250);
+    int maxAttempts = 3;
+
+    public Builder() {
+      try {
+        broadcastAddress = InetAddress.getByName("255.255.255.255");
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    /**
+     * Where discovery broadcasts go; the limited broadcast address by default. Use the directed broadcast address of
+     * a subnet when the machine has more than one network interface
+     */
+    @NotNull public Builder broadcastAddress(@NotNull InetAddress broadcastAddress) {
+      this.broadcastAddress = broadcastAddress;
+      return this;
+    }
+
+    @NotNull public Builder port(int port) {
+      assertRange("port", port, 1, 0xffff);
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * How long to wait for replies before resending a message
+     */
+    @NotNull public Builder timeout(long timeout, @NotNull TimeUnit unit) {
+      assertRange("timeout", unit.toMillis(timeout), 1, Integer.MAX_VALUE);
+      this.timeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * How many times a message is sent before a light is given up on
+     */
+    @NotNull public Builder maxAttempts(int maxAttempts) {
+      assertRange("maxAttempts", maxAttempts, 1, Integer.MAX_VALUE);
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    @NotNull public LanClient build() throws IOException {
+      return new LanClient(this);
+    }
+  }
+}
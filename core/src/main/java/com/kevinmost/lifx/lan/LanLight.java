@@ -0,0 +1,42 @@
+package com.kevinmost.lifx.lan;
+
+import com.google.auto.value.AutoValue;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.LifxEntity;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetSocketAddress;
+
+/**
+ * A light found on the local network by {@link LanClient#discover()}, with the state it last reported
+ */
+@AutoValue
+public abstract class LanLight implements LifxEntity {
+
+  @NotNull static LanLight create(
+      @NotNull String id,
+      @NotNull InetSocketAddress address,
+      @NotNull String label,
+      @NotNull PowerState powerState,
+      @NotNull LifxColor color
+  ) {
+    return new AutoValue_LanLight(id, address, label, powerState, color);
+  }
+
+  /**
+   * The light's serial number, which is the same as the {@code id} that the cloud API reports for it
+   */
+  @NotNull @Override public abstract String id();
+  @NotNull public abstract InetSocketAddress address();
+  @NotNull public abstract String label();
+  @NotNull public abstract PowerState powerState();
+  @NotNull public abstract LifxColor color();
+
+  @NotNull @Override public final Selector selector() {
+    return Selector.unsafe("id:" + id());
+  }
+
+  LanLight() {} // AutoValue instances only
+}
@@ -0,0 +1,282 @@
+package com.kevinmost.lifx.lan;
+
+import com.kevinmost.internal.Util;
+import com.kevinmost.lifx.model.LifxColor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encoding and decoding for the LIFX LAN protocol. Every message is a 36-byte little-endian header (frame, frame
+ * address and protocol header) followed by a payload whose layout depends on the message type
+ */
+final class LanProtocol {
+
+  static final int DEFAULT_PORT = 56700;
+
+  static final int HEADER_SIZE = 36;
+  private static final int PROTOCOL = 1024;
+  private static final int ADDRESSABLE = 1 << 12;
+  private static final int TAGGED = 1 << 13;
+  private static final int RES_REQUIRED = 1;
+  private static final int ACK_REQUIRED = 1 << 1;
+
+  static final int GET_SERVICE = 2;
+  static final int STATE_SERVICE = 3;
+  static final int ACKNOWLEDGEMENT = 45;
+  static final int LIGHT_GET = 101;
+  static final int LIGHT_SET_COLOR = 102;
+  static final int LIGHT_STATE = 107;
+  static final int LIGHT_SET_POWER = 117;
+  static final int LIGHT_SET_INFRARED = 122;
+
+  static final int SERVICE_UDP = 1;
+
+  static final int LABEL_SIZE = 32;
+
+  private LanProtocol() { throw new UnsupportedOperationException("No instances"); }
+
+  /**
+   * @param target the device's MAC address as packed by {@link #target(String)}, or 0 to address every device
+   */
+  @NotNull static byte[] encode(
+      int type,
+      int source,
+      long target,
+      int sequence,
+      boolean ackRequired,
+      boolean resRequired,
+      @NotNull byte[] payload
+  ) {
+    final ByteBuffer buffer = allocate(HEADER_SIZE + payload.length);
+    // Frame
+    buffer.putShort((short) (HEADER_SIZE + payload.length));
+    buffer.putShort((short) (PROTOCOL | ADDRESSABLE | (target == 0 ? TAGGED : 0)));
+    buffer.putInt(source);
+    // Frame address
+    buffer.putLong(target);
+    buffer.position(buffer.position() + 6); // reserved
+    buffer.put((byte) ((ackRequired ? ACK_REQUIRED : 0) | (resRequired ? RES_REQUIRED : 0)));
+    buffer.put((byte) sequence);
+    // Protocol header
+    buffer.position(buffer.position() + 8); // reserved
+    buffer.putShort((short) type);
+    buffer.position(buffer.position() + 2); // reserved
+    buffer.put(payload);
+    return buffer.array();
+  }
+
+  /**
+   * @return the decoded message, or null if the datagram isn't a well-formed LIFX message
+   */
+  @Nullable static Message decode(@NotNull byte[] data, int length) {
+    if (length < HEADER_SIZE) {
+      return null;
+    }
+    final ByteBuffer buffer = ByteBuffer.wrap(data, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+    final int size = buffer.getShort() & 0xffff;
+    if (size < HEADER_SIZE || size > length || (buffer.getShort() & 0xfff) != PROTOCOL) {
+      return null;
+    }
+    final int source = buffer.getInt();
+    final long target = buffer.getLong();
+    buffer.position(buffer.position() + 7);
+    final int sequence = buffer.get() & 0xff;
+    buffer.position(buffer.position() + 8);
+    final int type = buffer.getShort() & 0xffff;
+    buffer.position(HEADER_SIZE);
+    buffer.limit(size);
+    return new Message(type, source, target, sequence, buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+  }
+
+  @NotNull static byte[] setColor(@NotNull Hsbk color, long durationMillis) {
+    final ByteBuffer buffer = allocate(13);
+    buffer.put((byte) 0); // reserved
+    color.writeTo(buffer);
+    buffer.putInt((int) durationMillis);
+    return buffer.array();
+  }
+
+  @NotNull static byte[] setPower(boolean on, long durationMillis) {
+    final ByteBuffer buffer = allocate(6);
+    buffer.putShort((short) (on ? 0xffff : 0));
+    buffer.putInt((int) durationMillis);
+    return buffer.array();
+  }
+
+  @NotNull static byte[] setInfrared(double brightness) {
+    final ByteBuffer buffer = allocate(2);
+    buffer.putShort((short) toUint16(brightness));
+    return buffer.array();
+  }
+
+  /**
+   * Packs a serial number (the MAC address, as the cloud API reports in a light's {@code id}) into a frame target
+   */
+  static long target(@NotNull String serial) {
+    if (serial.length() != 12) {
+      throw new IllegalArgumentException("Not a LIFX serial number: " + serial);
+    }
+    long target = 0;
+    for (int i = 0; i < 6; i++) {
+      target |= Long.parseLong(serial.substring(i * 2, i * 2 + 2), 16) << (8 * i);
+    }
+    return target;
+  }
+
+  @NotNull static String serial(long target) {
+    final StringBuilder sb = new StringBuilder(12);
+    for (int i = 0; i < 6; i++) {
+      final int octet = (int) (target >>> (8 * i)) & 0xff;
+      sb.append(Character.forDigit(octet >> 4, 16)).append(Character.forDigit(octet & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  static int toUint16(double fraction) {
+    return (int) Math.round(fraction * 0xffff);
+  }
+
+  static double fromUint16(int value) {
+    return (value & 0xffff) / (double) 0xffff;
+  }
+
+  @NotNull private static ByteBuffer allocate(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  static final class Message {
+    final int type;
+    final int source;
+    final long target;
+    final int sequence;
+    @NotNull final ByteBuffer payload;
+
+    private Message(int type, int source, long target, int sequence, @NotNull ByteBuffer payload) {
+      this.type = type;
+      this.source = source;
+      this.target = target;
+      this.sequence = sequence;
+      this.payload = payload;
+    }
+
+    /**
+     * @return the UDP port from a {@link #STATE_SERVICE}, or -1 if it advertises some other service
+     */
+    int servicePort() {
+      try {
+        final int service = payload.get(0) & 0xff;
+        return service == SERVICE_UDP ? payload.getInt(1) : -1;
+      } catch (IndexOutOfBoundsException e) {
+        return -1;
+      }
+    }
+
+    /**
+     * Reads a {@link #LIGHT_STATE}
+     */
+    @Nullable State state() {
+      try {
+        final ByteBuffer buffer = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final Hsbk color = Hsbk.readFrom(buffer);
+        buffer.getShort(); // reserved
+        final boolean on = buffer.getShort() != 0;
+        final byte[] label = new byte[LABEL_SIZE];
+        buffer.get(label);
+        int labelLength = 0;
+        while (labelLength < label.length && label[labelLength] != 0) {
+          labelLength++;
+        }
+        return new State(color, on, new String(label, 0, labelLength, Util.UTF_8));
+      } catch (BufferUnderflowException e) {
+        return null;
+      }
+    }
+  }
+
+  static final class State {
+    @NotNull final Hsbk color;
+    final boolean on;
+    @NotNull final String label;
+
+    State(@NotNull Hsbk color, boolean on, @NotNull String label) {
+      this.color = color;
+      this.on = on;
+      this.label = label;
+    }
+  }
+
+  /**
+   * A color as the devices see it: hue, saturation and brightness scaled to the full range of a uint16, and kelvin
+   */
+  static final class Hsbk {
+    final int hue;
+    final int saturation;
+    final int brightness;
+    final int kelvin;
+
+    Hsbk(int hue, int saturation, int brightness, int kelvin) {
+      this.hue = hue;
+      this.saturation = saturation;
+      this.brightness = brightness;
+      this.kelvin = kelvin;
+    }
+
+    /**
+     * Applies whichever fields {@code color} and {@code brightness} set on top of this color. A device always needs a
+     * complete color, so the fields they leave unset keep the device's current values
+     */
+    @NotNull Hsbk with(@Nullable LifxColor color, @Nullable Double brightness) {
+      int hue = this.hue;
+      int saturation = this.saturation;
+      int newBrightness = this.brightness;
+      int kelvin = this.kelvin;
+      if (color != null) {
+        final Double colorHue = color.hue();
+        if (colorHue != null) {
+          hue = toUint16(colorHue / 360.0);
+        }
+        final Double colorSaturation = color.saturation();
+        if (colorSaturation != null) {
+          saturation = toUint16(colorSaturation);
+        }
+        final Double colorBrightness = color.brightness();
+        if (colorBrightness != null) {
+          newBrightness = toUint16(colorBrightness);
+        }
+        final Integer colorKelvin = color.kelvin();
+        if (colorKelvin != null) {
+          kelvin = colorKelvin;
+        }
+      }
+      if (brightness != null) {
+        newBrightness = toUint16(brightness);
+      }
+      return new Hsbk(hue, saturation, newBrightness, kelvin);
+    }
+
+    @NotNull LifxColor toColor() {
+      return LifxColor.hsv(fromUint16(hue) * 360.0, fromUint16(saturation), fromUint16(brightness))
+          .withKelvin(Math.max(2500, Math.min(9000, kelvin)));
+    }
+
+    void writeTo(@NotNull ByteBuffer buffer) {
+      buffer.putShort((short) hue);
+      buffer.putShort((short) saturation);
+      buffer.putShort((short) brightness);
+      buffer.putShort((short) kelvin);
+    }
+
+    @NotNull static Hsbk readFrom(@NotNull ByteBuffer buffer) {
+      return new Hsbk(
+          buffer.getShort() & 0xffff,
+          buffer.getShort() & 0xffff,
+          buffer.getShort() & 0xffff,
+          buffer.getShort() & 0xffff
+      );
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.kevinmost.lifx.model;
+
+import com.google.auto.value.AutoValue;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link LifxProduct} as described by the API, for products that {@link LifxProducts} didn't already know
+ */
+@AutoValue
+abstract class ApiLifxProduct implements LifxProduct {
+
+  @NotNull static ApiLifxProduct create(
+      @NotNull String productName,
+      @NotNull String company,
+      @NotNull String identifier,
+      @NotNull LifxProductCapabilities capabilities
+  ) {
+    return new AutoValue_ApiLifxProduct(productName, company, identifier, capabilities);
+  }
+
+  ApiLifxProduct() {} // AutoValue instances only
+}
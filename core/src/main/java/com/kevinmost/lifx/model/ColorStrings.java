@@ -0,0 +1,122 @@
+package com.kevinmost.lifx.model;
+
+import com.kevinmost.internal.LruCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads and writes the API's color strings ({@code "hue:120.0 saturation:1.0 brightness:0.5 kelvin:3500"}) in a
+ * single pass over the characters. A fleet tends to repeat the same few hundred colors, so parsed colors are cached by
+ * their string, and a color remembers the string it formats to (see {@link LifxColor#toString()})
+ */
+final class ColorStrings {
+
+  private static final int CACHE_SIZE = 512;
+
+  @NotNull private static final LruCache<String, LifxColor> PARSED = new LruCache<>(CACHE_SIZE);
+
+  private ColorStrings() { throw new UnsupportedOperationException("No instances"); }
+
+  @NotNull static LifxColor parse(@NotNull String colorString) {
+    final LifxColor cached = PARSED.get(colorString);
+    if (cached != null) {
+      return cached;
+    }
+    final LifxColor parsed = parseUncached(colorString);
+    PARSED.put(colorString, parsed);
+    return parsed;
+  }
+
+  @NotNull static String format(@NotNull LifxColor color) {
+    final StringBuilder sb = new StringBuilder(64);
+    final Double hue = color.hue();
+    if (hue != null) {
+      sb.append("hue:").append(hue.doubleValue());
+    }
+    final Double saturation = color.saturation();
+    if (saturation != null) {
+      separate(sb).append("saturation:").append(saturation.doubleValue());
+    }
+    final Double brightness = color.brightness();
+    if (brightness != null) {
+      separate(sb).append("brightness:").append(brightness.doubleValue());
+    }
+    final Integer kelvin = color.kelvin();
+    if (kelvin != null) {
+      separate(sb).append("kelvin:").append(kelvin.intValue());
+    }
+    return sb.toString();
+  }
+
+  @NotNull private static StringBuilder separate(@NotNull StringBuilder sb) {
+    return sb.length() == 0 ? sb : sb.append(' ');
+  }
+
+  @NotNull private static LifxColor parseUncached(@NotNull String colorString) {
+    Double hue = null;
+    Double saturation = null;
+    Double brightness = null;
+    Integer kelvin = null;
+    final int length = colorString.length();
+    int i = skipWhitespace(colorString, 0);
+    if (i == length) {
+      throw unknownOption("");
+    }
+    while (i < length) {
+      final int tokenStart = i;
+      while (i < length && !Character.isWhitespace(colorString.charAt(i))) {
+        i++;
+      }
+      final int tokenEnd = i;
+      final int colon = colorString.indexOf(':', tokenStart);
+      if (colon < 0 || colon >= tokenEnd) {
+        throw unknownOption(colorString.substring(tokenStart, tokenEnd));
+      }
+      final String value = colorString.substring(colon + 1, tokenEnd);
+      if (colorString.startsWith("hue", tokenStart)) {
+        hue = LifxColor.roundHue(Double.parseDouble(value));
+      } else if (colorString.startsWith("saturation", tokenStart)) {
+        saturation = LifxColor.roundSaturation(Double.parseDouble(value));
+      } else if (colorString.startsWith("brightness", tokenStart)) {
+        brightness = LifxColor.roundBrightness(Double.parseDouble(value));
+      } else if (colorString.startsWith("kelvin", tokenStart)) {
+        kelvin = LifxColor.checkKelvin(parseInt(value));
+      } else {
+        throw unknownOption(colorString.substring(tokenStart, tokenEnd));
+      }
+      i = skipWhitespace(colorString, i);
+    }
+    return LifxColor.createRounded(hue, saturation, brightness, kelvin);
+  }
+
+  private static int skipWhitespace(@NotNull String s, int from) {
+    int i = from;
+    while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Kelvin values are small non-negative integers, so this skips {@link Integer#parseInt(String)}'s generality
+   */
+  private static int parseInt(@NotNull String value) {
+    final int length = value.length();
+    if (length == 0 || length > 9) {
+      return Integer.parseInt(value); // throws for empty; handles signs and overflow for anything long
+    }
+    int result = 0;
+    for (int i = 0; i < length; i++) {
+      final int digit = value.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return Integer.parseInt(value);
+      }
+      result = result * 10 + digit;
+    }
+    return result;
+  }
+
+  @NotNull private static IllegalStateException unknownOption(@Nullable String token) {
+    return new IllegalStateException("Unknown option in color-string: " + token);
+  }
+}
@@ -0,0 +1,83 @@
+package com.kevinmost.lifx.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of a set of lights, typically a listing of every light on the account, that resolves {@code all},
+ * {@code id:}, {@code label:}, {@code group:}, {@code group_id:}, {@code location:}, and {@code location_id:} selectors
+ * to the lights they cover with a single hash lookup, without asking the API
+ */
+public final class FleetIndex {
+
+  @NotNull private final List<Light> lights;
+  @NotNull private final Map<Selector, List<Light>> bySelector;
+
+  private FleetIndex(@NotNull List<Light> lights, @NotNull Map<Selector, List<Light>> bySelector) {
+    this.lights = lights;
+    this.bySelector = bySelector;
+  }
+
+  @NotNull public static FleetIndex of(@NotNull Collection<Light> lights) {
+    final List<Light> all = Collections.unmodifiableList(new ArrayList<>(lights));
+    final Map<Selector, List<Light>> bySelector = new HashMap<>(all.size() * 4);
+    for (final Light light : all) {
+      add(bySelector, light.selector(), light);
+      if (light.label() != null) {
+        add(bySelector, Selector.forLight(light.label()), light);
+      }
+      add(bySelector, light.group().selector(), light);
+      add(bySelector, Selector.forGroup(light.group().name()), light);
+      add(bySelector, light.location().selector(), light);
+      add(bySelector, Selector.forLocation(light.location().name()), light);
+    }
+    for (final Map.Entry<Selector, List<Light>> entry : bySelector.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    bySelector.put(Selector.ALL, all);
+    return new FleetIndex(all, bySelector);
+  }
+
+  private static void add(@NotNull Map<Selector, List<Light>> bySelector, @NotNull Selector key, @NotNull Light light) {
+    List<Light> lights = bySelector.get(key);
+    if (lights == null) {
+      lights = new ArrayList<>(1);
+      bySelector.put(key, lights);
+    }
+    lights.add(light);
+  }
+
+  /**
+   * @return the lights that {@code selector} covers, in the order they were indexed, or null if it covers none of them.
+   * That includes every selector of a kind that isn't indexed, so null means "ask the API", not "no lights"
+   */
+  @Nullable public List<Light> resolve(@NotNull Selector selector) {
+    return bySelector.get(selector);
+  }
+
+  /**
+   * @return the light with this id, or null if it isn't indexed
+   */
+  @Nullable public Light light(@NotNull String id) {
+    final List<Light> lights = bySelector.get(Selector.unsafe("id:" + id));
+    return lights == null ? null : lights.get(0);
+  }
+
+  @NotNull public List<Light> lights() {
+    return lights;
+  }
+
+  /**
+   * @return every selector that covers at least one indexed light
+   */
+  @NotNull public Collection<Selector> selectors() {
+    return Collections.unmodifiableSet(bySelector.keySet());
+  }
+}
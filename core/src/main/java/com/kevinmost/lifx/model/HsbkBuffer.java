@@ -0,0 +1,194 @@
+package com.kevinmost.lifx.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A fixed number of colors held in primitive arrays, for code that builds a lot of colors in a tight loop (e.g. an
+ * animation frame for every light) and doesn't want to pay for a {@link LifxColor} and its boxed fields per color.
+ * <p>
+ * Every slot holds exactly what a {@link LifxColor} can: each of hue, saturation, brightness and kelvin is either unset
+ * or a validated value, rounded the same way {@link LifxColor} rounds it. So {@link #set(int, LifxColor)} and
+ * {@link #toColor(int)} convert losslessly in both directions, and the setters here never allocate.
+ * <p>
+ * Not thread-safe
+ */
+public final class HsbkBuffer {
+
+  private static final byte HAS_HUE = 1;
+  private static final byte HAS_SATURATION = 1 << 1;
+  private static final byte HAS_BRIGHTNESS = 1 << 2;
+  private static final byte HAS_KELVIN = 1 << 3;
+
+  @NotNull private final double[] hues;
+  @NotNull private final double[] saturations;
+  @NotNull private final double[] brightnesses;
+  @NotNull private final int[] kelvins;
+  @NotNull private final byte[] present;
+
+  public HsbkBuffer(int size) {
+    hues = new double[size];
+    saturations = new double[size];
+    brightnesses = new double[size];
+    kelvins = new int[size];
+    present = new byte[size];
+  }
+
+  public int size() {
+    return present.length;
+  }
+
+  @NotNull public HsbkBuffer hsv(int index, double hue, double saturation, double brightness) {
+    return hue(index, hue).saturation(index, saturation).brightness(index, brightness);
+  }
+
+  @NotNull public HsbkBuffer hue(int index, double hue) {
+    hues[index] = LifxColor.roundHue(hue);
+    present[index] |= HAS_HUE;
+    return this;
+  }
+
+  @NotNull public HsbkBuffer saturation(int index, double saturation) {
+    saturations[index] = LifxColor.roundSaturation(saturation);
+    present[index] |= HAS_SATURATION;
+    return this;
+  }
+
+  @NotNull public HsbkBuffer brightness(int index, double brightness) {
+    brightnesses[index] = LifxColor.roundBrightness(brightness);
+    present[index] |= HAS_BRIGHTNESS;
+    return this;
+  }
+
+  @NotNull public HsbkBuffer kelvin(int index, int kelvin) {
+    kelvins[index] = LifxColor.checkKelvin(kelvin);
+    present[index] |= HAS_KELVIN;
+    return this;
+  }
+
+  /**
+   * Sets hue, saturation and brightness from values that have already been validated and rounded
+   */
+  void setRounded(int index, double hue, double saturation, double brightness) {
+    hues[index] = hue;
+    saturations[index] = saturation;
+    brightnesses[index] = brightness;
+    present[index] |= HAS_HUE | HAS_SATURATION | HAS_BRIGHTNESS;
+  }
+
+  /**
+   * Unsets every field of a slot
+   */
+  @NotNull public HsbkBuffer clear(int index) {
+    present[index] = 0;
+    return this;
+  }
+
+  @NotNull public HsbkBuffer clear() {
+    Arrays.fill(present, (byte) 0);
+    return this;
+  }
+
+  @NotNull public HsbkBuffer set(int index, @NotNull LifxColor color) {
+    byte flags = 0;
+    final Double hue = color.hue();
+    if (hue != null) {
+      hues[index] = hue;
+      flags |= HAS_HUE;
+    }
+    final Double saturation = color.saturation();
+    if (saturation != null) {
+      saturations[index] = saturation;
+      flags |= HAS_SATURATION;
+    }
+    final Double brightness = color.brightness();
+    if (brightness != null) {
+      brightnesses[index] = brightness;
+      flags |= HAS_BRIGHTNESS;
+    }
+    final Integer kelvin = color.kelvin();
+    if (kelvin != null) {
+      kelvins[index] = kelvin;
+      flags |= HAS_KELVIN;
+    }
+    present[index] = flags;
+    return this;
+  }
+
+  /**
+   * Copies a slot from another buffer (or another slot of this one)
+   */
+  @NotNull public HsbkBuffer copy(int index, @NotNull HsbkBuffer from, int fromIndex) {
+    hues[index] = from.hues[fromIndex];
+    saturations[index] = from.saturations[fromIndex];
+    brightnesses[index] = from.brightnesses[fromIndex];
+    kelvins[index] = from.kelvins[fromIndex];
+    present[index] = from.present[fromIndex];
+    return this;
+  }
+
+  public boolean hasHue(int index) {
+    return (present[index] & HAS_HUE) != 0;
+  }
+
+  public boolean hasSaturation(int index) {
+    return (present[index] & HAS_SATURATION) != 0;
+  }
+
+  public boolean hasBrightness(int index) {
+    return (present[index] & HAS_BRIGHTNESS) != 0;
+  }
+
+  public boolean hasKelvin(int index) {
+    return (present[index] & HAS_KELVIN) != 0;
+  }
+
+  /**
+   * @throws IllegalStateException if the slot's hue isn't set
+   */
+  public double hue(int index) {
+    checkPresent(index, HAS_HUE, "hue");
+    return hues[index];
+  }
+
+  /**
+   * @throws IllegalStateException if the slot's saturation isn't set
+   */
+  public double saturation(int index) {
+    checkPresent(index, HAS_SATURATION, "saturation");
+    return saturations[index];
+  }
+
+  /**
+   * @throws IllegalStateException if the slot's brightness isn't set
+   */
+  public double brightness(int index) {
+    checkPresent(index, HAS_BRIGHTNESS, "brightness");
+    return brightnesses[index];
+  }
+
+  /**
+   * @throws IllegalStateException if the slot's kelvin isn't set
+   */
+  public int kelvin(int index) {
+    checkPresent(index, HAS_KELVIN, "kelvin");
+    return kelvins[index];
+  }
+
+  @NotNull public LifxColor toColor(int index) {
+    final byte flags = present[index];
+    return LifxColor.createRounded(
+        (flags & HAS_HUE) != 0 ? hues[index] : null,
+        (flags & HAS_SATURATION) != 0 ? saturations[index] : null,
+        (flags & HAS_BRIGHTNESS) != 0 ? brightnesses[index] : null,
+        (flags & HAS_KELVIN) != 0 ? kelvins[index] : null
+    );
+  }
+
+  private void checkPresent(int index, byte flag, @NotNull String field) {
+    if ((present[index] & flag) == 0) {
+      throw new IllegalStateException("No " + field + " set at index " + index);
+    }
+  }
+}
@@ -1,33 +1,28 @@
 package com.kevinmost.lifx.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.kevinmost.internal.JsonUtil;
 import com.kevinmost.internal.Util;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 import static com.kevinmost.internal.Util.assertRange;
-import static com.kevinmost.internal.Util.posModulo;
 
 @JsonAdapter(LifxColor.Adapter.class)
 @AutoValue
 public abstract class LifxColor {
 
-  private static final int RGB_MIN = 0;
-  private static final int RGB_MAX = 255;
+  /**
+   * How many decimal places hue, saturation and brightness are kept to
+   */
+  static final int PRECISION = 13;
 
   @NotNull public static final LifxColor WHITE = hsv(null, 0.0, null);
   @NotNull public static final LifxColor RED = hsv(0.0, 1.0, null);
@@ -49,78 +44,88 @@ public abstract class LifxColor {
   }
 
   @NotNull public static LifxColor hsv(@Nullable Double h, @Nullable Double s, @Nullable Double v) {
-    return create().withHue(h).withSaturation(s).withBrightness(v);
+    return createRounded(
+        h == null ? null : roundHue(h),
+        s == null ? null : roundSaturation(s),
+        v == null ? null : roundBrightness(v),
+        null
+    );
   }
 
   @NotNull public static LifxColor rgb(int r, int g, int b) {
-    assertRange("r", r, RGB_MIN, RGB_MAX);
-    assertRange("g", g, RGB_MIN, RGB_MAX);
-    assertRange("b", b, RGB_MIN, RGB_MAX);
-    final double rPrime = r / 255.0;
-    final double gPrime = g / 255.0;
-    final double bPrime = b / 255.0;
-
-    final double cMax = Util.max(rPrime, gPrime, bPrime);
-    final double cMin = Util.min(rPrime, gPrime, bPrime);
-    final double delta = cMax - cMin;
-
-    final double hue;
-    {
-      final double huePrime;
-      if (cMax == rPrime) {
-        huePrime = ((gPrime - bPrime) / delta) % 6;
-      } else if (cMax == gPrime) {
-        huePrime = ((bPrime - rPrime) / delta) + 2;
-      } else if (cMax == bPrime) {
-        huePrime = ((rPrime - gPrime) / delta) + 4;
-      } else {
-        throw new AssertionError("cMax must be equal to either rPrime, gPrime, or bPrime");
-      }
-      hue = posModulo(60 * huePrime, 360.0);
-    }
+    RgbConverter.checkChannel("r", r);
+    RgbConverter.checkChannel("g", g);
+    RgbConverter.checkChannel("b", b);
+    return createRounded(
+        RgbConverter.hue(r, g, b),
+        RgbConverter.saturation(r, g, b),
+        RgbConverter.brightness(r, g, b),
+        null
+    );
+  }
+
+  /**
+   * Builds a color straight from values that have already been validated and rounded, e.g. by an {@link HsbkBuffer}
+   */
+  @NotNull static LifxColor createRounded(
+      @Nullable Double hue,
+      @Nullable Double saturation,
+      @Nullable Double brightness,
+      @Nullable Integer kelvin
+  ) {
+    return new AutoValue_LifxColor.Builder()
+        .hue(hue)
+        .saturation(saturation)
+        .brightness(brightness)
+        .kelvin(kelvin)
+        .build();
+  }
+
+  static double roundHue(double hue) {
+    assertRange("hue", hue, 0, 360);
+    return Util.round(hue, PRECISION);
+  }
 
-    final double saturation = (cMax == 0) ? 0 : (delta / cMax);
+  static double roundSaturation(double saturation) {
+    assertRange("saturation", saturation, 0, 1);
+    return Util.round(saturation, PRECISION);
+  }
 
-    //noinspection UnnecessaryLocalVariable
-    final double brightness = cMax;
+  static double roundBrightness(double brightness) {
+    assertRange("brightness", brightness, 0, 1);
+    return Util.round(brightness, PRECISION);
+  }
 
-    return create()
-        .withHue(Double.isNaN(hue) ? 0 : hue)
-        .withSaturation(saturation)
-        .withBrightness(brightness)
-        ;
+  static int checkKelvin(int kelvin) {
+    return assertRange("kelvin", kelvin, 2500, 9000);
   }
 
   @Contract(pure = true) @NotNull public final LifxColor withHue(@Nullable Double hue) {
     if (hue == null) {
       return this;
     }
-    assertRange("hue", hue, 0, 360);
-    return toBuilder().hue(Util.round(hue, 13)).build();
+    return toBuilder().hue(roundHue(hue)).build();
   }
 
   @Contract(pure = true) @NotNull public final LifxColor withSaturation(@Nullable Double saturation) {
     if (saturation == null) {
       return this;
     }
-    assertRange("saturation", saturation, 0, 1);
-    return toBuilder().saturation(Util.round(saturation, 13)).build();
+    return toBuilder().saturation(roundSaturation(saturation)).build();
   }
 
   @Contract(pure = true) @NotNull public final LifxColor withBrightness(@Nullable Double brightness) {
     if (brightness == null) {
       return this;
     }
-    assertRange("brightness", brightness, 0, 1);
-    return toBuilder().brightness(Util.round(brightness, 13)).build();
+    return toBuilder().brightness(roundBrightness(brightness)).build();
   }
 
   @Contract(pure = true) @NotNull public final LifxColor withKelvin(@Nullable Integer kelvin) {
     if (kelvin == null) {
       return this;
     }
-    assertRange("kelvin", kelvin, 2500, 9000);
-    return toBuilder().kelvin(kelvin).build();
+    return toBuilder().kelvin(checkKelvin(kelvin)).build();
   }
 
   @Nullable public abstract Double hue();
@@ -144,80 +149,74 @@ public abstract class LifxColor {
     @NotNull abstract LifxColor build();
   }
 
+  /**
+   * Formatted once and then remembered, since the same color tends to be written out over and over
+   */
+  @Nullable private transient volatile String string;
+
+  /**
+   * @return this color as the API's color string
+   */
   @Override public String toString() {
-    final List<String> strings = new ArrayList<>();
-    {
-      final Double hue = hue();
-      if (hue != null) {
-        strings.add("hue:" + hue);
-      }
-    }
-    {
-      final Double saturation = saturation();
-      if (saturation != null) {
-        strings.add("saturation:" + saturation);
-      }
-    }
-    {
-      final Double brightness = brightness();
-      if (brightness != null) {
-        strings.add("brightness:" + brightness);
-      }
-    }
-    {
-      final Integer kelvin = kelvin();
-      if (kelvin != null) {
-        strings.add("kelvin:" + kelvin);
-      }
+    String string = this.string;
+    if (string == null) {
+      string = ColorStrings.format(this);
+      this.string = string;
     }
-    return Util.joinToString(strings, " ");
+    return string;
   }
 
   LifxColor() {} // AutoValue instances only
 
-  static class Adapter implements JsonSerializer<LifxColor>, JsonDeserializer<LifxColor> {
-
-    @Override public LifxColor deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-      if (json.isJsonPrimitive()) {
-        final String rawString = json.getAsJsonPrimitive().getAsString();
-        final String[] splits = rawString.trim().split("\\s+");
-        LifxColor color = LifxColor.create();
-        for (final String split : splits) {
-          final String value = split.substring(split.indexOf(':') + 1);
-          if (split.startsWith("hue")) {
-            color = color.withHue(Double.valueOf(value));
-          } else if (split.startsWith("saturation")) {
-            color = color.withSaturation(Double.valueOf(value));
-          } else if (split.startsWith("brightness")) {
-            color = color.withBrightness(Double.valueOf(value));
-          } else if (split.startsWith("kelvin")) {
-            color = color.withKelvin(Integer.parseInt(value));
-          } else {
-            throw new IllegalStateException("Unknown option in color-string: " + split);
+  static class Adapter extends TypeAdapter<LifxColor> {
+
+    @Override public LifxColor read(JsonReader in) throws IOException {
+      switch (in.peek()) {
+        case NULL:
+          in.nextNull();
+          return null;
+        case STRING:
+          return ColorStrings.parse(in.nextString());
+        default:
+          Double hue = null;
+          Double saturation = null;
+          Double brightness = null;
+          Integer kelvin = null;
+          in.beginObject();
+          while (in.hasNext()) {
+            switch (in.nextName()) {
+              case "hue":
+                hue = JsonUtil.nextNullableDouble(in);
+                break;
+              case "saturation":
+                saturation = JsonUtil.nextNullableDouble(in);
+                break;
+              case "brightness":
+                brightness = JsonUtil.nextNullableDouble(in);
+                break;
+              case "kelvin":
+                kelvin = JsonUtil.nextNullableInt(in);
+                break;
+              default:
+                in.skipValue();
+            }
           }
-        }
-        return color;
-      } else {
-        final JsonObject root = json.getAsJsonObject();
-        LifxColor color = LifxColor.create();
-        if (JsonUtil.notNull(root.get("hue"))) {
-          color = color.withHue(root.get("hue").getAsDouble());
-        }
-        if (JsonUtil.notNull(root.get("saturation"))) {
-          color = color.withSaturation(root.get("saturation").getAsDouble());
-        }
-        if (JsonUtil.notNull(root.get("brightness"))) {
-          color = color.withBrightness(root.get("brightness").getAsDouble());
-        }
-        if (JsonUtil.notNull(root.get("kelvin"))) {
-          color = color.withKelvin(root.get("kelvin").getAsInt());
-        }
-        return color;
+          in.endObject();
+          return createRounded(
+              hue == null ? null : roundHue(hue),
+              saturation == null ? null : roundSaturation(saturation),
+              brightness == null ? null : roundBrightness(brightness),
+              kelvin == null ? null : checkKelvin(kelvin)
+          );
       }
     }
 
-    @Override public JsonElement serialize(LifxColor src, Type typeOfSrc, JsonSerializationContext context) {
-      return new JsonPrimitive(src.toString());
+    @Override public void write(JsonWriter out, LifxColor src) throws IOException {
+      if (src == null) {
+        out.nullValue();
+        return;
+      }
+      out.value(src.toString());
     }
   }
-}
\ No newline at end of file
+}
@@ -1,15 +1,72 @@
 package com.kevinmost.lifx.model;
 
 import com.google.auto.value.AutoValue;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.JsonUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @AutoValue
+@JsonAdapter(LifxError.Adapter.class)
 public abstract class LifxError {
 
   @NotNull public abstract String field();
   @NotNull public abstract List<String> message();
 
   LifxError() {} // AutoValue instances only
-}
\ No newline at end of file
+
+  static class Adapter extends TypeAdapter<LifxError> {
+    @Override public LifxError read(JsonReader in) throws IOException {
+      String field = null;
+      List<String> message = Collections.emptyList();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "field":
+            field = JsonUtil.nextNullableString(in);
+            break;
+          case "message":
+            message = readMessage(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new AutoValue_LifxError(JsonUtil.required(field, "field", LifxError.class), message);
+    }
+
+    @Override public void write(JsonWriter out, LifxError src) throws IOException {
+      out.beginObject().name("field").value(src.field()).name("message").beginArray();
+      for (final String message : src.message()) {
+        out.value(message);
+      }
+      out.endArray().endObject();
+    }
+
+    /**
+     * The API sends a list of messages, but a lone string is accepted too
+     */
+    @NotNull private static List<String> readMessage(@NotNull JsonReader in) throws IOException {
+      if (in.peek() != JsonToken.BEGIN_ARRAY) {
+        final String message = JsonUtil.nextNullableString(in);
+        return message == null ? Collections.<String>emptyList() : Collections.singletonList(message);
+      }
+      final List<String> messages = new ArrayList<>();
+      in.beginArray();
+      while (in.hasNext()) {
+        messages.add(in.nextString());
+      }
+      in.endArray();
+      return Collections.unmodifiableList(messages);
+    }
+  }
+}
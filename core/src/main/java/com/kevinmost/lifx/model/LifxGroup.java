@@ -1,14 +1,15 @@
 package com.kevinmost.lifx.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.JsonUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
 @AutoValue
 @JsonAdapter(LifxGroup.Adapter.class)
@@ -16,19 +17,47 @@ public abstract class LifxGroup implements LifxEntity {
 
   @NotNull public abstract String name();
 
+  @Nullable private Selector selector; // set lazily; racing threads just both look up the same interned instance
+
   @NotNull @Override public final Selector selector() {
-    return Selector.forGroup(this);
+    Selector selector = this.selector;
+    if (selector == null) {
+      this.selector = selector = Selector.forGroup(this);
+    }
+    return selector;
   }
 
   LifxGroup() {} // AutoValue instances only
 
-  static class Adapter implements JsonDeserializer<LifxGroup> {
-    @Override public LifxGroup deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-      final JsonObject root = json.getAsJsonObject();
+  static class Adapter extends TypeAdapter<LifxGroup> {
+    @Override public LifxGroup read(JsonReader in) throws IOException {
+      String id = null;
+      String name = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "id":
+            id = JsonUtil.nextNullableString(in);
+            break;
+          case "name":
+            name = JsonUtil.nextNullableString(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
       return new AutoValue_LifxGroup(
-          root.get("id").getAsString(),
-          root.get("name").getAsString()
+          JsonUtil.required(id, "id", LifxGroup.class),
+          JsonUtil.required(name, "name", LifxGroup.class)
       );
     }
+
+    @Override public void write(JsonWriter out, LifxGroup src) throws IOException {
+      out.beginObject()
+          .name("id").value(src.id())
+          .name("name").value(src.name())
+          .endObject();
+    }
   }
 }
\ No newline at end of file
@@ -1,16 +1,20 @@
 package com.kevinmost.lifx.model;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.JsonUtil;
+import com.kevinmost.internal.ModelTypeAdapterFactory;
 import org.jetbrains.annotations.NotNull;
 
-import java.lang.reflect.Type;
-
-import static com.kevinmost.lifx.model.LifxProduct.Defaults.A19_PLUS;
+import java.io.IOException;
 
+/**
+ * A kind of light. Decoded products are shared through {@link LifxProducts}, so every light of the same product holds
+ * the same instance
+ */
 @JsonAdapter(LifxProduct.Adapter.class)
 public interface LifxProduct {
   @NotNull String productName();
@@ -18,58 +22,113 @@ public interface LifxProduct {
   @NotNull String identifier();
   @NotNull LifxProductCapabilities capabilities();
 
+  /**
+   * The products known ahead of time
+   */
   enum Defaults implements LifxProduct {
-    A19_PLUS {
-      @NotNull @Override public String productName() {
-        return "LIFX+ A19";
-      }
+    ORIGINAL_1000("LIFX Original 1000", "lifx_original_a21", true, true, false, false),
+    COLOR_650("LIFX Color 650", "lifx_color_650", true, true, false, false),
+    COLOR_1000("LIFX Color 1000", "lifx_color_a19", true, true, false, false),
+    COLOR_1000_BR30("LIFX Color 1000 BR30", "lifx_color_br30", true, true, false, false),
+    WHITE_800_LOW_VOLTAGE("LIFX White 800 (Low Voltage)", "lifx_white_800_low_voltage", false, true, false, false),
+    WHITE_800_HIGH_VOLTAGE("LIFX White 800 (High Voltage)", "lifx_white_800_high_voltage", false, true, false, false),
+    WHITE_900_BR30("LIFX White 900 BR30 (Low Voltage)", "lifx_white_900_br30", false, true, false, false),
+    A19_PLUS("LIFX+ A19", "lifx_plus_a19", true, true, true, false),
+    BR30_PLUS("LIFX+ BR30", "lifx_plus_br30", true, true, true, false),
+    Z("LIFX Z", "lifx_z", true, true, false, true),
+    ;
 
-      @NotNull @Override public String company() {
-        return "LIFX";
-      }
+    @NotNull private final String productName;
+    @NotNull private final String identifier;
+    @NotNull private final LifxProductCapabilities capabilities;
 
-      @NotNull @Override public String identifier() {
-        return "lifx_plus_a19";
-      }
+    Defaults(
+        @NotNull String productName,
+        @NotNull String identifier,
+        boolean hasColor,
+        boolean hasVariableColorTemp,
+        boolean hasIR,
+        boolean hasMultizone
+    ) {
+      this.productName = productName;
+      this.identifier = identifier;
+      this.capabilities = LifxProductCapabilities.builder()
+          .hasColor(hasColor)
+          .hasVariableColorTemp(hasVariableColorTemp)
+          .hasIR(hasIR)
+          .hasMultizone(hasMultizone)
+          .build();
+    }
 
-      @NotNull @Override public LifxProductCapabilities capabilities() {
-        return LifxProductCapabilities.builder()
-            .hasColor(true)
-            .hasVariableColorTemp(true)
-            .hasIR(true)
-            .hasMultizone(false)
-            .build();
-      }
-    },
-  }
+    @NotNull @Override public String productName() {
+      return productName;
+    }
 
+    @NotNull @Override public String company() {
+      return "LIFX";
+    }
 
-  class Adapter implements JsonDeserializer<LifxProduct> {
-    @Override public LifxProduct deserialize(JsonElement json, Type typeOfT, final JsonDeserializationContext context) {
-      final JsonObject root = json.getAsJsonObject();
-      final String identifier = root.get("identifier").getAsString();
-      switch (identifier) {
-        case "lifx_plus_19":
-          return A19_PLUS;
-        default:
-          return new LifxProduct() {
-            @NotNull @Override public String productName() {
-              return root.get("name").getAsString();
-            }
+    @NotNull @Override public String identifier() {
+      return identifier;
+    }
 
-            @NotNull @Override public String company() {
-              return root.get("company").getAsString();
-            }
+    @NotNull @Override public LifxProductCapabilities capabilities() {
+      return capabilities;
+    }
+  }
 
-            @NotNull @Override public String identifier() {
-              return identifier;
-            }
 
-            @NotNull @Override public LifxProductCapabilities capabilities() {
-              return context.deserialize(root.get("capabilities"), LifxProductCapabilities.class);
+  class Adapter extends ModelTypeAdapterFactory<LifxProduct> {
+    public Adapter() {
+      super(LifxProduct.class);
+    }
+
+    @NotNull @Override protected TypeAdapter<LifxProduct> create(@NotNull final Gson gson) {
+      final TypeAdapter<LifxProductCapabilities> capabilitiesAdapter = gson.getAdapter(LifxProductCapabilities.class);
+      return new TypeAdapter<LifxProduct>() {
+        @Override public LifxProduct read(JsonReader in) throws IOException {
+          String name = null;
+          String identifier = null;
+          String company = null;
+          LifxProductCapabilities capabilities = null;
+          in.beginObject();
+          while (in.hasNext()) {
+            switch (in.nextName()) {
+              case "name":
+                name = JsonUtil.nextNullableString(in);
+                break;
+              case "identifier":
+                identifier = JsonUtil.nextNullableString(in);
+                break;
+              case "company":
+                company = JsonUtil.nextNullableString(in);
+                break;
+              case "capabilities":
+                capabilities = capabilitiesAdapter.read(in);
+                break;
+              default:
+                in.skipValue();
             }
-          };
-      }
+          }
+          in.endObject();
+          return LifxProducts.canonical(
+              JsonUtil.required(name, "name", LifxProduct.class),
+              JsonUtil.required(company, "company", LifxProduct.class),
+              JsonUtil.required(identifier, "identifier", LifxProduct.class),
+              JsonUtil.required(capabilities, "capabilities", LifxProduct.class)
+          );
+        }
+
+        @Override public void write(JsonWriter out, LifxProduct src) throws IOException {
+          out.beginObject()
+              .name("name").value(src.productName())
+              .name("identifier").value(src.identifier())
+              .name("company").value(src.company())
+              .name("capabilities");
+          capabilitiesAdapter.write(out, src.capabilities());
+          out.endObject();
+        }
+      };
     }
   }
 }
@@ -1,14 +1,14 @@
 package com.kevinmost.lifx.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.JsonUtil;
 import org.jetbrains.annotations.NotNull;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
 @SuppressWarnings("NullableProblems")
 @AutoValue
@@ -35,16 +35,48 @@ public abstract class LifxProductCapabilities {
 
   LifxProductCapabilities() {} // AutoValue instances only
 
-  static class Adapter implements JsonDeserializer<LifxProductCapabilities> {
-    @Override
-    public LifxProductCapabilities deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-      final JsonObject root = json.getAsJsonObject();
+  static class Adapter extends TypeAdapter<LifxProductCapabilities> {
+    @Override public LifxProductCapabilities read(JsonReader in) throws IOException {
+      Boolean hasColor = null;
+      Boolean hasVariableColorTemp = null;
+      Boolean hasIR = null;
+      Boolean hasMultizone = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "has_color":
+            hasColor = in.nextBoolean();
+            break;
+          case "has_variable_color_temp":
+            hasVariableColorTemp = in.nextBoolean();
+            break;
+          case "has_ir":
+            hasIR = in.nextBoolean();
+            break;
+          case "has_multizone":
+            hasMultizone = in.nextBoolean();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
       return builder()
-          .hasColor(root.get("has_color").getAsBoolean())
-          .hasVariableColorTemp(root.get("has_variable_color_temp").getAsBoolean())
-          .hasIR(root.get("has_ir").getAsBoolean())
-          .hasMultizone(root.get("has_multizone").getAsBoolean())
+          .hasColor(JsonUtil.required(hasColor, "has_color", LifxProductCapabilities.class))
+          .hasVariableColorTemp(
+              JsonUtil.required(hasVariableColorTemp, "has_variable_color_temp", LifxProductCapabilities.class))
+          .hasIR(JsonUtil.required(hasIR, "has_ir", LifxProductCapabilities.class))
+          .hasMultizone(JsonUtil.required(hasMultizone, "has_multizone", LifxProductCapabilities.class))
           .build();
     }
+
+    @Override public void write(JsonWriter out, LifxProductCapabilities src) throws IOException {
+      out.beginObject()
+          .name("has_color").value(src.hasColor())
+          .name("has_variable_color_temp").value(src.hasVariableColorTemp())
+          .name("has_ir").value(src.hasIR())
+          .name("has_multizone").value(src.hasMultizone())
+          .endObject();
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.kevinmost.lifx.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Every {@link LifxProduct} this process knows of, by identifier: the {@link LifxProduct.Defaults}, plus any other
+ * product as soon as it has been decoded once. Decoding a product that is already known hands back the known instance,
+ * so a listing of thousands of lights holds only a handful of products.
+ * <p>
+ * Once a product is known, it stays the one {@link #forIdentifier} returns. If the API describes a known product
+ * differently, lights decoded with that description get it as a product of their own, still shared by every light
+ * described the same way, but it doesn't replace the known one
+ */
+public final class LifxProducts {
+
+  @NotNull private static final ConcurrentMap<String, LifxProduct> BY_IDENTIFIER = new ConcurrentHashMap<>();
+  /**
+   * Descriptions that differ from the known product with the same identifier. Keyed by value, which only
+   * {@link ApiLifxProduct}s compare by
+   */
+  @NotNull private static final ConcurrentMap<ApiLifxProduct, ApiLifxProduct> VARIANTS = new ConcurrentHashMap<>();
+
+  static {
+    for (final LifxProduct product : LifxProduct.Defaults.values()) {
+      BY_IDENTIFIER.put(product.identifier(), product);
+    }
+  }
+
+  /**
+   * @return the product with this identifier, or null if no light of it has been seen yet and it isn't a default
+   */
+  @Nullable public static LifxProduct forIdentifier(@NotNull String identifier) {
+    return BY_IDENTIFIER.get(identifier);
+  }
+
+  @NotNull public static Collection<LifxProduct> all() {
+    return Collections.unmodifiableCollection(BY_IDENTIFIER.values());
+  }
+
+  /**
+   * @return the known product with these exact details, which becomes the product as described here if there isn't one
+   */
+  @NotNull static LifxProduct canonical(
+      @NotNull String productName,
+      @NotNull String company,
+      @NotNull String identifier,
+      @NotNull LifxProductCapabilities capabilities
+  ) {
+    LifxProduct known = BY_IDENTIFIER.get(identifier);
+    if (known == null) {
+      final LifxProduct decoded = ApiLifxProduct.create(productName, company, identifier, capabilities);
+      known = BY_IDENTIFIER.putIfAbsent(identifier, decoded);
+      if (known == null) {
+        return decoded;
+      }
+    }
+    if (known.productName().equals(productName)
+        && known.company().equals(company)
+        && known.capabilities().equals(capabilities)) {
+      return known;
+    }
+    final ApiLifxProduct variant = ApiLifxProduct.create(productName, company, identifier, capabilities);
+    final ApiLifxProduct shared = VARIANTS.putIfAbsent(variant, variant);
+    return shared == null ? variant : shared;
+  }
+
+  private LifxProducts() { throw new UnsupportedOperationException("No instances"); }
+}
@@ -1,26 +1,36 @@
 package com.kevinmost.lifx.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.kevinmost.auto.value.custom_hashcode_equals.adapter.IgnoreForHashCodeEquals;
 import com.kevinmost.internal.JsonUtil;
+import com.kevinmost.internal.ModelTypeAdapterFactory;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 import java.util.UUID;
 
 @AutoValue
-@JsonAdapter(Light.Adapter.class)
+@JsonAdapter(Light.Adapter.Factory.class)
 public abstract class Light implements LifxEntity {
 
+  @Nullable private Selector selector; // set lazily; racing threads just both look up the same interned instance
+
   @NotNull @Override public final Selector selector() {
-    return Selector.forLight(this);
+    Selector selector = this.selector;
+    if (selector == null) {
+      this.selector = selector = Selector.forLight(this);
+    }
+    return selector;
   }
 
   @NotNull public abstract UUID uuid();
@@ -39,27 +49,155 @@ public abstract class Light implements LifxEntity {
 
   Light() {} // AutoValue instances only
 
-  static class Adapter implements JsonDeserializer<Light> {
-    @Override public Light deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-      final JsonObject root = json.getAsJsonObject();
-      final Double infrared = JsonUtil.notNull(root.get("infrared"))
-          ? Double.parseDouble(root.get("infrared").getAsString())
-          : null;
+  static class Adapter extends TypeAdapter<Light> {
+
+    static class Factory extends ModelTypeAdapterFactory<Light> {
+      Factory() {
+        super(Light.class);
+      }
+
+      @NotNull @Override protected TypeAdapter<Light> create(@NotNull Gson gson) {
+        return new Adapter(gson);
+      }
+    }
+
+    @NotNull private final TypeAdapter<String> labelAdapter;
+    @NotNull private final TypeAdapter<PowerState> powerStateAdapter;
+    @NotNull private final TypeAdapter<LifxColor> colorAdapter;
+    @NotNull private final TypeAdapter<LifxGroup> groupAdapter;
+    @NotNull private final TypeAdapter<LifxLocation> locationAdapter;
+    @NotNull private final TypeAdapter<Date> dateAdapter;
+    @NotNull private final TypeAdapter<LifxProduct> productAdapter;
+
+    Adapter(@NotNull Gson gson) {
+      labelAdapter = gson.getAdapter(String.class); // so that a client can intern labels
+      powerStateAdapter = gson.getAdapter(PowerState.class);
+      colorAdapter = gson.getAdapter(LifxColor.class);
+      groupAdapter = gson.getAdapter(LifxGroup.class);
+      locationAdapter = gson.getAdapter(LifxLocation.class);
+      dateAdapter = gson.getAdapter(Date.class);
+      productAdapter = gson.getAdapter(LifxProduct.class);
+    }
+
+    @Override public Light read(JsonReader in) throws IOException {
+      String id = null;
+      String uuid = null;
+      String label = null;
+      Boolean connected = null;
+      PowerState powerState = null;
+      LifxColor color = null;
+      Double infrared = null;
+      Double brightness = null;
+      LifxGroup group = null;
+      LifxLocation location = null;
+      Date lastSeen = null;
+      Double secondsSinceSeen = null;
+      LifxProduct product = null;
+
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "id":
+            id = JsonUtil.nextNullableString(in);
+            break;
+          case "uuid":
+            uuid = JsonUtil.nextNullableString(in);
+            break;
+          case "label":
+            label = labelAdapter.read(in);
+            break;
+          case "connected":
+            connected = in.nextBoolean();
+            break;
+          case "power":
+            powerState = powerStateAdapter.read(in);
+            break;
+          case "color":
+            color = colorAdapter.read(in);
+            break;
+          case "infrared":
+            infrared = JsonUtil.nextNullableDouble(in);
+            break;
+          case "brightness":
+            brightness = JsonUtil.nextNullableDouble(in);
+            break;
+          case "group":
+            group = groupAdapter.read(in);
+            break;
+          case "location":
+            location = locationAdapter.read(in);
+            break;
+          case "last_seen":
+            lastSeen = dateAdapter.read(in);
+            break;
+          case "seconds_since_seen":
+            secondsSinceSeen = JsonUtil.nextNullableDouble(in);
+            break;
+          case "product":
+            product = productAdapter.read(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+
       return new AutoValue_Light(
-          root.get("id").getAsString(),
-          UUID.fromString(root.get("uuid").getAsString()),
-          root.get("label").getAsString(),
-          root.get("connected").getAsBoolean(),
-          JsonUtil.fromJSON(context, root.get("power"), PowerState.class),
-          JsonUtil.fromJSON(context, root.get("color"), LifxColor.class),
+          JsonUtil.required(id, "id", Light.class),
+          UUID.fromString(JsonUtil.required(uuid, "uuid", Light.class)),
+          label,
+          JsonUtil.required(connected, "connected", Light.class),
+          JsonUtil.required(powerState, "power", Light.class),
+          JsonUtil.required(color, "color", Light.class),
           infrared,
-          root.get("brightness").getAsDouble(),
-          JsonUtil.fromJSON(context, root.get("group"), LifxGroup.class),
-          JsonUtil.fromJSON(context, root.get("location"), LifxLocation.class),
-          JsonUtil.fromJSON(context, root.get("last_seen"), Date.class),
-          root.get("seconds_since_seen").getAsDouble(),
-          JsonUtil.fromJSON(context, root.get("product"), LifxProduct.class)
+          JsonUtil.required(brightness, "brightness", Light.class),
+          JsonUtil.required(group, "group", Light.class),
+          JsonUtil.required(location, "location", Light.class),
+          JsonUtil.required(lastSeen, "last_seen", Light.class),
+          JsonUtil.required(secondsSinceSeen, "seconds_since_seen", Light.class),
+          JsonUtil.required(product, "product", Light.class)
       );
     }
+
+    /**
+     * Writes a light back out in the same shape that the LiFX API returns it in, with the brightness split out of the
+     * color
+     */
+    @Override public void write(JsonWriter out, Light src) throws IOException {
+      out.beginObject()
+          .name("id").value(src.id())
+          .name("uuid").value(src.uuid().toString())
+          .name("label").value(src.label())
+          .name("connected").value(src.connected())
+          .name("power");
+      powerStateAdapter.write(out, src.powerState());
+      final LifxColor color = src.color();
+      out.name("color").beginObject()
+          .name("hue").value(color.hue())
+          .name("saturation").value(color.saturation())
+          .name("kelvin").value(color.kelvin())
+          .endObject();
+      out.name("infrared").value(src.infrared());
+      out.name("brightness").value(src.brightness());
+      out.name("group");
+      groupAdapter.write(out, src.group());
+      out.name("location");
+      locationAdapter.write(out, src.location());
+      out.name("last_seen").value(formatLastSeen(src.lastSeen()));
+      out.name("seconds_since_seen").value(src.secondsSinceSeen());
+      out.name("product");
+      productAdapter.write(out, src.product());
+      out.endObject();
+    }
+
+    /**
+     * Gson's own {@link Date} adapter writes a locale-dependent string to the second; this is the API's format, to the
+     * millisecond, so that a light that's written out reads back the same
+     */
+    @NotNull private static String formatLastSeen(@NotNull Date lastSeen) {
+      final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'+00:00'", Locale.US);
+      format.setTimeZone(TimeZone.getTimeZone("UTC"));
+      return format.format(lastSeen);
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.kevinmost.lifx.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The fields of a {@link Light}, for choosing which ones a {@link LightProjection} decodes
+ */
+public enum LightField {
+  ID("id"),
+  UUID("uuid"),
+  LABEL("label"),
+  CONNECTED("connected"),
+  POWER("power"),
+  COLOR("color"),
+  INFRARED("infrared"),
+  BRIGHTNESS("brightness"),
+  GROUP("group"),
+  LOCATION("location"),
+  LAST_SEEN("last_seen"),
+  SECONDS_SINCE_SEEN("seconds_since_seen"),
+  PRODUCT("product"),
+  ;
+
+  @NotNull private static final Map<String, LightField> BY_JSON_NAME = new HashMap<>();
+
+  static {
+    for (final LightField field : values()) {
+      BY_JSON_NAME.put(field.jsonName, field);
+    }
+  }
+
+  @NotNull final String jsonName;
+
+  LightField(@NotNull String jsonName) {
+    this.jsonName = jsonName;
+  }
+
+  @Nullable static LightField forJsonName(@NotNull String jsonName) {
+    return BY_JSON_NAME.get(jsonName);
+  }
+}
@@ -0,0 +1,343 @@
+package com.kevinmost.lifx.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.JsonUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Some of the fields of a {@link Light}, for listings too large to decode in full. Only the projected fields are read
+ * off the wire; everything else is skipped over without being parsed, and isn't kept. {@link #uuid()} and
+ * {@link #lastSeen()} are kept as the raw strings and only parsed the first time they're asked for.
+ * <p>
+ * Asking for a field that wasn't projected throws an {@link IllegalStateException}. The id is always projected.
+ * Written back out as JSON, a projection has only its projected fields, as they were read
+ */
+public final class LightProjection implements LifxEntity {
+
+  @NotNull private final Set<LightField> fields;
+  @NotNull private final TypeAdapter<Date> dateAdapter;
+
+  // Only ever written by the Adapter, before the projection is handed out
+  private String id;
+  @Nullable private String rawUUID;
+  @Nullable private String label;
+  @Nullable private Boolean connected;
+  @Nullable private PowerState powerState;
+  @Nullable private LifxColor color;
+  @Nullable private Double infrared;
+  @Nullable private Double brightness;
+  @Nullable private LifxGroup group;
+  @Nullable private LifxLocation location;
+  @Nullable private String rawLastSeen;
+  @Nullable private Double secondsSinceSeen;
+  @Nullable private LifxProduct product;
+
+  // Parsed on first access; racing threads just both parse the same string. Volatile, since a Date isn't immutable and
+  // so isn't safe to publish through a plain field
+  @Nullable private volatile UUID uuid;
+  @Nullable private volatile Date lastSeen;
+  @Nullable private volatile Selector selector;
+
+  private LightProjection(@NotNull Set<LightField> fields, @NotNull TypeAdapter<Date> dateAdapter) {
+    this.fields = fields;
+    this.dateAdapter = dateAdapter;
+  }
+
+  /**
+   * @return {@code fields} plus {@link LightField#ID}, as an immutable set that can be shared by every projection
+   */
+  @NotNull public static Set<LightField> fields(@NotNull LightField... fields) {
+    final EnumSet<LightField> set = EnumSet.of(LightField.ID, fields);
+    return Collections.unmodifiableSet(set);
+  }
+
+  @NotNull public Set<LightField> projectedFields() {
+    return fields;
+  }
+
+  public boolean has(@NotNull LightField field) {
+    return fields.contains(field);
+  }
+
+  @NotNull @Override public String id() {
+    return id;
+  }
+
+  @NotNull @Override public Selector selector() {
+    Selector selector = this.selector;
+    if (selector == null) {
+      this.selector = selector = Selector.unsafe("id:" + id);
+    }
+    return selector;
+  }
+
+  @NotNull public UUID uuid() {
+    check(LightField.UUID);
+    UUID uuid = this.uuid;
+    if (uuid == null) {
+      //noinspection ConstantConditions
+      this.uuid = uuid = UUID.fromString(rawUUID);
+    }
+    return uuid;
+  }
+
+  @Nullable public String label() {
+    check(LightField.LABEL);
+    return label;
+  }
+
+  public boolean connected() {
+    check(LightField.CONNECTED);
+    //noinspection ConstantConditions
+    return connected;
+  }
+
+  @Nullable public PowerState powerState() {
+    check(LightField.POWER);
+    return powerState;
+  }
+
+  @NotNull public LifxColor color() {
+    check(LightField.COLOR);
+    //noinspection ConstantConditions
+    return color;
+  }
+
+  @Nullable public Double infrared() {
+    check(LightField.INFRARED);
+    return infrared;
+  }
+
+  public double brightness() {
+    check(LightField.BRIGHTNESS);
+    //noinspection ConstantConditions
+    return brightness;
+  }
+
+  @NotNull public LifxGroup group() {
+    check(LightField.GROUP);
+    //noinspection ConstantConditions
+    return group;
+  }
+
+  @NotNull public LifxLocation location() {
+    check(LightField.LOCATION);
+    //noinspection ConstantConditions
+    return location;
+  }
+
+  /**
+   * @return a copy, so that a caller can't change what other callers see
+   */
+  @NotNull public Date lastSeen() {
+    check(LightField.LAST_SEEN);
+    Date lastSeen = this.lastSeen;
+    if (lastSeen == null) {
+      this.lastSeen = lastSeen = dateAdapter.fromJsonTree(new JsonPrimitive(rawLastSeen));
+    }
+    return new Date(lastSeen.getTime());
+  }
+
+  public double secondsSinceSeen() {
+    check(LightField.SECONDS_SINCE_SEEN);
+    //noinspection ConstantConditions
+    return secondsSinceSeen;
+  }
+
+  @NotNull public LifxProduct product() {
+    check(LightField.PRODUCT);
+    //noinspection ConstantConditions
+    return product;
+  }
+
+  private void check(@NotNull LightField field) {
+    if (!fields.contains(field)) {
+      throw new IllegalStateException(field + " wasn't projected");
+    }
+  }
+
+  @Override public String toString() {
+    return "LightProjection{id=" + id + ", fields=" + fields + "}";
+  }
+
+  /**
+   * Reads lights as projections of {@code fields}, and writes projections as JSON objects of just their projected
+   * fields. Needed per listing, since the fields differ from one to the next
+   *
+   * @param fields as returned by {@link #fields(LightField...)}, so that it's shared by every light read
+   */
+  @NotNull public static TypeAdapter<LightProjection> adapter(@NotNull Gson gson, @NotNull Set<LightField> fields) {
+    return new Adapter(gson, fields);
+  }
+
+  static final class Adapter extends TypeAdapter<LightProjection> {
+
+    @NotNull private final Set<LightField> fields;
+    @NotNull private final TypeAdapter<String> labelAdapter;
+    @NotNull private final TypeAdapter<PowerState> powerStateAdapter;
+    @NotNull private final TypeAdapter<LifxColor> colorAdapter;
+    @NotNull private final TypeAdapter<LifxGroup> groupAdapter;
+    @NotNull private final TypeAdapter<LifxLocation> locationAdapter;
+    @NotNull private final TypeAdapter<Date> dateAdapter;
+    @NotNull private final TypeAdapter<LifxProduct> productAdapter;
+
+    Adapter(@NotNull Gson gson, @NotNull Set<LightField> fields) {
+      this.fields = fields;
+      labelAdapter = gson.getAdapter(String.class); // so that a client can intern labels
+      powerStateAdapter = gson.getAdapter(PowerState.class);
+      colorAdapter = gson.getAdapter(LifxColor.class);
+      groupAdapter = gson.getAdapter(LifxGroup.class);
+      locationAdapter = gson.getAdapter(LifxLocation.class);
+      dateAdapter = gson.getAdapter(Date.class);
+      productAdapter = gson.getAdapter(LifxProduct.class);
+    }
+
+    @Override public LightProjection read(JsonReader in) throws IOException {
+      final LightProjection out = new LightProjection(fields, dateAdapter);
+      in.beginObject();
+      while (in.hasNext()) {
+        final LightField field = LightField.forJsonName(in.nextName());
+        if (field == null || !fields.contains(field)) {
+          in.skipValue();
+          continue;
+        }
+        switch (field) {
+          case ID:
+            out.id = JsonUtil.nextNullableString(in);
+            break;
+          case UUID:
+            out.rawUUID = JsonUtil.nextNullableString(in);
+            break;
+          case LABEL:
+            out.label = labelAdapter.read(in);
+            break;
+          case CONNECTED:
+            out.connected = in.nextBoolean();
+            break;
+          case POWER:
+            out.powerState = powerStateAdapter.read(in);
+            break;
+          case COLOR:
+            out.color = colorAdapter.read(in);
+            break;
+          case INFRARED:
+            out.infrared = JsonUtil.nextNullableDouble(in);
+            break;
+          case BRIGHTNESS:
+            out.brightness = JsonUtil.nextNullableDouble(in);
+            break;
+          case GROUP:
+            out.group = groupAdapter.read(in);
+            break;
+          case LOCATION:
+            out.location = locationAdapter.read(in);
+            break;
+          case LAST_SEEN:
+            out.rawLastSeen = JsonUtil.nextNullableString(in);
+            break;
+          case SECONDS_SINCE_SEEN:
+            out.secondsSinceSeen = JsonUtil.nextNullableDouble(in);
+            break;
+          case PRODUCT:
+            out.product = productAdapter.read(in);
+            break;
+        }
+      }
+      in.endObject();
+      checkRequired(out);
+      return out;
+    }
+
+    /**
+     * The same fields as {@link Light} requires, where projected
+     */
+    private void checkRequired(@NotNull LightProjection out) {
+      JsonUtil.required(out.id, "id", Light.class);
+      required(out.rawUUID, LightField.UUID);
+      required(out.connected, LightField.CONNECTED);
+      required(out.powerState, LightField.POWER);
+      required(out.color, LightField.COLOR);
+      required(out.brightness, LightField.BRIGHTNESS);
+      required(out.group, LightField.GROUP);
+      required(out.location, LightField.LOCATION);
+      required(out.rawLastSeen, LightField.LAST_SEEN);
+      required(out.secondsSinceSeen, LightField.SECONDS_SINCE_SEEN);
+      required(out.product, LightField.PRODUCT);
+    }
+
+    private void required(@Nullable Object value, @NotNull LightField field) {
+      if (fields.contains(field)) {
+        JsonUtil.required(value, field.jsonName, Light.class);
+      }
+    }
+
+    /**
+     * Writes the fields {@code src} was projected with, not this adapter's, so that a projection is written the same
+     * whichever adapter writes it
+     */
+    @Override public void write(JsonWriter out, LightProjection src) throws IOException {
+      if (src == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      for (final LightField field : src.fields) {
+        out.name(field.jsonName);
+        switch (field) {
+          case ID:
+            out.value(src.id);
+            break;
+          case UUID:
+            out.value(src.rawUUID);
+            break;
+          case LABEL:
+            labelAdapter.write(out, src.label);
+            break;
+          case CONNECTED:
+            out.value(src.connected);
+            break;
+          case POWER:
+            powerStateAdapter.write(out, src.powerState);
+            break;
+          case COLOR:
+            colorAdapter.write(out, src.color);
+            break;
+          case INFRARED:
+            out.value(src.infrared);
+            break;
+          case BRIGHTNESS:
+            out.value(src.brightness);
+            break;
+          case GROUP:
+            groupAdapter.write(out, src.group);
+            break;
+          case LOCATION:
+            locationAdapter.write(out, src.location);
+            break;
+          case LAST_SEEN:
+            out.value(src.rawLastSeen);
+            break;
+          case SECONDS_SINCE_SEEN:
+            out.value(src.secondsSinceSeen);
+            break;
+          case PRODUCT:
+            productAdapter.write(out, src.product);
+            break;
+        }
+      }
+      out.endObject();
+    }
+  }
+}
@@ -1,17 +1,13 @@
 package com.kevinmost.lifx.model;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.JsonUtil;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
 @JsonAdapter(PowerState.Adapter.class)
 public enum PowerState {
@@ -19,30 +15,49 @@ public enum PowerState {
   OFF;
 
 
-  static class Adapter implements JsonSerializer<PowerState>, JsonDeserializer<PowerState> {
+  static class Adapter extends TypeAdapter<PowerState> {
 
-    @Override public PowerState deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+    @Override public PowerState read(JsonReader in) throws IOException {
       final String str;
-      if (json.isJsonObject()) {
-        final JsonObject object = json.getAsJsonObject();
-        if (object.has("power")) {
-          str = object.get("power").getAsString();
-        } else {
+      switch (in.peek()) {
+        case NULL:
+          in.nextNull();
           return null;
-        }
-      } else if (json.isJsonPrimitive()) {
-        str = json.getAsString();
-      } else {
-        throw new JsonParseException("Can't parse a " + json.getClass() + " to a " + PowerState.class.getName());
+        case BEGIN_OBJECT:
+          String power = null;
+          in.beginObject();
+          while (in.hasNext()) {
+            if (in.nextName().equals("power")) {
+              power = JsonUtil.nextNullableString(in);
+            } else {
+              in.skipValue();
+            }
+          }
+          in.endObject();
+          if (power == null) {
+            return null;
+          }
+          str = power;
+          break;
+        case STRING:
+        case NUMBER:
+          str = in.nextString();
+          break;
+        case BOOLEAN:
+          str = String.valueOf(in.nextBoolean());
+          break;
+        default:
+          throw new JsonParseException("Can't parse a " + in.peek() + " to a " + PowerState.class.getName());
       }
       return str.equals("on") ? ON : OFF;
     }
 
-    @Override public JsonElement serialize(PowerState src, Type typeOfSrc, JsonSerializationContext context) {
+    @Override public void write(JsonWriter out, PowerState src) throws IOException {
       if (src == null) {
-        return JsonNull.INSTANCE;
+        out.nullValue();
+        return;
       }
-      return new JsonPrimitive(src == ON ? "on" : "off");
+      out.value(src == ON ? "on" : "off");
     }
   }
 }
@@ -0,0 +1,176 @@
+package com.kevinmost.lifx.model;
+
+import com.kevinmost.internal.Util;
+import org.jetbrains.annotations.NotNull;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * Converts whole frames of RGB pixels to hue, saturation and brightness at once, writing into caller-supplied arrays
+ * so that no objects are created per pixel. Every value is exactly what {@link LifxColor#rgb(int, int, int)} would
+ * give for the same pixel, since that method converts through the same functions.
+ * <p>
+ * Packed pixels are read as {@code 0xRRGGBB}; any alpha in the top byte (as in {@code 0xAARRGGBB}) is ignored
+ */
+public final class RgbConverter {
+
+  private static final int CHANNEL_MAX = 255;
+
+  /**
+   * {@code i / 255.0} for every channel value, so the conversion only divides where it has to
+   */
+  @NotNull private static final double[] PRIMES = new double[CHANNEL_MAX + 1];
+  static {
+    for (int i = 0; i < PRIMES.length; i++) {
+      PRIMES[i] = i / 255.0;
+    }
+  }
+
+  private RgbConverter() { throw new UnsupportedOperationException("No instances"); }
+
+  public static void toHsb(
+      @NotNull int[] pixels,
+      @NotNull double[] hues,
+      @NotNull double[] saturations,
+      @NotNull double[] brightnesses
+  ) {
+    toHsb(pixels, 0, pixels.length, hues, saturations, brightnesses, 0);
+  }
+
+  public static void toHsb(
+      @NotNull int[] pixels,
+      int from,
+      int count,
+      @NotNull double[] hues,
+      @NotNull double[] saturations,
+      @NotNull double[] brightnesses,
+      int to
+  ) {
+    checkBounds(pixels.length, from, count);
+    checkBounds(Math.min(hues.length, Math.min(saturations.length, brightnesses.length)), to, count);
+    for (int i = 0; i < count; i++) {
+      final int pixel = pixels[from + i];
+      final int r = (pixel >>> 16) & 0xff;
+      final int g = (pixel >>> 8) & 0xff;
+      final int b = pixel & 0xff;
+      hues[to + i] = hue(r, g, b);
+      saturations[to + i] = saturation(r, g, b);
+      brightnesses[to + i] = brightness(r, g, b);
+    }
+  }
+
+  /**
+   * The same as {@link #toHsb(int[], int, int, double[], double[], double[], int)}, narrowed to floats
+   */
+  public static void toHsb(
+      @NotNull int[] pixels,
+      int from,
+      int count,
+      @NotNull float[] hues,
+      @NotNull float[] saturations,
+      @NotNull float[] brightnesses,
+      int to
+  ) {
+    checkBounds(pixels.length, from, count);
+    checkBounds(Math.min(hues.length, Math.min(saturations.length, brightnesses.length)), to, count);
+    for (int i = 0; i < count; i++) {
+      final int pixel = pixels[from + i];
+      final int r = (pixel >>> 16) & 0xff;
+      final int g = (pixel >>> 8) & 0xff;
+      final int b = pixel & 0xff;
+      hues[to + i] = (float) hue(r, g, b);
+      saturations[to + i] = (float) saturation(r, g, b);
+      brightnesses[to + i] = (float) brightness(r, g, b);
+    }
+  }
+
+  /**
+   * Converts separate channel arrays, each holding values from 0 to 255
+   */
+  public static void toHsb(
+      @NotNull int[] reds,
+      @NotNull int[] greens,
+      @NotNull int[] blues,
+      int from,
+      int count,
+      @NotNull double[] hues,
+      @NotNull double[] saturations,
+      @NotNull double[] brightnesses,
+      int to
+  ) {
+    checkBounds(Math.min(reds.length, Math.min(greens.length, blues.length)), from, count);
+    checkBounds(Math.min(hues.length, Math.min(saturations.length, brightnesses.length)), to, count);
+    for (int i = 0; i < count; i++) {
+      final int r = checkChannel("r", reds[from + i]);
+      final int g = checkChannel("g", greens[from + i]);
+      final int b = checkChannel("b", blues[from + i]);
+      hues[to + i] = hue(r, g, b);
+      saturations[to + i] = saturation(r, g, b);
+      brightnesses[to + i] = brightness(r, g, b);
+    }
+  }
+
+  /**
+   * Converts packed pixels straight into the slots of an {@link HsbkBuffer}, leaving their kelvin as it was
+   */
+  public static void toHsb(@NotNull int[] pixels, int from, int count, @NotNull HsbkBuffer out, int to) {
+    checkBounds(pixels.length, from, count);
+    checkBounds(out.size(), to, count);
+    for (int i = 0; i < count; i++) {
+      final int pixel = pixels[from + i];
+      final int r = (pixel >>> 16) & 0xff;
+      final int g = (pixel >>> 8) & 0xff;
+      final int b = pixel & 0xff;
+      out.setRounded(to + i, hue(r, g, b), saturation(r, g, b), brightness(r, g, b));
+    }
+  }
+
+  static double hue(int r, int g, int b) {
+    final int max = Math.max(r, Math.max(g, b));
+    final int min = Math.min(r, Math.min(g, b));
+    final double rPrime = PRIMES[r];
+    final double gPrime = PRIMES[g];
+    final double bPrime = PRIMES[b];
+    final double delta = PRIMES[max] - PRIMES[min];
+    // The textbook formula takes the first of these mod 6 and the hue mod 360, but the differences here can never be
+    // bigger than delta, so both moduli would be exact no-ops apart from wrapping a negative hue (and floating-point
+    // modulo is slow)
+    final double huePrime;
+    if (max == r) {
+      huePrime = (gPrime - bPrime) / delta;
+    } else if (max == g) {
+      huePrime = ((bPrime - rPrime) / delta) + 2;
+    } else {
+      huePrime = ((rPrime - gPrime) / delta) + 4;
+    }
+    double hue = 60 * huePrime;
+    if (hue < 0) {
+      hue += 360.0;
+    }
+    // A grey has no hue; 0/0 above makes it NaN
+    return Util.round(Double.isNaN(hue) ? 0 : hue, LifxColor.PRECISION);
+  }
+
+  static double saturation(int r, int g, int b) {
+    final int max = Math.max(r, Math.max(g, b));
+    final int min = Math.min(r, Math.min(g, b));
+    final double cMax = PRIMES[max];
+    return Util.round(cMax == 0 ? 0 : (cMax - PRIMES[min]) / cMax, LifxColor.PRECISION);
+  }
+
+  static double brightness(int r, int g, int b) {
+    return Util.round(PRIMES[Math.max(r, Math.max(g, b))], LifxColor.PRECISION);
+  }
+
+  static int checkChannel(@NotNull String label, int value) {
+    return assertRange(label, value, 0, CHANNEL_MAX);
+  }
+
+  private static void checkBounds(int length, int offset, int count) {
+    if (offset < 0 || count < 0 || offset > length - count) {
+      throw new IndexOutOfBoundsException(
+          String.format("Range [%d, %d) out of bounds for length %d", offset, offset + count, length)
+      );
+    }
+  }
+}
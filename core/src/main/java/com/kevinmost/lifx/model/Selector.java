@@ -1,61 +1,79 @@
 package com.kevinmost.lifx.model;
 
+import com.kevinmost.internal.WeakInterner;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * Which lights a request applies to. Selectors are equal when their strings are, and the factory methods hand out one
+ * shared instance per distinct selector, so they are cheap to compare and to use as map keys
+ */
 public abstract class Selector {
 
+  @NotNull private static final WeakInterner<Selector> INTERNER = new WeakInterner<>();
+
   @NotNull public static Selector unsafe(@NotNull final String unsafeString) {
-    return new Selector() {
+    return INTERNER.intern(new Selector() {
       @NotNull @Override public String toString() {
         return unsafeString;
       }
-    };
+    });
   }
 
   @NotNull public static Selector forLight(@NotNull String label) {
-    return new Impl("label", label);
+    return create("label", label);
   }
 
   @NotNull public static Selector forLight(@NotNull Light light) {
-    return new Impl("id", light.id());
+    return create("id", light.id());
   }
 
   @NotNull public static Selector forGroup(@NotNull String label) {
-    return new Impl("group", label);
+    return create("group", label);
   }
 
   @NotNull public static Selector forGroup(@NotNull LifxGroup group) {
-    return new Impl("group_id", group.id());
+    return create("group_id", group.id());
   }
 
   @NotNull public static Selector forLocation(@NotNull String label) {
-    return new Impl("location", label);
+    return create("location", label);
   }
 
   @NotNull public static Selector forLocation(@NotNull LifxLocation location) {
-    return new Impl("location_id", location.id());
+    return create("location_id", location.id());
   }
 
-  @NotNull public static final Selector ALL = new Selector() {
+  @NotNull public static final Selector ALL = INTERNER.intern(new Selector() {
     @NotNull @Override public String toString() {
       return "all";
     }
-  };
+  });
+
+  @NotNull private static Selector create(@NotNull String prefix, @NotNull String suffix) {
+    return INTERNER.intern(new Impl(prefix, suffix));
+  }
 
   @NotNull public abstract String toString();
 
+  @Override public final boolean equals(@Nullable Object o) {
+    return this == o || (o instanceof Selector && toString().equals(o.toString()));
+  }
+
+  @Override public final int hashCode() {
+    return toString().hashCode();
+  }
+
   private static final class Impl extends Selector {
 
-    @NotNull private final String prefix;
-    @NotNull private final String suffix;
+    @NotNull private final String string;
 
     private Impl(@NotNull String prefix, @NotNull String suffix) {
-      this.prefix = prefix;
-      this.suffix = suffix;
+      this.string = prefix + ":" + suffix;
     }
 
     @NotNull @Override public String toString() {
-      return prefix + ":" + suffix;
+      return string;
     }
   }
 }
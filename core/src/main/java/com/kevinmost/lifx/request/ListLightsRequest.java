@@ -3,14 +3,18 @@ package com.kevinmost.lifx.request;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import com.kevinmost.internal.JsonUtil;
 import com.kevinmost.lifx.LifxRequest;
 import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.LightField;
+import com.kevinmost.lifx.model.LightProjection;
 import com.kevinmost.lifx.model.Selector;
 import okhttp3.HttpUrl;
 import okhttp3.Request;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.List;
 
 public final class ListLightsRequest extends LifxRequest.Adapter<List<Light>> {
@@ -33,6 +37,18 @@ public final class ListLightsRequest extends LifxRequest.Adapter<List<Light>> {
     this.selector = selector;
   }
 
+  @NotNull public Selector selector() {
+    return selector;
+  }
+
+  /**
+   * The same listing, but decoding only {@code fields} (and the id) of each light into a {@link LightProjection}, and
+   * skipping over the rest. Much cheaper than decoding every {@link Light} in full for large fleets
+   */
+  @NotNull public ProjectedListLightsRequest project(@NotNull LightField... fields) {
+    return new ProjectedListLightsRequest(this, LightProjection.fields(fields));
+  }
+
   @NotNull @Override public Request buildRequest(@NotNull HttpUrl baseURL, @NotNull Gson gson) {
     return new Request.Builder()
         .url(baseURL.newBuilder()
@@ -45,4 +61,8 @@ public final class ListLightsRequest extends LifxRequest.Adapter<List<Light>> {
   @NotNull @Override public List<Light> unmarshal(@NotNull JsonElement json, @NotNull Gson gson) {
     return JsonUtil.fromJSON(gson, json, new TypeToken<List<Light>>() {});
   }
+
+  @NotNull @Override public List<Light> unmarshal(@NotNull JsonReader reader, @NotNull Gson gson) throws IOException {
+    return gson.getAdapter(new TypeToken<List<Light>>() {}).read(reader);
+  }
 }
@@ -0,0 +1,152 @@
+package com.kevinmost.lifx.request;
+
+import com.kevinmost.internal.Scheduler;
+import com.kevinmost.lifx.LifxCallback;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.LifxRequest;
+import com.kevinmost.lifx.LifxResult;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * Debounces a rapid stream of {@link Operation}s, e.g. from a UI slider or a sensor feed. Operations are held for a
+ * short window and merged per selector with {@link Operation#mergedWith(Operation)}, so only the latest state of each
+ * selector is sent, as one {@link SetLightsRequest} per window. A window's operations are sent in the order of each
+ * selector's latest submit, so where selectors overlap, the most recently submitted state is the one that wins.
+ * <p>
+ * At most one window's worth of operations is in flight at a time. While it is, new operations keep merging into the
+ * next window instead of queueing up behind it, so a burst can't build up a backlog of stale states
+ */
+public final class OperationCoalescer {
+
+  @NotNull private final LifxClient client;
+  private final long windowNanos;
+  @Nullable private final LifxCallback<List<OperationResult>> callback;
+
+  @NotNull private final Map<String, Operation> pending = new LinkedHashMap<>();
+  private boolean flushScheduled;
+  private boolean sending;
+
+  public OperationCoalescer(@NotNull LifxClient client, long window, @NotNull TimeUnit unit) {
+    this(client, window, unit, null);
+  }
+
+  /**
+   * @param callback called with the result of every {@link SetLightsRequest} that this coalescer sends
+   */
+  public OperationCoalescer(
+      @NotNull LifxClient client,
+      long window,
+      @NotNull TimeUnit unit,
+      @Nullable LifxCallback<List<OperationResult>> callback
+  ) {
+    assertRange("window", window, 0, Long.MAX_VALUE);
+    this.client = client;
+    this.windowNanos = unit.toNanos(window);
+    this.callback = callback;
+  }
+
+  /**
+   * Queues an operation to be sent at the end of the current window, merged over any operation already pending for
+   * the same selector and moved behind the window's other operations
+   */
+  public void submit(@NotNull Operation operation) {
+    synchronized (this) {
+      final String key = operation.selector().toString();
+      // Removed and put back, since putting over an existing key would leave it where it was first submitted
+      final Operation existing = pending.remove(key);
+      pending.put(key, existing == null ? operation : existing.mergedWith(operation));
+      if (!sending) {
+        scheduleFlush(windowNanos);
+      }
+    }
+  }
+
+  /**
+   * Sends whatever is pending right away rather than waiting for the window to close. Does nothing if a previous
+   * window is still in flight; the pending operations go out as soon as it completes
+   */
+  public void flush() {
+    final List<Operation> batch;
+    synchronized (this) {
+      if (sending || pending.isEmpty()) {
+        return;
+      }
+      batch = new ArrayList<>(pending.values());
+      pending.clear();
+      sending = true;
+    }
+    send(batch);
+  }
+
+  /**
+   * @return how many selectors currently have an operation waiting to be sent
+   */
+  public synchronized int pendingCount() {
+    return pending.size();
+  }
+
+  private void send(@NotNull List<Operation> batch) {
+    final List<SetLightsRequest> chunks = new SetLightsRequest().plus(batch).chunked();
+    final AtomicInteger remaining = new AtomicInteger(chunks.size());
+    // Runs however a chunk finishes, so this can't be left sending forever by a chunk that fails or a callback that
+    // throws
+    final Runnable onChunkDone = new Runnable() {
+      @Override public void run() {
+        if (remaining.decrementAndGet() == 0) {
+          onSent();
+        }
+      }
+    };
+    for (int i = 0; i < chunks.size(); i++) {
+      final Future<LifxResult<List<OperationResult>>> future;
+      try {
+        future = chunks.get(i).executeAsync(client, callback);
+      } catch (RuntimeException e) {
+        // None of the chunks from here on were sent, so none of them will ever finish
+        if (remaining.addAndGet(i - chunks.size()) == 0) {
+          onSent();
+        }
+        throw e;
+      }
+      LifxRequest.Adapter.whenDone(future, onChunkDone);
+    }
+  }
+
+  private void onSent() {
+    synchronized (this) {
+      sending = false;
+      if (!pending.isEmpty()) {
+        // These have already waited out at least part of a window behind the previous send
+        scheduleFlush(0);
+      }
+    }
+  }
+
+  private void scheduleFlush(long delayNanos) {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    Scheduler.INSTANCE.schedule(new Runnable() {
+      @Override public void run() {
+        synchronized (OperationCoalescer.this) {
+          flushScheduled = false;
+        }
+        flush();
+      }
+    }, delayNanos, TimeUnit.NANOSECONDS);
+  }
+}
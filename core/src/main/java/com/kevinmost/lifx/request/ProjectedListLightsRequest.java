@@ -0,0 +1,65 @@
+package com.kevinmost.lifx.request;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.kevinmost.lifx.LifxRequest;
+import com.kevinmost.lifx.model.LightField;
+import com.kevinmost.lifx.model.LightProjection;
+import com.kevinmost.lifx.model.Selector;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link ListLightsRequest} that only decodes some fields of each light. See {@link ListLightsRequest#project}
+ */
+public final class ProjectedListLightsRequest extends LifxRequest.Adapter<List<LightProjection>> {
+
+  @NotNull private final ListLightsRequest listing;
+  @NotNull private final Set<LightField> fields;
+
+  ProjectedListLightsRequest(@NotNull ListLightsRequest listing, @NotNull Set<LightField> fields) {
+    this.listing = listing;
+    this.fields = fields;
+  }
+
+  @NotNull public Selector selector() {
+    return listing.selector();
+  }
+
+  @NotNull public Set<LightField> fields() {
+    return fields;
+  }
+
+  @NotNull @Override public Request buildRequest(@NotNull HttpUrl baseURL, @NotNull Gson gson) {
+    return listing.buildRequest(baseURL, gson);
+  }
+
+  @NotNull @Override public List<LightProjection> unmarshal(@NotNull JsonElement json, @NotNull Gson gson) {
+    final TypeAdapter<LightProjection> adapter = LightProjection.adapter(gson, fields);
+    final List<LightProjection> out = new ArrayList<>();
+    for (final JsonElement light : json.getAsJsonArray()) {
+      out.add(adapter.fromJsonTree(light));
+    }
+    return out;
+  }
+
+  @NotNull @Override
+  public List<LightProjection> unmarshal(@NotNull JsonReader reader, @NotNull Gson gson) throws IOException {
+    final TypeAdapter<LightProjection> adapter = LightProjection.adapter(gson, fields);
+    final List<LightProjection> out = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      out.add(adapter.read(reader));
+    }
+    reader.endArray();
+    return out;
+  }
+}
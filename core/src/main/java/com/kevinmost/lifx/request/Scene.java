@@ -0,0 +1,86 @@
+package com.kevinmost.lifx.request;
+
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.LifxResult;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static com.kevinmost.internal.Util.assertRange;
+
+/**
+ * A set of {@link Operation}s compiled once, up front, into {@link SetLightsRequest}s of at most
+ * {@link SetLightsRequest#MAX_OPERATIONS} operations whose bodies are already serialized. Scenes are immutable, so one
+ * can be kept around and activated any number of times, from any thread, without building or serializing anything
+ * again
+ */
+public final class Scene {
+
+  @NotNull private final List<Operation> operations;
+  @NotNull private final List<SetLightsRequest> requests;
+
+  private Scene(@NotNull List<Operation> operations, @NotNull List<SetLightsRequest> requests) {
+    this.operations = operations;
+    this.requests = requests;
+  }
+
+  @NotNull public static Scene compile(@NotNull Operation... operations) {
+    return compile(Arrays.asList(operations));
+  }
+
+  @NotNull public static Scene compile(@NotNull Collection<Operation> operations) {
+    assertRange("number of operations", operations.size(), 1, Integer.MAX_VALUE);
+    final List<Operation> copy = Collections.unmodifiableList(new ArrayList<>(operations));
+    final List<SetLightsRequest> requests = new ArrayList<>();
+    for (int start = 0; start < copy.size(); start += SetLightsRequest.MAX_OPERATIONS) {
+      requests.add(SetLightsRequest.compile(
+          copy.subList(start, Math.min(start + SetLightsRequest.MAX_OPERATIONS, copy.size()))
+      ));
+    }
+    return new Scene(copy, Collections.unmodifiableList(requests));
+  }
+
+  @NotNull public List<Operation> operations() {
+    return operations;
+  }
+
+  /**
+   * The compiled requests, in the order of the scene's operations. Each can also be sent on its own; trying to add
+   * operations to one throws
+   */
+  @NotNull public List<SetLightsRequest> requests() {
+    return requests;
+  }
+
+  /**
+   * Sends every request of the scene at once on the client's dispatcher and blocks until all of them have completed
+   */
+  @NotNull public SetLightsBatchResult activate(@NotNull LifxClient client) {
+    final List<Future<LifxResult<List<OperationResult>>>> inFlight = activateAsync(client);
+    final List<LifxResult<List<OperationResult>>> results = new ArrayList<>(inFlight.size());
+    for (int i = 0; i < inFlight.size(); i++) {
+      results.add(SetLightsRequest.await(requests.get(i), inFlight.get(i)));
+    }
+    return new SetLightsBatchResult(results);
+  }
+
+  /**
+   * Sends every request of the scene at once on the client's dispatcher
+   *
+   * @return one future per request, in the order of {@link #requests()}
+   */
+  @NotNull public List<Future<LifxResult<List<OperationResult>>>> activateAsync(@NotNull LifxClient client) {
+    final List<Future<LifxResult<List<OperationResult>>>> inFlight = new ArrayList<>(requests.size());
+    for (final SetLightsRequest request : requests) {
+      inFlight.add(request.executeAsync(client));
+    }
+    return inFlight;
+  }
+}
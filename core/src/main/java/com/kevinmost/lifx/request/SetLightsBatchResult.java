@@ -0,0 +1,60 @@
+package com.kevinmost.lifx.request;
+
+import com.kevinmost.lifx.LifxResult;
+import com.kevinmost.lifx.request.model.OperationResult;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of {@link SetLightsRequest#executeChunked(com.kevinmost.lifx.LifxClient, int)}: one {@link LifxResult}
+ * per chunk of at most {@link SetLightsRequest#MAX_OPERATIONS} operations, in the same order as the operations were
+ * added. The {@link SetLightsRequest} that each chunk was sent as is available through
+ * {@link LifxResult#originalRequest()}, so a caller can see exactly which operations a failed chunk carried
+ */
+public final class SetLightsBatchResult {
+
+  @NotNull private final List<LifxResult<List<OperationResult>>> chunks;
+
+  SetLightsBatchResult(@NotNull List<LifxResult<List<OperationResult>>> chunks) {
+    this.chunks = Collections.unmodifiableList(chunks);
+  }
+
+  @NotNull public List<LifxResult<List<OperationResult>>> chunks() {
+    return chunks;
+  }
+
+  public boolean isSuccess() {
+    for (final LifxResult<List<OperationResult>> chunk : chunks) {
+      if (!chunk.isSuccess()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @NotNull public List<LifxResult<List<OperationResult>>> failedChunks() {
+    final List<LifxResult<List<OperationResult>>> out = new ArrayList<>();
+    for (final LifxResult<List<OperationResult>> chunk : chunks) {
+      if (!chunk.isSuccess()) {
+        out.add(chunk);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * The results of every chunk that succeeded, merged back together in their original order
+   */
+  @NotNull public List<OperationResult> operationResults() {
+    final List<OperationResult> out = new ArrayList<>();
+    for (final LifxResult<List<OperationResult>> chunk : chunks) {
+      if (chunk.isSuccess()) {
+        out.addAll(chunk.unwrap());
+      }
+    }
+    return out;
+  }
+}
@@ -3,54 +3,213 @@ package com.kevinmost.lifx.request;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.kevinmost.internal.Func1;
-import com.kevinmost.internal.JSONArrayBuilder;
-import com.kevinmost.internal.JSONObjectBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.kevinmost.internal.JsonUtil;
+import com.kevinmost.internal.Util;
+import com.kevinmost.lifx.LifxClient;
 import com.kevinmost.lifx.LifxRequest;
+import com.kevinmost.lifx.LifxResult;
 import com.kevinmost.lifx.request.model.Operation;
 import com.kevinmost.lifx.request.model.OperationResult;
 import okhttp3.HttpUrl;
 import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import static com.kevinmost.internal.Util.assertRange;
 
 public final class SetLightsRequest extends LifxRequest.Adapter<List<OperationResult>> {
 
-  @NotNull private final List<Operation> operations = new ArrayList<>();
+  /**
+   * The most operations that the LiFX API accepts in a single request
+   */
+  public static final int MAX_OPERATIONS = 50;
 
-  SetLightsRequest() {}
+  /**
+   * Serializes compiled requests the same way a client serializes the ones it builds, so a compiled body is byte for
+   * byte what the client would have sent
+   */
+  @NotNull private static final Gson COMPILER_GSON = newGson();
+
+  @NotNull private final List<Operation> operations;
+
+  /**
+   * The already-serialized body of a request compiled into a {@link Scene}, or null for one that is still being built
+   */
+  @Nullable private final RequestBody compiledBody;
+  @Nullable private volatile CompiledRequest compiledRequest;
+
+  SetLightsRequest() {
+    operations = new ArrayList<>();
+    compiledBody = null;
+  }
+
+  private SetLightsRequest(@NotNull List<Operation> operations, @NotNull RequestBody compiledBody) {
+    this.operations = operations;
+    this.compiledBody = compiledBody;
+  }
+
+  /**
+   * Serializes {@code operations} once, into a request that can't be changed and so can be sent any number of times,
+   * from any thread
+   */
+  @NotNull static SetLightsRequest compile(@NotNull List<Operation> operations) {
+    assertRange("number of operations", operations.size(), 1, MAX_OPERATIONS);
+    final Operation[] copy = operations.toArray(new Operation[operations.size()]);
+    return new SetLightsRequest(Collections.unmodifiableList(Arrays.asList(copy)), statesBody(COMPILER_GSON, copy));
+  }
 
   @NotNull public SetLightsRequest plus(Operation... operations) {
     return plus(Arrays.asList(operations));
   }
 
+  /**
+   * @throws IllegalStateException if this request belongs to a {@link Scene}
+   */
   @NotNull public SetLightsRequest plus(Collection<Operation> operations) {
+    if (compiledBody != null) {
+      throw new IllegalStateException("Requests compiled into a Scene can't be changed");
+    }
     this.operations.addAll(operations);
     return this;
   }
 
-  @NotNull @Override public Request buildRequest(@NotNull HttpUrl baseURL, @NotNull final Gson gson) {
-    assertRange("number of operations", operations.size(), 1, 50);
-    final JsonObject body = new JSONObjectBuilder()
-        .add("states", new JSONArrayBuilder()
-            .addAll(operations, new Func1<Operation, JsonElement>() {
-              @NotNull @Override public JsonElement call(@NotNull Operation in) {
-                return JsonUtil.toJSON(gson, in, Operation.class);
-              }
-            })
-        )
-        .build();
+  @NotNull public List<Operation> operations() {
+    return Collections.unmodifiableList(operations);
+  }
+
+  /**
+   * Splits this request into requests of at most {@link #MAX_OPERATIONS} operations each, keeping the operations in
+   * their original order
+   */
+  @NotNull public List<SetLightsRequest> chunked() {
+    final List<SetLightsRequest> chunks = new ArrayList<>();
+    for (int start = 0; start < operations.size(); start += MAX_OPERATIONS) {
+      chunks.add(new SetLightsRequest().plus(
+          operations.subList(start, Math.min(start + MAX_OPERATIONS, operations.size()))
+      ));
+    }
+    return chunks;
+  }
+
+  @NotNull public SetLightsBatchResult executeChunked(int maxConcurrentChunks) {
+    return executeChunked(defaultClient(".executeChunked()"), maxConcurrentChunks);
+  }
+
+  /**
+   * Sends a request of any size by splitting it into {@link #chunked() chunks} and keeping up to
+   * {@code maxConcurrentChunks} of them in flight at once on the client's dispatcher. Blocks until every chunk has
+   * completed; a failed chunk doesn't stop the rest from being sent, and a chunk that couldn't be sent at all is a
+   * {@link LifxResult.NetworkError} in the batch like any other.
+   * <p>
+   * Every chunk goes to the same host, and OkHttp's {@link okhttp3.Dispatcher} runs at most
+   * {@link okhttp3.Dispatcher#getMaxRequestsPerHost()} calls to one host at once: 5, unless the
+   * {@link okhttp3.OkHttpClient} the client was built with says otherwise. Chunks in flight beyond that just wait in
+   * the dispatcher's queue, so a higher {@code maxConcurrentChunks} only helps along with a higher limit there
+   */
+  @NotNull public SetLightsBatchResult executeChunked(@NotNull LifxClient client, int maxConcurrentChunks) {
+    assertRange("number of operations", operations.size(), 1, Integer.MAX_VALUE);
+    assertRange("maxConcurrentChunks", maxConcurrentChunks, 1, Integer.MAX_VALUE);
+    final List<SetLightsRequest> chunks = chunked();
+    final List<LifxResult<List<OperationResult>>> results = new ArrayList<>(chunks.size());
+    final Deque<Future<LifxResult<List<OperationResult>>>> inFlight = new ArrayDeque<>();
+    try {
+      for (final SetLightsRequest chunk : chunks) {
+        if (inFlight.size() == maxConcurrentChunks) {
+          results.add(await(chunks.get(results.size()), inFlight.removeFirst()));
+        }
+        inFlight.addLast(send(chunk, client));
+      }
+      while (!inFlight.isEmpty()) {
+        results.add(await(chunks.get(results.size()), inFlight.removeFirst()));
+      }
+    } finally {
+      for (final Future<?> future : inFlight) {
+        future.cancel(true);
+      }
+    }
+    return new SetLightsBatchResult(results);
+  }
+
+  /**
+   * @return {@code future}, or if the request couldn't even be enqueued, an already failed future that {@link #await}
+   * turns into its result
+   */
+  @NotNull private static Future<LifxResult<List<OperationResult>>> send(
+      @NotNull SetLightsRequest request,
+      @NotNull LifxClient client
+  ) {
+    try {
+      return request.executeAsync(client);
+    } catch (final RuntimeException e) {
+      final FutureTask<LifxResult<List<OperationResult>>> failed =
+          new FutureTask<>(new Callable<LifxResult<List<OperationResult>>>() {
+            @Override public LifxResult<List<OperationResult>> call() {
+              throw e;
+            }
+          });
+      failed.run();
+      return failed;
+    }
+  }
+
+  /**
+   * @return the result of {@code request}, as sent by {@code future}. One that failed or was cancelled without a
+   * result is a {@link LifxResult.NetworkError}, so that it doesn't cost the results of the requests sent with it
+   */
+  @NotNull static LifxResult<List<OperationResult>> await(
+      @NotNull SetLightsRequest request,
+      @NotNull Future<LifxResult<List<OperationResult>>> future
+  ) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted!", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      return new LifxResult.NetworkError<>(request,
+          cause instanceof IOException ? (IOException) cause : new IOException("Couldn't send the request", cause));
+    } catch (CancellationException e) {
+      return new LifxResult.NetworkError<>(request, new IOException("The request was cancelled", e));
+    }
+  }
+
+  @NotNull @Override public Request buildRequest(@NotNull HttpUrl baseURL, @NotNull Gson gson) {
+    if (compiledBody != null) {
+      CompiledRequest compiled = compiledRequest;
+      if (compiled == null || !compiled.baseURL.equals(baseURL)) {
+        compiledRequest = compiled = new CompiledRequest(baseURL, new Request.Builder()
+            .url(baseURL.resolve("v1/lights/states"))
+            .put(compiledBody)
+            .build());
+      }
+      return compiled.request;
+    }
+    assertRange("number of operations", operations.size(), 1, MAX_OPERATIONS);
     return new Request.Builder()
         .url(baseURL.resolve("v1/lights/states"))
-        .put(JsonUtil.toRequestBody(gson, body))
+        .put(statesBody(gson, operations.toArray(new Operation[operations.size()])))
         .build();
   }
 
@@ -64,4 +223,44 @@ public final class SetLightsRequest extends LifxRequest.Adapter<List<OperationRe
     return out;
   }
 
+  @NotNull @Override
+  public List<OperationResult> unmarshal(@NotNull JsonReader reader, @NotNull Gson gson) throws IOException {
+    return gson.getAdapter(new TypeToken<List<OperationResult>>() {}).read(reader);
+  }
+
+  /**
+   * Writes the {@code states} array through {@link Operation}'s type adapter, without building a tree of it first.
+   * It's written into a buffer rather than straight to the socket, so that the request is sent with a
+   * {@code Content-Length} like any other, instead of chunked. Since the bytes are written up front, a later
+   * {@link #plus} can't change a body that OkHttp is still sending or retrying
+   */
+  @NotNull private static RequestBody statesBody(@NotNull Gson gson, @NotNull Operation[] operations) {
+    final TypeAdapter<Operation> operationAdapter = gson.getAdapter(Operation.class);
+    final Buffer buffer = new Buffer();
+    try {
+      final JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(buffer.outputStream(), Util.UTF_8));
+      writer.beginObject().name("states").beginArray();
+      for (final Operation operation : operations) {
+        operationAdapter.write(writer, operation);
+      }
+      writer.endArray().endObject();
+      writer.flush();
+    } catch (IOException e) {
+      throw new AssertionError(e); // a Buffer never throws
+    }
+    return RequestBody.create(JsonUtil.MEDIA_TYPE_JSON, buffer.readByteString());
+  }
+
+  /**
+   * A compiled request's {@link Request}, kept for as long as it keeps being sent to the same API
+   */
+  private static final class CompiledRequest {
+    @NotNull final HttpUrl baseURL;
+    @NotNull final Request request;
+
+    CompiledRequest(@NotNull HttpUrl baseURL, @NotNull Request request) {
+      this.baseURL = baseURL;
+      this.request = request;
+    }
+  }
 }
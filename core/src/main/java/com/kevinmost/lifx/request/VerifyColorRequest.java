@@ -2,12 +2,15 @@ package com.kevinmost.lifx.request;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
 import com.kevinmost.lifx.LifxRequest;
 import com.kevinmost.lifx.model.LifxColor;
 import okhttp3.HttpUrl;
 import okhttp3.Request;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+
 public final class VerifyColorRequest extends LifxRequest.Adapter<LifxColor> {
 
   @NotNull private final String value;
@@ -29,4 +32,8 @@ public final class VerifyColorRequest extends LifxRequest.Adapter<LifxColor> {
   @NotNull @Override public LifxColor unmarshal(@NotNull JsonElement json, @NotNull Gson gson) {
     return gson.fromJson(json, LifxColor.class);
   }
+
+  @NotNull @Override public LifxColor unmarshal(@NotNull JsonReader reader, @NotNull Gson gson) throws IOException {
+    return gson.getAdapter(LifxColor.class).read(reader);
+  }
 }
@@ -1,16 +1,13 @@
 package com.kevinmost.lifx.request.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
-import com.kevinmost.internal.Func2;
-import com.kevinmost.internal.JSONObjectBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.kevinmost.internal.JsonUtil;
+import com.kevinmost.internal.ModelTypeAdapterFactory;
 import com.kevinmost.lifx.model.LifxColor;
 import com.kevinmost.lifx.model.LifxEntity;
 import com.kevinmost.lifx.model.PowerState;
@@ -18,13 +15,13 @@ import com.kevinmost.lifx.model.Selector;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import static com.kevinmost.internal.Util.assertRange;
 
 @AutoValue
-@JsonAdapter(Operation.Adapter.class)
+@JsonAdapter(Operation.Adapter.Factory.class)
 public abstract class Operation {
 
   @NotNull public static Operation.Builder forEntity(@NotNull LifxEntity entity) {
@@ -46,11 +43,26 @@ public abstract class Operation {
     if (inSeconds == null) {
       return null;
     }
-    return unit.convert(inSeconds.longValue(), TimeUnit.SECONDS);
+    return unit.convert(Math.round(inSeconds * 1000), TimeUnit.MILLISECONDS);
   }
 
   @Nullable abstract Double duration();
 
+  /**
+   * Merges a newer operation over this one, field by field: whatever {@code newer} sets wins, and whatever it leaves
+   * unset is kept from this operation. The result targets {@code newer}'s selector
+   */
+  @NotNull public final Operation mergedWith(@NotNull Operation newer) {
+    return new AutoValue_Operation.Builder()
+        .selector(newer.selector())
+        .powerState(newer.powerState() != null ? newer.powerState() : powerState())
+        .color(newer.color() != null ? newer.color() : color())
+        .brightness(newer.brightness() != null ? newer.brightness() : brightness())
+        .infraredBrightness(newer.infraredBrightness() != null ? newer.infraredBrightness() : infraredBrightness())
+        .duration(newer.duration() != null ? newer.duration() : duration())
+        .build();
+  }
+
   @AutoValue.Builder
   public static abstract class Builder {
     @NotNull public final Builder selector(@NotNull LifxEntity entity) {
@@ -64,8 +76,11 @@ public abstract class Operation {
     @NotNull public abstract Builder brightness(@Nullable Double brightness);
     @NotNull public abstract Builder infraredBrightness(@Nullable Double infraredBrightness);
 
+    /**
+     * How long the light should take to transition to the new state, to the millisecond
+     */
     @NotNull public final Builder duration(long value, @NotNull TimeUnit unit) {
-      duration((double) TimeUnit.SECONDS.convert(value, unit));
+      duration(unit.toMillis(value) / 1000.0);
       return this;
     }
 
@@ -99,43 +114,94 @@ public abstract class Operation {
 
   Operation() {} // AutoValue instances only
 
-  static class Adapter implements JsonSerializer<Operation>, JsonDeserializer<Operation> {
+  static class Adapter extends TypeAdapter<Operation> {
 
-    @Override
-    public JsonElement serialize(Operation src, Type typeOfSrc, JsonSerializationContext context) {
-      final LifxColor color = src.color();
-      final PowerState powerState = src.powerState();
-      final JsonObject unfiltered = new JSONObjectBuilder()
-          .add("selector", src.selector().toString())
-          .add("power", powerState == null ? null : powerState == PowerState.ON ? "on" : "off")
-          .add("color", color == null ? null : color.toString())
-          .add("brightness", src.brightness())
-          .add("infrared", src.infraredBrightness())
-          .add("duration", src.durationIn(TimeUnit.SECONDS))
-          .build();
-      return JsonUtil.filter(unfiltered, new Func2<String, JsonElement, Boolean>() {
-        @NotNull @Override public Boolean call(@NotNull String key, @NotNull JsonElement value) {
-          return !value.isJsonNull();
-        }
-      });
+    static class Factory extends ModelTypeAdapterFactory<Operation> {
+      Factory() {
+        super(Operation.class);
+      }
+
+      @NotNull @Override protected TypeAdapter<Operation> create(@NotNull Gson gson) {
+        return new Adapter(gson);
+      }
     }
 
-    @Override public Operation deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-      final JsonObject root = json.getAsJsonObject();
+    @NotNull private final TypeAdapter<PowerState> powerStateAdapter;
+    @NotNull private final TypeAdapter<LifxColor> colorAdapter;
 
-      final PowerState powerState = JsonUtil.fromJSON(context, root.get("power"), PowerState.class);
+    Adapter(@NotNull Gson gson) {
+      powerStateAdapter = gson.getAdapter(PowerState.class);
+      colorAdapter = gson.getAdapter(LifxColor.class);
+    }
 
-      final Double brightness = root.has("brightness") ? root.get("brightness").getAsDouble() : null;
-      final Double durationSeconds = root.has("duration") ? root.get("duration").getAsDouble() : null;
-      final Double infraredBrightness = root.has("infrared") ? root.get("infrared").getAsDouble() : null;
+    /**
+     * Writes each field straight to the writer, leaving out the ones that aren't set rather than building and then
+     * filtering an intermediate tree
+     */
+    @Override public void write(JsonWriter out, Operation src) throws IOException {
+      out.beginObject();
+      out.name("selector").value(src.selector().toString());
+      final PowerState powerState = src.powerState();
+      if (powerState != null) {
+        out.name("power");
+        powerStateAdapter.write(out, powerState);
+      }
+      final LifxColor color = src.color();
+      if (color != null) {
+        out.name("color");
+        colorAdapter.write(out, color);
+      }
+      final Double brightness = src.brightness();
+      if (brightness != null) {
+        out.name("brightness").value(brightness);
+      }
+      final Double infraredBrightness = src.infraredBrightness();
+      if (infraredBrightness != null) {
+        out.name("infrared").value(infraredBrightness);
+      }
+      final Double duration = src.duration();
+      if (duration != null) {
+        // Whole seconds are written without a fraction, as they always were
+        if (duration == Math.rint(duration)) {
+          out.name("duration").value(duration.longValue());
+        } else {
+          out.name("duration").value(duration);
+        }
+      }
+      out.endObject();
+    }
 
-      return new AutoValue_Operation.Builder()
-          .selector(Selector.unsafe(root.get("selector").getAsString()))
-          .powerState(powerState)
-          .color(JsonUtil.fromJSON(context, root.get("color"), LifxColor.class))
-          .brightness(brightness)
-          .duration(durationSeconds)
-          .infraredBrightness(infraredBrightness)
+    @Override public Operation read(JsonReader in) throws IOException {
+      final Builder builder = new AutoValue_Operation.Builder();
+      String selector = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "selector":
+            selector = JsonUtil.nextNullableString(in);
+            break;
+          case "power":
+            builder.powerState(powerStateAdapter.read(in));
+            break;
+          case "color":
+            builder.color(colorAdapter.read(in));
+            break;
+          case "brightness":
+            builder.brightness(JsonUtil.nextNullableDouble(in));
+            break;
+          case "duration":
+            builder.duration(JsonUtil.nextNullableDouble(in));
+            break;
+          case "infrared":
+            builder.infraredBrightness(JsonUtil.nextNullableDouble(in));
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return builder
+          .selector(Selector.unsafe(JsonUtil.required(selector, "selector", Operation.class)))
           .build();
     }
   }
@@ -1,36 +1,82 @@
 package com.kevinmost.lifx.request.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.kevinmost.internal.JsonUtil;
+import com.kevinmost.internal.ModelTypeAdapterFactory;
 import org.jetbrains.annotations.NotNull;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.List;
 
 @AutoValue
-@JsonAdapter(OperationResult.Adapter.class)
+@JsonAdapter(OperationResult.Adapter.Factory.class)
 public abstract class OperationResult {
 
+  @NotNull public static OperationResult create(@NotNull Operation operation, @NotNull List<SetLightResult> results) {
+    return new AutoValue_OperationResult(operation, results);
+  }
+
   @NotNull public abstract Operation operation();
   @NotNull public abstract List<SetLightResult> results();
 
   OperationResult() {} // AutoValue instances only
 
-  static class Adapter implements JsonDeserializer<OperationResult> {
+  static class Adapter extends TypeAdapter<OperationResult> {
+
+    static class Factory extends ModelTypeAdapterFactory<OperationResult> {
+      Factory() {
+        super(OperationResult.class);
+      }
+
+      @NotNull @Override protected TypeAdapter<OperationResult> create(@NotNull Gson gson) {
+        return new Adapter(gson);
+      }
+    }
+
+    @NotNull private final TypeAdapter<Operation> operationAdapter;
+    @NotNull private final TypeAdapter<List<SetLightResult>> resultsAdapter;
+
+    Adapter(@NotNull Gson gson) {
+      operationAdapter = gson.getAdapter(Operation.class);
+      resultsAdapter = gson.getAdapter(new TypeToken<List<SetLightResult>>() {});
+    }
 
-    @Override
-    public OperationResult deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-      final JsonObject root = json.getAsJsonObject();
+    @Override public OperationResult read(JsonReader in) throws IOException {
+      Operation operation = null;
+      List<SetLightResult> results = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "operation":
+            operation = operationAdapter.read(in);
+            break;
+          case "results":
+            results = resultsAdapter.read(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
       return new AutoValue_OperationResult(
-          JsonUtil.fromJSON(context, root.get("operation"), Operation.class),
-          JsonUtil.fromJSON(context, root.get("results"), new TypeToken<List<SetLightResult>>() {})
+          JsonUtil.required(operation, "operation", OperationResult.class),
+          JsonUtil.required(results, "results", OperationResult.class)
       );
     }
+
+    @Override public void write(JsonWriter out, OperationResult src) throws IOException {
+      out.beginObject();
+      out.name("operation");
+      operationAdapter.write(out, src.operation());
+      out.name("results");
+      resultsAdapter.write(out, src.results());
+      out.endObject();
+    }
   }
-}
+}
\ No newline at end of file
@@ -1,22 +1,22 @@
 package com.kevinmost.lifx.request.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.JsonUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
 @AutoValue
 @JsonAdapter(SetLightResult.Adapter.class)
 public abstract class SetLightResult {
 
-  @NotNull public static SetLightResult create() {
-    throw new RuntimeException("TODO"); // TODO
+  @NotNull public static SetLightResult create(@NotNull String id, @Nullable String label, @NotNull String status) {
+    return new AutoValue_SetLightResult(id, label, status);
   }
 
   @NotNull public abstract String id();
@@ -25,22 +25,42 @@ public abstract class SetLightResult {
 
   SetLightResult() {} // AutoValue instances only
 
-  static class Adapter implements JsonDeserializer<SetLightResult> {
+  static class Adapter extends TypeAdapter<SetLightResult> {
 
-    @Override
-    public SetLightResult deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-      final JsonObject root = json.getAsJsonObject();
-      final String label;
-      if (root.has("label")) {
-        label = root.get("label").getAsString();
-      } else {
-        label = null;
+    @Override public SetLightResult read(JsonReader in) throws IOException {
+      String id = null;
+      String label = null;
+      String status = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "id":
+            id = JsonUtil.nextNullableString(in);
+            break;
+          case "label":
+            label = JsonUtil.nextNullableString(in);
+            break;
+          case "status":
+            status = JsonUtil.nextNullableString(in);
+            break;
+          default:
+            in.skipValue();
+        }
       }
+      in.endObject();
       return new AutoValue_SetLightResult(
-          root.get("id").getAsString(),
+          JsonUtil.required(id, "id", SetLightResult.class),
           label,
-          root.get("status").getAsString()
+          JsonUtil.required(status, "status", SetLightResult.class)
       );
     }
+
+    @Override public void write(JsonWriter out, SetLightResult src) throws IOException {
+      out.beginObject()
+          .name("id").value(src.id())
+          .name("label").value(src.label())
+          .name("status").value(src.status())
+          .endObject();
+    }
   }
-}
+}
\ No newline at end of file
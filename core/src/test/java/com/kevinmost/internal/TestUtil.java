@@ -0,0 +1,92 @@
+package com.kevinmost.internal;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link Util#round(double, int)} against the {@link BigDecimal} rounding it stands in for, bit for bit
+ */
+public class TestUtil {
+
+  @Test public void testRandomValuesRoundLikeBigDecimal() {
+    final Random random = new Random(1);
+    for (int i = 0; i < 200000; i++) {
+      final double value = (random.nextBoolean() ? 1 : -1) * random.nextDouble() * (i % 2 == 0 ? 1 : 360);
+      assertRoundsLikeBigDecimal(value, 13);
+      assertRoundsLikeBigDecimal(value, random.nextInt(20));
+    }
+  }
+
+  @Test public void testValuesNearATieRoundLikeBigDecimal() {
+    final Random random = new Random(2);
+    for (int i = 0; i < 200000; i++) {
+      // A 13-place value plus or minus half of the 13th place, and the doubles either side of that
+      final double tie = Math.floor(random.nextDouble() * 1e13) / 1e13 + (random.nextBoolean() ? 5e-14 : -5e-14);
+      assertRoundsLikeBigDecimal(tie, 13);
+      assertRoundsLikeBigDecimal(Math.nextUp(tie), 13);
+      assertRoundsLikeBigDecimal(Math.nextAfter(tie, Double.NEGATIVE_INFINITY), 13);
+    }
+  }
+
+  @Test public void testExactHalvesRoundToEven() {
+    assertEquals(0.0, Util.round(0.5, 0), 0);
+    assertEquals(2.0, Util.round(1.5, 0), 0);
+    assertEquals(2.0, Util.round(2.5, 0), 0);
+    assertEquals(-2.0, Util.round(-2.5, 0), 0);
+    assertEquals(0.12, Util.round(0.125, 2), 0);
+    assertEquals(0.38, Util.round(0.375, 2), 0);
+    for (int i = 0; i < 100000; i++) {
+      assertRoundsLikeBigDecimal((i + 0.5) / 1e5, 5);
+    }
+  }
+
+  @Test public void testEdgeValuesRoundLikeBigDecimal() {
+    final double[] values = {
+        0.0,
+        -0.0,
+        Double.MIN_VALUE,
+        -Double.MIN_VALUE,
+        Double.MIN_NORMAL,
+        1.0,
+        360.0,
+        Math.nextAfter(1.0, 0),
+        1e-14,
+        4503599627370495.5, // the largest double with a fraction
+        4503599627370496.0,
+        1e300,
+        -1e300,
+    };
+    for (final double value : values) {
+      for (int places = 0; places < 20; places++) {
+        assertRoundsLikeBigDecimal(value, places);
+      }
+    }
+  }
+
+  @Test public void testScalingPastTwoToThe52FallsBack() {
+    // 1e15 is the largest power of ten the fast path scales by; 123.456 * 1e15 is past 2^52 and so goes the slow way
+    assertRoundsLikeBigDecimal(123.4567890123456789, 15);
+    assertRoundsLikeBigDecimal(123.4567890123456789, 16);
+    assertRoundsLikeBigDecimal(0.1234567890123456789, 15);
+  }
+
+  @Test public void testNegativePlacesRoundLikeBigDecimal() {
+    assertRoundsLikeBigDecimal(1234.5, -1);
+    assertRoundsLikeBigDecimal(1250.0, -2);
+  }
+
+  private static void assertRoundsLikeBigDecimal(double value, int places) {
+    final double expected = new BigDecimal(value).setScale(places, RoundingMode.HALF_EVEN).doubleValue();
+    final double actual = Util.round(value, places);
+    assertEquals(
+        value + " to " + places + " places",
+        Double.doubleToLongBits(expected),
+        Double.doubleToLongBits(actual)
+    );
+  }
+}
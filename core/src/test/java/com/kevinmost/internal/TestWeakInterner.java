@@ -0,0 +1,63 @@
+package com.kevinmost.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Interns plain strings, which are only equal (not identical) when built with {@code new String(...)}
+ */
+public class TestWeakInterner {
+
+  @Test public void testEqualValuesShareOneInstance() {
+    final WeakInterner<String> interner = new WeakInterner<>();
+    final String first = new String("Lounge");
+    final String second = new String("Lounge");
+    assertNotSame(first, second);
+    assertSame(first, interner.intern(first));
+    assertSame(first, interner.intern(second));
+    assertEquals(1, interner.size());
+  }
+
+  @Test public void testConcurrentInternsAgree() throws Exception {
+    final WeakInterner<String> interner = new WeakInterner<>();
+    final ExecutorService threads = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        results.add(threads.submit(new Callable<String>() {
+          @Override public String call() {
+            return interner.intern(new String("Kitchen"));
+          }
+        }));
+      }
+      final String canonical = results.get(0).get();
+      for (final Future<String> result : results) {
+        assertSame(canonical, result.get());
+      }
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  @Test public void testEmptiesOnceNothingElseHoldsTheValues() throws Exception {
+    final WeakInterner<String> interner = new WeakInterner<>();
+    for (int i = 0; i < 1000; i++) {
+      interner.intern(new String("Light " + i));
+    }
+    for (int i = 0; i < 50 && interner.size() > 0; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertEquals(0, interner.size());
+  }
+}
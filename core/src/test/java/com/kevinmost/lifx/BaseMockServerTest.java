@@ -0,0 +1,40 @@
+package com.kevinmost.lifx;
+
+import okhttp3.mockwebserver.MockWebServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+
+/**
+ * Starts a fresh {@link MockWebServer} before each test and shuts it down after, once the subclass's own
+ * {@code @After} methods have run
+ */
+public abstract class BaseMockServerTest {
+
+  protected MockWebServer server;
+
+  @Before public void startServer() throws IOException {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @After public void shutdownServer() throws IOException {
+    server.shutdown();
+  }
+
+  /**
+   * A builder for a client of {@link #server}, which doesn't throttle itself to the rate limit unless a test turns it
+   * back on. Each test should use an access token of its own, since rate limits are kept per token
+   */
+  @NotNull protected LifxClient.Builder clientBuilder(@NotNull String accessToken) {
+    return new LifxClient.Builder(accessToken)
+        .baseURL(server.url("/"))
+        .throttleToRateLimit(false);
+  }
+
+  @NotNull protected LifxClient client(@NotNull String accessToken) {
+    return clientBuilder(accessToken).build();
+  }
+}
@@ -0,0 +1,57 @@
+package com.kevinmost.lifx;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+
+/**
+ * Response bodies shaped like the LiFX API's, for tests that run against a
+ * {@link okhttp3.mockwebserver.MockWebServer}
+ */
+public final class Fixtures {
+
+  /**
+   * A listing of one light per label, with ids {@code light0}, {@code light1}, and so on
+   */
+  @NotNull public static String listing(@NotNull String... labels) {
+    final StringBuilder sb = new StringBuilder().append('[');
+    for (int i = 0; i < labels.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(light("light" + i, labels[i]));
+    }
+    return sb.append(']').toString();
+  }
+
+  @NotNull public static String light(@NotNull String id, @NotNull String label) {
+    return String.format(Locale.US, "{"
+            + "\"id\":\"%s\","
+            + "\"uuid\":\"8fa5f072-af97-44ed-ae54-e70fd7bd9d20\","
+            + "\"label\":\"%s\","
+            + "\"connected\":true,"
+            + "\"power\":\"on\","
+            + "\"color\":{\"hue\":250.0,\"saturation\":0.5,\"kelvin\":3500},"
+            + "\"brightness\":0.5,"
+            + "\"group\":{\"id\":\"1c8de82b81f445e7cfaafae49b259c71\",\"name\":\"Lounge\"},"
+            + "\"location\":{\"id\":\"1d6fe8ef0fde4c6d77b0012dc736662c\",\"name\":\"Home\"},"
+            + "\"last_seen\":\"2016-11-02T08:53:02.867+00:00\","
+            + "\"seconds_since_seen\":0.002869418,"
+            + "\"product\":{\"name\":\"LIFX+ A19\",\"identifier\":\"lifx_plus_a19\",\"company\":\"LIFX\","
+            + "\"capabilities\":{\"has_color\":true,\"has_variable_color_temp\":true,\"has_ir\":true,"
+            + "\"has_multizone\":false}}"
+            + "}",
+        id,
+        label
+    );
+  }
+
+  /**
+   * The response to a set-lights request whose operations all succeeded, as far as the client cares
+   */
+  @NotNull public static String setLightsResponse() {
+    return "[]";
+  }
+
+  private Fixtures() { throw new UnsupportedOperationException("No instances"); }
+}
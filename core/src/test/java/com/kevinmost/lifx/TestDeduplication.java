@@ -0,0 +1,88 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs concurrent listings against a {@link MockWebServer}
+ */
+public class TestDeduplication extends BaseMockServerTest {
+
+  private HistogramMetrics metrics;
+
+  @Before public void setup() {
+    metrics = new HistogramMetrics();
+  }
+
+  @Test public void testOffByDefault() throws Exception {
+    final LifxClient client = builder().build();
+    enqueueSlowListings(2);
+    final Future<LifxResult<List<Light>>> first = LifxRequests.listLights().executeAsync(client);
+    final Future<LifxResult<List<Light>>> second = LifxRequests.listLights().executeAsync(client);
+    assertModifiable(first.get().unwrap());
+    assertModifiable(second.get().unwrap());
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test public void testIdenticalListingsShareOneCall() throws Exception {
+    final LifxClient client = builder().deduplicateListings(true).build();
+    enqueueSlowListings(1);
+    final Future<LifxResult<List<Light>>> first = LifxRequests.listLights().executeAsync(client);
+    Thread.sleep(100); // so that the first is in flight
+    final Future<LifxResult<List<Light>>> second = LifxRequests.listLights().executeAsync(client);
+    final List<Light> waited = LifxRequests.listLights().execute(client).unwrap();
+    assertUnmodifiable(first.get().unwrap());
+    assertUnmodifiable(second.get().unwrap());
+    assertUnmodifiable(waited);
+    assertEquals(1, server.getRequestCount());
+
+    final HistogramMetrics.Stats stats = metrics.stats(ListLightsRequest.class);
+    //noinspection ConstantConditions
+    assertEquals(2, stats.deduplicated());
+    assertEquals(0, stats.cacheHits());
+  }
+
+  @Test public void testListingNobodySharedIsLeftModifiable() throws Exception {
+    final LifxClient client = builder().deduplicateListings(true).build();
+    enqueueSlowListings(2);
+    assertModifiable(LifxRequests.listLights().executeAsync(client).get().unwrap());
+    assertModifiable(LifxRequests.listLights().execute(client).unwrap());
+  }
+
+  @NotNull private LifxClient.Builder builder() {
+    return clientBuilder("dedup-token").metrics(metrics);
+  }
+
+  private void enqueueSlowListings(int count) {
+    for (int i = 0; i < count; i++) {
+      server.enqueue(new MockResponse()
+          .setBody(Fixtures.listing("Desk"))
+          .setBodyDelay(300, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  private static void assertModifiable(@NotNull List<Light> lights) {
+    lights.add(lights.get(0));
+  }
+
+  private static void assertUnmodifiable(@NotNull List<Light> lights) {
+    try {
+      lights.add(lights.get(0));
+      fail("Expected a shared listing to be unmodifiable");
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+}
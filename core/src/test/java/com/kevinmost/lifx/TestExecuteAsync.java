@@ -0,0 +1,91 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs requests against a {@link MockWebServer}
+ */
+public class TestExecuteAsync extends BaseMockServerTest {
+
+  private LifxClient client;
+
+  @Before public void setup() {
+    client = client("async-token");
+  }
+
+  @Test public void testUndecodableResponseStillReachesTheCallback() throws Exception {
+    server.enqueue(new MockResponse().setBody("[{\"id\":\"missing-everything-else\"}]"));
+    final CountDownLatch called = new CountDownLatch(1);
+    final AtomicReference<LifxResult<List<Light>>> received = new AtomicReference<>();
+    final Future<LifxResult<List<Light>>> future = LifxRequests.listLights().executeAsync(client,
+        new LifxCallback<List<Light>>() {
+          @Override public void onResult(@NotNull LifxResult<List<Light>> result) {
+            received.set(result);
+            called.countDown();
+          }
+        });
+    assertTrue(called.await(5, TimeUnit.SECONDS));
+    assertTrue(received.get().isNetworkError());
+    assertTrue(future.get().isNetworkError());
+  }
+
+  @Test public void testUndecodableResponseIsANetworkErrorWhenBlocking() {
+    server.enqueue(new MockResponse().setBody("{\"not\":\"a list\"}"));
+    assertTrue(LifxRequests.listLights().execute(client).isNetworkError());
+  }
+
+  @Test public void testUndecodableResponseIsReportedToMetrics() throws Exception {
+    final HistogramMetrics metrics = new HistogramMetrics();
+    final LifxClient client = clientBuilder("async-metrics-token")
+        .metrics(metrics)
+        .build();
+    server.enqueue(new MockResponse().setBody("{\"not\":\"a list\"}"));
+    server.enqueue(new MockResponse().setBody("{\"not\":\"a list\"}"));
+    LifxRequests.listLights().execute(client);
+    LifxRequests.listLights().executeAsync(client).get();
+    Thread.sleep(100); // reported just after the result is handed over
+    final HistogramMetrics.Stats stats = metrics.stats(ListLightsRequest.class);
+    //noinspection ConstantConditions
+    assertEquals(2, stats.networkErrors());
+  }
+
+  @Test public void testCancelledResultIsDoneAndSkipsTheCallback() throws Exception {
+    server.enqueue(new MockResponse().setBody("[]").setBodyDelay(500, TimeUnit.MILLISECONDS));
+    final CountDownLatch called = new CountDownLatch(1);
+    final Future<LifxResult<List<Light>>> future = LifxRequests.listLights().executeAsync(client,
+        new LifxCallback<List<Light>>() {
+          @Override public void onResult(@NotNull LifxResult<List<Light>> result) {
+            called.countDown();
+          }
+        });
+    assertTrue(future.cancel(true));
+    assertTrue(future.isDone());
+    assertTrue(future.isCancelled());
+    assertFalse(future.cancel(true));
+    try {
+      future.get();
+      fail();
+    } catch (CancellationException expected) {
+    }
+    assertFalse(called.await(1, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,42 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.LifxRequests;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * Decodes listings from a {@link MockWebServer}
+ */
+public class TestInterning extends BaseMockServerTest {
+
+  private LifxClient client;
+
+  @Before public void setup() {
+    client = client("interning-token");
+  }
+
+  @Test public void testLightsShareGroupsLocationsAndLabels() {
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk", "Lamp")));
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk", "Lamp")));
+    final List<Light> first = LifxRequests.listLights().execute(client).unwrap();
+    final List<Light> second = LifxRequests.listLights().execute(client).unwrap();
+    assertSame(first.get(0).group(), first.get(1).group());
+    assertSame(first.get(0).location(), first.get(1).location());
+    assertSame(first.get(0).color(), first.get(1).color());
+    // Across listings too, for as long as the first listing's lights are still around
+    assertSame(first.get(0).group(), second.get(0).group());
+    assertSame(first.get(1).label(), second.get(1).label());
+  }
+
+  @Test public void testSelectorsAreShared() {
+    assertSame(Selector.forLight(new String("Desk")), Selector.forLight(new String("Desk")));
+  }
+}
@@ -0,0 +1,105 @@
+package com.kevinmost.lifx;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the histogram's bucket math at every bucket, and the percentiles it reports against exact ones
+ */
+public class TestLatencyHistogram {
+
+  private static final int BUCKETS = (Long.SIZE - 5) * 32;
+
+  @Test public void testSmallValuesHaveABucketEach() {
+    for (int value = 0; value < 32; value++) {
+      assertEquals(value, LatencyHistogram.index(value));
+      assertEquals(value, LatencyHistogram.upperBound(value));
+    }
+  }
+
+  @Test public void testBucketsTileEveryValueWithoutGaps() {
+    for (int i = 0; i < BUCKETS - 1; i++) {
+      final long upper = LatencyHistogram.upperBound(i);
+      assertEquals(i, LatencyHistogram.index(upper));
+      assertEquals(i + 1, LatencyHistogram.index(upper + 1));
+    }
+  }
+
+  @Test public void testBucketsAreWithinAThirtySecondOfTheirValues() {
+    for (int i = 32; i < BUCKETS; i++) {
+      final long lower = LatencyHistogram.upperBound(i - 1) + 1;
+      final long width = LatencyHistogram.upperBound(i) - lower + 1;
+      assertTrue("bucket " + i, width <= lower / 32);
+    }
+  }
+
+  @Test public void testRandomValuesFallInsideTheirBucket() {
+    final Random random = new Random(5);
+    for (int n = 0; n < 100000; n++) {
+      final long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+      final int i = LatencyHistogram.index(value);
+      assertTrue(value + " is above its bucket", value <= LatencyHistogram.upperBound(i));
+      assertTrue(value + " is below its bucket", i == 0 || value > LatencyHistogram.upperBound(i - 1));
+    }
+  }
+
+  @Test public void testLongMaxValueIsTheTopOfTheLastBucket() {
+    assertEquals(BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(BUCKETS - 1));
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, histogram.maxNanos());
+    assertEquals(Long.MAX_VALUE, histogram.percentileNanos(100));
+    assertEquals(Long.MAX_VALUE, histogram.meanNanos());
+  }
+
+  @Test public void testPercentilesAreUpperBoundsWithinThreePercent() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int millis = 1; millis <= 1000; millis++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.maxNanos());
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(500500), histogram.meanNanos());
+    final double[] percentiles = {0, 1, 50, 90, 99, 99.9, 100};
+    for (final double percentile : percentiles) {
+      final long exact = TimeUnit.MILLISECONDS.toNanos(Math.max(1, (long) Math.ceil(percentile * 10)));
+      final long reported = histogram.percentileNanos(percentile);
+      assertTrue("p" + percentile + " is below " + exact + ": " + reported, reported >= exact);
+      assertTrue("p" + percentile + " is too far above " + exact + ": " + reported, reported <= exact + exact / 32);
+    }
+  }
+
+  @Test public void testPercentilesNeverExceedTheMax() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final long value = 1000001; // in a bucket that reaches past it
+    histogram.record(value);
+    assertTrue(LatencyHistogram.upperBound(LatencyHistogram.index(value)) > value);
+    assertEquals(value, histogram.percentileNanos(50));
+    assertEquals(value, histogram.percentileNanos(100));
+  }
+
+  @Test public void testEmptyAndResetHistogramsReportZero() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentileNanos(99));
+    assertEquals(0, histogram.meanNanos());
+    histogram.record(12345);
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.maxNanos());
+    assertEquals(0, histogram.percentileNanos(99));
+  }
+
+  @Test public void testNegativeDurationsAreRecordedAsZero() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(1, histogram.count());
+    assertEquals(0, histogram.maxNanos());
+    assertEquals(0, histogram.percentileNanos(100));
+  }
+}
@@ -0,0 +1,68 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.model.Operation;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs listings through a client's light cache against a {@link MockWebServer}
+ */
+public class TestLightCache extends BaseMockServerTest {
+
+  private LifxClient client;
+
+  @Before public void setup() {
+    client = clientBuilder("cache-token")
+        .cacheLights(1, TimeUnit.MINUTES)
+        .build();
+  }
+
+  @Test public void testUndecodableRefreshDoesNotWedgeTheCache() {
+    server.enqueue(new MockResponse().setBody("[{\"id\":\"x\"}]")); // the refresh
+    server.enqueue(new MockResponse().setBody("[{\"id\":\"x\"}]")); // the listing's own call
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk"))); // the next refresh
+    assertTrue(LifxRequests.listLights().execute(client).isNetworkError());
+    final List<Light> lights = LifxRequests.listLights().execute(client).unwrap();
+    assertEquals("Desk", lights.get(0).label());
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test public void testRefreshInFlightDuringAChangeIsDropped() throws Exception {
+    final AtomicInteger listings = new AtomicInteger();
+    server.setDispatcher(new Dispatcher() {
+      @Override public MockResponse dispatch(RecordedRequest request) {
+        if (request.getMethod().equals("PUT")) {
+          return new MockResponse().setBody(Fixtures.setLightsResponse());
+        }
+        final int listing = listings.incrementAndGet();
+        return new MockResponse()
+            .setBody(Fixtures.listing(listing == 1 ? "Before" : "After"))
+            .setBodyDelay(listing == 1 ? 500 : 0, TimeUnit.MILLISECONDS);
+      }
+    });
+    final Future<LifxResult<List<Light>>> early = LifxRequests.listLights().executeAsync(client);
+    Thread.sleep(100); // let the refresh get sent
+    assertTrue(LifxRequests.setLights()
+        .plus(Operation.forSelector(Selector.ALL).brightness(1.0).build())
+        .execute(client)
+        .isSuccess());
+    // The refresh predates the change, so the early listing makes its own call rather than use it
+    assertEquals("After", early.get().unwrap().get(0).label());
+    assertEquals("After", LifxRequests.listLights().execute(client).unwrap().get(0).label());
+  }
+}
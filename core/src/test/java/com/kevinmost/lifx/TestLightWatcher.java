@@ -0,0 +1,219 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Light;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link LightWatcher} against a {@link MockWebServer}
+ */
+public class TestLightWatcher extends BaseMockServerTest {
+
+  private LifxClient client;
+  private LightWatcher watcher;
+
+  @Before public void setup() {
+    client = client("watcher-token");
+    watcher = new LightWatcher.Builder(client)
+        .interval(10, 20, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  @After public void teardown() {
+    watcher.stop();
+  }
+
+  @Test public void testUndecodablePollKeepsPolling() throws Exception {
+    server.enqueue(new MockResponse().setBody("[{\"id\":\"x\"}]"));
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    final CountDownLatch added = new CountDownLatch(1);
+    watcher.addListener(new AddedListener() {
+      @Override public void onAdded(@NotNull Light light) {
+        added.countDown();
+      }
+    });
+    watcher.start();
+    assertTrue(added.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test public void testThrowingListenerDoesNotStopTheOthers() throws Exception {
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk", "Lamp")));
+    final CountDownLatch added = new CountDownLatch(2);
+    watcher.addListener(new AddedListener() {
+      @Override public void onAdded(@NotNull Light light) {
+        throw new IllegalStateException("A careless listener");
+      }
+    });
+    watcher.addListener(new AddedListener() {
+      @Override public void onAdded(@NotNull Light light) {
+        added.countDown();
+      }
+    });
+    final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override public void uncaughtException(Thread thread, Throwable e) {
+      }
+    });
+    try {
+      watcher.start();
+      // Both lights reach the second listener, so the first poll's failure didn't stop the second poll either
+      assertTrue(added.await(5, TimeUnit.SECONDS));
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(handler);
+    }
+  }
+
+  @Test public void testReportsAddedChangedAndRemovedLights() throws Exception {
+    final Fleet fleet = new Fleet(Fixtures.listing("Desk", "Lamp"));
+    server.setDispatcher(fleet);
+    final BlockingQueue<String> events = record();
+    watcher.start();
+    assertEquals("added light0", events.poll(5, TimeUnit.SECONDS));
+    assertEquals("added light1", events.poll(5, TimeUnit.SECONDS));
+
+    fleet.respond("[" + Fixtures.light("light0", "Desk lamp") + "]");
+    assertEquals("changed light0", events.poll(5, TimeUnit.SECONDS));
+    assertEquals("removed light1", events.poll(5, TimeUnit.SECONDS));
+    // Polls that find the same lights again report nothing
+    assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test public void testSelectorMatchingNoLightsRemovesTheLastOnes() throws Exception {
+    final Fleet fleet = new Fleet(Fixtures.listing("Desk"));
+    server.setDispatcher(fleet);
+    final BlockingQueue<String> events = record();
+    watcher.start();
+    assertEquals("added light0", events.poll(5, TimeUnit.SECONDS));
+
+    fleet.respond(new MockResponse().setResponseCode(404).setBody("{\"error\":\"Could not find label:Desk.\"}"));
+    assertEquals("removed light0", events.poll(5, TimeUnit.SECONDS));
+  }
+
+  @Test public void testPollInFlightWhenStoppedIsThrownAway() throws Exception {
+    final Fleet fleet = new Fleet(Fixtures.listing("Desk", "Lamp"));
+    server.setDispatcher(fleet);
+    final BlockingQueue<String> events = record();
+    watcher.start();
+    assertEquals("added light0", events.poll(5, TimeUnit.SECONDS));
+    assertEquals("added light1", events.poll(5, TimeUnit.SECONDS));
+
+    fleet.respond(new MockResponse().setBody(Fixtures.listing("Desk")).setBodyDelay(300, TimeUnit.MILLISECONDS));
+    fleet.awaitRequest();
+    watcher.stop();
+    assertNull(events.poll(600, TimeUnit.MILLISECONDS));
+
+    // The removal wasn't absorbed while stopped, so it's reported after the restart
+    fleet.respond(Fixtures.listing("Desk"));
+    watcher.start();
+    assertEquals("removed light1", events.poll(5, TimeUnit.SECONDS));
+  }
+
+  @Test public void testIntervalStretchesWhileIdleAndResetsOnChange() throws Exception {
+    final LightWatcher watcher = new LightWatcher.Builder(client)
+        .interval(100, 400, TimeUnit.MILLISECONDS)
+        .build();
+    final Fleet fleet = new Fleet(Fixtures.listing("Desk"));
+    server.setDispatcher(fleet);
+    assertEquals(100, watcher.interval(TimeUnit.MILLISECONDS));
+    watcher.start();
+    try {
+      // 100ms, then 150, 225, 337, and capped at 400
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (watcher.interval(TimeUnit.MILLISECONDS) < 400 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertEquals(400, watcher.interval(TimeUnit.MILLISECONDS));
+      Thread.sleep(500);
+      assertEquals(400, watcher.interval(TimeUnit.MILLISECONDS));
+
+      fleet.respond(Fixtures.listing("Desk", "Lamp"));
+      while (watcher.interval(TimeUnit.MILLISECONDS) == 400 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertEquals(100, watcher.interval(TimeUnit.MILLISECONDS));
+    } finally {
+      watcher.stop();
+    }
+  }
+
+  /**
+   * Records every event as e.g. {@code "added light0"}
+   */
+  @NotNull private BlockingQueue<String> record() {
+    final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    watcher.addListener(new LightWatcher.Listener() {
+      @Override public void onAdded(@NotNull Light light) {
+        events.add("added " + light.id());
+      }
+
+      @Override public void onRemoved(@NotNull Light light) {
+        events.add("removed " + light.id());
+      }
+
+      @Override public void onChanged(@NotNull Light previous, @NotNull Light current) {
+        events.add("changed " + current.id());
+      }
+    });
+    return events;
+  }
+
+  /**
+   * Answers every listing with the same response until told otherwise
+   */
+  private static final class Fleet extends Dispatcher {
+    @NotNull private MockResponse response;
+    private int requestsSinceResponded;
+
+    Fleet(@NotNull String listing) {
+      respond(listing);
+    }
+
+    synchronized void respond(@NotNull String listing) {
+      respond(new MockResponse().setBody(listing));
+    }
+
+    synchronized void respond(@NotNull MockResponse response) {
+      this.response = response;
+      requestsSinceResponded = 0;
+    }
+
+    /**
+     * Waits for a request that gets the latest response
+     */
+    synchronized void awaitRequest() throws InterruptedException {
+      while (requestsSinceResponded == 0) {
+        wait();
+      }
+    }
+
+    @Override public synchronized MockResponse dispatch(RecordedRequest request) {
+      requestsSinceResponded++;
+      notifyAll();
+      return response;
+    }
+  }
+
+  private static abstract class AddedListener implements LightWatcher.Listener {
+    @Override public void onRemoved(@NotNull Light light) {
+    }
+
+    @Override public void onChanged(@NotNull Light previous, @NotNull Light current) {
+    }
+  }
+}
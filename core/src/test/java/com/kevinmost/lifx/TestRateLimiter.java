@@ -0,0 +1,134 @@
+package com.kevinmost.lifx;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link RateLimiter}s with made-up {@code X-RateLimit-*} headers
+ */
+public class TestRateLimiter {
+
+  @NotNull private static final HttpUrl API = HttpUrl.parse("https://api.lifx.com");
+  @NotNull private static final HttpUrl OTHER_API = HttpUrl.parse("https://lifx.example.com");
+
+  @Test public void testBucketsAreKeyedByAPIAndAccessToken() {
+    final RateLimiter limiter = RateLimiter.forAccessToken(API, "keyed-token");
+    assertSame(limiter, RateLimiter.forAccessToken(API, "keyed-token"));
+    assertNotSame(limiter, RateLimiter.forAccessToken(OTHER_API, "keyed-token"));
+    assertNotSame(limiter, RateLimiter.forAccessToken(API, "other-keyed-token"));
+  }
+
+  @Test public void testBucketIsCollectedOnceNothingUsesIt() throws Exception {
+    final WeakReference<RateLimiter> limiter = new WeakReference<>(RateLimiter.forAccessToken(API, "weak-token"));
+    for (int i = 0; i < 50 && limiter.get() != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertNull(limiter.get());
+  }
+
+  @Test public void testBucketRefillsAtTheLimit() throws Exception {
+    final RateLimiter limiter = RateLimiter.forAccessToken(API, "refill-token");
+    limiter.update(response(200, 6000, 0, null)); // 100 a second, and none left right now
+    assertEquals(0, limiter.snapshot().remaining());
+    Thread.sleep(200);
+    final int remaining = limiter.snapshot().remaining();
+    assertTrue("" + remaining, 10 <= remaining && remaining <= 25);
+  }
+
+  @Test public void testQueuedRequestsGoOutInOrderOnceThereIsBudget() throws Exception {
+    final RateLimiter limiter = RateLimiter.forAccessToken(API, "queue-token");
+    limiter.update(response(200, 6000, 0, 1L)); // nothing left until a second from now
+    final List<Integer> order = new CopyOnWriteArrayList<>();
+    final CountDownLatch sent = new CountDownLatch(3);
+    for (int i = 0; i < 3; i++) {
+      final int index = i;
+      limiter.submit(new Runnable() {
+        @Override public void run() {
+          order.add(index);
+          sent.countDown();
+        }
+      });
+    }
+    assertEquals(3, limiter.snapshot().queued());
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+    assertEquals(0, (int) order.get(0));
+    assertEquals(1, (int) order.get(1));
+    assertEquals(2, (int) order.get(2));
+  }
+
+  @Test public void testCancelledCallSpendsNoBudget() throws Exception {
+    final RateLimiter limiter = RateLimiter.forAccessToken(API, "cancelled-token");
+    limiter.update(response(200, 60, 1, null)); // one request left, and one more a second after that
+    final Call cancelled = call();
+    cancelled.cancel();
+    final CountDownLatch dispatched = new CountDownLatch(1);
+    limiter.submit(cancelled, new Runnable() {
+      @Override public void run() {
+        dispatched.countDown();
+      }
+    });
+    assertTrue(dispatched.await(1, TimeUnit.SECONDS));
+    assertEquals(1, limiter.snapshot().remaining());
+  }
+
+  @Test public void testCancelledQueuedCallSpendsNoBudget() throws Exception {
+    final RateLimiter limiter = RateLimiter.forAccessToken(API, "cancelled-queued-token");
+    limiter.update(response(200, 60, 0, 1L)); // nothing left until a second from now, then one a second
+    final Call[] cancelled = new Call[5];
+    for (int i = 0; i < cancelled.length; i++) {
+      cancelled[i] = call();
+      limiter.submit(cancelled[i], new Runnable() {
+        @Override public void run() {
+        }
+      });
+    }
+    final CountDownLatch sent = new CountDownLatch(1);
+    limiter.submit(call(), new Runnable() {
+      @Override public void run() {
+        sent.countDown();
+      }
+    });
+    for (final Call call : cancelled) {
+      call.cancel();
+    }
+    // Had the cancelled calls each spent a token first, this would take until 6s from now
+    assertTrue(sent.await(3, TimeUnit.SECONDS));
+  }
+
+  @NotNull private static Call call() {
+    return new OkHttpClient().newCall(new Request.Builder().url(API).build());
+  }
+
+  @NotNull private static Response response(int code, int limit, int remaining, @Nullable Long reset) {
+    final Response.Builder response = new Response.Builder()
+        .request(new Request.Builder().url(API).build())
+        .protocol(Protocol.HTTP_1_1)
+        .code(code)
+        .header("X-RateLimit-Limit", String.valueOf(limit))
+        .header("X-RateLimit-Remaining", String.valueOf(remaining));
+    if (reset != null) {
+      response.header("X-RateLimit-Reset", String.valueOf(reset));
+    }
+    return response.build();
+  }
+}
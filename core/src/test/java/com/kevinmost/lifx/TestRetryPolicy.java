@@ -0,0 +1,142 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.ListLightsRequest;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exercises {@link RetryPolicy} on its own and against a {@link MockWebServer}
+ */
+public class TestRetryPolicy extends BaseMockServerTest {
+
+  @Test public void testBackoffIsJitteredUnderAnExponentialCeiling() {
+    final RetryPolicy policy = new RetryPolicy.Builder()
+        .maxAttempts(5)
+        .backoff(100, 300, TimeUnit.MILLISECONDS)
+        .build();
+    final long[] ceilings = {100, 200, 300, 300};
+    for (int attempt = 1; attempt < 5; attempt++) {
+      for (int i = 0; i < 100; i++) {
+        final long delayNanos = policy.delayNanos(attempt, null);
+        assertTrue(delayNanos >= 0);
+        assertTrue(delayNanos <= TimeUnit.MILLISECONDS.toNanos(ceilings[attempt - 1]));
+      }
+    }
+    assertEquals(-1, policy.delayNanos(5, null));
+  }
+
+  @Test public void testBackoffHonorsRetryAfter() {
+    final RetryPolicy policy = new RetryPolicy.Builder()
+        .backoff(1, 5000, TimeUnit.MILLISECONDS)
+        .build();
+    assertEquals(TimeUnit.SECONDS.toNanos(2), policy.delayNanos(1, response(429, "2")));
+    // Longer than the maximum backoff, so the failure is handed back instead
+    assertEquals(-1, policy.delayNanos(1, response(429, "10")));
+  }
+
+  @Test public void testBudgetLimitsRetries() {
+    final RetryPolicy policy = new RetryPolicy.Builder().retryBudget(0.5, 2).build();
+    assertTrue(policy.withdraw());
+    assertTrue(policy.withdraw());
+    assertFalse(policy.withdraw());
+    policy.deposit();
+    assertFalse(policy.withdraw());
+    policy.deposit();
+    assertTrue(policy.withdraw());
+  }
+
+  @Test public void testTransientFailureIsRetried() {
+    final LifxClient client = client("retry-token", new RetryPolicy.Builder()
+        .backoff(1, 10, TimeUnit.MILLISECONDS)
+        .build());
+    server.enqueue(new MockResponse().setResponseCode(503));
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    assertTrue(LifxRequests.listLights().execute(client).isSuccess());
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test public void testRetriesStopWhenTheBudgetRunsOut() throws Exception {
+    final LifxClient client = client("budget-token", new RetryPolicy.Builder()
+        .maxAttempts(5)
+        .backoff(1, 10, TimeUnit.MILLISECONDS)
+        .retryBudget(0, 1)
+        .build());
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(new MockResponse().setResponseCode(503));
+    }
+    final LifxResult<List<Light>> result = LifxRequests.listLights().execute(client);
+    assertTrue(result.isFailure());
+    assertEquals(503, result.asFailure().httpCode);
+    assertEquals(2, server.getRequestCount()); // the first attempt, and the one retry the budget had
+  }
+
+  @Test public void testSlowListingIsHedged() throws Exception {
+    final RetryPolicy policy = new RetryPolicy.Builder().hedgeListLights(50).build();
+    for (int i = 0; i < 20; i++) {
+      policy.recordListLatency(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+    final HistogramMetrics metrics = new HistogramMetrics();
+    final LifxClient client = clientBuilder("hedge-token")
+        .retryPolicy(policy)
+        .metrics(metrics)
+        .build();
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")).setBodyDelay(2, TimeUnit.SECONDS));
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    final long startNanos = System.nanoTime();
+    assertTrue(LifxRequests.listLights().execute(client).isSuccess());
+    assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1));
+    assertEquals(2, server.getRequestCount());
+
+    // Reported once, with the network time of the hedge that answered rather than of the attempt still in flight
+    Thread.sleep(100); // reported just after the result is handed over
+    final HistogramMetrics.Stats stats = metrics.stats(ListLightsRequest.class);
+    //noinspection ConstantConditions
+    assertEquals(1, stats.total.count());
+    assertTrue(stats.network.maxNanos() < TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test public void testHedgeDelayFollowsRecentListings() {
+    final RetryPolicy policy = new RetryPolicy.Builder().hedgeListLights(50).build();
+    assertEquals(-1, policy.hedgeDelayNanos());
+    for (int i = 0; i < RetryPolicy.HEDGE_WINDOW_SAMPLES; i++) {
+      policy.recordListLatency(TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+    assertEquals(1000, TimeUnit.NANOSECONDS.toMillis(policy.hedgeDelayNanos()), 1000 * 0.05);
+    // The API speeds up. The slow window still counts until enough fast listings are in, then stops counting at all
+    for (int i = 0; i < 19; i++) {
+      policy.recordListLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    assertEquals(1000, TimeUnit.NANOSECONDS.toMillis(policy.hedgeDelayNanos()), 1000 * 0.05);
+    policy.recordListLatency(TimeUnit.MILLISECONDS.toNanos(10));
+    assertEquals(10, TimeUnit.NANOSECONDS.toMillis(policy.hedgeDelayNanos()), 10 * 0.05);
+  }
+
+  @NotNull private LifxClient client(@NotNull String accessToken, @NotNull RetryPolicy policy) {
+    return clientBuilder(accessToken)
+        .retryPolicy(policy)
+        .build();
+  }
+
+  @NotNull private static Response response(int code, @NotNull String retryAfter) {
+    return new Response.Builder()
+        .request(new Request.Builder().url("https://api.lifx.com/v1/lights/all").build())
+        .protocol(Protocol.HTTP_1_1)
+        .code(code)
+        .header("Retry-After", retryAfter)
+        .build();
+  }
+}
@@ -0,0 +1,132 @@
+package com.kevinmost.lifx;
+
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.model.Operation;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Routes requests across several access tokens against a {@link MockWebServer}
+ */
+public class TestShardedLifxClient extends BaseMockServerTest {
+
+  @Test public void testSelectorSticksToItsHomeToken() throws Exception {
+    final LifxClient client = builder("sticky-a", false).buildSharded("sticky-b", "sticky-c");
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    }
+    for (int i = 0; i < 5; i++) {
+      LifxRequests.listLights(Selector.forLight("Desk")).execute(client).unwrap();
+    }
+    final String home = tokenOf(server.takeRequest());
+    for (int i = 1; i < 5; i++) {
+      assertEquals(home, tokenOf(server.takeRequest()));
+    }
+  }
+
+  @Test public void testExhaustedHomeTokenFailsOver() throws Exception {
+    final LifxClient client = builder("failover-a", false).buildSharded("failover-b");
+    server.enqueue(exhausting(new MockResponse().setBody(Fixtures.listing("Desk")), 1));
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    LifxRequests.listLights().execute(client).unwrap();
+    LifxRequests.listLights().execute(client).unwrap();
+    assertNotEquals(tokenOf(server.takeRequest()), tokenOf(server.takeRequest()));
+  }
+
+  @Test public void testFailedOverSelectorStaysPinnedUntilItsRequestsDrain() throws Exception {
+    final LifxClient client = builder("pinned-a", false).buildSharded("pinned-b");
+    server.enqueue(exhausting(new MockResponse().setBody(Fixtures.listing("Desk")), 1)); // the home token
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")).setBodyDelay(3, TimeUnit.SECONDS));
+    for (int i = 0; i < 2; i++) {
+      server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    }
+    LifxRequests.listLights().execute(client).unwrap();
+    final Future<LifxResult<List<Light>>> failedOver = LifxRequests.listLights().executeAsync(client);
+    Thread.sleep(1800); // the home token has budget again, but the failed-over request is still in flight
+    final Future<LifxResult<List<Light>>> behind = LifxRequests.listLights().executeAsync(client);
+    failedOver.get().unwrap();
+    behind.get().unwrap();
+    final String home = tokenOf(server.takeRequest());
+    final String failover = tokenOf(server.takeRequest());
+    assertNotEquals(home, failover);
+    assertEquals(failover, tokenOf(server.takeRequest()));
+    // Nothing is in flight any more, so the selector goes home again
+    LifxRequests.listLights().execute(client).unwrap();
+    assertEquals(home, tokenOf(server.takeRequest()));
+  }
+
+  @Test public void testHomeTokenWithQueuedRequestsDoesNotFailOver() throws Exception {
+    final LifxClient client = builder("queued-a", true).buildSharded("queued-b");
+    server.enqueue(exhausting(new MockResponse().setBody(Fixtures.listing("Desk")), 3)); // the home token
+    server.enqueue(exhausting(new MockResponse().setBody(Fixtures.listing("Desk")), 1)); // the other token
+    for (int i = 0; i < 2; i++) {
+      server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk")));
+    }
+    LifxRequests.listLights().execute(client).unwrap();
+    LifxRequests.listLights().execute(client).unwrap();
+    final String home = tokenOf(server.takeRequest());
+    assertNotEquals(home, tokenOf(server.takeRequest()));
+    // Both tokens are out of budget, so this one queues on its home token
+    final Future<LifxResult<List<Light>>> queued = LifxRequests.listLights().executeAsync(client);
+    Thread.sleep(1800); // the other token has budget again, but the home token doesn't
+    final Future<LifxResult<List<Light>>> behind = LifxRequests.listLights().executeAsync(client);
+    queued.get().unwrap();
+    behind.get().unwrap();
+    assertEquals(home, tokenOf(server.takeRequest()));
+    assertEquals(home, tokenOf(server.takeRequest()));
+  }
+
+  @Test public void testChangeOnAnyTokenInvalidatesTheSharedCache() throws Exception {
+    final LifxClient client = builder("cache-a", false)
+        .cacheLights(1, TimeUnit.MINUTES)
+        .buildSharded("cache-b", "cache-c", "cache-d");
+    server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk", "Lamp")));
+    assertEquals(2, LifxRequests.listLights().execute(client).unwrap().size());
+    // Served from the one cache, whichever token these selectors call home
+    assertEquals(1, LifxRequests.listLights(Selector.forLight("Desk")).execute(client).unwrap().size());
+    assertEquals(1, LifxRequests.listLights(Selector.forLight("Lamp")).execute(client).unwrap().size());
+    assertEquals(1, server.getRequestCount());
+
+    for (final String label : new String[] {"Desk", "Lamp"}) {
+      server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+      assertTrue(LifxRequests.setLights()
+          .plus(Operation.forSelector(Selector.forLight(label)).brightness(1.0).build())
+          .execute(client)
+          .isSuccess());
+      server.enqueue(new MockResponse().setBody(Fixtures.listing("Desk", "Lamp")));
+      assertEquals(2, LifxRequests.listLights().execute(client).unwrap().size());
+    }
+    assertEquals(5, server.getRequestCount());
+  }
+
+  @NotNull private LifxClient.Builder builder(@NotNull String accessToken, boolean throttleToRateLimit) {
+    return clientBuilder(accessToken).throttleToRateLimit(throttleToRateLimit);
+  }
+
+  /**
+   * Leaves the token that gets this response with no budget for the next {@code seconds}
+   */
+  @NotNull private static MockResponse exhausting(@NotNull MockResponse response, int seconds) {
+    return response
+        .addHeader("X-RateLimit-Limit", 120)
+        .addHeader("X-RateLimit-Remaining", 0)
+        .addHeader("X-RateLimit-Reset", seconds);
+  }
+
+  @NotNull private static String tokenOf(@NotNull RecordedRequest request) {
+    return request.getHeader("Authorization");
+  }
+}
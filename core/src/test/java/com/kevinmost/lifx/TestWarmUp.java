@@ -0,0 +1,44 @@
+package com.kevinmost.lifx;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Warms clients up against a {@link MockWebServer}
+ */
+public class TestWarmUp extends BaseMockServerTest {
+
+  @Test public void testPreconnectKeepsTheCallersInterceptorsButNotTheAccessToken() throws Exception {
+    final AtomicInteger intercepted = new AtomicInteger();
+    final OkHttpClient okHttp = new OkHttpClient.Builder()
+        .addInterceptor(new Interceptor() {
+          @Override public Response intercept(Chain chain) throws IOException {
+            intercepted.incrementAndGet();
+            return chain.proceed(chain.request());
+          }
+        })
+        .build();
+    server.enqueue(new MockResponse());
+    clientBuilder("warm-up-token")
+        .client(okHttp)
+        .buildWarm();
+    final RecordedRequest preconnect = server.takeRequest(5, TimeUnit.SECONDS);
+    assertNotNull(preconnect);
+    assertEquals("HEAD", preconnect.getMethod());
+    assertNull(preconnect.getHeader("Authorization"));
+    assertEquals(1, intercepted.get());
+  }
+}
@@ -0,0 +1,154 @@
+package com.kevinmost.lifx.effects;
+
+import com.kevinmost.lifx.BaseMockServerTest;
+import com.kevinmost.lifx.Fixtures;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.Light;
+import com.kevinmost.lifx.request.LifxRequests;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays effects against a {@link MockWebServer}
+ */
+public class TestEffectsEngine extends BaseMockServerTest {
+
+  private EffectsEngine engine;
+
+  @After public void teardown() {
+    if (engine != null) {
+      engine.shutdown();
+    }
+  }
+
+  @Test public void testFrameIsChunked() throws Exception {
+    final LifxClient client = client("effects-chunking-token");
+    final List<Light> lights = lights(client, 60, 120);
+    server.enqueue(new MockResponse().setBody("[]"));
+    server.enqueue(new MockResponse().setBody("[]"));
+    engine = new EffectsEngine.Builder(client).build();
+    engine.play(Effects.solid(LifxColor.RED), lights);
+    final int first = operationsIn(server.takeRequest(5, TimeUnit.SECONDS));
+    final int second = operationsIn(server.takeRequest(5, TimeUnit.SECONDS));
+    assertEquals(new HashSet<>(Arrays.asList(50, 10)), new HashSet<>(Arrays.asList(first, second)));
+    // The lights are already red, so nothing else needs to be sent
+    assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS));
+  }
+
+  @Test public void testFrameIsSkippedWhileThePreviousOneIsInFlight() throws Exception {
+    final LifxClient client = client("effects-dropping-token");
+    final List<Light> lights = lights(client, 1, 6000); // enough that the rate limit allows the full 10fps
+    server.enqueue(new MockResponse().setBody("[]").setBodyDelay(1, TimeUnit.SECONDS));
+    server.enqueue(new MockResponse().setBody("[]"));
+    engine = new EffectsEngine.Builder(client).targetFps(10).build();
+    engine.play(alternating(), lights);
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    // Several frames come and go while the first is in flight, and none of them are sent
+    assertNull(server.takeRequest(700, TimeUnit.MILLISECONDS));
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+  }
+
+  @Test public void testFramesAreSpacedOutToTheRateLimit() throws Exception {
+    final LifxClient client = client("effects-spacing-token");
+    final List<Light> lights = lights(client, 1, 120); // 0.9 * 120 requests a minute is one every 555ms
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setBody("[]"));
+    }
+    engine = new EffectsEngine.Builder(client).targetFps(10).build();
+    engine.play(alternating(), lights);
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    final long firstNanos = System.nanoTime();
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    final long secondNanos = System.nanoTime();
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    final long thirdNanos = System.nanoTime();
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(secondNanos - firstNanos) >= 450);
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(thirdNanos - secondNanos) >= 450);
+    assertEquals(1.8, engine.fps(), 0.01);
+  }
+
+  @Test public void testThrowingEffectDoesNotStopTheOthers() throws Exception {
+    final LifxClient client = client("effects-throwing-token");
+    final List<Light> lights = lights(client, 1, 6000);
+    server.enqueue(new MockResponse().setBody("[]"));
+    engine = new EffectsEngine.Builder(client).build();
+    final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+    final AtomicInteger uncaught = new AtomicInteger();
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override public void uncaughtException(Thread thread, Throwable e) {
+        uncaught.incrementAndGet();
+      }
+    });
+    try {
+      final EffectsEngine.Playback broken = engine.play(new Effect() {
+        @Nullable @Override public LifxColor render(long elapsedMillis, int index, int count, @NotNull Light light) {
+          throw new IllegalStateException("A careless effect");
+        }
+      }, lights);
+      Thread.sleep(300);
+      broken.stop();
+      engine.play(Effects.solid(LifxColor.BLUE), lights);
+      assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+      assertTrue(uncaught.get() > 1); // every frame tried again
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(handler);
+    }
+  }
+
+  /**
+   * Lists {@code count} lights from a response that sets the client's rate limit to {@code rateLimit} a minute
+   */
+  @NotNull private List<Light> lights(@NotNull LifxClient client, int count, int rateLimit)
+      throws InterruptedException {
+    final String[] labels = new String[count];
+    for (int i = 0; i < count; i++) {
+      labels[i] = "Light " + i;
+    }
+    server.enqueue(new MockResponse()
+        .setBody(Fixtures.listing(labels))
+        .addHeader("X-RateLimit-Limit", rateLimit)
+        .addHeader("X-RateLimit-Remaining", rateLimit - 1));
+    final List<Light> lights = LifxRequests.listLights().execute(client).unwrap();
+    server.takeRequest(); // so that only the effects' requests are left to take
+    return lights;
+  }
+
+  /**
+   * An effect that changes every light's color every frame, so that every frame has something to send
+   */
+  @NotNull private static Effect alternating() {
+    final AtomicInteger frames = new AtomicInteger();
+    return new Effect() {
+      @Nullable @Override public LifxColor render(long elapsedMillis, int index, int count, @NotNull Light light) {
+        final int frame = index == 0 ? frames.incrementAndGet() : frames.get();
+        return frame % 2 == 0 ? LifxColor.RED : LifxColor.BLUE;
+      }
+    };
+  }
+
+  private static int operationsIn(@NotNull RecordedRequest request) {
+    final String body = request.getBody().readUtf8();
+    int count = 0;
+    for (int i = body.indexOf("\"selector\""); i >= 0; i = body.indexOf("\"selector\"", i + 1)) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,205 @@
+package com.kevinmost.lifx.lan;
+
+import com.kevinmost.internal.Util;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Runs a {@link LanClient} against a stand-in device on the loopback interface
+ */
+public class TestLanClient {
+
+  private FakeDevice device;
+  private LanClient client;
+
+  @Before public void setup() throws IOException {
+    device = new FakeDevice("d073d5000001", "Desk");
+    device.start();
+    client = new LanClient.Builder()
+        .broadcastAddress(InetAddress.getLoopbackAddress())
+        .port(device.socket.getLocalPort())
+        .timeout(100, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  @After public void teardown() {
+    client.close();
+    device.socket.close();
+  }
+
+  @Test public void testDiscovery() throws IOException {
+    final List<LanLight> lights = client.discover();
+    assertEquals(1, lights.size());
+    final LanLight light = lights.get(0);
+    assertEquals("d073d5000001", light.id());
+    assertEquals("Desk", light.label());
+    assertEquals(PowerState.OFF, light.powerState());
+    assertEquals(3500, (int) light.color().kelvin());
+  }
+
+  @Test public void testPartialColorKeepsTheRestOfTheDevicesColor() throws IOException {
+    final List<OperationResult> results = client.apply(Operation.forSelector(Selector.forLight("Desk"))
+        .brightness(0.5)
+        .powerState(PowerState.ON)
+        .build()
+    );
+    assertEquals("ok", results.get(0).results().get(0).status());
+    synchronized (device) {
+      assertEquals(0x8000, device.brightness);
+      assertEquals(0x8000, device.hue);
+      assertEquals(3500, device.kelvin);
+      assertEquals(0xffff, device.power);
+    }
+    final LanLight refreshed = client.refresh(client.lights().get(0));
+    assertNotNull(refreshed);
+    assertEquals(PowerState.ON, refreshed.powerState());
+  }
+
+  @Test public void testLostMessagesAreRetried() throws IOException {
+    client.discover();
+    synchronized (device) {
+      device.dropNext = 1;
+    }
+    final List<OperationResult> results = client.apply(Operation.forSelector(Selector.ALL)
+        .color(LifxColor.hsv(90.0, 1.0, null))
+        .build()
+    );
+    assertEquals("ok", results.get(0).results().get(0).status());
+    synchronized (device) {
+      assertEquals(2, device.setColorsReceived);
+      assertEquals(0x4000, device.hue);
+    }
+  }
+
+  @Test public void testOperationsOnOneLightArriveInOrder() throws IOException {
+    client.discover();
+    synchronized (device) {
+      device.dropNext = 1; // the first operation has to be resent
+    }
+    final List<OperationResult> results = client.apply(
+        Operation.forSelector(Selector.forLight("Desk")).powerState(PowerState.ON).build(),
+        Operation.forSelector(Selector.forLight("Desk")).powerState(PowerState.OFF).build()
+    );
+    assertEquals("ok", results.get(0).results().get(0).status());
+    assertEquals("ok", results.get(1).results().get(0).status());
+    synchronized (device) {
+      assertEquals(0, device.power);
+    }
+    assertEquals(PowerState.OFF, client.lights().get(0).powerState());
+  }
+
+  @Test public void testUnresponsiveLightTimesOut() throws IOException {
+    client.discover();
+    synchronized (device) {
+      device.dropNext = Integer.MAX_VALUE;
+    }
+    final List<OperationResult> results = client.apply(Operation.forSelector(Selector.unsafe("id:d073d5000001"))
+        .powerState(PowerState.ON)
+        .build()
+    );
+    assertEquals("timed_out", results.get(0).results().get(0).status());
+  }
+
+  private static final class FakeDevice extends Thread {
+    @NotNull final DatagramSocket socket;
+    final long target;
+    @NotNull final String label;
+
+    int hue = 0x8000;
+    int saturation = 0xffff;
+    int brightness = 0xffff;
+    int kelvin = 3500;
+    int power = 0;
+    int dropNext;
+    int setColorsReceived;
+
+    FakeDevice(@NotNull String serial, @NotNull String label) throws SocketException {
+      this.socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+      this.target = LanProtocol.target(serial);
+      this.label = label;
+      setDaemon(true);
+    }
+
+    @Override public void run() {
+      final byte[] buffer = new byte[1024];
+      try {
+        while (true) {
+          final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+          socket.receive(packet);
+          final LanProtocol.Message message = LanProtocol.decode(packet.getData(), packet.getLength());
+          if (message == null || (message.target != 0 && message.target != target)) {
+            continue;
+          }
+          final byte[] reply = handle(message);
+          if (reply != null) {
+            socket.send(new DatagramPacket(reply, reply.length, packet.getSocketAddress()));
+          }
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private synchronized byte[] handle(@NotNull LanProtocol.Message message) {
+      final ByteBuffer payload = message.payload.order(ByteOrder.LITTLE_ENDIAN);
+      switch (message.type) {
+        case LanProtocol.GET_SERVICE:
+          final ByteBuffer service = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN);
+          service.put((byte) LanProtocol.SERVICE_UDP).putInt(socket.getLocalPort());
+          return reply(message, LanProtocol.STATE_SERVICE, service.array());
+        case LanProtocol.LIGHT_GET:
+          final ByteBuffer state = ByteBuffer.allocate(52).order(ByteOrder.LITTLE_ENDIAN);
+          state.putShort((short) hue).putShort((short) saturation);
+          state.putShort((short) brightness).putShort((short) kelvin);
+          state.putShort((short) 0).putShort((short) power);
+          state.put(label.getBytes(Util.UTF_8));
+          return reply(message, LanProtocol.LIGHT_STATE, state.array());
+        case LanProtocol.LIGHT_SET_COLOR:
+          setColorsReceived++;
+          if (dropNext > 0) {
+            dropNext--;
+            return null;
+          }
+          payload.get();
+          hue = payload.getShort() & 0xffff;
+          saturation = payload.getShort() & 0xffff;
+          brightness = payload.getShort() & 0xffff;
+          kelvin = payload.getShort() & 0xffff;
+          return reply(message, LanProtocol.ACKNOWLEDGEMENT, new byte[0]);
+        case LanProtocol.LIGHT_SET_POWER:
+          if (dropNext > 0) {
+            dropNext--;
+            return null;
+          }
+          power = payload.getShort() & 0xffff;
+          return reply(message, LanProtocol.ACKNOWLEDGEMENT, new byte[0]);
+        default:
+          return null;
+      }
+    }
+
+    @NotNull private byte[] reply(@NotNull LanProtocol.Message request, int type, @NotNull byte[] payload) {
+      return LanProtocol.encode(type, request.source, target, request.sequence, false, false, payload);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.kevinmost.lifx.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses and formats color strings. The parse cache is process-wide, so each test that checks it uses strings of its
+ * own
+ */
+public class TestColorStrings {
+
+  @Test public void testFormatsOnlyTheFieldsThatAreSet() {
+    assertEquals("", ColorStrings.format(LifxColor.create()));
+    assertEquals("saturation:0.0", ColorStrings.format(LifxColor.WHITE));
+    assertEquals("hue:250.0 saturation:1.0", ColorStrings.format(LifxColor.BLUE));
+    assertEquals("kelvin:3500", ColorStrings.format(LifxColor.white(3500)));
+    assertEquals(
+        "hue:12.5 saturation:0.25 brightness:0.125 kelvin:9000",
+        ColorStrings.format(LifxColor.createRounded(12.5, 0.25, 0.125, 9000))
+    );
+  }
+
+  @Test public void testParsesEachField() {
+    assertEquals(LifxColor.createRounded(120.0, null, null, null), ColorStrings.parse("hue:120"));
+    assertEquals(LifxColor.createRounded(null, 0.5, null, null), ColorStrings.parse("saturation:0.5"));
+    assertEquals(LifxColor.createRounded(null, null, 0.25, null), ColorStrings.parse("brightness:0.25"));
+    assertEquals(LifxColor.white(2500), ColorStrings.parse("kelvin:2500"));
+    assertEquals(
+        LifxColor.createRounded(359.5, 1.0, 0.0, 9000),
+        ColorStrings.parse("kelvin:9000 brightness:0 saturation:1 hue:359.5")
+    );
+  }
+
+  @Test public void testParsingRoundsLikeLifxColor() {
+    assertEquals(
+        LifxColor.hsv(120.0, 1.0, 0.123456789012345).withKelvin(3500),
+        ColorStrings.parse("hue:120 saturation:1.0 brightness:0.123456789012345 kelvin:3500")
+    );
+  }
+
+  @Test public void testExtraWhitespaceIsSkipped() {
+    assertEquals(
+        LifxColor.createRounded(120.0, 1.0, null, 3500),
+        ColorStrings.parse("  hue:120 \t saturation:1   kelvin:3500 ")
+    );
+  }
+
+  @Test public void testRandomColorsRoundTrip() {
+    final Random random = new Random(4);
+    for (int i = 0; i < 10000; i++) {
+      LifxColor color = LifxColor.create();
+      if (random.nextBoolean()) {
+        color = color.withHue(random.nextDouble() * 360);
+      }
+      if (random.nextBoolean()) {
+        color = color.withSaturation(random.nextDouble());
+      }
+      if (random.nextBoolean()) {
+        color = color.withBrightness(random.nextDouble());
+      }
+      if (random.nextBoolean()) {
+        color = color.withKelvin(2500 + random.nextInt(6501));
+      }
+      final String string = ColorStrings.format(color);
+      if (string.isEmpty()) {
+        continue; // an empty string isn't a color the API accepts
+      }
+      assertEquals(string, color, ColorStrings.parse(string));
+    }
+  }
+
+  @Test public void testUnknownOptionsAreRejected() {
+    assertRejected("rgb:1,2,3", IllegalStateException.class);
+    assertRejected("hue:120 red", IllegalStateException.class);
+    assertRejected("", IllegalStateException.class);
+    assertRejected("   ", IllegalStateException.class);
+  }
+
+  @Test public void testMalformedOrOutOfRangeValuesAreRejected() {
+    assertRejected("hue:blue", NumberFormatException.class);
+    assertRejected("kelvin:", NumberFormatException.class);
+    assertRejected("kelvin:35OO", NumberFormatException.class);
+    assertRejected("hue:400", IllegalArgumentException.class);
+    assertRejected("saturation:1.5", IllegalArgumentException.class);
+    assertRejected("kelvin:1000", IllegalArgumentException.class);
+    assertRejected("kelvin:-3500", IllegalArgumentException.class);
+  }
+
+  @Test public void testParsedColorsAreCached() {
+    final LifxColor first = ColorStrings.parse("hue:12.25 kelvin:2501");
+    assertSame(first, ColorStrings.parse("hue:12.25 kelvin:2501"));
+    // A different string for the same color is parsed on its own
+    final LifxColor other = ColorStrings.parse("kelvin:2501 hue:12.25");
+    assertEquals(first, other);
+    assertNotSame(first, other);
+  }
+
+  @Test public void testLeastRecentlyParsedColorsAreEvicted() {
+    final LifxColor kept = ColorStrings.parse("hue:13.25 kelvin:2502");
+    final LifxColor evicted = ColorStrings.parse("hue:14.25 kelvin:2502");
+    for (int i = 0; i < 600; i++) {
+      ColorStrings.parse("kelvin:" + (3000 + i));
+      // Used now and then, so it stays near the front
+      assertSame(kept, ColorStrings.parse("hue:13.25 kelvin:2502"));
+    }
+    final LifxColor reparsed = ColorStrings.parse("hue:14.25 kelvin:2502");
+    assertEquals(evicted, reparsed);
+    assertNotSame(evicted, reparsed);
+  }
+
+  @Test public void testToStringIsFormattedOnce() {
+    final LifxColor color = LifxColor.createRounded(15.25, 0.5, null, null);
+    final String string = color.toString();
+    assertEquals("hue:15.25 saturation:0.5", string);
+    assertSame(string, color.toString());
+  }
+
+  private static void assertRejected(String colorString, Class<? extends RuntimeException> type) {
+    try {
+      ColorStrings.parse(colorString);
+      fail("\"" + colorString + "\" should be rejected");
+    } catch (RuntimeException expected) {
+      if (!type.isInstance(expected)) {
+        throw expected;
+      }
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package com.kevinmost.lifx.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.kevinmost.internal.AutoValueTypeAdapterFactory;
+import com.kevinmost.lifx.Fixtures;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Indexes a small fleet of two groups in two locations: Desk and Lamp in the Lounge at Home, and Strip in the
+ * Kitchen at the Office
+ */
+public class TestFleetIndex {
+
+  private Light desk;
+  private Light lamp;
+  private Light strip;
+  private FleetIndex index;
+
+  @Before public void setup() {
+    final Gson gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new AutoValueTypeAdapterFactory())
+        .create();
+    desk = gson.fromJson(Fixtures.light("light0", "Desk"), Light.class);
+    lamp = gson.fromJson(Fixtures.light("light1", "Lamp"), Light.class);
+    final JsonObject json = new JsonParser().parse(Fixtures.light("light2", "Strip")).getAsJsonObject();
+    json.add("group", new JsonParser().parse("{\"id\":\"kitchen-id\",\"name\":\"Kitchen\"}"));
+    json.add("location", new JsonParser().parse("{\"id\":\"office-id\",\"name\":\"Office\"}"));
+    strip = gson.fromJson(json, Light.class);
+    index = FleetIndex.of(Arrays.asList(desk, lamp, strip));
+  }
+
+  @Test public void testAllResolvesToEveryLightInOrder() {
+    assertEquals(Arrays.asList(desk, lamp, strip), index.resolve(Selector.ALL));
+    assertEquals(Arrays.asList(desk, lamp, strip), index.lights());
+  }
+
+  @Test public void testIdsResolveToTheirLight() {
+    assertEquals(Collections.singletonList(lamp), index.resolve(Selector.forLight(lamp)));
+    assertEquals(Collections.singletonList(strip), index.resolve(Selector.unsafe("id:light2")));
+    assertSame(desk, index.light("light0"));
+    assertNull(index.light("light9"));
+  }
+
+  @Test public void testLabelsResolveToTheirLight() {
+    assertEquals(Collections.singletonList(desk), index.resolve(Selector.forLight("Desk")));
+    assertEquals(Collections.singletonList(strip), index.resolve(Selector.unsafe("label:Strip")));
+  }
+
+  @Test public void testGroupsResolveByNameAndById() {
+    assertEquals(Arrays.asList(desk, lamp), index.resolve(Selector.forGroup("Lounge")));
+    assertEquals(Arrays.asList(desk, lamp), index.resolve(Selector.forGroup(desk.group())));
+    assertEquals(Collections.singletonList(strip), index.resolve(Selector.forGroup("Kitchen")));
+    assertEquals(Collections.singletonList(strip), index.resolve(Selector.unsafe("group_id:kitchen-id")));
+  }
+
+  @Test public void testLocationsResolveByNameAndById() {
+    assertEquals(Arrays.asList(desk, lamp), index.resolve(Selector.forLocation("Home")));
+    assertEquals(Arrays.asList(desk, lamp), index.resolve(Selector.forLocation(lamp.location())));
+    assertEquals(Collections.singletonList(strip), index.resolve(Selector.forLocation("Office")));
+    assertEquals(Collections.singletonList(strip), index.resolve(Selector.unsafe("location_id:office-id")));
+  }
+
+  @Test public void testUnknownSelectorsResolveToNull() {
+    assertNull(index.resolve(Selector.forLight("Ceiling")));
+    assertNull(index.resolve(Selector.forGroup("Bedroom")));
+    assertNull(index.resolve(Selector.unsafe("location_id:nowhere")));
+    // Kinds that aren't indexed are left to the API
+    assertNull(index.resolve(Selector.unsafe("scene_id:" + desk.uuid())));
+    assertNull(index.resolve(Selector.unsafe("label:Desk,label:Lamp")));
+  }
+
+  @Test public void testSelectorsCoverEveryIndexedKey() {
+    assertEquals(1 + 3 + 3 + 2 * 2 + 2 * 2, index.selectors().size());
+    assertTrue(index.selectors().contains(Selector.ALL));
+    assertTrue(index.selectors().contains(Selector.forLight("Strip")));
+    assertTrue(index.selectors().contains(Selector.forLocation(strip.location())));
+  }
+
+  @Test public void testResolvedListsCannotBeChanged() {
+    final List<Light> group = index.resolve(Selector.forGroup("Lounge"));
+    try {
+      //noinspection ConstantConditions
+      group.clear();
+      fail("A resolved list shouldn't be changeable");
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      index.lights().add(desk);
+      fail("The indexed lights shouldn't be changeable");
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test public void testEmptyFleetResolvesOnlyAll() {
+    final FleetIndex empty = FleetIndex.of(Collections.<Light>emptyList());
+    assertEquals(Collections.<Light>emptyList(), empty.resolve(Selector.ALL));
+    assertNull(empty.resolve(Selector.forLight("Desk")));
+    assertEquals(Collections.singleton(Selector.ALL), new HashSet<>(empty.selectors()));
+  }
+}
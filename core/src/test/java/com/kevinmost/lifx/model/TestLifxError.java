@@ -0,0 +1,77 @@
+package com.kevinmost.lifx.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads the errors of an API error body, as the API sends them and as lone strings
+ */
+public class TestLifxError {
+
+  private Gson gson;
+
+  @Before public void setup() {
+    gson = new Gson();
+  }
+
+  @Test public void testMessagesAsAList() {
+    final LifxError error =
+        gson.fromJson("{\"field\":\"color\",\"message\":[\"Unable to parse color\",\"Try hue:120\"]}", LifxError.class);
+    assertEquals("color", error.field());
+    assertEquals(Arrays.asList("Unable to parse color", "Try hue:120"), error.message());
+  }
+
+  @Test public void testMessageAsALoneString() {
+    final LifxError error =
+        gson.fromJson("{\"field\":\"color\",\"message\":\"Unable to parse color\"}", LifxError.class);
+    assertEquals(Collections.singletonList("Unable to parse color"), error.message());
+  }
+
+  @Test public void testMissingOrNullMessageIsEmpty() {
+    assertEquals(Collections.<String>emptyList(), gson.fromJson("{\"field\":\"color\"}", LifxError.class).message());
+    assertEquals(
+        Collections.<String>emptyList(),
+        gson.fromJson("{\"field\":\"color\",\"message\":null}", LifxError.class).message()
+    );
+    assertEquals(
+        Collections.<String>emptyList(),
+        gson.fromJson("{\"field\":\"color\",\"message\":[]}", LifxError.class).message()
+    );
+  }
+
+  @Test public void testFieldIsRequired() {
+    try {
+      gson.fromJson("{\"message\":[\"Unable to parse color\"]}", LifxError.class);
+      fail("An error without a field should be rejected");
+    } catch (JsonSyntaxException expected) {
+      assertEquals("LifxError is missing required field \"field\"", expected.getMessage());
+    }
+  }
+
+  @Test public void testErrorsListRoundTrips() {
+    final List<LifxError> errors = gson.fromJson(
+        "[{\"field\":\"color\",\"message\":\"Unable to parse color\",\"code\":422},"
+            + "{\"field\":\"duration\",\"message\":[\"Must be positive\"]}]",
+        new TypeToken<List<LifxError>>() {}.getType()
+    );
+    assertEquals(2, errors.size());
+    assertEquals("duration", errors.get(1).field());
+    final String written = gson.toJson(errors);
+    assertEquals(
+        "[{\"field\":\"color\",\"message\":[\"Unable to parse color\"]},"
+            + "{\"field\":\"duration\",\"message\":[\"Must be positive\"]}]",
+        written
+    );
+    assertEquals(errors, gson.fromJson(written, new TypeToken<List<LifxError>>() {}.getType()));
+  }
+}
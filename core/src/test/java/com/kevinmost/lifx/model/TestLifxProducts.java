@@ -0,0 +1,59 @@
+package com.kevinmost.lifx.model;
+
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes products through the process-wide registry. It's never cleared, so each test uses identifiers of its own
+ */
+public class TestLifxProducts {
+
+  private Gson gson;
+
+  @Before public void setup() {
+    gson = new Gson();
+  }
+
+  @Test public void testDefaultsDecodeToThemselves() {
+    assertSame(LifxProduct.Defaults.A19_PLUS, decode("lifx_plus_a19", "LIFX+ A19", true));
+    assertSame(LifxProduct.Defaults.A19_PLUS, LifxProducts.forIdentifier("lifx_plus_a19"));
+  }
+
+  @Test public void testUnknownProductsAreRegisteredOnFirstDecode() {
+    final LifxProduct first = decode("test_registered", "Registered", false);
+    assertSame(first, decode("test_registered", "Registered", false));
+    assertSame(first, LifxProducts.forIdentifier("test_registered"));
+    assertTrue(LifxProducts.all().contains(first));
+  }
+
+  @Test public void testDifferentDescriptionDoesNotReplaceADefault() {
+    final LifxProduct variant = decode("lifx_color_650", "LIFX Color 650 (Renamed)", false);
+    assertNotSame(LifxProduct.Defaults.COLOR_650, variant);
+    assertEquals("LIFX Color 650 (Renamed)", variant.productName());
+    // Lights described the same way still share one instance
+    assertSame(variant, decode("lifx_color_650", "LIFX Color 650 (Renamed)", false));
+    assertSame(LifxProduct.Defaults.COLOR_650, LifxProducts.forIdentifier("lifx_color_650"));
+    assertSame(LifxProduct.Defaults.COLOR_650, decode("lifx_color_650", "LIFX Color 650", false));
+  }
+
+  @Test public void testDifferentDescriptionDoesNotReplaceARegisteredProduct() {
+    final LifxProduct first = decode("test_redescribed", "Redescribed", false);
+    final LifxProduct variant = decode("test_redescribed", "Redescribed", true);
+    assertNotSame(first, variant);
+    assertTrue(variant.capabilities().hasIR());
+    assertSame(first, LifxProducts.forIdentifier("test_redescribed"));
+    assertSame(first, decode("test_redescribed", "Redescribed", false));
+  }
+
+  private LifxProduct decode(String identifier, String name, boolean hasIR) {
+    return gson.fromJson("{\"name\":\"" + name + "\",\"identifier\":\"" + identifier + "\",\"company\":\"LIFX\","
+        + "\"capabilities\":{\"has_color\":true,\"has_variable_color_temp\":true,\"has_ir\":" + hasIR + ","
+        + "\"has_multizone\":false}}", LifxProduct.class);
+  }
+}
@@ -0,0 +1,103 @@
+package com.kevinmost.lifx.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.kevinmost.internal.AutoValueTypeAdapterFactory;
+import com.kevinmost.lifx.Fixtures;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads and writes projections of lights shaped like the API lists them, without a client
+ */
+public class TestLightProjection {
+
+  private Gson gson;
+
+  @Before public void setup() {
+    gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new AutoValueTypeAdapterFactory())
+        .create();
+  }
+
+  @Test public void testUnprojectedFieldsAreSkipped() throws IOException {
+    final Set<LightField> fields = LightProjection.fields(LightField.POWER, LightField.COLOR);
+    final LightProjection projection = LightProjection.adapter(gson, fields).fromJson(Fixtures.light("light0", "Desk"));
+    assertEquals("light0", projection.id());
+    assertEquals(PowerState.ON, projection.powerState());
+    assertEquals(250.0, projection.color().hue(), 0);
+    assertTrue(projection.has(LightField.COLOR));
+    assertFalse(projection.has(LightField.LABEL));
+    try {
+      projection.label();
+      fail("LABEL wasn't projected");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test public void testUnknownFieldsAreSkipped() throws IOException {
+    final LightProjection projection = LightProjection.adapter(gson, LightProjection.fields(LightField.POWER))
+        .fromJson("{\"id\":\"light0\",\"zones\":{\"count\":[1,2,{\"nested\":true}]},\"power\":\"off\"}");
+    assertEquals(PowerState.OFF, projection.powerState());
+  }
+
+  @Test public void testMissingUnprojectedFieldsAreAllowed() throws IOException {
+    // Nothing but the id and the power state, which a Light would reject
+    final LightProjection projection = LightProjection.adapter(gson, LightProjection.fields(LightField.POWER))
+        .fromJson("{\"id\":\"light0\",\"power\":\"on\"}");
+    assertEquals(PowerState.ON, projection.powerState());
+  }
+
+  @Test public void testMissingProjectedFieldsAreRejected() throws IOException {
+    final TypeAdapter<LightProjection> adapter =
+        LightProjection.adapter(gson, LightProjection.fields(LightField.COLOR));
+    try {
+      adapter.fromJson("{\"id\":\"light0\",\"power\":\"on\"}");
+      fail("COLOR is required once it's projected");
+    } catch (JsonSyntaxException expected) {
+    }
+    try {
+      adapter.fromJson("{\"color\":{\"hue\":250.0,\"saturation\":0.5,\"kelvin\":3500}}");
+      fail("The id is always required");
+    } catch (JsonSyntaxException expected) {
+    }
+  }
+
+  @Test public void testWritesOnlyProjectedFields() throws IOException {
+    final TypeAdapter<LightProjection> adapter =
+        LightProjection.adapter(gson, LightProjection.fields(LightField.COLOR, LightField.LAST_SEEN));
+    final LightProjection projection = adapter.fromJson(Fixtures.light("light0", "Desk"));
+    final JsonObject written = new JsonParser().parse(adapter.toJson(projection)).getAsJsonObject();
+    assertEquals(3, written.entrySet().size());
+    assertEquals("2016-11-02T08:53:02.867+00:00", written.get("last_seen").getAsString());
+
+    final LightProjection reread = adapter.fromJson(written.toString());
+    assertEquals(projection.id(), reread.id());
+    assertEquals(projection.color(), reread.color());
+    assertEquals(projection.lastSeen(), reread.lastSeen());
+  }
+
+  @Test public void testLastSeenIsACopy() throws IOException {
+    final LightProjection projection = LightProjection.adapter(gson, LightProjection.fields(LightField.LAST_SEEN))
+        .fromJson(Fixtures.light("light0", "Desk"));
+    final Date lastSeen = projection.lastSeen();
+    final long time = lastSeen.getTime();
+    lastSeen.setTime(0);
+    assertNotSame(lastSeen, projection.lastSeen());
+    assertEquals(time, projection.lastSeen().getTime());
+  }
+}
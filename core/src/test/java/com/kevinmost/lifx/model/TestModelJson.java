@@ -0,0 +1,199 @@
+package com.kevinmost.lifx.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.kevinmost.internal.AutoValueTypeAdapterFactory;
+import com.kevinmost.lifx.Fixtures;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads and writes the models through their hand-written adapters, the same way a client does
+ */
+public class TestModelJson {
+
+  private Gson gson;
+
+  @Before public void setup() {
+    gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new AutoValueTypeAdapterFactory())
+        .create();
+  }
+
+  @Test public void testDecodesALight() {
+    final Light light = gson.fromJson(Fixtures.light("light0", "Desk"), Light.class);
+    assertEquals("light0", light.id());
+    assertEquals(UUID.fromString("8fa5f072-af97-44ed-ae54-e70fd7bd9d20"), light.uuid());
+    assertEquals("Desk", light.label());
+    assertTrue(light.connected());
+    assertEquals(PowerState.ON, light.powerState());
+    assertEquals(250.0, light.color().hue(), 0);
+    assertEquals(0.5, light.color().saturation(), 0);
+    assertEquals(Integer.valueOf(3500), light.color().kelvin());
+    assertNull(light.infrared());
+    assertEquals(0.5, light.brightness(), 0);
+    assertEquals("Lounge", light.group().name());
+    assertEquals("1d6fe8ef0fde4c6d77b0012dc736662c", light.location().id());
+    assertEquals(0.002869418, light.secondsSinceSeen(), 0);
+    assertEquals(LifxProduct.Defaults.A19_PLUS, light.product());
+  }
+
+  @Test public void testLightRoundTrips() {
+    final Light light = gson.fromJson(Fixtures.light("light0", "Desk"), Light.class);
+    final Light reread = gson.fromJson(gson.toJson(light), Light.class);
+    assertEquals(light, reread);
+    assertEquals(light.lastSeen(), reread.lastSeen());
+    assertEquals(light.secondsSinceSeen(), reread.secondsSinceSeen(), 0);
+  }
+
+  @Test public void testLightIsWrittenInTheApiShape() {
+    final Light light = gson.fromJson(Fixtures.light("light0", "Desk"), Light.class);
+    final JsonObject written = new JsonParser().parse(gson.toJson(light)).getAsJsonObject();
+    assertEquals(0.5, written.get("brightness").getAsDouble(), 0);
+    final JsonObject color = written.getAsJsonObject("color");
+    assertEquals(250.0, color.get("hue").getAsDouble(), 0);
+    assertEquals(3500, color.get("kelvin").getAsInt());
+    assertFalse(color.has("brightness"));
+    assertEquals("2016-11-02T08:53:02.867+00:00", written.get("last_seen").getAsString());
+  }
+
+  @Test public void testLightOptionalFieldsMayBeMissingOrNull() {
+    final JsonObject json = lightJson();
+    json.remove("label");
+    json.add("infrared", null);
+    json.addProperty("zones", "unknown fields are skipped");
+    final Light light = gson.fromJson(json, Light.class);
+    assertNull(light.label());
+    assertNull(light.infrared());
+
+    final JsonObject withInfrared = lightJson();
+    withInfrared.addProperty("infrared", 0.25);
+    assertEquals(0.25, gson.fromJson(withInfrared, Light.class).infrared(), 0);
+  }
+
+  @Test public void testLightRequiredFieldsAreRejectedWhenMissing() {
+    final String[] required = {
+        "id",
+        "uuid",
+        "connected",
+        "power",
+        "color",
+        "brightness",
+        "group",
+        "location",
+        "last_seen",
+        "seconds_since_seen",
+        "product",
+    };
+    for (final String field : required) {
+      final JsonObject json = lightJson();
+      json.remove(field);
+      assertMissing(json, Light.class, field);
+    }
+  }
+
+  @Test public void testColorDecodesFromAnObject() {
+    final LifxColor color = gson.fromJson(
+        "{\"hue\":120.00000000000001,\"saturation\":1,\"brightness\":0.25,\"kelvin\":2500,\"extra\":[1]}",
+        LifxColor.class
+    );
+    assertEquals(LifxColor.createRounded(120.0, 1.0, 0.25, 2500), color);
+  }
+
+  @Test public void testColorObjectFieldsMayBeMissingOrNull() {
+    final LifxColor color = gson.fromJson("{\"hue\":null,\"kelvin\":4000}", LifxColor.class);
+    assertEquals(LifxColor.white(4000), color);
+    assertNull(color.hue());
+    assertNull(color.saturation());
+    assertNull(color.brightness());
+    assertNull(gson.fromJson("null", LifxColor.class));
+  }
+
+  @Test public void testColorObjectValuesAreRangeChecked() {
+    try {
+      gson.fromJson("{\"hue\":361}", LifxColor.class);
+      fail("A hue above 360 should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      gson.fromJson("{\"kelvin\":1000}", LifxColor.class);
+      fail("A kelvin below 2500 should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void testColorDecodesFromAString() {
+    assertEquals(LifxColor.GREEN, gson.fromJson("\"hue:120 saturation:1\"", LifxColor.class));
+    assertEquals(
+        LifxColor.createRounded(null, null, 0.5, 3500),
+        gson.fromJson("\"brightness:0.5 kelvin:3500\"", LifxColor.class)
+    );
+  }
+
+  @Test public void testColorIsWrittenAsAColorString() {
+    assertEquals("\"hue:120.0 saturation:1.0\"", gson.toJson(LifxColor.GREEN));
+    assertEquals("\"kelvin:2700\"", gson.toJson(LifxColor.white(2700)));
+    assertEquals("null", gson.toJson(null, LifxColor.class));
+    final LifxColor color = LifxColor.createRounded(12.5, 0.75, 0.125, 9000);
+    assertEquals(color, gson.fromJson(gson.toJson(color), LifxColor.class));
+  }
+
+  @Test public void testPowerStateDecodesEveryShapeTheApiUses() {
+    assertEquals(PowerState.ON, gson.fromJson("\"on\"", PowerState.class));
+    assertEquals(PowerState.OFF, gson.fromJson("\"off\"", PowerState.class));
+    assertEquals(PowerState.ON, gson.fromJson("{\"power\":\"on\"}", PowerState.class));
+    assertEquals(PowerState.OFF, gson.fromJson("{\"power\":\"off\"}", PowerState.class));
+    assertNull(gson.fromJson("null", PowerState.class));
+    assertEquals("\"on\"", gson.toJson(PowerState.ON));
+    assertEquals("\"off\"", gson.toJson(PowerState.OFF));
+  }
+
+  @Test public void testGroupsAndLocationsRoundTrip() {
+    final LifxGroup group = gson.fromJson("{\"id\":\"g1\",\"name\":\"Lounge\"}", LifxGroup.class);
+    assertEquals("g1", group.id());
+    assertEquals("Lounge", group.name());
+    assertEquals(group, gson.fromJson(gson.toJson(group), LifxGroup.class));
+
+    final LifxLocation location = gson.fromJson("{\"id\":\"l1\",\"name\":\"Home\"}", LifxLocation.class);
+    assertEquals("Home", location.name());
+    assertEquals(location, gson.fromJson(gson.toJson(location), LifxLocation.class));
+
+    assertMissing("{\"id\":\"g1\"}", LifxGroup.class, "name");
+    assertMissing("{\"name\":\"Home\"}", LifxLocation.class, "id");
+  }
+
+  @Test public void testProductCapabilitiesAreRequired() {
+    assertMissing("{\"has_color\":true,\"has_variable_color_temp\":true,\"has_ir\":false}",
+        LifxProductCapabilities.class, "has_multizone");
+    assertMissing("{\"name\":\"LIFX+ A19\",\"identifier\":\"lifx_plus_a19\",\"company\":\"LIFX\"}",
+        LifxProduct.class, "capabilities");
+  }
+
+  private JsonObject lightJson() {
+    return new JsonParser().parse(Fixtures.light("light0", "Desk")).getAsJsonObject();
+  }
+
+  private void assertMissing(JsonObject json, Class<?> type, String field) {
+    try {
+      gson.fromJson(json, type);
+      fail(type.getSimpleName() + " without \"" + field + "\" should be rejected");
+    } catch (JsonSyntaxException expected) {
+      assertEquals(type.getSimpleName() + " is missing required field \"" + field + "\"", expected.getMessage());
+    }
+  }
+
+  private void assertMissing(String json, Class<?> type, String field) {
+    assertMissing(new JsonParser().parse(json).getAsJsonObject(), type, field);
+  }
+}
@@ -0,0 +1,196 @@
+package com.kevinmost.lifx.model;
+
+import com.kevinmost.internal.Util;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Converts every one of the 2^24 colors and checks each against {@link LifxColor#rgb(int, int, int)} and against the
+ * textbook conversion it replaced, bit for bit
+ */
+public class TestRgbConverter {
+
+  @Test public void testEveryColorMatchesTheTextbookConversion() {
+    final int[] pixels = new int[1 << 16];
+    final double[] hues = new double[pixels.length];
+    final double[] saturations = new double[pixels.length];
+    final double[] brightnesses = new double[pixels.length];
+    for (int r = 0; r < 256; r++) {
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = (r << 16) | i;
+      }
+      RgbConverter.toHsb(pixels, hues, saturations, brightnesses);
+      for (int i = 0; i < pixels.length; i++) {
+        final int g = i >>> 8;
+        final int b = i & 0xff;
+        final double[] expected = textbook(r, g, b, false);
+        assertSameBits(r, g, b, "hue", expected[0], hues[i]);
+        assertSameBits(r, g, b, "saturation", expected[1], saturations[i]);
+        assertSameBits(r, g, b, "brightness", expected[2], brightnesses[i]);
+      }
+    }
+  }
+
+  @Test public void testEveryColorMatchesLifxColorRgb() {
+    final int[] pixels = new int[1 << 16];
+    final HsbkBuffer buffer = new HsbkBuffer(pixels.length);
+    for (int r = 0; r < 256; r++) {
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = (r << 16) | i;
+      }
+      RgbConverter.toHsb(pixels, 0, pixels.length, buffer, 0);
+      for (int i = 0; i < pixels.length; i++) {
+        final int g = i >>> 8;
+        final int b = i & 0xff;
+        final LifxColor color = LifxColor.rgb(r, g, b);
+        assertSameBits(r, g, b, "hue", color.hue(), buffer.hue(i));
+        assertSameBits(r, g, b, "saturation", color.saturation(), buffer.saturation(i));
+        assertSameBits(r, g, b, "brightness", color.brightness(), buffer.brightness(i));
+      }
+    }
+  }
+
+  /**
+   * {@link #testEveryColorMatchesTheTextbookConversion()} rounds through {@link Util#round(double, int)}, which is only
+   * as good as its own tests; a sample is checked against {@link BigDecimal} rounding directly
+   */
+  @Test public void testSampledColorsMatchBigDecimalRounding() {
+    final Random random = new Random(3);
+    for (int i = 0; i < 100000; i++) {
+      final int r = random.nextInt(256);
+      final int g = random.nextInt(256);
+      final int b = random.nextInt(256);
+      final double[] expected = textbook(r, g, b, true);
+      final LifxColor color = LifxColor.rgb(r, g, b);
+      assertSameBits(r, g, b, "hue", expected[0], color.hue());
+      assertSameBits(r, g, b, "saturation", expected[1], color.saturation());
+      assertSameBits(r, g, b, "brightness", expected[2], color.brightness());
+    }
+  }
+
+  @Test public void testAlphaIsIgnored() {
+    final double[] hues = new double[2];
+    final double[] saturations = new double[2];
+    final double[] brightnesses = new double[2];
+    RgbConverter.toHsb(new int[] {0x123456, 0xff123456}, hues, saturations, brightnesses);
+    assertEquals(hues[0], hues[1], 0);
+    assertEquals(saturations[0], saturations[1], 0);
+    assertEquals(brightnesses[0], brightnesses[1], 0);
+  }
+
+  @Test public void testFloatsAreNarrowedDoubles() {
+    final int[] pixels = {0x000000, 0xffffff, 0xff0000, 0x0a141e, 0x7f00ff};
+    final double[] hues = new double[pixels.length];
+    final double[] saturations = new double[pixels.length];
+    final double[] brightnesses = new double[pixels.length];
+    final float[] floatHues = new float[pixels.length];
+    final float[] floatSaturations = new float[pixels.length];
+    final float[] floatBrightnesses = new float[pixels.length];
+    RgbConverter.toHsb(pixels, hues, saturations, brightnesses);
+    RgbConverter.toHsb(pixels, 0, pixels.length, floatHues, floatSaturations, floatBrightnesses, 0);
+    for (int i = 0; i < pixels.length; i++) {
+      assertEquals((float) hues[i], floatHues[i], 0);
+      assertEquals((float) saturations[i], floatSaturations[i], 0);
+      assertEquals((float) brightnesses[i], floatBrightnesses[i], 0);
+    }
+  }
+
+  @Test public void testChannelArraysMatchPackedPixels() {
+    final int[] reds = {10, 255, 0};
+    final int[] greens = {20, 128, 0};
+    final int[] blues = {30, 0, 255};
+    final double[] hues = new double[4];
+    final double[] saturations = new double[4];
+    final double[] brightnesses = new double[4];
+    RgbConverter.toHsb(reds, greens, blues, 0, 3, hues, saturations, brightnesses, 1);
+    assertEquals(0, hues[0], 0);
+    for (int i = 0; i < 3; i++) {
+      final LifxColor color = LifxColor.rgb(reds[i], greens[i], blues[i]);
+      assertEquals(color.hue(), hues[i + 1], 0);
+      assertEquals(color.saturation(), saturations[i + 1], 0);
+      assertEquals(color.brightness(), brightnesses[i + 1], 0);
+    }
+  }
+
+  @Test public void testChannelsOutOfRangeAreRejected() {
+    final double[] out = new double[1];
+    try {
+      RgbConverter.toHsb(new int[] {256}, new int[] {0}, new int[] {0}, 0, 1, out, out, out, 0);
+      fail("A channel above 255 should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      LifxColor.rgb(0, -1, 0);
+      fail("A channel below 0 should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void testRangesOutOfBoundsAreRejected() {
+    final int[] pixels = new int[4];
+    final double[] out = new double[4];
+    try {
+      RgbConverter.toHsb(pixels, 2, 3, out, out, out, 0);
+      fail("Reading past the end of the pixels should be rejected");
+    } catch (IndexOutOfBoundsException expected) {
+    }
+    try {
+      RgbConverter.toHsb(pixels, 0, 4, out, out, out, 1);
+      fail("Writing past the end of the output should be rejected");
+    } catch (IndexOutOfBoundsException expected) {
+    }
+    try {
+      RgbConverter.toHsb(pixels, 0, 1, new HsbkBuffer(1), 1);
+      fail("Writing past the end of the buffer should be rejected");
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  /**
+   * The conversion {@link LifxColor#rgb(int, int, int)} used before {@link RgbConverter}, divisions, moduli and all
+   *
+   * @param viaBigDecimal whether to round through {@link BigDecimal} rather than {@link Util#round(double, int)}
+   */
+  private static double[] textbook(int r, int g, int b, boolean viaBigDecimal) {
+    final double rPrime = r / 255.0;
+    final double gPrime = g / 255.0;
+    final double bPrime = b / 255.0;
+    final double cMax = Util.max(rPrime, gPrime, bPrime);
+    final double cMin = Util.min(rPrime, gPrime, bPrime);
+    final double delta = cMax - cMin;
+    final double huePrime;
+    if (cMax == rPrime) {
+      huePrime = ((gPrime - bPrime) / delta) % 6;
+    } else if (cMax == gPrime) {
+      huePrime = ((bPrime - rPrime) / delta) + 2;
+    } else {
+      huePrime = ((rPrime - gPrime) / delta) + 4;
+    }
+    final double hue = Util.posModulo(60 * huePrime, 360.0);
+    final double saturation = (cMax == 0) ? 0 : (delta / cMax);
+    return new double[] {
+        round(Double.isNaN(hue) ? 0 : hue, viaBigDecimal),
+        round(saturation, viaBigDecimal),
+        round(cMax, viaBigDecimal),
+    };
+  }
+
+  private static double round(double value, boolean viaBigDecimal) {
+    if (viaBigDecimal) {
+      return new BigDecimal(value).setScale(LifxColor.PRECISION, RoundingMode.HALF_EVEN).doubleValue();
+    }
+    return Util.round(value, LifxColor.PRECISION);
+  }
+
+  private static void assertSameBits(int r, int g, int b, String field, double expected, double actual) {
+    if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+      fail(String.format("%s of rgb(%d, %d, %d): expected %s but was %s", field, r, g, b, expected, actual));
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.kevinmost.lifx.request;
+
+import com.kevinmost.lifx.BaseMockServerTest;
+import com.kevinmost.lifx.Fixtures;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.model.Operation;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs chunked set-lights requests against a {@link MockWebServer}
+ */
+public class TestChunkedSetLights extends BaseMockServerTest {
+
+  @Test public void testSplitsIntoChunksInOrder() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    }
+    final SetLightsBatchResult batch = operations(120).executeChunked(client("chunks-token", null), 1);
+    assertEquals(3, batch.chunks().size());
+    assertTrue(batch.isSuccess());
+    assertChunk(server.takeRequest(), 0, 50);
+    assertChunk(server.takeRequest(), 50, 50);
+    assertChunk(server.takeRequest(), 100, 20);
+  }
+
+  @Test public void testKeepsAtMostMaxConcurrentChunksInFlight() throws Exception {
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger mostInFlight = new AtomicInteger();
+    server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+      @Override public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        final int now = inFlight.incrementAndGet();
+        while (true) {
+          final int most = mostInFlight.get();
+          if (now <= most || mostInFlight.compareAndSet(most, now)) {
+            break;
+          }
+        }
+        Thread.sleep(200);
+        inFlight.decrementAndGet();
+        return new MockResponse().setBody(Fixtures.setLightsResponse());
+      }
+    });
+    final SetLightsBatchResult batch = operations(250).executeChunked(client("concurrency-token", null), 2);
+    assertEquals(5, batch.chunks().size());
+    assertTrue(batch.isSuccess());
+    assertEquals(2, mostInFlight.get());
+  }
+
+  @Test public void testFailedChunkDoesNotCostTheOthers() throws Exception {
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    server.enqueue(new MockResponse().setResponseCode(500).setBody("{\"error\":\"Server error\"}"));
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    final SetLightsBatchResult batch = operations(150).executeChunked(client("failure-token", null), 1);
+    assertFalse(batch.isSuccess());
+    assertTrue(batch.chunks().get(0).isSuccess());
+    assertTrue(batch.chunks().get(1).isFailure());
+    assertTrue(batch.chunks().get(2).isSuccess());
+  }
+
+  @Test public void testChunkThatCannotBeSentIsItsOwnResult() throws Exception {
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    final AtomicInteger executions = new AtomicInteger();
+    final ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(0, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+          @Override public void execute(Runnable command) {
+            if (executions.incrementAndGet() == 2) {
+              throw new RejectedExecutionException("The second chunk");
+            }
+            super.execute(command);
+          }
+        };
+    try {
+      final SetLightsBatchResult batch =
+          operations(150).executeChunked(client("rejected-token", new Dispatcher(executor)), 1);
+      assertEquals(3, batch.chunks().size());
+      assertTrue(batch.chunks().get(0).isSuccess());
+      assertTrue(batch.chunks().get(1).isNetworkError());
+      assertTrue(batch.chunks().get(2).isSuccess());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private LifxClient client(String accessToken, Dispatcher dispatcher) {
+    final LifxClient.Builder builder = clientBuilder(accessToken);
+    if (dispatcher != null) {
+      builder.client(new OkHttpClient.Builder().dispatcher(dispatcher).build());
+    }
+    return builder.build();
+  }
+
+  private static SetLightsRequest operations(int count) {
+    final SetLightsRequest request = LifxRequests.setLights();
+    for (int i = 0; i < count; i++) {
+      request.plus(Operation.forSelector(Selector.forLight("Light " + i)).brightness(0.5).build());
+    }
+    return request;
+  }
+
+  private static void assertChunk(RecordedRequest request, int first, int size) {
+    final String body = request.getBody().readUtf8();
+    assertEquals(size, body.split("\"selector\"").length - 1);
+    assertTrue(body.contains("Light " + first + "\""));
+    assertTrue(body.contains("Light " + (first + size - 1) + "\""));
+    assertFalse(body.contains("Light " + (first + size) + "\""));
+  }
+}
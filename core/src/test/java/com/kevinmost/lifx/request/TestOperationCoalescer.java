@@ -0,0 +1,120 @@
+package com.kevinmost.lifx.request;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.kevinmost.lifx.BaseMockServerTest;
+import com.kevinmost.lifx.LifxCallback;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.LifxResult;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.model.Operation;
+import com.kevinmost.lifx.request.model.OperationResult;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs an {@link OperationCoalescer} against a {@link MockWebServer}
+ */
+public class TestOperationCoalescer extends BaseMockServerTest {
+
+  private LifxClient client;
+
+  @Before public void setup() {
+    client = client("coalescer-token");
+  }
+
+  @Test public void testMergesPerSelectorIntoOneRequestPerWindow() throws Exception {
+    server.enqueue(new MockResponse().setBody("[]"));
+    final OperationCoalescer coalescer = new OperationCoalescer(client, 100, TimeUnit.MILLISECONDS);
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.1).build());
+    coalescer.submit(Operation.forSelector(Selector.forLight("Desk")).brightness(0.3).build());
+    coalescer.submit(Operation.forSelector(Selector.ALL).powerState(PowerState.ON).build());
+    assertEquals(2, coalescer.pendingCount());
+
+    final JsonArray states = states(server.takeRequest(5, TimeUnit.SECONDS));
+    assertEquals(2, states.size());
+    assertEquals("label:Desk", states.get(0).getAsJsonObject().get("selector").getAsString());
+    assertEquals(0.3, states.get(0).getAsJsonObject().get("brightness").getAsDouble(), 0);
+    final JsonObject all = states.get(1).getAsJsonObject();
+    assertEquals("all", all.get("selector").getAsString());
+    assertEquals(0.1, all.get("brightness").getAsDouble(), 0);
+    assertEquals("on", all.get("power").getAsString());
+    // Nothing else was pending, so the window sends nothing more
+    assertNull(server.takeRequest(300, TimeUnit.MILLISECONDS));
+  }
+
+  @Test public void testOrderFollowsTheLatestSubmit() throws Exception {
+    server.enqueue(new MockResponse().setBody("[]"));
+    final OperationCoalescer coalescer = new OperationCoalescer(client, 100, TimeUnit.MILLISECONDS);
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.1).build());
+    coalescer.submit(Operation.forSelector(Selector.unsafe("id:light0")).brightness(0.2).build());
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.3).build());
+
+    final JsonArray states = states(server.takeRequest(5, TimeUnit.SECONDS));
+    assertEquals("id:light0", states.get(0).getAsJsonObject().get("selector").getAsString());
+    assertEquals("all", states.get(1).getAsJsonObject().get("selector").getAsString());
+    assertEquals(0.3, states.get(1).getAsJsonObject().get("brightness").getAsDouble(), 0);
+  }
+
+  @Test public void testSubmitsDuringASendGoOutInTheNextWindow() throws Exception {
+    server.enqueue(new MockResponse().setBody("[]").setBodyDelay(200, TimeUnit.MILLISECONDS));
+    server.enqueue(new MockResponse().setBody("[]"));
+    final OperationCoalescer coalescer = new OperationCoalescer(client, 10, TimeUnit.MILLISECONDS);
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.1).build());
+    assertEquals(1, states(server.takeRequest(5, TimeUnit.SECONDS)).size());
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.2).build());
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.3).build());
+
+    final JsonArray states = states(server.takeRequest(5, TimeUnit.SECONDS));
+    assertEquals(1, states.size());
+    assertEquals(0.3, states.get(0).getAsJsonObject().get("brightness").getAsDouble(), 0);
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test public void testThrowingCallbackDoesNotStopLaterWindows() throws Exception {
+    server.enqueue(new MockResponse().setBody("[]"));
+    server.enqueue(new MockResponse().setBody("[]"));
+    final OperationCoalescer coalescer = new OperationCoalescer(client, 10, TimeUnit.MILLISECONDS,
+        new LifxCallback<List<OperationResult>>() {
+          @Override public void onResult(@NotNull LifxResult<List<OperationResult>> result) {
+            throw new IllegalStateException("A careless callback");
+          }
+        });
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.1).build());
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    Thread.sleep(100); // let the callback throw
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.2).build());
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+  }
+
+  @Test public void testFailedWindowDoesNotStopLaterWindows() throws Exception {
+    server.enqueue(new MockResponse().setBody("not json"));
+    server.enqueue(new MockResponse().setBody("[]"));
+    final OperationCoalescer coalescer = new OperationCoalescer(client, 10, TimeUnit.MILLISECONDS);
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.1).build());
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    Thread.sleep(100); // let the failure come back
+    coalescer.submit(Operation.forSelector(Selector.ALL).brightness(0.2).build());
+    assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+    assertEquals(0, coalescer.pendingCount());
+  }
+
+  @NotNull private static JsonArray states(@Nullable RecordedRequest request) {
+    assertNotNull(request);
+    return new JsonParser().parse(request.getBody().readUtf8()).getAsJsonObject().getAsJsonArray("states");
+  }
+}
@@ -0,0 +1,165 @@
+package com.kevinmost.lifx.request;
+
+import com.kevinmost.lifx.BaseMockServerTest;
+import com.kevinmost.lifx.Fixtures;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.model.Operation;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compiles scenes and activates them against a {@link okhttp3.mockwebserver.MockWebServer}, next to the same
+ * operations sent as ordinary set-lights requests
+ */
+public class TestScene extends BaseMockServerTest {
+
+  private LifxClient client;
+
+  @Before public void setup() {
+    client = client("scene-token");
+  }
+
+  @Test public void testCompiledBodiesMatchBuiltRequestsByteForByte() throws Exception {
+    final List<Operation> operations = operations(120);
+    final Scene scene = Scene.compile(operations);
+    for (int i = 0; i < scene.requests().size(); i++) {
+      server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    }
+    assertTrue(scene.activate(client).isSuccess());
+    final List<ByteString> compiled = new ArrayList<>();
+    for (int i = 0; i < scene.requests().size(); i++) {
+      compiled.add(server.takeRequest().getBody().readByteString());
+    }
+    Collections.sort(compiled); // sent all at once, so they can arrive in any order
+
+    final List<ByteString> built = new ArrayList<>();
+    for (final SetLightsRequest request : scene.requests()) {
+      server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+      assertTrue(LifxRequests.setLights().plus(request.operations()).execute(client).isSuccess());
+      built.add(server.takeRequest().getBody().readByteString());
+    }
+    Collections.sort(built);
+    assertEquals(built, compiled);
+  }
+
+  @Test public void testEveryKindOfFieldIsSerializedTheSameWay() throws Exception {
+    final Operation operation = Operation.forSelector(Selector.forGroup("Lounge"))
+        .powerState(PowerState.ON)
+        .color(LifxColor.hsv(120.5, 0.25, null).withKelvin(3500))
+        .brightness(0.125)
+        .infraredBrightness(0.5)
+        .duration(1500, TimeUnit.MILLISECONDS)
+        .build();
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    Scene.compile(operation).activate(client);
+    LifxRequests.setLights().plus(operation).execute(client);
+    final RecordedRequest compiled = server.takeRequest();
+    final RecordedRequest built = server.takeRequest();
+    assertEquals(built.getBody().readByteString(), compiled.getBody().readByteString());
+    assertEquals(built.getHeader("Content-Type"), compiled.getHeader("Content-Type"));
+    assertEquals(built.getHeader("Content-Length"), compiled.getHeader("Content-Length"));
+  }
+
+  @Test public void testChunksFallAtMaxOperations() {
+    assertChunks(1, 1);
+    assertChunks(SetLightsRequest.MAX_OPERATIONS, SetLightsRequest.MAX_OPERATIONS);
+    assertChunks(SetLightsRequest.MAX_OPERATIONS + 1, SetLightsRequest.MAX_OPERATIONS, 1);
+    assertChunks(120, SetLightsRequest.MAX_OPERATIONS, SetLightsRequest.MAX_OPERATIONS, 20);
+    assertChunks(
+        3 * SetLightsRequest.MAX_OPERATIONS,
+        SetLightsRequest.MAX_OPERATIONS,
+        SetLightsRequest.MAX_OPERATIONS,
+        SetLightsRequest.MAX_OPERATIONS
+    );
+  }
+
+  @Test public void testRequestsKeepTheScenesOrder() {
+    final List<Operation> operations = operations(120);
+    final Scene scene = Scene.compile(operations);
+    assertEquals(operations, scene.operations());
+    final List<Operation> chunked = new ArrayList<>();
+    for (final SetLightsRequest request : scene.requests()) {
+      chunked.addAll(request.operations());
+    }
+    assertEquals(operations, chunked);
+  }
+
+  @Test public void testCompiledRequestsCannotBeChanged() {
+    final Scene scene = Scene.compile(operations(2));
+    final Operation extra = Operation.forSelector(Selector.ALL).powerState(PowerState.OFF).build();
+    try {
+      scene.requests().get(0).plus(extra);
+      fail("A compiled request shouldn't take more operations");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      scene.requests().get(0).plus(Collections.singletonList(extra));
+      fail("A compiled request shouldn't take more operations");
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(2, scene.requests().get(0).operations().size());
+    try {
+      scene.requests().clear();
+      fail("A scene's requests shouldn't be changeable");
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test public void testLaterChangesToTheSourceListDoNotChangeTheScene() {
+    final List<Operation> operations = operations(3);
+    final Scene scene = Scene.compile(operations);
+    operations.clear();
+    assertEquals(3, scene.operations().size());
+    assertEquals(3, scene.requests().get(0).operations().size());
+  }
+
+  @Test public void testEmptySceneIsRejected() {
+    try {
+      Scene.compile(Collections.<Operation>emptyList());
+      fail("A scene needs at least one operation");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void testSceneCanBeActivatedAgain() throws Exception {
+    final Scene scene = Scene.compile(operations(1));
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    assertTrue(scene.activate(client).isSuccess());
+    assertTrue(scene.activate(client).isSuccess());
+    assertEquals(server.takeRequest().getBody().readByteString(), server.takeRequest().getBody().readByteString());
+  }
+
+  private static void assertChunks(int operations, int... sizes) {
+    final List<SetLightsRequest> requests = Scene.compile(operations(operations)).requests();
+    assertEquals(sizes.length, requests.size());
+    for (int i = 0; i < sizes.length; i++) {
+      assertEquals(sizes[i], requests.get(i).operations().size());
+    }
+  }
+
+  @NotNull private static List<Operation> operations(int count) {
+    final List<Operation> operations = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      operations.add(Operation.forSelector(Selector.forLight("Light " + i)).brightness(i / (double) count).build());
+    }
+    return operations;
+  }
+}
@@ -0,0 +1,62 @@
+package com.kevinmost.lifx.request;
+
+import com.kevinmost.lifx.BaseMockServerTest;
+import com.kevinmost.lifx.Fixtures;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.LifxResult;
+import com.kevinmost.lifx.model.LifxError;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.model.Operation;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends set-lights requests to a {@link MockWebServer}
+ */
+public class TestSetLightsRequest extends BaseMockServerTest {
+
+  private LifxClient client;
+
+  @Before public void setup() {
+    client = client("set-lights-token");
+  }
+
+  @Test public void testBodyIsSentWithAContentLength() throws Exception {
+    server.enqueue(new MockResponse().setBody(Fixtures.setLightsResponse()));
+    LifxRequests.setLights()
+        .plus(Operation.forSelector(Selector.ALL).powerState(PowerState.ON).brightness(0.5).build())
+        .execute(client);
+    final RecordedRequest request = server.takeRequest();
+    assertNull(request.getHeader("Transfer-Encoding"));
+    assertEquals(String.valueOf(request.getBodySize()), request.getHeader("Content-Length"));
+    assertEquals("{\"states\":[{\"selector\":\"all\",\"power\":\"on\",\"brightness\":0.5}]}",
+        request.getBody().readUtf8());
+  }
+
+  @Test public void testErrorBodyIsAFailureWithItsErrors() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(422).setBody("{\"error\":\"validation error\",\"errors\":["
+        + "{\"field\":\"color\",\"message\":[\"Unable to parse color: blue-ish\"]},"
+        + "{\"field\":\"duration\",\"message\":\"Must be positive\"}]}"));
+    final LifxResult<?> result = LifxRequests.setLights()
+        .plus(Operation.forSelector(Selector.ALL).powerState(PowerState.ON).build())
+        .execute(client);
+    assertTrue(result.isFailure());
+    assertEquals(422, result.asFailure().httpCode);
+    final List<LifxError> errors = result.asFailure().get();
+    assertEquals(2, errors.size());
+    assertEquals("color", errors.get(0).field());
+    assertEquals(Collections.singletonList("Unable to parse color: blue-ish"), errors.get(0).message());
+    assertEquals(Collections.singletonList("Must be positive"), errors.get(1).message());
+  }
+}
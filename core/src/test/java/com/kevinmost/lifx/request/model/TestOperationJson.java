@@ -0,0 +1,134 @@
+package com.kevinmost.lifx.request.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.kevinmost.internal.AutoValueTypeAdapterFactory;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads and writes operations and their results through their hand-written adapters, the same way a client does
+ */
+public class TestOperationJson {
+
+  private Gson gson;
+
+  @Before public void setup() {
+    gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new AutoValueTypeAdapterFactory())
+        .create();
+  }
+
+  @Test public void testOnlySetFieldsAreWritten() {
+    assertEquals("{\"selector\":\"all\"}", gson.toJson(Operation.forSelector(Selector.ALL).build()));
+    assertEquals(
+        "{\"selector\":\"label:Desk\",\"power\":\"off\",\"brightness\":0.25}",
+        gson.toJson(Operation.forSelector(Selector.forLight("Desk"))
+            .powerState(PowerState.OFF)
+            .brightness(0.25)
+            .build())
+    );
+  }
+
+  @Test public void testEveryFieldIsWrittenInOrder() {
+    final Operation operation = Operation.forSelector(Selector.ALL)
+        .powerState(PowerState.ON)
+        .color(LifxColor.GREEN)
+        .brightness(0.5)
+        .infraredBrightness(0.75)
+        .duration(3, TimeUnit.SECONDS)
+        .build();
+    assertEquals(
+        "{\"selector\":\"all\",\"power\":\"on\",\"color\":\"hue:120.0 saturation:1.0\",\"brightness\":0.5,"
+            + "\"infrared\":0.75,\"duration\":3}",
+        gson.toJson(operation)
+    );
+  }
+
+  @Test public void testDurationsKeepTheirFractionOnlyWhenTheyHaveOne() {
+    assertEquals("{\"selector\":\"all\",\"duration\":0}",
+        gson.toJson(Operation.forSelector(Selector.ALL).duration(0, TimeUnit.SECONDS).build()));
+    assertEquals("{\"selector\":\"all\",\"duration\":120}",
+        gson.toJson(Operation.forSelector(Selector.ALL).duration(2, TimeUnit.MINUTES).build()));
+    assertEquals("{\"selector\":\"all\",\"duration\":1.5}",
+        gson.toJson(Operation.forSelector(Selector.ALL).duration(1500, TimeUnit.MILLISECONDS).build()));
+  }
+
+  @Test public void testOperationRoundTrips() {
+    final Operation operation = Operation.forSelector(Selector.forLight("Desk"))
+        .powerState(PowerState.ON)
+        .color(LifxColor.white(2700))
+        .brightness(0.125)
+        .infraredBrightness(1.0)
+        .duration(250, TimeUnit.MILLISECONDS)
+        .build();
+    final Operation reread = gson.fromJson(gson.toJson(operation), Operation.class);
+    assertEquals(operation, reread);
+    assertEquals(Long.valueOf(250), reread.durationIn(TimeUnit.MILLISECONDS));
+  }
+
+  @Test public void testOperationOptionalFieldsMayBeMissingOrNull() {
+    final Operation operation = gson.fromJson(
+        "{\"selector\":\"all\",\"power\":null,\"color\":null,\"brightness\":null,\"fast\":true}",
+        Operation.class
+    );
+    assertEquals(Selector.ALL, operation.selector());
+    assertNull(operation.powerState());
+    assertNull(operation.color());
+    assertNull(operation.brightness());
+    assertNull(operation.infraredBrightness());
+    assertNull(operation.durationIn(TimeUnit.SECONDS));
+  }
+
+  @Test public void testOperationSelectorIsRequired() {
+    assertMissing("{\"power\":\"on\"}", Operation.class, "selector");
+    assertMissing("{\"selector\":null,\"power\":\"on\"}", Operation.class, "selector");
+  }
+
+  @Test public void testOperationResultRoundTrips() {
+    final OperationResult result = OperationResult.create(
+        Operation.forSelector(Selector.ALL).powerState(PowerState.ON).build(),
+        Arrays.asList(SetLightResult.create("light0", "Desk", "ok"), SetLightResult.create("light1", null, "offline"))
+    );
+    final OperationResult reread = gson.fromJson(gson.toJson(result), OperationResult.class);
+    assertEquals(result, reread);
+    assertNull(reread.results().get(1).label());
+  }
+
+  @Test public void testOperationResultDecodesTheApiShape() {
+    final OperationResult result = gson.fromJson("{"
+        + "\"operation\":{\"selector\":\"all\",\"brightness\":0.5},"
+        + "\"results\":[{\"id\":\"light0\",\"status\":\"ok\",\"label\":\"Desk\",\"extra\":1}]"
+        + "}", OperationResult.class);
+    assertEquals(Operation.forSelector(Selector.ALL).brightness(0.5).build(), result.operation());
+    assertEquals(Collections.singletonList(SetLightResult.create("light0", "Desk", "ok")), result.results());
+  }
+
+  @Test public void testOperationResultRequiredFieldsAreRejectedWhenMissing() {
+    assertMissing("{\"results\":[]}", OperationResult.class, "operation");
+    assertMissing("{\"operation\":{\"selector\":\"all\"}}", OperationResult.class, "results");
+    assertMissing("{\"label\":\"Desk\",\"status\":\"ok\"}", SetLightResult.class, "id");
+    assertMissing("{\"id\":\"light0\",\"label\":\"Desk\"}", SetLightResult.class, "status");
+  }
+
+  private void assertMissing(String json, Class<?> type, String field) {
+    try {
+      gson.fromJson(json, type);
+      fail(type.getSimpleName() + " without \"" + field + "\" should be rejected");
+    } catch (JsonSyntaxException expected) {
+      assertEquals(type.getSimpleName() + " is missing required field \"" + field + "\"", expected.getMessage());
+    }
+  }
+}
@@ -7,9 +7,11 @@ import okhttp3.OkHttpClient
 fun lifxClient(
     accessToken: String,
     client: OkHttpClient? = null,
-    baseURL: HttpUrl? = null
+    baseURL: HttpUrl? = null,
+    throttleToRateLimit: Boolean? = null
 ): LifxClient.Builder = LifxClient.Builder(accessToken)
     .apply {
       client?.let { client(it) }
       baseURL?.let { baseURL(it) }
+      throttleToRateLimit?.let { throttleToRateLimit(it) }
     }
@@ -0,0 +1,78 @@
+package com.kevinmost.lifx.simulator;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every latency it's given so percentiles come out exact rather than bucketed; a load test's worth of samples is
+ * only a few megabytes
+ */
+final class LatencyRecorder {
+
+  @NotNull private long[] nanos = new long[1024];
+  private int count;
+  private int failures;
+
+  synchronized void record(long latencyNanos, boolean success) {
+    if (count == nanos.length) {
+      nanos = Arrays.copyOf(nanos, count * 2);
+    }
+    nanos[count++] = latencyNanos;
+    if (!success) {
+      failures++;
+    }
+  }
+
+  synchronized void copyTo(@NotNull LatencyRecorder other) {
+    for (int i = 0; i < count; i++) {
+      other.record(nanos[i], true);
+    }
+    synchronized (other) {
+      other.failures += failures;
+    }
+  }
+
+  synchronized int count() {
+    return count;
+  }
+
+  synchronized int failures() {
+    return failures;
+  }
+
+  /**
+   * One line with the sample count, failures, and mean/p50/p99/p99.9/max latency in milliseconds
+   */
+  @NotNull synchronized String summary() {
+    if (count == 0) {
+      return "no samples";
+    }
+    final long[] sorted = Arrays.copyOf(nanos, count);
+    Arrays.sort(sorted);
+    long total = 0;
+    for (final long sample : sorted) {
+      total += sample;
+    }
+    return String.format(Locale.US, "n=%d failed=%d mean=%.2fms p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+        count,
+        failures,
+        millis(total / count),
+        millis(percentile(sorted, 0.50)),
+        millis(percentile(sorted, 0.99)),
+        millis(percentile(sorted, 0.999)),
+        millis(sorted[count - 1])
+    );
+  }
+
+  private static long percentile(@NotNull long[] sorted, double percentile) {
+    final int rank = (int) Math.ceil(percentile * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
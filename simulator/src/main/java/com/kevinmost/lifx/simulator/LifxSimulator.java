@@ -0,0 +1,433 @@
+package com.kevinmost.lifx.simulator;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.kevinmost.internal.AutoValueTypeAdapterFactory;
+import com.kevinmost.internal.Util;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.request.model.Operation;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A local stand-in for the LiFX HTTP API, serving {@code GET /v1/lights/:selector}, {@code PUT /v1/lights/states} and
+ * {@code GET /v1/color} over a {@link VirtualFleet}. Latency, rate limiting, throttling and server faults can all be
+ * dialed in, so a {@link com.kevinmost.lifx.LifxClient} can be load tested without a network, a token, or any bulbs.
+ * <p>
+ * Any bearer token is accepted. The simulator's sockets have Nagle's algorithm turned off (see
+ * {@link NoDelaySockets}); a client driving it should turn it off on its own sockets too, as {@link LoadGenerator}
+ * does, or every request over loopback stalls for ~40ms
+ */
+public final class LifxSimulator {
+
+  @NotNull private final VirtualFleet fleet;
+  @NotNull private final MockWebServer server = new MockWebServer();
+  @NotNull private final Gson gson = new GsonBuilder()
+      .registerTypeAdapterFactory(new AutoValueTypeAdapterFactory())
+      .create();
+  @NotNull private final TypeAdapter<Operation> operationAdapter = gson.getAdapter(Operation.class);
+  @NotNull private final TypeAdapter<LifxColor> colorAdapter = gson.getAdapter(LifxColor.class);
+  @NotNull private final Random random;
+
+  private final long minLatencyMillis;
+  private final long maxLatencyMillis;
+  private final double faultRate;
+  private final double throttleRate;
+  private final int rateLimit;
+  private final long rateLimitWindowMillis;
+
+  private long windowStartMillis;
+  private int windowCount;
+
+  private LifxSimulator(@NotNull Builder builder) {
+    fleet = new VirtualFleet(builder.lights, builder.groups, builder.locations, builder.seed);
+    random = new Random(builder.seed);
+    minLatencyMillis = builder.minLatencyMillis;
+    maxLatencyMillis = builder.maxLatencyMillis;
+    faultRate = builder.faultRate;
+    throttleRate = builder.throttleRate;
+    rateLimit = builder.rateLimit;
+    rateLimitWindowMillis = builder.rateLimitWindowMillis;
+    server.setServerSocketFactory(NoDelaySockets.serverSocketFactory());
+    server.setDispatcher(new Dispatcher() {
+      @Override public MockResponse dispatch(RecordedRequest request) {
+        return LifxSimulator.this.dispatch(request);
+      }
+    });
+  }
+
+  /**
+   * Starts serving on an ephemeral local port
+   */
+  @NotNull public LifxSimulator start() throws IOException {
+    // MockWebServer logs every request at INFO, which costs more than serving most of them
+    Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+    server.start();
+    return this;
+  }
+
+  /**
+   * What to pass to {@link com.kevinmost.lifx.LifxClient.Builder#baseURL(HttpUrl)}
+   */
+  @NotNull public HttpUrl url() {
+    return server.url("/");
+  }
+
+  @NotNull public VirtualFleet fleet() {
+    return fleet;
+  }
+
+  /**
+   * How many requests have come in so far, including the ones that were failed on purpose
+   */
+  public int requestCount() {
+    return server.getRequestCount();
+  }
+
+  public void shutdown() throws IOException {
+    server.shutdown();
+  }
+
+  @NotNull private MockResponse dispatch(@NotNull RecordedRequest request) {
+    final String authorization = request.getHeader("Authorization");
+    if (authorization == null || !authorization.startsWith("Bearer ")) {
+      return error(401, "Invalid token");
+    }
+    final MockResponse rateLimitHeaders = new MockResponse();
+    if (!admit(rateLimitHeaders)) {
+      return rateLimitHeaders;
+    }
+    final double roll;
+    synchronized (random) {
+      roll = random.nextDouble();
+    }
+    if (roll < faultRate) {
+      return delayed(error(503, "Service Unavailable"));
+    }
+    if (roll < faultRate + throttleRate) {
+      return error(429, "Rate limit exceeded").setHeader("Retry-After", 1);
+    }
+    final HttpUrl url = url().resolve(request.getPath());
+    final List<String> segments = url == null ? new ArrayList<String>() : url.pathSegments();
+    final MockResponse response;
+    try {
+      if (segments.size() == 3 && segments.get(0).equals("v1") && segments.get(1).equals("lights")) {
+        if (segments.get(2).equals("states") && request.getMethod().equals("PUT")) {
+          response = setStates(request.getBody());
+        } else if (request.getMethod().equals("GET")) {
+          response = listLights(segments.get(2));
+        } else {
+          response = error(405, "Method Not Allowed");
+        }
+      } else if (segments.size() == 2 && segments.get(0).equals("v1") && segments.get(1).equals("color")) {
+        final String colorString = url.queryParameter("string");
+        response = colorString == null ? validationError("string", "is required") : verifyColor(colorString);
+      } else {
+        response = error(404, "Not Found");
+      }
+    } catch (IOException | JsonParseException | IllegalArgumentException | IllegalStateException e) {
+      return validationError("body", String.valueOf(e.getMessage()));
+    }
+    return copyRateLimitHeaders(rateLimitHeaders, delayed(response));
+  }
+
+  /**
+   * Counts a request against the rate limit, putting the {@code X-RateLimit-*} headers on {@code response}. If the
+   * request is over the limit, {@code response} becomes the 429 to send back
+   *
+   * @return whether the request is within the limit
+   */
+  private synchronized boolean admit(@NotNull MockResponse response) {
+    if (rateLimit <= 0) {
+      return true;
+    }
+    final long nowMillis = System.currentTimeMillis();
+    if (nowMillis - windowStartMillis >= rateLimitWindowMillis) {
+      windowStartMillis = nowMillis;
+      windowCount = 0;
+    }
+    windowCount++;
+    final long resetMillis = windowStartMillis + rateLimitWindowMillis;
+    response
+        .setHeader("X-RateLimit-Limit", rateLimit)
+        .setHeader("X-RateLimit-Remaining", Math.max(0, rateLimit - windowCount))
+        .setHeader("X-RateLimit-Reset", TimeUnit.MILLISECONDS.toSeconds(resetMillis + 999));
+    if (windowCount <= rateLimit) {
+      return true;
+    }
+    final MockResponse throttled = error(429, "Rate limit exceeded");
+    response
+        .setStatus(throttled.getStatus())
+        .setHeader("Content-Type", "application/json; charset=utf-8")
+        .setHeader("Retry-After", TimeUnit.MILLISECONDS.toSeconds(resetMillis - nowMillis + 999))
+        .setBody(throttled.getBody());
+    return false;
+  }
+
+  @NotNull private MockResponse listLights(@NotNull String selector) throws IOException {
+    final List<VirtualFleet.VirtualLight> lights = fleet.select(selector);
+    if (lights == null) {
+      return validationError("selector", "is invalid");
+    }
+    if (lights.isEmpty()) {
+      return error(404, "Could not find " + selector + ".");
+    }
+    final SimpleDateFormat dateFormat = VirtualFleet.dateFormat();
+    final Buffer body = new Buffer();
+    final JsonWriter out = gson.newJsonWriter(new OutputStreamWriter(body.outputStream(), Util.UTF_8));
+    out.beginArray();
+    for (final VirtualFleet.VirtualLight light : lights) {
+      light.write(out, dateFormat);
+    }
+    out.endArray();
+    out.close();
+    return json(200, body);
+  }
+
+  @NotNull private MockResponse setStates(@NotNull Buffer requestBody) throws IOException {
+    final List<Operation> operations = new ArrayList<>();
+    final JsonReader in = gson.newJsonReader(new InputStreamReader(requestBody.inputStream(), Util.UTF_8));
+    in.beginObject();
+    while (in.hasNext()) {
+      if (in.nextName().equals("states")) {
+        in.beginArray();
+        while (in.hasNext()) {
+          operations.add(operationAdapter.read(in));
+        }
+        in.endArray();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    if (operations.isEmpty()) {
+      return validationError("states", "must have at least one state");
+    }
+
+    final Buffer body = new Buffer();
+    final JsonWriter out = gson.newJsonWriter(new OutputStreamWriter(body.outputStream(), Util.UTF_8));
+    out.beginArray();
+    for (final Operation operation : operations) {
+      final List<VirtualFleet.VirtualLight> lights = fleet.select(operation.selector().toString());
+      out.beginObject();
+      out.name("operation");
+      operationAdapter.write(out, operation);
+      out.name("results").beginArray();
+      if (lights != null) {
+        final LifxColor color = operation.color();
+        final Double brightness = operation.brightness() != null
+            ? operation.brightness()
+            : color == null ? null : color.brightness();
+        for (final VirtualFleet.VirtualLight light : lights) {
+          final boolean ok = light.apply(
+              operation.powerState() == null ? null : operation.powerState() == PowerState.ON,
+              color == null ? null : color.hue(),
+              color == null ? null : color.saturation(),
+              color == null ? null : color.kelvin(),
+              brightness,
+              operation.infraredBrightness()
+          );
+          out.beginObject()
+              .name("id").value(light.id)
+              .name("label").value(light.label)
+              .name("status").value(ok ? "ok" : "timed_out")
+              .endObject();
+        }
+      }
+      out.endArray();
+      out.endObject();
+    }
+    out.endArray();
+    out.close();
+    return json(207, body);
+  }
+
+  @NotNull private MockResponse verifyColor(@NotNull String colorString) throws IOException {
+    final LifxColor color = colorAdapter.fromJson(gson.toJson(colorString));
+    final Buffer body = new Buffer();
+    final JsonWriter out = gson.newJsonWriter(new OutputStreamWriter(body.outputStream(), Util.UTF_8));
+    out.setSerializeNulls(true);
+    out.beginObject()
+        .name("hue").value(color.hue())
+        .name("saturation").value(color.saturation())
+        .name("brightness").value(color.brightness())
+        .name("kelvin").value(color.kelvin())
+        .endObject();
+    out.close();
+    return json(200, body);
+  }
+
+  @NotNull private MockResponse delayed(@NotNull MockResponse response) {
+    if (maxLatencyMillis <= 0) {
+      return response;
+    }
+    final long latencyMillis;
+    synchronized (random) {
+      latencyMillis = minLatencyMillis + (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+    }
+    return response.setBodyDelay(latencyMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @NotNull private static MockResponse json(int code, @NotNull Buffer body) {
+    return new MockResponse()
+        .setResponseCode(code)
+        .setHeader("Content-Type", "application/json; charset=utf-8")
+        .setBody(body);
+  }
+
+  @NotNull private static MockResponse error(int code, @NotNull String message) {
+    return errorBody(code, message, null, null);
+  }
+
+  /**
+   * The API's 422 shape, which the client reads as {@link com.kevinmost.lifx.model.LifxError}s
+   */
+  @NotNull private static MockResponse validationError(@NotNull String field, @NotNull String message) {
+    return errorBody(422, "Validation error", field, message);
+  }
+
+  @NotNull private static MockResponse errorBody(
+      int code,
+      @NotNull String error,
+      @Nullable String field,
+      @Nullable String message
+  ) {
+    final Buffer body = new Buffer();
+    try {
+      final JsonWriter out = new JsonWriter(new OutputStreamWriter(body.outputStream(), Util.UTF_8));
+      out.beginObject().name("error").value(error);
+      if (field != null) {
+        out.name("errors").beginArray()
+            .beginObject()
+            .name("field").value(field)
+            .name("message").beginArray().value(message).endArray()
+            .endObject()
+            .endArray();
+      }
+      out.endObject();
+      out.close();
+    } catch (IOException e) {
+      throw new AssertionError(e); // Buffers don't throw
+    }
+    return json(code, body);
+  }
+
+  @NotNull private static MockResponse copyRateLimitHeaders(@NotNull MockResponse from, @NotNull MockResponse to) {
+    for (final String name : new String[] {"X-RateLimit-Limit", "X-RateLimit-Remaining", "X-RateLimit-Reset"}) {
+      final String value = from.getHeaders().get(name);
+      if (value != null) {
+        to.setHeader(name, value);
+      }
+    }
+    return to;
+  }
+
+  public static final class Builder {
+    private int lights = 100;
+    private int groups = 10;
+    private int locations = 2;
+    private long seed = 0;
+    private long minLatencyMillis;
+    private long maxLatencyMillis;
+    private double faultRate;
+    private double throttleRate;
+    private int rateLimit;
+    private long rateLimitWindowMillis;
+
+    @NotNull public Builder lights(int lights) {
+      Util.assertRange("lights", lights, 1, Integer.MAX_VALUE);
+      this.lights = lights;
+      return this;
+    }
+
+    /**
+     * How many groups and locations to spread the lights over. Each group sits in exactly one location
+     */
+    @NotNull public Builder groups(int groups, int locations) {
+      Util.assertRange("locations", locations, 1, Integer.MAX_VALUE);
+      Util.assertRange("groups", groups, locations, Integer.MAX_VALUE);
+      this.groups = groups;
+      this.locations = locations;
+      return this;
+    }
+
+    /**
+     * Seeds both the fleet's initial state and the random latency and faults, so runs can be repeated
+     */
+    @NotNull public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * Delays each response body by a uniformly random time in {@code [min, max)}
+     */
+    @NotNull public Builder latency(long min, long max, @NotNull TimeUnit unit) {
+      if (min < 0 || max < min) {
+        throw new IllegalArgumentException(String.format("Latency must be 0 <= min <= max. Was: [%d, %d)", min, max));
+      }
+      this.minLatencyMillis = unit.toMillis(min);
+      this.maxLatencyMillis = unit.toMillis(max);
+      return this;
+    }
+
+    /**
+     * The fraction of requests to fail with a 503
+     */
+    @NotNull public Builder faultRate(double faultRate) {
+      Util.assertRange("faultRate", faultRate, 0.0, 1.0);
+      this.faultRate = faultRate;
+      return this;
+    }
+
+    /**
+     * The fraction of requests to fail with a 429 regardless of the rate limit, as the API does when it's under load
+     */
+    @NotNull public Builder throttleRate(double throttleRate) {
+      Util.assertRange("throttleRate", throttleRate, 0.0, 1.0);
+      this.throttleRate = throttleRate;
+      return this;
+    }
+
+    /**
+     * Allows {@code limit} requests per fixed window, answering everything past that with a 429 until the window
+     * resets, and reports it all in {@code X-RateLimit-*} headers. The real API allows 120 requests per minute
+     */
+    @NotNull public Builder rateLimit(int limit, long window, @NotNull TimeUnit unit) {
+      Util.assertRange("limit", limit, 1, Integer.MAX_VALUE);
+      if (window <= 0) {
+        throw new IllegalArgumentException("window must be positive. Value was: " + window);
+      }
+      this.rateLimit = limit;
+      this.rateLimitWindowMillis = unit.toMillis(window);
+      return this;
+    }
+
+    @NotNull public LifxSimulator build() {
+      Util.assertRange("faultRate + throttleRate", faultRate + throttleRate, 0.0, 1.0);
+      return new LifxSimulator(this);
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package com.kevinmost.lifx.simulator;
+
+import com.kevinmost.lifx.HistogramMetrics;
+import com.kevinmost.lifx.LifxCallback;
+import com.kevinmost.lifx.LifxClient;
+import com.kevinmost.lifx.LifxRequest;
+import com.kevinmost.lifx.LifxResult;
+import com.kevinmost.lifx.RetryPolicy;
+import com.kevinmost.lifx.model.LifxColor;
+import com.kevinmost.lifx.model.PowerState;
+import com.kevinmost.lifx.model.Selector;
+import com.kevinmost.lifx.request.LifxRequests;
+import com.kevinmost.lifx.request.SetLightsRequest;
+import com.kevinmost.lifx.request.model.Operation;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link LifxClient} as hard as it'll go against a {@link LifxSimulator}, keeping a fixed number of requests
+ * in flight, and reports throughput and latency percentiles overall and per kind of request. Arguments are
+ * {@code key=value} pairs; see {@link #DEFAULTS} for the keys and what they default to. For example:
+ * <pre>
+ *   lights=10000 concurrency=64 requests=20000 latencyMin=5 latencyMax=40 faultRate=0.01 mix=listOne:2,set:7,color:1
+ * </pre>
+ */
+public final class LoadGenerator {
+
+  private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+  static {
+    DEFAULTS.put("lights", "10000");
+    DEFAULTS.put("groups", "100");
+    DEFAULTS.put("locations", "4");
+    DEFAULTS.put("concurrency", "32");
+    DEFAULTS.put("requests", "10000");
+    DEFAULTS.put("warmup", "1000"); // requests issued before recording starts, so the JIT has settled
+    DEFAULTS.put("batch", "10"); // operations per PUT /v1/lights/states
+    DEFAULTS.put("latencyMin", "0"); // milliseconds
+    DEFAULTS.put("latencyMax", "0");
+    DEFAULTS.put("faultRate", "0");
+    DEFAULTS.put("throttleRate", "0");
+    DEFAULTS.put("rateLimit", "0"); // requests per minute, like the API's; 0 for none
+    DEFAULTS.put("attempts", "1"); // RetryPolicy.maxAttempts; 1 for no retries
+    DEFAULTS.put("hedge", "0"); // RetryPolicy.hedgeListLights percentile; 0 for no hedging
+    DEFAULTS.put("mix", "listOne:2,listGroup:1,listAll:0,set:6,color:1");
+    DEFAULTS.put("seed", "1");
+  }
+
+  enum Kind {
+    LIST_ONE("listOne"),
+    LIST_GROUP("listGroup"),
+    LIST_ALL("listAll"),
+    SET("set"),
+    COLOR("color"),
+    ;
+
+    @NotNull final String key;
+
+    Kind(@NotNull String key) {
+      this.key = key;
+    }
+  }
+
+  @NotNull private final Map<String, String> config;
+  @NotNull private final Random random;
+  @NotNull private final Kind[] schedule;
+  @NotNull private final List<VirtualFleet.VirtualLight> lights;
+
+  private LoadGenerator(@NotNull Map<String, String> config) {
+    this.config = config;
+    random = new Random(longArg("seed"));
+    schedule = schedule(config.get("mix"));
+    // The simulator builds the same fleet from the same arguments, so ids can be picked without asking it
+    lights = new VirtualFleet(intArg("lights"), intArg("groups"), intArg("locations"), longArg("seed")).lights();
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    final Map<String, String> config = new LinkedHashMap<>(DEFAULTS);
+    for (final String arg : args) {
+      final int equals = arg.indexOf('=');
+      if (equals < 0 || !DEFAULTS.containsKey(arg.substring(0, equals))) {
+        System.err.println("Unknown argument: " + arg + ". Known keys, with defaults: " + DEFAULTS);
+        System.exit(2);
+      }
+      config.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    new LoadGenerator(config).run();
+  }
+
+  private void run() throws IOException, InterruptedException {
+    final LifxSimulator.Builder simulatorBuilder = new LifxSimulator.Builder()
+        .lights(intArg("lights"))
+        .groups(intArg("groups"), intArg("locations"))
+        .seed(longArg("seed"))
+        .latency(longArg("latencyMin"), longArg("latencyMax"), TimeUnit.MILLISECONDS)
+        .faultRate(doubleArg("faultRate"))
+        .throttleRate(doubleArg("throttleRate"));
+    final int rateLimit = intArg("rateLimit");
+    if (rateLimit > 0) {
+      simulatorBuilder.rateLimit(rateLimit, 1, TimeUnit.MINUTES);
+    }
+    final LifxSimulator simulator = simulatorBuilder.build().start();
+
+    final int concurrency = intArg("concurrency");
+    final Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(concurrency);
+    dispatcher.setMaxRequestsPerHost(concurrency);
+    final OkHttpClient http = new OkHttpClient.Builder()
+        .dispatcher(dispatcher)
+        .socketFactory(NoDelaySockets.socketFactory())
+        .build();
+    final HistogramMetrics metrics = new HistogramMetrics();
+    final LifxClient.Builder clientBuilder = new LifxClient.Builder("simulated-token")
+        .baseURL(simulator.url())
+        .client(http)
+        .throttleToRateLimit(rateLimit > 0)
+        .metrics(metrics);
+    final double hedge = doubleArg("hedge");
+    if (intArg("attempts") > 1 || hedge > 0) {
+      final RetryPolicy.Builder retryPolicy = new RetryPolicy.Builder().maxAttempts(intArg("attempts"));
+      if (hedge > 0) {
+        retryPolicy.hedgeListLights(hedge);
+      }
+      clientBuilder.retryPolicy(retryPolicy.build());
+    }
+    final LifxClient client = clientBuilder.build();
+
+    System.out.println("Config: " + config);
+    try {
+      final int warmup = intArg("warmup");
+      if (warmup > 0) {
+        drive(client, warmup, concurrency, new EnumMap<Kind, LatencyRecorder>(Kind.class));
+        metrics.reset();
+      }
+      final Map<Kind, LatencyRecorder> recorders = new EnumMap<>(Kind.class);
+      final long startNanos = System.nanoTime();
+      drive(client, intArg("requests"), concurrency, recorders);
+      final long elapsedNanos = System.nanoTime() - startNanos;
+      report(recorders, elapsedNanos);
+      System.out.println("Where the client spent its time, per request type:");
+      System.out.println(metrics);
+    } finally {
+      dispatcher.executorService().shutdown();
+      http.connectionPool().evictAll();
+      simulator.shutdown();
+    }
+  }
+
+  /**
+   * Issues {@code count} requests, never more than {@code concurrency} at a time, and waits for all of them
+   */
+  private void drive(
+      @NotNull LifxClient client,
+      int count,
+      int concurrency,
+      @NotNull Map<Kind, LatencyRecorder> recorders
+  ) throws InterruptedException {
+    for (final Kind kind : Kind.values()) {
+      recorders.put(kind, new LatencyRecorder());
+    }
+    final Semaphore inFlight = new Semaphore(concurrency);
+    for (int i = 0; i < count; i++) {
+      inFlight.acquire();
+      final Kind kind = schedule[random.nextInt(schedule.length)];
+      issue(client, request(kind), recorders.get(kind), inFlight);
+    }
+    inFlight.acquire(concurrency);
+    inFlight.release(concurrency);
+  }
+
+  private <T> void issue(
+      @NotNull LifxClient client,
+      @NotNull LifxRequest.Adapter<T> request,
+      @NotNull final LatencyRecorder recorder,
+      @NotNull final Semaphore inFlight
+  ) {
+    final long startNanos = System.nanoTime();
+    request.executeAsync(client, new LifxCallback<T>() {
+      @Override public void onResult(@NotNull LifxResult<T> result) {
+        recorder.record(System.nanoTime() - startNanos, result.isSuccess());
+        inFlight.release();
+      }
+    });
+  }
+
+  @NotNull private LifxRequest.Adapter<?> request(@NotNull Kind kind) {
+    switch (kind) {
+      case LIST_ONE:
+        return LifxRequests.listLights(Selector.unsafe("id:" + lights.get(random.nextInt(lights.size())).id()));
+      case LIST_GROUP:
+        return LifxRequests.listLights(Selector.forGroup("Group " + random.nextInt(intArg("groups"))));
+      case LIST_ALL:
+        return LifxRequests.listLights();
+      case SET:
+        final int batch = Math.min(intArg("batch"), SetLightsRequest.MAX_OPERATIONS);
+        final List<Operation> operations = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+          operations.add(Operation.forSelector(Selector.unsafe("id:" + lights.get(random.nextInt(lights.size())).id()))
+              .powerState(random.nextBoolean() ? PowerState.ON : PowerState.OFF)
+              .color(LifxColor.hsv((double) random.nextInt(360), 1.0, null))
+              .brightness(random.nextInt(101) / 100.0)
+              .build()
+          );
+        }
+        return LifxRequests.setLights().plus(operations);
+      case COLOR:
+        return LifxRequests.verifyColor(LifxColor.hsv((double) random.nextInt(360), random.nextDouble(), null));
+      default:
+        throw new IllegalStateException("Unhandled kind: " + kind);
+    }
+  }
+
+  private static void report(@NotNull Map<Kind, LatencyRecorder> recorders, long elapsedNanos) {
+    int total = 0;
+    int failures = 0;
+    final LatencyRecorder overall = new LatencyRecorder();
+    for (final LatencyRecorder recorder : recorders.values()) {
+      total += recorder.count();
+      failures += recorder.failures();
+    }
+    final double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    System.out.println(String.format(Locale.US, "%d requests in %.2fs: %.1f req/s, %d succeeded, %d failed",
+        total, seconds, total / seconds, total - failures, failures));
+    for (final Map.Entry<Kind, LatencyRecorder> entry : recorders.entrySet()) {
+      if (entry.getValue().count() > 0) {
+        System.out.println(String.format(Locale.US, "  %-10s %s", entry.getKey().key, entry.getValue().summary()));
+      }
+      entry.getValue().copyTo(overall);
+    }
+    System.out.println(String.format(Locale.US, "  %-10s %s", "all", overall.summary()));
+  }
+
+  /**
+   * Expands e.g. {@code "listOne:2,set:7"} into a table to pick a request kind from uniformly
+   */
+  @NotNull private static Kind[] schedule(@NotNull String mix) {
+    final List<Kind> schedule = new ArrayList<>();
+    for (final String entry : mix.split(",")) {
+      final String[] parts = entry.split(":");
+      Kind match = null;
+      for (final Kind kind : Kind.values()) {
+        if (kind.key.equals(parts[0].trim())) {
+          match = kind;
+        }
+      }
+      if (match == null || parts.length != 2) {
+        throw new IllegalArgumentException("Bad mix entry: " + entry);
+      }
+      for (int i = Integer.parseInt(parts[1].trim()); i > 0; i--) {
+        schedule.add(match);
+      }
+    }
+    if (schedule.isEmpty()) {
+      throw new IllegalArgumentException("The mix must have at least one weighted request kind: " + mix);
+    }
+    return schedule.toArray(new Kind[schedule.size()]);
+  }
+
+  private int intArg(@NotNull String key) {
+    return Integer.parseInt(config.get(key));
+  }
+
+  private long longArg(@NotNull String key) {
+    return Long.parseLong(config.get(key));
+  }
+
+  private double doubleArg(@NotNull String key) {
+    return Double.parseDouble(config.get(key));
+  }
+}
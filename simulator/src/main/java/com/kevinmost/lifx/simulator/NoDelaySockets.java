@@ -0,0 +1,90 @@
+package com.kevinmost.lifx.simulator;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ServerSocketFactory;
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Sockets with Nagle's algorithm turned off. Both MockWebServer and OkHttp write headers and body separately, and over
+ * loopback Nagle's algorithm plus delayed ACKs turn that into a ~40ms stall per request, which would swamp anything
+ * the client itself does
+ */
+final class NoDelaySockets {
+
+  private NoDelaySockets() { throw new UnsupportedOperationException("No instances"); }
+
+  @NotNull static ServerSocketFactory serverSocketFactory() {
+    return new ServerSocketFactory() {
+      @Override public ServerSocket createServerSocket() throws IOException {
+        return new ServerSocket() {
+          @Override public Socket accept() throws IOException {
+            final Socket socket = super.accept();
+            socket.setTcpNoDelay(true);
+            return socket;
+          }
+        };
+      }
+
+      @Override public ServerSocket createServerSocket(int port) throws IOException {
+        return createServerSocket(port, 50, null);
+      }
+
+      @Override public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+        return createServerSocket(port, backlog, null);
+      }
+
+      @Override public ServerSocket createServerSocket(int port, int backlog, @Nullable InetAddress address)
+          throws IOException {
+        final ServerSocket socket = createServerSocket();
+        socket.bind(new InetSocketAddress(address, port), backlog);
+        return socket;
+      }
+    };
+  }
+
+  @NotNull static SocketFactory socketFactory() {
+    return new SocketFactory() {
+      @Override public Socket createSocket() throws IOException {
+        final Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        return socket;
+      }
+
+      @Override public Socket createSocket(String host, int port) throws IOException {
+        return connected(new InetSocketAddress(host, port), null, 0);
+      }
+
+      @Override public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+          throws IOException {
+        return connected(new InetSocketAddress(host, port), localHost, localPort);
+      }
+
+      @Override public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connected(new InetSocketAddress(host, port), null, 0);
+      }
+
+      @Override public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+          throws IOException {
+        return connected(new InetSocketAddress(address, port), localAddress, localPort);
+      }
+
+      @NotNull private Socket connected(
+          @NotNull InetSocketAddress remote,
+          @Nullable InetAddress localAddress,
+          int localPort
+      ) throws IOException {
+        final Socket socket = createSocket();
+        socket.bind(new InetSocketAddress(localAddress, localPort));
+        socket.connect(remote);
+        return socket;
+      }
+    };
+  }
+}
@@ -0,0 +1,287 @@
+package com.kevinmost.lifx.simulator;
+
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * A made-up account's worth of lights, spread over groups and locations and a mix of products, whose state changes as
+ * {@code PUT /v1/lights/states} requests come in. The same arguments always build the same fleet
+ */
+public final class VirtualFleet {
+
+  private static final Product[] PRODUCTS = {
+      new Product("LIFX Original 1000", "lifx_original_a21", true, true, false, false),
+      new Product("LIFX Color 1000", "lifx_color_a19", true, true, false, false),
+      new Product("LIFX White 800 (Low Voltage)", "lifx_white_800_low_voltage", false, true, false, false),
+      new Product("LIFX+ A19", "lifx_plus_a19", true, true, true, false),
+      new Product("LIFX Z", "lifx_z", true, true, false, true),
+  };
+
+  @NotNull private final List<VirtualLight> lights;
+  @NotNull private final Map<String, VirtualLight> byId = new LinkedHashMap<>();
+
+  public VirtualFleet(int lightCount, int groupCount, int locationCount, long seed) {
+    final Random random = new Random(seed);
+    final List<VirtualLight> lights = new ArrayList<>(lightCount);
+    for (int i = 0; i < lightCount; i++) {
+      final int location = i % locationCount;
+      final int group = location + locationCount * ((i / locationCount) % Math.max(1, groupCount / locationCount));
+      final VirtualLight light = new VirtualLight(
+          String.format(Locale.US, "d073d5%06x", i),
+          new UUID(random.nextLong(), random.nextLong()).toString(),
+          "Light " + i,
+          String.format(Locale.US, "%032x", 0x1000 + group),
+          "Group " + group,
+          String.format(Locale.US, "%032x", 0x2000 + location),
+          "Location " + location,
+          PRODUCTS[i % PRODUCTS.length]
+      );
+      light.on = random.nextBoolean();
+      light.hue = random.nextInt(360);
+      light.saturation = random.nextInt(101) / 100.0;
+      light.kelvin = 2500 + 100 * random.nextInt(66);
+      light.brightness = random.nextInt(101) / 100.0;
+      lights.add(light);
+      byId.put(light.id, light);
+    }
+    this.lights = Collections.unmodifiableList(lights);
+  }
+
+  @NotNull public List<VirtualLight> lights() {
+    return lights;
+  }
+
+  /**
+   * Resolves a selector the way the API does: {@code all}, or a comma-separated list of {@code id:}, {@code label:},
+   * {@code group_id:}, {@code group:}, {@code location_id:} and {@code location:} selectors
+   *
+   * @return null if the selector isn't valid
+   */
+  @Nullable public List<VirtualLight> select(@NotNull String selector) {
+    if (selector.equals("all")) {
+      return lights;
+    }
+    final Set<VirtualLight> selected = new LinkedHashSet<>();
+    for (final String part : selector.split(",")) {
+      final int colon = part.indexOf(':');
+      if (colon < 0) {
+        return null;
+      }
+      final String kind = part.substring(0, colon);
+      final String value = part.substring(colon + 1);
+      if (kind.equals("id")) {
+        final VirtualLight light = byId.get(value);
+        if (light != null) {
+          selected.add(light);
+        }
+        continue;
+      }
+      for (final VirtualLight light : lights) {
+        final String candidate;
+        switch (kind) {
+          case "label":
+            candidate = light.label;
+            break;
+          case "group_id":
+            candidate = light.groupId;
+            break;
+          case "group":
+            candidate = light.groupName;
+            break;
+          case "location_id":
+            candidate = light.locationId;
+            break;
+          case "location":
+            candidate = light.locationName;
+            break;
+          default:
+            return null;
+        }
+        if (candidate.equals(value)) {
+          selected.add(light);
+        }
+      }
+    }
+    return new ArrayList<>(selected);
+  }
+
+  public static final class VirtualLight {
+    @NotNull final String id;
+    @NotNull final String uuid;
+    @NotNull final String label;
+    @NotNull final String groupId;
+    @NotNull final String groupName;
+    @NotNull final String locationId;
+    @NotNull final String locationName;
+    @NotNull final Product product;
+
+    boolean connected = true;
+    boolean on;
+    double hue;
+    double saturation;
+    int kelvin;
+    double brightness;
+    double infrared;
+    long lastSeenMillis = System.currentTimeMillis();
+
+    VirtualLight(
+        @NotNull String id,
+        @NotNull String uuid,
+        @NotNull String label,
+        @NotNull String groupId,
+        @NotNull String groupName,
+        @NotNull String locationId,
+        @NotNull String locationName,
+        @NotNull Product product
+    ) {
+      this.id = id;
+      this.uuid = uuid;
+      this.label = label;
+      this.groupId = groupId;
+      this.groupName = groupName;
+      this.locationId = locationId;
+      this.locationName = locationName;
+      this.product = product;
+    }
+
+    @NotNull public String id() {
+      return id;
+    }
+
+    @NotNull public String label() {
+      return label;
+    }
+
+    /**
+     * Marks the light as unreachable, so the API reports it as disconnected and operations on it time out
+     */
+    public synchronized void setConnected(boolean connected) {
+      this.connected = connected;
+    }
+
+    synchronized void write(@NotNull JsonWriter out, @NotNull SimpleDateFormat dateFormat) throws IOException {
+      out.beginObject();
+      out.name("id").value(id);
+      out.name("uuid").value(uuid);
+      out.name("label").value(label);
+      out.name("connected").value(connected);
+      out.name("power").value(on ? "on" : "off");
+      out.name("color").beginObject()
+          .name("hue").value(hue)
+          .name("saturation").value(saturation)
+          .name("kelvin").value(kelvin)
+          .endObject();
+      if (product.hasIr) {
+        out.name("infrared").value(infrared);
+      }
+      out.name("brightness").value(brightness);
+      out.name("group").beginObject().name("id").value(groupId).name("name").value(groupName).endObject();
+      out.name("location").beginObject().name("id").value(locationId).name("name").value(locationName).endObject();
+      out.name("last_seen").value(dateFormat.format(new Date(lastSeenMillis)));
+      out.name("seconds_since_seen").value((System.currentTimeMillis() - lastSeenMillis) / 1000.0);
+      out.name("product");
+      product.write(out);
+      out.endObject();
+    }
+
+    /**
+     * @return whether the light took the change, i.e. whether it's connected
+     */
+    synchronized boolean apply(
+        @Nullable Boolean on,
+        @Nullable Double hue,
+        @Nullable Double saturation,
+        @Nullable Integer kelvin,
+        @Nullable Double brightness,
+        @Nullable Double infrared
+    ) {
+      if (!connected) {
+        return false;
+      }
+      if (on != null) {
+        this.on = on;
+      }
+      if (hue != null) {
+        this.hue = hue;
+      }
+      if (saturation != null) {
+        this.saturation = saturation;
+      }
+      if (kelvin != null) {
+        this.kelvin = kelvin;
+      }
+      if (brightness != null) {
+        this.brightness = brightness;
+      }
+      if (infrared != null && product.hasIr) {
+        this.infrared = infrared;
+      }
+      lastSeenMillis = System.currentTimeMillis();
+      return true;
+    }
+  }
+
+  /**
+   * The format the API sends {@code last_seen} in
+   */
+  @NotNull static SimpleDateFormat dateFormat() {
+    final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format;
+  }
+
+  static final class Product {
+    @NotNull final String name;
+    @NotNull final String identifier;
+    final boolean hasColor;
+    final boolean hasVariableColorTemp;
+    final boolean hasIr;
+    final boolean hasMultizone;
+
+    Product(
+        @NotNull String name,
+        @NotNull String identifier,
+        boolean hasColor,
+        boolean hasVariableColorTemp,
+        boolean hasIr,
+        boolean hasMultizone
+    ) {
+      this.name = name;
+      this.identifier = identifier;
+      this.hasColor = hasColor;
+      this.hasVariableColorTemp = hasVariableColorTemp;
+      this.hasIr = hasIr;
+      this.hasMultizone = hasMultizone;
+    }
+
+    void write(@NotNull JsonWriter out) throws IOException {
+      out.beginObject()
+          .name("name").value(name)
+          .name("identifier").value(identifier)
+          .name("company").value("LIFX")
+          .name("capabilities").beginObject()
+          .name("has_color").value(hasColor)
+          .name("has_variable_color_temp").value(hasVariableColorTemp)
+          .name("has_ir").value(hasIr)
+          .name("has_multizone").value(hasMultizone)
+          .endObject()
+          .endObject();
+    }
+  }
+}